@@ -0,0 +1,75 @@
+-- One table per iatype, keyed like the DHCPBINDING table of the v3 schema.
+-- The IATYPE column of each table holds a single value, so the indexes
+-- leave it out.
+CREATE TABLE DHCPBINDING_V4 (
+	IPHI BIGINT NOT NULL,
+	IPLO BIGINT NOT NULL,
+    DUID VARBINARY(130) NOT NULL,
+    IATYPE SMALLINT NOT NULL,
+    IAID BIGINT,
+    PREFIXLEN SMALLINT,
+	STATE SMALLINT,
+    STARTTIME TIMESTAMP,
+    PREFERREDENDTIME TIMESTAMP,
+    VALIDENDTIME TIMESTAMP,
+    IA_OPTIONS BLOB,
+    IPADDR_OPTIONS BLOB,
+    PRIMARY KEY (IPHI, IPLO)
+);
+CREATE INDEX BINDING_V4_TUPLE_NDX ON DHCPBINDING_V4 (DUID, IAID);
+CREATE INDEX BINDING_V4_STATE_NDX ON DHCPBINDING_V4 (STATE, IPHI, IPLO);
+CREATE INDEX BINDING_V4_EXPIRE_NDX ON DHCPBINDING_V4 (VALIDENDTIME);
+CREATE TABLE DHCPBINDING_NA (
+	IPHI BIGINT NOT NULL,
+	IPLO BIGINT NOT NULL,
+    DUID VARBINARY(130) NOT NULL,
+    IATYPE SMALLINT NOT NULL,
+    IAID BIGINT,
+    PREFIXLEN SMALLINT,
+	STATE SMALLINT,
+    STARTTIME TIMESTAMP,
+    PREFERREDENDTIME TIMESTAMP,
+    VALIDENDTIME TIMESTAMP,
+    IA_OPTIONS BLOB,
+    IPADDR_OPTIONS BLOB,
+    PRIMARY KEY (IPHI, IPLO)
+);
+CREATE INDEX BINDING_NA_TUPLE_NDX ON DHCPBINDING_NA (DUID, IAID);
+CREATE INDEX BINDING_NA_STATE_NDX ON DHCPBINDING_NA (STATE, IPHI, IPLO);
+CREATE INDEX BINDING_NA_EXPIRE_NDX ON DHCPBINDING_NA (VALIDENDTIME);
+CREATE TABLE DHCPBINDING_TA (
+	IPHI BIGINT NOT NULL,
+	IPLO BIGINT NOT NULL,
+    DUID VARBINARY(130) NOT NULL,
+    IATYPE SMALLINT NOT NULL,
+    IAID BIGINT,
+    PREFIXLEN SMALLINT,
+	STATE SMALLINT,
+    STARTTIME TIMESTAMP,
+    PREFERREDENDTIME TIMESTAMP,
+    VALIDENDTIME TIMESTAMP,
+    IA_OPTIONS BLOB,
+    IPADDR_OPTIONS BLOB,
+    PRIMARY KEY (IPHI, IPLO)
+);
+CREATE INDEX BINDING_TA_TUPLE_NDX ON DHCPBINDING_TA (DUID, IAID);
+CREATE INDEX BINDING_TA_STATE_NDX ON DHCPBINDING_TA (STATE, IPHI, IPLO);
+CREATE INDEX BINDING_TA_EXPIRE_NDX ON DHCPBINDING_TA (VALIDENDTIME);
+CREATE TABLE DHCPBINDING_PD (
+	IPHI BIGINT NOT NULL,
+	IPLO BIGINT NOT NULL,
+    DUID VARBINARY(130) NOT NULL,
+    IATYPE SMALLINT NOT NULL,
+    IAID BIGINT,
+    PREFIXLEN SMALLINT,
+	STATE SMALLINT,
+    STARTTIME TIMESTAMP,
+    PREFERREDENDTIME TIMESTAMP,
+    VALIDENDTIME TIMESTAMP,
+    IA_OPTIONS BLOB,
+    IPADDR_OPTIONS BLOB,
+    PRIMARY KEY (IPHI, IPLO)
+);
+CREATE INDEX BINDING_PD_TUPLE_NDX ON DHCPBINDING_PD (DUID, IAID);
+CREATE INDEX BINDING_PD_STATE_NDX ON DHCPBINDING_PD (STATE, IPHI, IPLO);
+CREATE INDEX BINDING_PD_EXPIRE_NDX ON DHCPBINDING_PD (VALIDENDTIME);
@@ -0,0 +1,25 @@
+-- Addresses are keyed by two fixed width BIGINTs, the upper and lower
+-- 64 bits of the IPv6 address, or of the IPv4-mapped IPv6 address, with
+-- the sign bit flipped so that the key order is the address order.
+-- The composite indexes match the queries of JdbcLeaseManagerV3.
+CREATE TABLE DHCPBINDING (
+	IPHI BIGINT NOT NULL,
+	IPLO BIGINT NOT NULL,
+    DUID VARBINARY(130) NOT NULL,
+    IATYPE SMALLINT NOT NULL,
+    IAID BIGINT,
+    PREFIXLEN SMALLINT,
+	STATE SMALLINT,
+    STARTTIME TIMESTAMP,
+    PREFERREDENDTIME TIMESTAMP,
+    VALIDENDTIME TIMESTAMP,
+    IA_OPTIONS BLOB,
+    IPADDR_OPTIONS BLOB,
+    PRIMARY KEY (IPHI, IPLO)
+);
+-- findIA by duid, iatype and iaid
+CREATE INDEX BINDING_TUPLE_NDX ON DHCPBINDING (DUID, IATYPE, IAID);
+-- findUnusedIaAddresses/Prefixes by state and address range
+CREATE INDEX BINDING_STATE_NDX ON DHCPBINDING (STATE, IPHI, IPLO);
+-- findExpiredIAs/IaPrefixes by iatype, ordered by validendtime
+CREATE INDEX BINDING_EXPIRE_NDX ON DHCPBINDING (IATYPE, VALIDENDTIME);
@@ -29,13 +29,12 @@ import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Random;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.commons.cli.BasicParser;
 import org.apache.commons.cli.CommandLine;
@@ -56,23 +55,33 @@ import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
 import org.jboss.netty.channel.socket.DatagramChannel;
 import org.jboss.netty.channel.socket.DatagramChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioDatagramChannelFactory;
-import org.jboss.netty.handler.execution.ExecutionHandler;
-import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
-import org.jboss.netty.handler.logging.LoggingHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jagornet.dhcp.message.DhcpV4Message;
 import com.jagornet.dhcp.option.v4.DhcpV4MsgTypeOption;
 import com.jagornet.dhcp.option.v4.DhcpV4RequestedIpAddressOption;
+import com.jagornet.dhcp.option.v4.DhcpV4ServerIdOption;
 import com.jagornet.dhcp.server.netty.DhcpV4ChannelDecoder;
 import com.jagornet.dhcp.server.netty.DhcpV4ChannelEncoder;
 import com.jagornet.dhcp.util.DhcpConstants;
-import com.jagornet.dhcp.util.Util;
 
 /**
- * A test client that sends discover/request/release messages 
- * to a DHCPv4 server via unicast, as if sent via a relay.
+ * A test client that sends DHCPv4 requests to a DHCPv4 server via unicast,
+ * as if sent via one or more relays.
+ * 
+ * Without a rate, each client sends discover/request/release once, as fast
+ * as the pool size allows.  With a rate, the clients are a load generator:
+ * requests are started at the target rate, whether or not the server keeps
+ * up, for the duration of the test.  A client without a lease sends a
+ * discover, and a client with a lease sends a renew, rebind, inform,
+ * release or decline, chosen by the weights of the mix.
+ * 
+ * The clients are virtual: the state of a client is a few array elements,
+ * and the transaction id of a request holds the number of the client, so a
+ * reply is matched to its client without a lookup.  The requests are sent
+ * by one thread, and the replies are handled by the I/O thread of the
+ * channel, so millions of clients need only a few threads.
  * 
  * @author A. Gregory Rabil
  */
@@ -81,6 +90,38 @@ public class ClientSimulatorV4 extends SimpleChannelUpstreamHandler
 {
 	private static Logger log = LoggerFactory.getLogger(ClientSimulatorV4.class);
 
+	/** The exchanges of the statistics. */
+	static final int DISCOVER = 0;
+	static final int REQUEST = 1;
+	static final int RENEW = 2;
+	static final int REBIND = 3;
+	static final int INFORM = 4;
+	static final int RELEASE = 5;
+	static final int DECLINE = 6;
+	static final String[] EXCHANGES = 
+		{ "Discover", "Request", "Renew", "Rebind", "Inform", "Release", "Decline" };
+	
+	/** The phases of a client, in the low bits of its state. */
+	static final int IDLE = 0;
+	static final int DISCOVERING = 1;
+	static final int REQUESTING = 2;
+	static final int BOUND = 3;
+	static final int RENEWING = 4;
+	static final int REBINDING = 5;
+	static final int INFORMING = 6;
+	static final int PHASE_BITS = 4;
+	static final int PHASE_MASK = (1 << PHASE_BITS) - 1;
+	
+	/** 
+	 * The low bits of a transaction id are the number of the client,
+	 * and the high bits are the low bits of its generation.
+	 */
+	static final int CLIENT_BITS = 24;
+	static final int MAX_CLIENTS = 1 << CLIENT_BITS;
+	
+	/** The number of clients tried for the next request, when clients are busy. */
+	static final int MAX_TRIES = 64;
+	
 	protected Random random = new Random();
     protected Options options = new Options();
     protected CommandLineParser parser = new BasicParser();
@@ -93,26 +134,57 @@ public class ClientSimulatorV4 extends SimpleChannelUpstreamHandler
     protected int clientPort = DhcpConstants.V4_SERVER_PORT;	// the test client acts as a relay
     protected boolean rapidCommit = false;
     protected int numRequests = 100;
-    protected AtomicInteger discoversSent = new AtomicInteger();
-    protected AtomicInteger offersReceived = new AtomicInteger();
-    protected AtomicInteger requestsSent = new AtomicInteger();
-    protected AtomicInteger acksReceived = new AtomicInteger();
-    protected AtomicInteger releasesSent = new AtomicInteger();
-    protected int successCnt = 0;
-    protected long startTime = 0;    
-    protected long endTime = 0;
     protected long timeout = 0;
     protected int poolSize = 0;
-    protected Object syncDone = new Object();
-
+    protected double rate = 0;
+    protected int duration = 60;
+    protected int reportInterval = 10;
+    protected int replyTimeout = 2000;
+    protected int numRelays = 1;
+    /** The weights of renew, rebind, inform, release and decline. */
+    protected int[] mix = { 70, 10, 10, 9, 1 };
+    
     protected InetSocketAddress server = null;
     protected InetSocketAddress client = null;
     
     protected DatagramChannel channel = null;	
-	protected ExecutorService executor = Executors.newCachedThreadPool();
-	
-	protected Map<BigInteger, ClientMachine> clientMap =
-			Collections.synchronizedMap(new HashMap<BigInteger, ClientMachine>());
+
+    protected LoadStats stats = new LoadStats(EXCHANGES);
+    
+    /** The state of each client: the generation and the phase. */
+    protected AtomicIntegerArray states;
+    /** The leased address of each client. */
+    protected int[] addrs;
+    /** The server id of the lease of each client. */
+    protected int[] serverIds;
+    /** The time the request of each client was sent. */
+    protected long[] sentTimes;
+    /** The relay addresses, used as giaddr by the clients in turn. */
+    protected InetAddress[] relayAddrs;
+    
+    /** The clients with an exchange in progress, when run without a rate. */
+    protected AtomicInteger inFlight = new AtomicInteger();
+    /** The clients done, when run without a rate. */
+    protected AtomicInteger done = new AtomicInteger();
+    
+    /** 
+     * The exchanges started, in order, to time out those without a reply.  
+     * Used only by the sending thread.
+     */
+    protected int[] pendingClients = new int[1024];
+    protected int[] pendingStates = new int[1024];
+    protected long[] pendingTimes = new long[1024];
+    protected int pendingHead = 0;
+    protected int pendingCount = 0;
+    
+    protected ChannelFutureListener writeListener = new ChannelFutureListener() {
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			if (!future.isSuccess()) {
+				log.warn("Failed to send message: " + future.getCause());
+			}
+		}
+	};
 
     /**
      * Instantiates a new test client.
@@ -147,7 +219,7 @@ public class ClientSimulatorV4 extends SimpleChannelUpstreamHandler
 	private void setupOptions()
     {
 		Option numOption = new Option("n", "number", true,
-										"Number of client requests to send" +
+										"Number of clients" +
 										" [" + numRequests + "]");
 		options.addOption(numOption);
 		
@@ -176,13 +248,43 @@ public class ClientSimulatorV4 extends SimpleChannelUpstreamHandler
         options.addOption(rOption);
         
         Option toOption = new Option("to", "timeout", true,
-        							"Timeout");
+        							"Seconds to wait for completion without a rate, 0 for no limit");
         options.addOption(toOption);
         
         Option psOption = new Option("ps", "poolsize", true,
         							"Size of the pool; wait for release after this many requests");
         options.addOption(psOption);
         
+        Option rateOption = new Option("rate", "rate", true,
+        							"Requests per second, for a load test of the duration");
+        options.addOption(rateOption);
+        
+        Option dOption = new Option("d", "duration", true,
+        							"Seconds of the load test" +
+        							" [" + duration + "]");
+        options.addOption(dOption);
+        
+        Option riOption = new Option("ri", "reportinterval", true,
+        							"Seconds between progress reports" +
+        							" [" + reportInterval + "]");
+        options.addOption(riOption);
+        
+        Option rtOption = new Option("rt", "replytimeout", true,
+        							"Milliseconds to wait for the reply of an exchange" +
+        							" [" + replyTimeout + "]");
+        options.addOption(rtOption);
+        
+        Option relaysOption = new Option("relays", "relays", true,
+        							"Number of relays, with consecutive addresses from the" +
+        							" client address; the server needs a link for each" +
+        							" [" + numRelays + "]");
+        options.addOption(relaysOption);
+        
+        Option mixOption = new Option("mix", "mix", true,
+        							"Weights of renew,rebind,inform,release,decline" +
+        							" by clients with a lease [70,10,10,9,1]");
+        options.addOption(mixOption);
+        
         Option helpOption = new Option("?", "help", false, "Show this help page.");
         
         options.addOption(helpOption);
@@ -217,6 +319,19 @@ public class ClientSimulatorV4 extends SimpleChannelUpstreamHandler
     	return addr;
 	}
 	
+	protected int[] parseMixOption(String str, int[] defmix) {
+		String[] weights = str.split(",");
+		if (weights.length != defmix.length) {
+    		System.err.println("Invalid mix '" + str + "' using default");
+    		return defmix;
+		}
+		int[] mix = new int[weights.length];
+		for (int i=0; i<weights.length; i++) {
+			mix[i] = parseIntegerOption("mix weight", weights[i].trim(), defmix[i]);
+		}
+		return mix;
+	}
+	
     /**
      * Parses the options.
      * 
@@ -234,6 +349,10 @@ public class ClientSimulatorV4 extends SimpleChannelUpstreamHandler
             if (cmd.hasOption("n")) {
             	numRequests = 
             			parseIntegerOption("num requests", cmd.getOptionValue("n"), 100);
+            	if ((numRequests < 1) || (numRequests > MAX_CLIENTS)) {
+            		System.err.println("Number of clients must be from 1 to " + MAX_CLIENTS);
+            		return false;
+            	}
             }
             clientAddr = DEFAULT_ADDR;
             if (cmd.hasOption("ca")) {
@@ -248,12 +367,12 @@ public class ClientSimulatorV4 extends SimpleChannelUpstreamHandler
             if (cmd.hasOption("cp")) {
             	clientPort = 
             			parseIntegerOption("client port", cmd.getOptionValue("cp"), 
-            								DhcpConstants.V6_CLIENT_PORT);
+            								DhcpConstants.V4_SERVER_PORT);
             }
             if (cmd.hasOption("sp")) {
             	serverPort = 
             			parseIntegerOption("server port", cmd.getOptionValue("sp"), 
-            								DhcpConstants.V6_SERVER_PORT);
+            								DhcpConstants.V4_SERVER_PORT);
             }
             if (cmd.hasOption("r")) {
             	rapidCommit = true;
@@ -266,6 +385,31 @@ public class ClientSimulatorV4 extends SimpleChannelUpstreamHandler
             	poolSize = 
             			parseIntegerOption("pool size", cmd.getOptionValue("ps"), 0);
             }
+            if (cmd.hasOption("rate")) {
+            	rate = 
+            			parseIntegerOption("rate", cmd.getOptionValue("rate"), 0);
+            }
+            if (cmd.hasOption("d")) {
+            	duration = 
+            			parseIntegerOption("duration", cmd.getOptionValue("d"), duration);
+            }
+            if (cmd.hasOption("ri")) {
+            	reportInterval = 
+            			parseIntegerOption("report interval", cmd.getOptionValue("ri"), 
+            								reportInterval);
+            }
+            if (cmd.hasOption("rt")) {
+            	replyTimeout = 
+            			parseIntegerOption("reply timeout", cmd.getOptionValue("rt"), 
+            								replyTimeout);
+            }
+            if (cmd.hasOption("relays")) {
+            	numRelays = 
+            			Math.max(1, parseIntegerOption("relays", cmd.getOptionValue("relays"), 1));
+            }
+            if (cmd.hasOption("mix")) {
+            	mix = parseMixOption(cmd.getOptionValue("mix"), mix);
+            }
         }
         catch (ParseException pe) {
             System.err.println("Command line option parsing failure: " + pe);
@@ -275,9 +419,9 @@ public class ClientSimulatorV4 extends SimpleChannelUpstreamHandler
     }
     
     /**
-     * Start sending DHCPv4 DISCOVERs.
+     * Start sending DHCPv4 requests.
      */
-    public void start()
+    public void start() throws Exception
     {
     	DatagramChannelFactory factory = 
     		new NioDatagramChannelFactory(Executors.newCachedThreadPool());
@@ -285,164 +429,374 @@ public class ClientSimulatorV4 extends SimpleChannelUpstreamHandler
     	server = new InetSocketAddress(serverAddr, serverPort);
     	client = new InetSocketAddress(clientPort);
     	
+    	states = new AtomicIntegerArray(numRequests);
+    	addrs = new int[numRequests];
+    	serverIds = new int[numRequests];
+    	sentTimes = new long[numRequests];
+    	relayAddrs = new InetAddress[numRelays];
+    	for (int i=0; i<numRelays; i++) {
+    		relayAddrs[i] = toInetAddress(toInt(clientAddr) + i);
+    	}
+    	
+    	// replies are handled on the I/O thread, which only sends the next request
 		ChannelPipeline pipeline = Channels.pipeline();
-        pipeline.addLast("logger", new LoggingHandler());
         pipeline.addLast("encoder", new DhcpV4ChannelEncoder());
         pipeline.addLast("decoder", new DhcpV4ChannelDecoder(client, false));
-        pipeline.addLast("executor", new ExecutionHandler(
-        		new OrderedMemoryAwareThreadPoolExecutor(16, 1048576, 1048576)));
         pipeline.addLast("handler", this);
     	
         channel = factory.newChannel(pipeline);
     	channel.bind(client);
-
-    	for (int i=1; i<=numRequests; i++) {
-    		executor.execute(new ClientMachine(i));
+    	
+    	boolean success = true;
+    	if (rate > 0) {
+    		runLoadTest();
     	}
+    	else {
+    		success = runOnce();
+    	}
+    	
+    	System.out.println(stats.report(rate));
 
-    	synchronized (syncDone) {
-    		long ms = timeout * 1000;
-        	try {
-        		log.info("Waiting total of " + timeout + " milliseconds for completion");
-        		syncDone.wait(ms);
-        	}
-        	catch (InterruptedException ex) {
-        		log.error("Interrupted", ex);
-        	}
-		}
-
-		log.info("Complete: discoversSent=" + discoversSent +
-				" offersReceived=" + offersReceived +
-				" requestsSent=" + requestsSent +
-				" acksReceived=" + acksReceived +
-				" releasesSent=" + releasesSent +
-				" elapsedTime=" + (endTime - startTime) + "ms");
-
-    	log.info("Shutting down executor...");
-    	executor.shutdownNow();
     	log.info("Closing channel...");
-    	channel.close();
+    	channel.close().awaitUninterruptibly();
+    	factory.releaseExternalResources();
     	log.info("Done.");
-    	if ((discoversSent.get() == offersReceived.get()) &&
-    			(requestsSent.get() == acksReceived.get()) &&
-    			(releasesSent.get() == numRequests)) {
-    		
-    		System.exit(0);
+    	System.exit(success ? 0 : 1);
+    }
+    
+    /**
+     * Send discover/request/release for each client once, as fast as the pool
+     * size allows, and wait for the clients to complete.
+     * 
+     * @return true, if every client released its lease
+     */
+    protected boolean runOnce()
+    {
+    	stats.start();
+    	long now = System.nanoTime();
+    	long nextReport = now + TimeUnit.SECONDS.toNanos(reportInterval);
+    	for (int i=0; i<numRequests; i++) {
+    		while ((poolSize > 0) && (inFlight.get() >= poolSize)) {
+    			LockSupport.parkNanos(100000);
+    			now = System.nanoTime();
+    			expireExchanges(now);
+    		}
+    		inFlight.incrementAndGet();
+    		startExchange(i, states.get(i), System.nanoTime());
+    		if ((i & 0xff) == 0) {
+    			now = System.nanoTime();
+    			expireExchanges(now);
+    			if (now >= nextReport) {
+    				System.out.println(stats.progress());
+    				nextReport += TimeUnit.SECONDS.toNanos(reportInterval);
+    			}
+    		}
+    	}
+		log.info("Waiting total of " + timeout + " seconds for completion");
+    	long end = (timeout > 0) ? 
+    			System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout) : 
+    			Long.MAX_VALUE;
+    	while ((done.get() < numRequests) && ((now = System.nanoTime()) < end)) {
+    		expireExchanges(now);
+			if (now >= nextReport) {
+				System.out.println(stats.progress());
+				nextReport += TimeUnit.SECONDS.toNanos(reportInterval);
+			}
+    		LockSupport.parkNanos(1000000);
+    	}
+    	return stats.getSent(RELEASE) == numRequests;
+    }
+    
+    /**
+     * Start exchanges at the target rate for the duration, and wait for
+     * the replies of the last exchanges.  The exchanges are started on time
+     * whether or not the server keeps up, i.e. an open loop, and when all of
+     * the clients tried have an exchange in progress, the exchange is skipped.
+     */
+    protected void runLoadTest()
+    {
+    	System.out.println("Starting load test: clients=" + numRequests + " relays=" + numRelays +
+    			" rate=" + rate + "/s duration=" + duration + "s");
+    	stats.start();
+    	long start = System.nanoTime();
+    	long end = start + TimeUnit.SECONDS.toNanos(duration);
+    	long nextReport = start + TimeUnit.SECONDS.toNanos(reportInterval);
+    	long started = 0;
+    	int cursor = 0;
+    	long now;
+    	while ((now = System.nanoTime()) < end) {
+    		long due = (long) (((now - start) / 1e9) * rate);
+    		while (started < due) {
+    			started++;
+    			boolean sent = false;
+    			if (channel.isWritable()) {
+	    			for (int tries=0; tries<MAX_TRIES; tries++) {
+	    				int i = cursor++;
+	    				if (cursor == numRequests) {
+	    					cursor = 0;
+	    				}
+	    				int state = states.get(i);
+	    				int phase = state & PHASE_MASK;
+	    				if ((phase == IDLE) || (phase == BOUND)) {
+	    					startExchange(i, state, now);
+	    					sent = true;
+	    					break;
+	    				}
+	    			}
+    			}
+    			if (!sent) {
+    				stats.skipped();
+    			}
+    		}
+    		expireExchanges(now);
+			if (now >= nextReport) {
+				System.out.println(stats.progress());
+				nextReport += TimeUnit.SECONDS.toNanos(reportInterval);
+			}
+    		LockSupport.parkNanos(100000);
+    	}
+    	long drain = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(replyTimeout);
+    	while ((pendingCount > 0) && ((now = System.nanoTime()) < drain)) {
+    		expireExchanges(now);
+    		LockSupport.parkNanos(1000000);
+    	}
+    	expireExchanges(Long.MAX_VALUE);
+    }
+    
+    /**
+     * Start the next exchange of a client, which has no exchange in progress.
+     * Called only by the sending thread.
+     * 
+     * @param i the client
+     * @param state the state of the client
+     * @param now the current System.nanoTime()
+     */
+    protected void startExchange(int i, int state, long now)
+    {
+    	int gen = (state >>> PHASE_BITS) + 1;
+    	int phase;
+    	int exchange;
+    	if ((state & PHASE_MASK) == IDLE) {
+    		phase = DISCOVERING;
+    		exchange = DISCOVER;
     	}
     	else {
-    		System.exit(1);
+    		exchange = chooseExchange();
+    		switch (exchange) {
+    			case RENEW:
+    				phase = RENEWING;
+    				break;
+    			case REBIND:
+    				phase = REBINDING;
+    				break;
+    			case INFORM:
+    				phase = INFORMING;
+    				break;
+    			default:
+    				// release and decline have no reply
+    				phase = IDLE;
+    				break;
+    		}
+    	}
+    	int newState = (gen << PHASE_BITS) | phase;
+    	sentTimes[i] = now;
+    	states.set(i, newState);
+    	if (phase != IDLE) {
+    		addPending(i, newState, now);
     	}
+    	send(buildMessage(i, newState, exchange), exchange);
     }
-
+    
     /**
-     * The Class ClientMachine.
+     * Choose the exchange of a client with a lease, by the weights of the mix.
      */
-    class ClientMachine implements Runnable, ChannelFutureListener
+    protected int chooseExchange()
     {
-    	DhcpV4Message msg;
-    	int id;
-    	byte[] mac;
-    	BigInteger key;
-    	
-    	/**
-	     * Instantiates a new client machine.
-	     *
-	     * @param msg the msg
-	     * @param server the server
-	     */
-	    public ClientMachine(int id) {
-    		this.id = id;
-    		this.mac = buildChAddr(id);
-    		this.key = new BigInteger(mac);
+    	int total = 0;
+    	for (int weight : mix) {
+    		total += weight;
     	}
-		
-		/* (non-Javadoc)
-		 * @see java.lang.Runnable#run()
-		 */
-		@Override
-		public void run() {
-			if (poolSize > 0) {
-				synchronized (clientMap) {
-					if (poolSize <= clientMap.size()) {
-						try {
-							log.info("Waiting for release...");
-							clientMap.wait();
-						} 
-						catch (InterruptedException ex) {
-							log.error("Interrupted", ex);
-						}
-					}
-					clientMap.put(key, this);
-				}
-			}
-			else {
-				clientMap.put(key, this);
-			}
-			discover();
-		}
-		
-		public void discover() {
-			msg = buildDiscoverMessage(mac); 
-			ChannelFuture future = channel.write(msg, server);
-			future.addListener(this);
-		}
-		
-		public void request(DhcpV4Message offerMsg) {
-        	msg = buildRequestMessage(offerMsg);
-			ChannelFuture future = channel.write(msg, server);
-			future.addListener(this);
-		}
-		
-		public void release(DhcpV4Message ackMsg) {
-        	msg = buildReleaseMessage(ackMsg);
-			ChannelFuture future = channel.write(msg, server);
-			future.addListener(this);
-		}
-		
-		/* (non-Javadoc)
-		 * @see org.jboss.netty.channel.ChannelFutureListener#operationComplete(org.jboss.netty.channel.ChannelFuture)
-		 */
-		@Override
-		public void operationComplete(ChannelFuture future) throws Exception
-		{
-			if (future.isSuccess()) {
-				if (startTime == 0) {
-					startTime = System.currentTimeMillis();
-					log.info("Starting at: " + startTime);
-				}
-				if (msg.getMessageType() == DhcpConstants.V4MESSAGE_TYPE_DISCOVER) {
-					discoversSent.getAndIncrement();
-					log.info("Succesfully sent discover message mac=" + Util.toHexString(mac) +
-							" cnt=" + discoversSent);
-				}
-				else if (msg.getMessageType() == DhcpConstants.V4MESSAGE_TYPE_REQUEST) {
-					requestsSent.getAndIncrement();
-					log.info("Succesfully sent request message mac=" + Util.toHexString(mac) +
-							" cnt=" + requestsSent);
-				}
-				else if (msg.getMessageType() == DhcpConstants.V4MESSAGE_TYPE_RELEASE) {
-					clientMap.remove(key);
-					releasesSent.getAndIncrement();
-					log.info("Succesfully sent release message mac=" + Util.toHexString(mac) +
-							" cnt=" + releasesSent);
-					if (releasesSent.get() == numRequests) {
-						endTime = System.currentTimeMillis();
-						log.info("Ending at: " + endTime);
-						synchronized (syncDone) {
-							syncDone.notifyAll();
-						}
-					}
-					else if (poolSize > 0) {
-						synchronized (clientMap) {
-							clientMap.notify();
-						}
-					}
-				}
-			}
-			else {
-				log.warn("Failed to send message id=" + msg.getTransactionId());
-			}
-		}
+    	if (total <= 0) {
+    		return RENEW;
+    	}
+    	int r = random.nextInt(total);
+    	for (int i=0; i<mix.length; i++) {
+    		r -= mix[i];
+    		if (r < 0) {
+    			return RENEW + i;
+    		}
+    	}
+    	return RENEW;
+    }
+    
+    protected void send(DhcpV4Message msg, int exchange)
+    {
+    	stats.sent(exchange);
+		ChannelFuture future = channel.write(msg, server);
+		future.addListener(writeListener);
+    }
+    
+    /**
+     * Add an exchange to the end of the pending exchanges.
+     */
+    protected void addPending(int i, int state, long now)
+    {
+    	if (pendingCount == pendingClients.length) {
+    		int size = pendingClients.length * 2;
+    		int[] clients = new int[size];
+    		int[] states = new int[size];
+    		long[] times = new long[size];
+    		for (int j=0; j<pendingCount; j++) {
+    			int k = (pendingHead + j) % pendingClients.length;
+    			clients[j] = pendingClients[k];
+    			states[j] = pendingStates[k];
+    			times[j] = pendingTimes[k];
+    		}
+    		pendingClients = clients;
+    		pendingStates = states;
+    		pendingTimes = times;
+    		pendingHead = 0;
+    	}
+    	int tail = (pendingHead + pendingCount) % pendingClients.length;
+    	pendingClients[tail] = i;
+    	pendingStates[tail] = state;
+    	pendingTimes[tail] = now;
+    	pendingCount++;
+    }
+    
+    /**
+     * Time out the exchanges started more than the reply timeout ago, which
+     * are still in progress.  A client which was getting a lease is idle 
+     * again, and a client with a lease keeps it.
+     * 
+     * @param now the current System.nanoTime()
+     */
+    protected void expireExchanges(long now)
+    {
+    	long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(replyTimeout);
+    	while ((pendingCount > 0) && (now - pendingTimes[pendingHead] >= timeoutNanos)) {
+    		int i = pendingClients[pendingHead];
+    		int gen = pendingStates[pendingHead] >>> PHASE_BITS;
+    		pendingHead = (pendingHead + 1) % pendingClients.length;
+    		pendingCount--;
+    		int state = states.get(i);
+    		if ((state >>> PHASE_BITS) != gen) {
+    			continue;
+    		}
+    		int phase = state & PHASE_MASK;
+    		int exchange;
+    		int resting;
+    		switch (phase) {
+    			case DISCOVERING:
+    				exchange = DISCOVER;
+    				resting = IDLE;
+    				break;
+    			case REQUESTING:
+    				exchange = REQUEST;
+    				resting = IDLE;
+    				break;
+    			case RENEWING:
+    				exchange = RENEW;
+    				resting = BOUND;
+    				break;
+    			case REBINDING:
+    				exchange = REBIND;
+    				resting = BOUND;
+    				break;
+    			case INFORMING:
+    				exchange = INFORM;
+    				resting = BOUND;
+    				break;
+    			default:
+    				// completed
+    				continue;
+    		}
+    		if (states.compareAndSet(i, state, (gen << PHASE_BITS) | resting)) {
+    			stats.timeout(exchange);
+    			if (rate <= 0) {
+    				inFlight.decrementAndGet();
+    				done.incrementAndGet();
+    			}
+    		}
+    	}
+    }
+    
+    /**
+     * Build the request of an exchange.
+     * 
+     * @param i the client
+     * @param state the state of the client
+     * @param exchange the exchange
+     * 
+     * @return the request
+     */
+    protected DhcpV4Message buildMessage(int i, int state, int exchange)
+    {
+        DhcpV4Message msg = new DhcpV4Message(null, server);
+
+        msg.setOp((short)DhcpConstants.V4_OP_REQUEST);
+        msg.setTransactionId(((long)(state >>> PHASE_BITS) & 0xff) << CLIENT_BITS | i);
+        msg.setHtype((short)1);	// ethernet
+        msg.setHlen((byte)6);
+        msg.setChAddr(buildChAddr(i + 1));
+        msg.setGiAddr(relayAddrs[i % numRelays]);	// look like a relay to the DHCP server
+        
+        short msgType = 0;
+        boolean requestedIp = false;
+        boolean serverId = false;
+        switch (exchange) {
+        	case DISCOVER:
+        		msgType = DhcpConstants.V4MESSAGE_TYPE_DISCOVER;
+        		break;
+        	case REQUEST:
+        		// selecting
+        		msgType = DhcpConstants.V4MESSAGE_TYPE_REQUEST;
+        		requestedIp = true;
+        		serverId = true;
+        		break;
+        	case REBIND:
+        		// the server sees a relayed rebind as a renew,
+        		// whose reply is broadcast by a real relay
+        		msgType = DhcpConstants.V4MESSAGE_TYPE_REQUEST;
+        		msg.setCiAddr(toInetAddress(addrs[i]));
+        		msg.setFlags(0x8000);
+        		break;
+        	case RENEW:
+        		msgType = DhcpConstants.V4MESSAGE_TYPE_REQUEST;
+        		msg.setCiAddr(toInetAddress(addrs[i]));
+        		break;
+        	case INFORM:
+        		msgType = DhcpConstants.V4MESSAGE_TYPE_INFORM;
+        		msg.setCiAddr(toInetAddress(addrs[i]));
+        		break;
+        	case RELEASE:
+        		msgType = DhcpConstants.V4MESSAGE_TYPE_RELEASE;
+        		msg.setCiAddr(toInetAddress(addrs[i]));
+        		serverId = true;
+        		break;
+        	case DECLINE:
+        		msgType = DhcpConstants.V4MESSAGE_TYPE_DECLINE;
+        		requestedIp = true;
+        		serverId = true;
+        		break;
+        }
+        
+        DhcpV4MsgTypeOption msgTypeOption = new DhcpV4MsgTypeOption();
+        msgTypeOption.setUnsignedByte(msgType);
+        msg.putDhcpOption(msgTypeOption);
+        
+        if (requestedIp) {
+	        DhcpV4RequestedIpAddressOption reqIpOption = new DhcpV4RequestedIpAddressOption();
+	        reqIpOption.setIpAddress(toInetAddress(addrs[i]).getHostAddress());
+	        msg.putDhcpOption(reqIpOption);
+        }
+        if (serverId && (serverIds[i] != 0)) {
+        	DhcpV4ServerIdOption serverIdOption = new DhcpV4ServerIdOption();
+        	serverIdOption.setIpAddress(toInetAddress(serverIds[i]).getHostAddress());
+        	msg.putDhcpOption(serverIdOption);
+        }
+        
+        return msg;
     }
 
     private byte[] buildChAddr(long id) {
@@ -477,71 +831,23 @@ public class ClientSimulatorV4 extends SimpleChannelUpstreamHandler
         return chAddr;
     }
     
-    /**
-     * Builds the discover message.
-     * 
-     * @return the  dhcp message
-     */
-    private DhcpV4Message buildDiscoverMessage(byte[] chAddr)
+    static int toInt(InetAddress addr)
     {
-        DhcpV4Message msg = new DhcpV4Message(null, new InetSocketAddress(serverAddr, serverPort));
-
-        msg.setOp((short)DhcpConstants.V4_OP_REQUEST);
-        msg.setTransactionId(random.nextLong());
-        msg.setHtype((short)1);	// ethernet
-        msg.setHlen((byte)6);
-        msg.setChAddr(chAddr);
-        msg.setGiAddr(clientAddr);	// look like a relay to the DHCP server
-        
-        DhcpV4MsgTypeOption msgTypeOption = new DhcpV4MsgTypeOption();
-        msgTypeOption.setUnsignedByte((short)DhcpConstants.V4MESSAGE_TYPE_DISCOVER);
-        
-        msg.putDhcpOption(msgTypeOption);
-        
-        return msg;
-    }
-    
-    private DhcpV4Message buildRequestMessage(DhcpV4Message offer) {
-    	
-        DhcpV4Message msg = new DhcpV4Message(null, new InetSocketAddress(serverAddr, serverPort));
-
-        msg.setOp((short)DhcpConstants.V4_OP_REQUEST);
-        msg.setTransactionId(offer.getTransactionId());
-        msg.setHtype((short)1);	// ethernet
-        msg.setHlen((byte)6);
-        msg.setChAddr(offer.getChAddr());
-        msg.setGiAddr(clientAddr);	// look like a relay to the DHCP server
-        
-        DhcpV4MsgTypeOption msgTypeOption = new DhcpV4MsgTypeOption();
-        msgTypeOption.setUnsignedByte((short)DhcpConstants.V4MESSAGE_TYPE_REQUEST);
-        
-        msg.putDhcpOption(msgTypeOption);
-        
-        DhcpV4RequestedIpAddressOption reqIpOption = new DhcpV4RequestedIpAddressOption();
-        reqIpOption.setIpAddress(offer.getYiAddr().getHostAddress());
-        msg.putDhcpOption(reqIpOption);
-        
-        return msg;
+    	byte[] b = addr.getAddress();
+    	return ((b[0] & 0xff) << 24) | ((b[1] & 0xff) << 16) | ((b[2] & 0xff) << 8) | (b[3] & 0xff);
     }
     
-    private DhcpV4Message buildReleaseMessage(DhcpV4Message ack) {
-    	
-        DhcpV4Message msg = new DhcpV4Message(null, new InetSocketAddress(serverAddr, serverPort));
-
-        msg.setOp((short)DhcpConstants.V4_OP_REQUEST);
-        msg.setTransactionId(ack.getTransactionId());
-        msg.setHtype((short)1);	// ethernet
-        msg.setHlen((byte)6);
-        msg.setChAddr(ack.getChAddr());
-        msg.setGiAddr(clientAddr);	// look like a relay to the DHCP server
-        msg.setCiAddr(ack.getYiAddr());
-        
-        DhcpV4MsgTypeOption msgTypeOption = new DhcpV4MsgTypeOption();
-        msgTypeOption.setUnsignedByte((short)DhcpConstants.V4MESSAGE_TYPE_RELEASE);
-        
-        msg.putDhcpOption(msgTypeOption);
-        
-        return msg;
+    static InetAddress toInetAddress(int addr)
+    {
+    	byte[] b = new byte[] { (byte)(addr >>> 24), (byte)(addr >>> 16), 
+    							(byte)(addr >>> 8), (byte)addr };
+    	try {
+			return InetAddress.getByAddress(b);
+		}
+    	catch (UnknownHostException ex) {
+    		// not for a four byte address
+    		throw new IllegalArgumentException(ex);
+		}
     }
 
 	/*
@@ -557,33 +863,81 @@ public class ClientSimulatorV4 extends SimpleChannelUpstreamHandler
             DhcpV4Message dhcpMessage = (DhcpV4Message) message;
             if (log.isDebugEnabled())
             	log.debug("Received: " + dhcpMessage.toStringWithOptions());
-            else
-            	log.info("Received: " + dhcpMessage.toString());
             
-            if (dhcpMessage.getMessageType() == DhcpConstants.V4MESSAGE_TYPE_OFFER) {
-	            ClientMachine client = clientMap.get(new BigInteger(dhcpMessage.getChAddr()));
-	            if (client != null) {
-	            	offersReceived.getAndIncrement();
-	            	client.request(dhcpMessage);
-	            }
-	            else {
-	            	log.error("Received offer for client not found in map: mac=" + 
-	            			Util.toHexString(dhcpMessage.getChAddr()));
-	            }
+            int xid = (int) dhcpMessage.getTransactionId();
+            int i = xid & (MAX_CLIENTS - 1);
+            if (i >= numRequests) {
+            	stats.unexpected();
+            	return;
+            }
+            int state = states.get(i);
+            if (((state >>> PHASE_BITS) & 0xff) != (xid >>> CLIENT_BITS)) {
+            	// the reply of an exchange which timed out
+            	stats.unexpected();
+            	return;
+            }
+            int gen = state >>> PHASE_BITS;
+            int phase = state & PHASE_MASK;
+            short msgType = dhcpMessage.getMessageType();
+            long sentTime = sentTimes[i];
+            boolean ack = (msgType == DhcpConstants.V4MESSAGE_TYPE_ACK);
+            boolean nak = (msgType == DhcpConstants.V4MESSAGE_TYPE_NAK);
+            
+            if ((phase == DISCOVERING) && (msgType == DhcpConstants.V4MESSAGE_TYPE_OFFER)) {
+            	addrs[i] = toInt(dhcpMessage.getYiAddr());
+            	DhcpV4ServerIdOption serverIdOption = dhcpMessage.getDhcpV4ServerIdOption();
+            	serverIds[i] = (serverIdOption != null) ? 
+            			toInt(InetAddress.getByName(serverIdOption.getIpAddress())) : 0;
+            	sentTimes[i] = System.nanoTime();
+            	int newState = (gen << PHASE_BITS) | REQUESTING;
+            	if (states.compareAndSet(i, state, newState)) {
+            		stats.replied(DISCOVER, sentTime);
+            		send(buildMessage(i, newState, REQUEST), REQUEST);
+            	}
+            }
+            else if ((phase == REQUESTING) && (ack || nak)) {
+            	if (ack) {
+            		addrs[i] = toInt(dhcpMessage.getYiAddr());
+            	}
+            	if (states.compareAndSet(i, state, (gen << PHASE_BITS) | (ack ? BOUND : IDLE))) {
+            		if (ack) {
+            			stats.replied(REQUEST, sentTime);
+            		}
+            		else {
+            			stats.nak(REQUEST, sentTime);
+            		}
+            		if (rate <= 0) {
+            			if (ack) {
+            				// release, and let the next client start
+            				states.set(i, ((gen + 1) << PHASE_BITS) | IDLE);
+            				send(buildMessage(i, (gen + 1) << PHASE_BITS, RELEASE), RELEASE);
+            			}
+            			inFlight.decrementAndGet();
+            			done.incrementAndGet();
+            		}
+            	}
+            }
+            else if (((phase == RENEWING) || (phase == REBINDING)) && (ack || nak)) {
+            	if (states.compareAndSet(i, state, (gen << PHASE_BITS) | (ack ? BOUND : IDLE))) {
+            		int exchange = (phase == RENEWING) ? RENEW : REBIND;
+            		if (ack) {
+            			stats.replied(exchange, sentTime);
+            		}
+            		else {
+            			stats.nak(exchange, sentTime);
+            		}
+            	}
             }
-            else if (dhcpMessage.getMessageType() == DhcpConstants.V4MESSAGE_TYPE_ACK) {
-	            ClientMachine client = clientMap.get(new BigInteger(dhcpMessage.getChAddr()));
-	            if (client != null) {
-	            	acksReceived.getAndIncrement();
-	            	client.release(dhcpMessage);
-	            }
-	            else {
-	            	log.error("Received ack for client not found in map: mac=" + 
-	            			Util.toHexString(dhcpMessage.getChAddr()));
-	            }
+            else if ((phase == INFORMING) && ack) {
+            	if (states.compareAndSet(i, state, (gen << PHASE_BITS) | BOUND)) {
+            		stats.replied(INFORM, sentTime);
+            	}
             }
             else {
-            	log.warn("Received unhandled message type: " + dhcpMessage.getMessageType());
+            	if (log.isDebugEnabled())
+            		log.debug("Received unexpected message type: " + msgType +
+            				" for client in phase: " + phase);
+            	stats.unexpected();
             }
         }
         else {
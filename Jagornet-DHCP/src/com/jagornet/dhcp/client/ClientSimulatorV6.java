@@ -25,19 +25,21 @@
  */
 package com.jagornet.dhcp.client;
 
-import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.net.UnknownHostException;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.commons.cli.BasicParser;
 import org.apache.commons.cli.CommandLine;
@@ -58,24 +60,47 @@ import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
 import org.jboss.netty.channel.socket.DatagramChannel;
 import org.jboss.netty.channel.socket.DatagramChannelFactory;
 import org.jboss.netty.channel.socket.oio.OioDatagramChannelFactory;
-import org.jboss.netty.handler.execution.ExecutionHandler;
-import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
-import org.jboss.netty.handler.logging.LoggingHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jagornet.dhcp.message.DhcpV6Message;
+import com.jagornet.dhcp.message.DhcpV6RelayMessage;
+import com.jagornet.dhcp.option.base.BaseOpaqueData;
+import com.jagornet.dhcp.option.base.DhcpOption;
 import com.jagornet.dhcp.option.v6.DhcpV6ClientIdOption;
 import com.jagornet.dhcp.option.v6.DhcpV6ElapsedTimeOption;
+import com.jagornet.dhcp.option.v6.DhcpV6IaAddrOption;
 import com.jagornet.dhcp.option.v6.DhcpV6IaNaOption;
+import com.jagornet.dhcp.option.v6.DhcpV6IaPdOption;
+import com.jagornet.dhcp.option.v6.DhcpV6IaPrefixOption;
+import com.jagornet.dhcp.option.v6.DhcpV6InterfaceIdOption;
+import com.jagornet.dhcp.option.v6.DhcpV6RapidCommitOption;
+import com.jagornet.dhcp.option.v6.DhcpV6RelayOption;
+import com.jagornet.dhcp.option.v6.DhcpV6RemoteIdOption;
+import com.jagornet.dhcp.option.v6.DhcpV6ServerIdOption;
+import com.jagornet.dhcp.option.v6.DhcpV6StatusCodeOption;
 import com.jagornet.dhcp.server.netty.DhcpV6ChannelDecoder;
 import com.jagornet.dhcp.server.netty.DhcpV6ChannelEncoder;
 import com.jagornet.dhcp.util.DhcpConstants;
-import com.jagornet.dhcp.util.Util;
 
 /**
- * A test client that sends solict/request/release messages 
- * to a DHCPv6 server via multicast.
+ * A test client that sends DHCPv6 requests to a DHCPv6 server via 
+ * multicast, or via unicast through one or more levels of relays.
+ * 
+ * Without a rate, each client sends solicit/request/release once, as fast
+ * as the pool size allows.  With a rate, the clients are a load generator:
+ * requests are started at the target rate, whether or not the server keeps
+ * up, for the duration of the test.  A client without a lease sends a
+ * solicit, with rapid-commit for the given percentage of clients, and a
+ * client with a lease sends a renew, rebind, release, decline, confirm
+ * or information-request, chosen by the weights of the mix.  The clients
+ * request an IA_NA, an IA_PD, or both.
+ * 
+ * The clients are virtual: the state of a client is a few array elements,
+ * and the client id of a request holds the number of the client, so a
+ * reply is matched to its client without a lookup.  The requests are sent
+ * by one thread, and the replies are handled by the I/O thread of the
+ * channel, so millions of clients need only a few threads.
  * 
  * @author A. Gregory Rabil
  */
@@ -84,6 +109,55 @@ public class ClientSimulatorV6 extends SimpleChannelUpstreamHandler
 {
 	private static Logger log = LoggerFactory.getLogger(ClientSimulatorV6.class);
 
+	/** The exchanges of the statistics. */
+	static final int SOLICIT = 0;
+	static final int REQUEST = 1;
+	static final int RENEW = 2;
+	static final int REBIND = 3;
+	static final int RELEASE = 4;
+	static final int DECLINE = 5;
+	static final int CONFIRM = 6;
+	static final int INFO_REQUEST = 7;
+	static final String[] EXCHANGES = 
+		{ "Solicit", "Request", "Renew", "Rebind", "Release", "Decline", 
+		  "Confirm", "InfoReq" };
+	static final short[] MESSAGE_TYPES = 
+		{ DhcpConstants.V6MESSAGE_TYPE_SOLICIT, DhcpConstants.V6MESSAGE_TYPE_REQUEST,
+		  DhcpConstants.V6MESSAGE_TYPE_RENEW, DhcpConstants.V6MESSAGE_TYPE_REBIND,
+		  DhcpConstants.V6MESSAGE_TYPE_RELEASE, DhcpConstants.V6MESSAGE_TYPE_DECLINE,
+		  DhcpConstants.V6MESSAGE_TYPE_CONFIRM, DhcpConstants.V6MESSAGE_TYPE_INFO_REQUEST };
+	
+	/** The phases of a client, in the low bits of its state. */
+	static final int IDLE = 0;
+	static final int SOLICITING = 1;
+	static final int REQUESTING = 2;
+	static final int BOUND = 3;
+	static final int RENEWING = 4;
+	static final int REBINDING = 5;
+	static final int RELEASING = 6;
+	static final int DECLINING = 7;
+	static final int CONFIRMING = 8;
+	static final int INFORMING = 9;
+	static final int PHASE_BITS = 4;
+	static final int PHASE_MASK = (1 << PHASE_BITS) - 1;
+	
+	/** The exchange of each phase with an exchange in progress. */
+	static final int[] PHASE_EXCHANGES = 
+		{ -1, SOLICIT, REQUEST, -1, RENEW, REBIND, RELEASE, DECLINE, CONFIRM, INFO_REQUEST };
+	/** The phase of each exchange. */
+	static final int[] EXCHANGE_PHASES = 
+		{ SOLICITING, REQUESTING, RENEWING, REBINDING, RELEASING, DECLINING, 
+		  CONFIRMING, INFORMING };
+	
+	/** The transaction id is the low bits of the generation of the client. */
+	static final int XID_MASK = 0xffffff;
+	
+	/** The client id is a DUID-LL, with the number of the client in the link address. */
+	static final int DUID_LENGTH = 10;
+	
+	/** The number of clients tried for the next request, when clients are busy. */
+	static final int MAX_TRIES = 64;
+	
 	protected Random random = new Random();
     protected Options options = new Options();
     protected CommandLineParser parser = new BasicParser();
@@ -95,29 +169,74 @@ public class ClientSimulatorV6 extends SimpleChannelUpstreamHandler
     protected InetAddress serverAddr;
     protected int serverPort = DhcpConstants.V6_SERVER_PORT;
     protected int clientPort = DhcpConstants.V6_CLIENT_PORT;
-    protected boolean rapidCommit = false;
+    /** The percentage of solicits with rapid-commit. */
+    protected int rapidCommit = 0;
     protected int numRequests = 100;
-    protected AtomicInteger solicitsSent = new AtomicInteger();
-    protected AtomicInteger advertisementsReceived = new AtomicInteger();
-    protected AtomicInteger requestsSent = new AtomicInteger();
-    protected AtomicInteger requestRepliesReceived = new AtomicInteger();
-    protected AtomicInteger releasesSent = new AtomicInteger();
-    protected AtomicInteger releaseRepliesReceived = new AtomicInteger();
-    protected int successCnt = 0;
-    protected long startTime = 0;    
-    protected long endTime = 0;
     protected long timeout = 0;
     protected int poolSize = 0;
-    protected Object syncDone = new Object();
+    protected double rate = 0;
+    protected int duration = 60;
+    protected int reportInterval = 10;
+    protected int replyTimeout = 2000;
+    protected boolean requestNa = true;
+    protected boolean requestPd = false;
+    protected int hops = 0;
+    protected int numRelays = 1;
+    protected InetAddress linkAddr = null;
+    protected boolean interfaceId = false;
+    protected long remoteIdEnterprise = -1;
+    /** The weights of renew, rebind, release, decline, confirm and info-request. */
+    protected int[] mix = { 70, 10, 9, 1, 5, 5 };
 
     protected InetSocketAddress server = null;
     protected InetSocketAddress client = null;
     
     protected DatagramChannel channel = null;	
-	protected ExecutorService executor = Executors.newCachedThreadPool();
-	
-	protected Map<String, ClientMachine> clientMap =
-			Collections.synchronizedMap(new HashMap<String, ClientMachine>());
+
+    protected LoadStats stats = new LoadStats(EXCHANGES);
+    
+    /** The state of each client: the generation and the phase. */
+    protected AtomicIntegerArray states;
+    /** The leased address of each client, zero if none. */
+    protected long[] naHigh;
+    protected long[] naLow;
+    /** The leased prefix of each client, zero length if none. */
+    protected long[] pdHigh;
+    protected long[] pdLow;
+    protected byte[] pdLength;
+    /** The index in serverIds of the server of the lease of each client. */
+    protected int[] serverIndexes;
+    /** The time the request of each client was sent. */
+    protected long[] sentTimes;
+    /** The DUIDs of the servers seen in replies. */
+    protected List<byte[]> serverIds = new CopyOnWriteArrayList<byte[]>();
+    /** The link addresses of the relays, used by the clients in turn. */
+    protected InetAddress[] relayAddrs;
+    protected InetAddress UNSPECIFIED_ADDR;
+    
+    /** The clients with an exchange in progress, when run without a rate. */
+    protected AtomicInteger inFlight = new AtomicInteger();
+    /** The clients done, when run without a rate. */
+    protected AtomicInteger done = new AtomicInteger();
+    
+    /** 
+     * The exchanges started, in order, to time out those without a reply.  
+     * Used only by the sending thread.
+     */
+    protected int[] pendingClients = new int[1024];
+    protected int[] pendingStates = new int[1024];
+    protected long[] pendingTimes = new long[1024];
+    protected int pendingHead = 0;
+    protected int pendingCount = 0;
+    
+    protected ChannelFutureListener writeListener = new ChannelFutureListener() {
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			if (!future.isSuccess()) {
+				log.warn("Failed to send message: " + future.getCause());
+			}
+		}
+	};
 
     /**
      * Instantiates a new test client.
@@ -129,6 +248,7 @@ public class ClientSimulatorV6 extends SimpleChannelUpstreamHandler
     {
     	DEFAULT_NETIF = NetworkInterface.getNetworkInterfaces().nextElement();
     	DEFAULT_ADDR = DhcpConstants.ALL_DHCP_RELAY_AGENTS_AND_SERVERS;
+    	UNSPECIFIED_ADDR = InetAddress.getByName("::");
     	
         setupOptions();
 
@@ -153,7 +273,7 @@ public class ClientSimulatorV6 extends SimpleChannelUpstreamHandler
 	private void setupOptions()
     {
 		Option numOption = new Option("n", "number", true,
-										"Number of client requests to send" +
+										"Number of clients" +
 										" [" + numRequests + "]");
 		options.addOption(numOption);
 		
@@ -177,18 +297,72 @@ public class ClientSimulatorV6 extends SimpleChannelUpstreamHandler
         							  " [" + serverPort + "]");
         options.addOption(spOption);
         
-        Option rOption = new Option("r", "rapidcommit", false,
-        							"Send rapid-commit Solicit requests");
+        Option rOption = new Option("r", "rapidcommit", true,
+        							"Send rapid-commit Solicit requests, for the percentage" +
+        							" of clients [100]");
+        rOption.setOptionalArg(true);
         options.addOption(rOption);
         
         Option toOption = new Option("to", "timeout", true,
-        							"Timeout");
+        							"Seconds to wait for completion without a rate, 0 for no limit");
         options.addOption(toOption);
         
         Option psOption = new Option("ps", "poolsize", true,
         							"Size of the pool; wait for release after this many requests");
         options.addOption(psOption);
         
+        Option rateOption = new Option("rate", "rate", true,
+        							"Requests per second, for a load test of the duration");
+        options.addOption(rateOption);
+        
+        Option dOption = new Option("d", "duration", true,
+        							"Seconds of the load test" +
+        							" [" + duration + "]");
+        options.addOption(dOption);
+        
+        Option riOption = new Option("ri", "reportinterval", true,
+        							"Seconds between progress reports" +
+        							" [" + reportInterval + "]");
+        options.addOption(riOption);
+        
+        Option rtOption = new Option("rt", "replytimeout", true,
+        							"Milliseconds to wait for the reply of an exchange" +
+        							" [" + replyTimeout + "]");
+        options.addOption(rtOption);
+        
+        Option iaOption = new Option("ia", "iatype", true,
+        							"Type of IA requested: na, pd or napd [na]");
+        options.addOption(iaOption);
+        
+        Option hopsOption = new Option("hops", "hops", true,
+        							"Number of levels of relays, 0 to send as the clients" +
+        							" [" + hops + "]");
+        options.addOption(hopsOption);
+        
+        Option laOption = new Option("la", "linkaddress", true,
+        							"Link address of the first relay, required with hops");
+        options.addOption(laOption);
+        
+        Option relaysOption = new Option("relays", "relays", true,
+        							"Number of relays, with consecutive link addresses from the" +
+        							" link address; the server needs a link for each" +
+        							" [" + numRelays + "]");
+        options.addOption(relaysOption);
+        
+        Option iidOption = new Option("iid", "interfaceid", false,
+        							"Add an interface-id option to the relayed requests");
+        options.addOption(iidOption);
+        
+        Option ridOption = new Option("rid", "remoteid", true,
+        							"Add a remote-id option with the enterprise number" +
+        							" to the relayed requests");
+        options.addOption(ridOption);
+        
+        Option mixOption = new Option("mix", "mix", true,
+        							"Weights of renew,rebind,release,decline,confirm,inforequest" +
+        							" by clients with a lease [70,10,9,1,5,5]");
+        options.addOption(mixOption);
+        
         Option helpOption = new Option("?", "help", false, "Show this help page.");
         
         options.addOption(helpOption);
@@ -223,6 +397,19 @@ public class ClientSimulatorV6 extends SimpleChannelUpstreamHandler
     	return addr;
 	}
 	
+	protected int[] parseMixOption(String str, int[] defmix) {
+		String[] weights = str.split(",");
+		if (weights.length != defmix.length) {
+    		System.err.println("Invalid mix '" + str + "' using default");
+    		return defmix;
+		}
+		int[] mix = new int[weights.length];
+		for (int i=0; i<weights.length; i++) {
+			mix[i] = parseIntegerOption("mix weight", weights[i].trim(), defmix[i]);
+		}
+		return mix;
+	}
+	
     /**
      * Parses the options.
      * 
@@ -240,6 +427,10 @@ public class ClientSimulatorV6 extends SimpleChannelUpstreamHandler
             if (cmd.hasOption("n")) {
             	numRequests = 
             			parseIntegerOption("num requests", cmd.getOptionValue("n"), 100);
+            	if (numRequests < 1) {
+            		System.err.println("Number of clients must be at least 1");
+            		return false;
+            	}
             }
             mcastNetIf = DEFAULT_NETIF;
             if (cmd.hasOption("mi")) {
@@ -267,7 +458,8 @@ public class ClientSimulatorV6 extends SimpleChannelUpstreamHandler
             								DhcpConstants.V6_SERVER_PORT);
             }
             if (cmd.hasOption("r")) {
-            	rapidCommit = true;
+            	String val = cmd.getOptionValue("r");
+            	rapidCommit = (val != null) ? parseIntegerOption("rapid commit", val, 100) : 100;
             }
             if (cmd.hasOption("to")) {
             	timeout = 
@@ -277,6 +469,59 @@ public class ClientSimulatorV6 extends SimpleChannelUpstreamHandler
             	poolSize = 
             			parseIntegerOption("pool size", cmd.getOptionValue("ps"), 0);
             }
+            if (cmd.hasOption("rate")) {
+            	rate = 
+            			parseIntegerOption("rate", cmd.getOptionValue("rate"), 0);
+            }
+            if (cmd.hasOption("d")) {
+            	duration = 
+            			parseIntegerOption("duration", cmd.getOptionValue("d"), duration);
+            }
+            if (cmd.hasOption("ri")) {
+            	reportInterval = 
+            			parseIntegerOption("report interval", cmd.getOptionValue("ri"), 
+            								reportInterval);
+            }
+            if (cmd.hasOption("rt")) {
+            	replyTimeout = 
+            			parseIntegerOption("reply timeout", cmd.getOptionValue("rt"), 
+            								replyTimeout);
+            }
+            if (cmd.hasOption("ia")) {
+            	String ia = cmd.getOptionValue("ia").toLowerCase();
+            	requestNa = ia.contains("na");
+            	requestPd = ia.contains("pd");
+            	if (!requestNa && !requestPd) {
+            		System.err.println("Invalid IA type '" + ia + "'");
+            		return false;
+            	}
+            }
+            if (cmd.hasOption("hops")) {
+            	hops = 
+            			Math.max(0, parseIntegerOption("hops", cmd.getOptionValue("hops"), 0));
+            }
+            if (cmd.hasOption("la")) {
+            	linkAddr = 
+            			parseIpAddressOption("link", cmd.getOptionValue("la"), null);
+            }
+            if ((hops > 0) && (linkAddr == null)) {
+        		System.err.println("A link address is required with hops");
+        		return false;
+            }
+            if (cmd.hasOption("relays")) {
+            	numRelays = 
+            			Math.max(1, parseIntegerOption("relays", cmd.getOptionValue("relays"), 1));
+            }
+            if (cmd.hasOption("iid")) {
+            	interfaceId = true;
+            }
+            if (cmd.hasOption("rid")) {
+            	remoteIdEnterprise = 
+            			parseIntegerOption("remote id enterprise", cmd.getOptionValue("rid"), 0);
+            }
+            if (cmd.hasOption("mix")) {
+            	mix = parseMixOption(cmd.getOptionValue("mix"), mix);
+            }
         }
         catch (ParseException pe) {
             System.err.println("Command line option parsing failure: " + pe);
@@ -286,9 +531,9 @@ public class ClientSimulatorV6 extends SimpleChannelUpstreamHandler
     }
     
     /**
-     * Start sending DHCPv6 SOLICITs.
+     * Start sending DHCPv6 requests.
      */
-    public void start()
+    public void start() throws Exception
     {
     	DatagramChannelFactory factory = 
     		new OioDatagramChannelFactory(Executors.newCachedThreadPool());
@@ -296,239 +541,604 @@ public class ClientSimulatorV6 extends SimpleChannelUpstreamHandler
     	server = new InetSocketAddress(serverAddr, serverPort);
     	client = new InetSocketAddress(clientPort);
     	
+    	states = new AtomicIntegerArray(numRequests);
+    	naHigh = new long[numRequests];
+    	naLow = new long[numRequests];
+    	if (requestPd) {
+	    	pdHigh = new long[numRequests];
+	    	pdLow = new long[numRequests];
+	    	pdLength = new byte[numRequests];
+    	}
+    	serverIndexes = new int[numRequests];
+    	sentTimes = new long[numRequests];
+    	if (hops > 0) {
+	    	relayAddrs = new InetAddress[numRelays];
+	    	byte[] base = linkAddr.getAddress();
+	    	for (int i=0; i<numRelays; i++) {
+	    		relayAddrs[i] = InetAddress.getByAddress(addToAddress(base, i));
+	    	}
+    	}
+    	
+    	// replies are handled on the I/O thread, which only sends the next request
 		ChannelPipeline pipeline = Channels.pipeline();
-        pipeline.addLast("logger", new LoggingHandler());
         pipeline.addLast("encoder", new DhcpV6ChannelEncoder());
         pipeline.addLast("decoder", new DhcpV6ChannelDecoder(client, false));
-        pipeline.addLast("executor", new ExecutionHandler(
-        		new OrderedMemoryAwareThreadPoolExecutor(16, 1048576, 1048576)));
         pipeline.addLast("handler", this);
     	
         channel = factory.newChannel(pipeline);
 		channel.getConfig().setNetworkInterface(mcastNetIf);
     	channel.bind(client);
-
-    	for (int i=1; i<=numRequests; i++) {
-    		executor.execute(new ClientMachine(i));
+    	
+    	boolean success = true;
+    	if (rate > 0) {
+    		runLoadTest();
     	}
+    	else {
+    		success = runOnce();
+    	}
+    	
+    	System.out.println(stats.report(rate));
 
-    	synchronized (syncDone) {
-    		long ms = timeout * 1000;
-        	try {
-        		log.info("Waiting total of " + timeout + " milliseconds for completion");
-        		syncDone.wait(ms);
-        	}
-        	catch (InterruptedException ex) {
-        		log.error("Interrupted", ex);
-        	}
-		}
-
-		log.info("Complete: solicitsSent=" + solicitsSent +
-				" advertisementsReceived=" + advertisementsReceived +
-				" requestsSent=" + requestsSent +
-				" requestRepliesReceived=" + requestRepliesReceived +
-				" releasesSent=" + releasesSent +
-				" releaseRepliesReceived=" + releaseRepliesReceived +
-				" elapsedTime=" + (endTime - startTime) + "ms");
-
-    	log.info("Shutting down executor...");
-    	executor.shutdownNow();
     	log.info("Closing channel...");
-    	channel.close();
+    	channel.close().awaitUninterruptibly();
+    	factory.releaseExternalResources();
     	log.info("Done.");
-    	if ((solicitsSent.get() == advertisementsReceived.get()) &&
-    			(requestsSent.get() == requestRepliesReceived.get()) &&
-    			(releasesSent.get() == releaseRepliesReceived.get())) {
-    		
-    		System.exit(0);
+    	System.exit(success ? 0 : 1);
+    }
+    
+    /**
+     * Send solicit/request/release for each client once, as fast as the pool
+     * size allows, and wait for the clients to complete.
+     * 
+     * @return true, if every client released its lease
+     */
+    protected boolean runOnce()
+    {
+    	stats.start();
+    	long now = System.nanoTime();
+    	long nextReport = now + TimeUnit.SECONDS.toNanos(reportInterval);
+    	for (int i=0; i<numRequests; i++) {
+    		while ((poolSize > 0) && (inFlight.get() >= poolSize)) {
+    			LockSupport.parkNanos(100000);
+    			now = System.nanoTime();
+    			expireExchanges(now);
+    		}
+    		inFlight.incrementAndGet();
+    		startExchange(i, states.get(i), System.nanoTime());
+    		if ((i & 0xff) == 0) {
+    			now = System.nanoTime();
+    			expireExchanges(now);
+    			if (now >= nextReport) {
+    				System.out.println(stats.progress());
+    				nextReport += TimeUnit.SECONDS.toNanos(reportInterval);
+    			}
+    		}
+    	}
+		log.info("Waiting total of " + timeout + " seconds for completion");
+    	long end = (timeout > 0) ? 
+    			System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout) : Long.MAX_VALUE;
+    	while ((done.get() < numRequests) && ((now = System.nanoTime()) < end)) {
+    		expireExchanges(now);
+			if (now >= nextReport) {
+				System.out.println(stats.progress());
+				nextReport += TimeUnit.SECONDS.toNanos(reportInterval);
+			}
+    		LockSupport.parkNanos(1000000);
+    	}
+    	return stats.getReplies(RELEASE) == numRequests;
+    }
+    
+    /**
+     * Start exchanges at the target rate for the duration, and wait for
+     * the replies of the last exchanges.  The exchanges are started on time
+     * whether or not the server keeps up, i.e. an open loop, and when all of
+     * the clients tried have an exchange in progress, the exchange is skipped.
+     */
+    protected void runLoadTest()
+    {
+    	System.out.println("Starting load test: clients=" + numRequests + 
+    			" hops=" + hops + " relays=" + ((hops > 0) ? numRelays : 0) +
+    			" rate=" + rate + "/s duration=" + duration + "s");
+    	stats.start();
+    	long start = System.nanoTime();
+    	long end = start + TimeUnit.SECONDS.toNanos(duration);
+    	long nextReport = start + TimeUnit.SECONDS.toNanos(reportInterval);
+    	long started = 0;
+    	int cursor = 0;
+    	long now;
+    	while ((now = System.nanoTime()) < end) {
+    		long due = (long) (((now - start) / 1e9) * rate);
+    		while (started < due) {
+    			started++;
+    			boolean sent = false;
+    			if (channel.isWritable()) {
+	    			for (int tries=0; tries<MAX_TRIES; tries++) {
+	    				int i = cursor++;
+	    				if (cursor == numRequests) {
+	    					cursor = 0;
+	    				}
+	    				int state = states.get(i);
+	    				int phase = state & PHASE_MASK;
+	    				if ((phase == IDLE) || (phase == BOUND)) {
+	    					startExchange(i, state, now);
+	    					sent = true;
+	    					break;
+	    				}
+	    			}
+    			}
+    			if (!sent) {
+    				stats.skipped();
+    			}
+    		}
+    		expireExchanges(now);
+			if (now >= nextReport) {
+				System.out.println(stats.progress());
+				nextReport += TimeUnit.SECONDS.toNanos(reportInterval);
+			}
+    		LockSupport.parkNanos(100000);
+    	}
+    	long drain = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(replyTimeout);
+    	while ((pendingCount > 0) && ((now = System.nanoTime()) < drain)) {
+    		expireExchanges(now);
+    		LockSupport.parkNanos(1000000);
+    	}
+    	expireExchanges(Long.MAX_VALUE);
+    }
+    
+    /**
+     * Start the next exchange of a client, which has no exchange in progress.
+     * Called only by the sending thread.
+     * 
+     * @param i the client
+     * @param state the state of the client
+     * @param now the current System.nanoTime()
+     */
+    protected void startExchange(int i, int state, long now)
+    {
+    	int gen = (state >>> PHASE_BITS) + 1;
+    	int exchange;
+    	if ((state & PHASE_MASK) == IDLE) {
+    		exchange = SOLICIT;
     	}
     	else {
-    		System.exit(1);
+    		exchange = chooseExchange();
+    		if (((exchange == DECLINE) || (exchange == CONFIRM)) && 
+    				(naHigh[i] == 0) && (naLow[i] == 0)) {
+    			// decline and confirm are only for addresses
+    			exchange = RENEW;
+    		}
     	}
+    	int newState = (gen << PHASE_BITS) | EXCHANGE_PHASES[exchange];
+    	sentTimes[i] = now;
+    	states.set(i, newState);
+    	addPending(i, newState, now);
+    	send(i, buildMessage(i, newState, exchange, null), exchange);
     }
-
+    
     /**
-     * The Class ClientMachine.
+     * Choose the exchange of a client with a lease, by the weights of the mix.
      */
-    class ClientMachine implements Runnable, ChannelFutureListener
+    protected int chooseExchange()
     {
-    	DhcpV6Message msg;
-    	int id;
-    	String duid;
-    	boolean released;
-    	
-    	/**
-	     * Instantiates a new client machine.
-	     *
-	     * @param msg the msg
-	     * @param server the server
-	     */
-	    public ClientMachine(int id) {
-    		this.id = id;
-    		this.duid = buildDuid(id);
-    		this.released = false;
+    	int total = 0;
+    	for (int weight : mix) {
+    		total += weight;
     	}
-		
-		/* (non-Javadoc)
-		 * @see java.lang.Runnable#run()
-		 */
-		@Override
-		public void run() {
-			if (poolSize > 0) {
-				synchronized (clientMap) {
-					if (poolSize <= clientMap.size()) {
-						try {
-							log.info("Waiting for release...");
-							clientMap.wait();
-						} 
-						catch (InterruptedException ex) {
-							log.error("Interrupted", ex);
-						}
-					}
-					clientMap.put(duid, this);
-				}
-			}
-			else {
-				clientMap.put(duid, this);
-			}
-			solicit();
-		}
-		
-		public void solicit() {
-			msg = buildSolicitMessage(duid); 
-			ChannelFuture future = channel.write(msg, server);
-			future.addListener(this);
-		}
-		
-		public void request(DhcpV6Message advertiseMsg) {
-        	msg = buildRequestMessage(advertiseMsg);
-			ChannelFuture future = channel.write(msg, server);
-			future.addListener(this);
-		}
-		
-		public void release(DhcpV6Message confirmMsg) {
-        	msg = buildReleaseMessage(confirmMsg);
-			ChannelFuture future = channel.write(msg, server);
-			future.addListener(this);
-		}
-		
-		/* (non-Javadoc)
-		 * @see org.jboss.netty.channel.ChannelFutureListener#operationComplete(org.jboss.netty.channel.ChannelFuture)
-		 */
-		@Override
-		public void operationComplete(ChannelFuture future) throws Exception
-		{
-			if (future.isSuccess()) {
-				if (startTime == 0) {
-					startTime = System.currentTimeMillis();
-					log.info("Starting at: " + startTime);
-				}
-				if (msg.getMessageType() == DhcpConstants.V6MESSAGE_TYPE_SOLICIT) {
-					solicitsSent.getAndIncrement();
-					log.info("Succesfully sent solicit message duid=" + duid +
-							" cnt=" + solicitsSent);
-				}
-				else if (msg.getMessageType() == DhcpConstants.V6MESSAGE_TYPE_REQUEST) {
-					requestsSent.getAndIncrement();
-					log.info("Succesfully sent request message duid=" + duid +
-							" cnt=" + requestsSent);
-				}
-				else if (msg.getMessageType() == DhcpConstants.V6MESSAGE_TYPE_RELEASE) {
-					released = true;
-					releasesSent.getAndIncrement();
-					log.info("Succesfully sent release message duid=" + duid +
-							" cnt=" + releasesSent);
-				}
-			}
-			else {
-				log.warn("Failed to send message id=" + msg.getTransactionId());
-			}
-		}
+    	if (total <= 0) {
+    		return RENEW;
+    	}
+    	int r = random.nextInt(total);
+    	for (int i=0; i<mix.length; i++) {
+    		r -= mix[i];
+    		if (r < 0) {
+    			return RENEW + i;
+    		}
+    	}
+    	return RENEW;
     }
-
-    private String buildDuid(long id) {
-        byte[] bid = BigInteger.valueOf(id).toByteArray();
-        byte[] chAddr = new byte[6];
-        chAddr[0] = (byte)0xde;
-        chAddr[1] = (byte)0xb1;
-        if (bid.length == 4) {
-            chAddr[2] = bid[0];
-            chAddr[3] = bid[1];
-            chAddr[4] = bid[2];
-            chAddr[5] = bid[3];
-        }
-        else if (bid.length == 3) {
-	        chAddr[2] = 0;
-	        chAddr[3] = bid[0];
-	        chAddr[4] = bid[1];
-	        chAddr[5] = bid[2];
-        }
-        else if (bid.length == 2) {
-	        chAddr[2] = 0;
-	        chAddr[3] = 0;
-	        chAddr[4] = bid[0];
-	        chAddr[5] = bid[1];
-        }
-        else if (bid.length == 1) {
-	        chAddr[2] = 0;
-	        chAddr[3] = 0;
-	        chAddr[4] = 0;
-	        chAddr[5] = bid[0];
-        }
-        return "clientid-" + Util.toHexString(chAddr);
+    
+    protected void send(int i, DhcpV6Message msg, int exchange)
+    {
+    	stats.sent(exchange);
+		ChannelFuture future = channel.write(relay(i, msg), server);
+		future.addListener(writeListener);
+    }
+    
+    /**
+     * Add an exchange to the end of the pending exchanges.
+     */
+    protected void addPending(int i, int state, long now)
+    {
+    	if (pendingCount == pendingClients.length) {
+    		int size = pendingClients.length * 2;
+    		int[] clients = new int[size];
+    		int[] states = new int[size];
+    		long[] times = new long[size];
+    		for (int j=0; j<pendingCount; j++) {
+    			int k = (pendingHead + j) % pendingClients.length;
+    			clients[j] = pendingClients[k];
+    			states[j] = pendingStates[k];
+    			times[j] = pendingTimes[k];
+    		}
+    		pendingClients = clients;
+    		pendingStates = states;
+    		pendingTimes = times;
+    		pendingHead = 0;
+    	}
+    	int tail = (pendingHead + pendingCount) % pendingClients.length;
+    	pendingClients[tail] = i;
+    	pendingStates[tail] = state;
+    	pendingTimes[tail] = now;
+    	pendingCount++;
     }
     
     /**
-     * Builds the solict message.
+     * Time out the exchanges started more than the reply timeout ago, which
+     * are still in progress.  A client which was getting a lease, or giving
+     * it up, is idle again, and a client with a lease keeps it.
      * 
-     * @return the  dhcp message
+     * @param now the current System.nanoTime()
      */
-    private DhcpV6Message buildSolicitMessage(String duid)
+    protected void expireExchanges(long now)
     {
-        DhcpV6Message msg = new DhcpV6Message(null, new InetSocketAddress(serverAddr, serverPort));
+    	long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(replyTimeout);
+    	while ((pendingCount > 0) && (now - pendingTimes[pendingHead] >= timeoutNanos)) {
+    		int i = pendingClients[pendingHead];
+    		int gen = pendingStates[pendingHead] >>> PHASE_BITS;
+    		pendingHead = (pendingHead + 1) % pendingClients.length;
+    		pendingCount--;
+    		int state = states.get(i);
+    		if ((state >>> PHASE_BITS) != gen) {
+    			continue;
+    		}
+    		int phase = state & PHASE_MASK;
+    		if ((phase == IDLE) || (phase == BOUND)) {
+    			// completed
+    			continue;
+    		}
+    		int resting = ((phase == SOLICITING) || (phase == REQUESTING) || 
+    				(phase == RELEASING) || (phase == DECLINING)) ? IDLE : BOUND;
+    		if (states.compareAndSet(i, state, (gen << PHASE_BITS) | resting)) {
+    			stats.timeout(PHASE_EXCHANGES[phase]);
+    			if (rate <= 0) {
+    				inFlight.decrementAndGet();
+    				done.incrementAndGet();
+    			}
+    		}
+    	}
+    }
+    
+    /**
+     * Build the request of an exchange.
+     * 
+     * @param i the client
+     * @param state the state of the client
+     * @param exchange the exchange
+     * @param advertise the advertise for a request, null otherwise
+     * 
+     * @return the request
+     */
+    protected DhcpV6Message buildMessage(int i, int state, int exchange, 
+    		DhcpV6Message advertise)
+    {
+        DhcpV6Message msg = new DhcpV6Message(null, server);
 
-        msg.setTransactionId(random.nextInt());
+        msg.setMessageType(MESSAGE_TYPES[exchange]);
+        msg.setTransactionId((state >>> PHASE_BITS) & XID_MASK);
         DhcpV6ClientIdOption dhcpClientId = new DhcpV6ClientIdOption();
-        dhcpClientId.getOpaqueData().setAscii(duid);
-        
+        dhcpClientId.getOpaqueData().setHex(buildDuid(i));
         msg.putDhcpOption(dhcpClientId);
         
         DhcpV6ElapsedTimeOption dhcpElapsedTime = new DhcpV6ElapsedTimeOption();
         dhcpElapsedTime.setUnsignedShort(1);
         msg.putDhcpOption(dhcpElapsedTime);
         
-    	msg.setMessageType(DhcpConstants.V6MESSAGE_TYPE_SOLICIT);
-        DhcpV6IaNaOption dhcpIaNa = new DhcpV6IaNaOption();
-        dhcpIaNa.setIaId(1);
-        msg.putDhcpOption(dhcpIaNa);
-
+        switch (exchange) {
+        	case SOLICIT:
+        		if (requestNa) {
+        	        DhcpV6IaNaOption dhcpIaNa = new DhcpV6IaNaOption();
+        	        dhcpIaNa.setIaId(1);
+        	        msg.addIaNaOption(dhcpIaNa);
+        		}
+        		if (requestPd) {
+        	        DhcpV6IaPdOption dhcpIaPd = new DhcpV6IaPdOption();
+        	        dhcpIaPd.setIaId(1);
+        	        msg.addIaPdOption(dhcpIaPd);
+        		}
+        		if ((rapidCommit > 0) && 
+        				((rapidCommit >= 100) || (random.nextInt(100) < rapidCommit))) {
+        			msg.putDhcpOption(new DhcpV6RapidCommitOption());
+        		}
+        		break;
+        	case REQUEST:
+                msg.putDhcpOption(advertise.getDhcpServerIdOption());
+                msg.setIaNaOptions(advertise.getIaNaOptions());
+                msg.setIaPdOptions(advertise.getIaPdOptions());
+        		break;
+        	case RENEW:
+        	case RELEASE:
+        		// the leases, with the server id
+        		putServerId(msg, i);
+        		putIaNa(msg, i);
+        		putIaPd(msg, i);
+        		break;
+        	case REBIND:
+        		putIaNa(msg, i);
+        		putIaPd(msg, i);
+        		break;
+        	case DECLINE:
+        		// the address, with the server id
+        		putServerId(msg, i);
+        		putIaNa(msg, i);
+        		break;
+        	case CONFIRM:
+        		putIaNa(msg, i);
+        		break;
+        	case INFO_REQUEST:
+        		break;
+        }
         return msg;
     }
     
-    private DhcpV6Message buildRequestMessage(DhcpV6Message advertisement) {
-    	
-        DhcpV6Message msg = new DhcpV6Message(null, new InetSocketAddress(serverAddr, serverPort));
-
-        msg.setTransactionId(advertisement.getTransactionId());
-        msg.putDhcpOption(advertisement.getDhcpClientIdOption());
-        msg.putDhcpOption(advertisement.getDhcpServerIdOption());
-        msg.setMessageType(DhcpConstants.V6MESSAGE_TYPE_REQUEST);
-        msg.putDhcpOption(advertisement.getIaNaOptions().get(0));
-        
-        return msg;
+    protected void putServerId(DhcpV6Message msg, int i)
+    {
+    	DhcpV6ServerIdOption dhcpServerId = new DhcpV6ServerIdOption();
+    	dhcpServerId.getOpaqueData().setHex(serverIds.get(serverIndexes[i]));
+    	msg.putDhcpOption(dhcpServerId);
     }
     
-    private DhcpV6Message buildReleaseMessage(DhcpV6Message reply) {
-    	
-        DhcpV6Message msg = new DhcpV6Message(null, new InetSocketAddress(serverAddr, serverPort));
+    protected void putIaNa(DhcpV6Message msg, int i)
+    {
+    	if ((naHigh[i] != 0) || (naLow[i] != 0)) {
+    		DhcpV6IaAddrOption dhcpIaAddr = new DhcpV6IaAddrOption();
+    		dhcpIaAddr.setIpAddress(toInetAddress(naHigh[i], naLow[i]).getHostAddress());
+	        DhcpV6IaNaOption dhcpIaNa = new DhcpV6IaNaOption();
+	        dhcpIaNa.setIaId(1);
+	        List<DhcpV6IaAddrOption> iaAddrs = new ArrayList<DhcpV6IaAddrOption>();
+	        iaAddrs.add(dhcpIaAddr);
+	        dhcpIaNa.setIaAddrOptions(iaAddrs);
+	        msg.addIaNaOption(dhcpIaNa);
+    	}
+    }
+    
+    protected void putIaPd(DhcpV6Message msg, int i)
+    {
+    	if ((pdLength != null) && (pdLength[i] != 0)) {
+    		DhcpV6IaPrefixOption dhcpIaPrefix = new DhcpV6IaPrefixOption();
+    		dhcpIaPrefix.setIpAddress(toInetAddress(pdHigh[i], pdLow[i]).getHostAddress());
+    		dhcpIaPrefix.setPrefixLength((short)(pdLength[i] & 0xff));
+	        DhcpV6IaPdOption dhcpIaPd = new DhcpV6IaPdOption();
+	        dhcpIaPd.setIaId(1);
+	        List<DhcpV6IaPrefixOption> iaPrefixes = new ArrayList<DhcpV6IaPrefixOption>();
+	        iaPrefixes.add(dhcpIaPrefix);
+	        dhcpIaPd.setIaPrefixOptions(iaPrefixes);
+	        msg.addIaPdOption(dhcpIaPd);
+    	}
+    }
+    
+    /**
+     * Wrap a request in relay-forward messages, one for each hop.  The first
+     * relay is on the link of the client, and adds the interface-id and 
+     * remote-id options.  The other relays forward the message of the relay 
+     * before them, and have no link address of their own.
+     * 
+     * @param i the client
+     * @param msg the request
+     * 
+     * @return the message to send
+     */
+    protected DhcpV6Message relay(int i, DhcpV6Message msg)
+    {
+    	InetAddress peerAddr = null;
+    	for (int hop=0; hop<hops; hop++) {
+    		DhcpV6RelayMessage relayMsg = new DhcpV6RelayMessage(null, server);
+    		relayMsg.setMessageType(DhcpConstants.V6MESSAGE_TYPE_RELAY_FORW);
+    		relayMsg.setHopCount((short)hop);
+    		if (hop == 0) {
+    			relayMsg.setLinkAddress(relayAddrs[i % numRelays]);
+    			relayMsg.setPeerAddress(buildLinkLocalAddress(i));
+    			if (interfaceId) {
+    				DhcpV6InterfaceIdOption dhcpInterfaceId = new DhcpV6InterfaceIdOption();
+    				dhcpInterfaceId.getOpaqueData().setAscii("port" + (i / numRelays));
+    				relayMsg.putDhcpOption(dhcpInterfaceId);
+    			}
+    			if (remoteIdEnterprise >= 0) {
+    				DhcpV6RemoteIdOption dhcpRemoteId = new DhcpV6RemoteIdOption();
+    				dhcpRemoteId.setEnterpriseNumber(remoteIdEnterprise);
+    				dhcpRemoteId.getOpaqueData().setHex(buildDuid(i));
+    				relayMsg.putDhcpOption(dhcpRemoteId);
+    			}
+    		}
+    		else {
+    			relayMsg.setLinkAddress(UNSPECIFIED_ADDR);
+    			relayMsg.setPeerAddress(peerAddr);
+    		}
+    		peerAddr = relayAddrs[i % numRelays];
+    		DhcpV6RelayOption relayOption = new DhcpV6RelayOption();
+    		relayOption.setRelayMessage(relayMsg);
+    		relayOption.setDhcpMessage(msg);
+    		relayMsg.setRelayOption(relayOption);
+    		relayMsg.putDhcpOption(relayOption);
+    		msg = relayMsg;
+    	}
+    	return msg;
+    }
 
-        msg.setTransactionId(reply.getTransactionId());
-        msg.putDhcpOption(reply.getDhcpClientIdOption());
-        msg.putDhcpOption(reply.getDhcpServerIdOption());
-        msg.setMessageType(DhcpConstants.V6MESSAGE_TYPE_RELEASE);
-        msg.putDhcpOption(reply.getIaNaOptions().get(0));
-        
-        return msg;
+    /**
+     * Build the client id of a client, a DUID-LL with the number of the
+     * client in the last four bytes of the link address.
+     */
+    protected static byte[] buildDuid(int i)
+    {
+    	return new byte[] { 0, 3, 0, 1, (byte)0xde, (byte)0xb1,
+    			(byte)(i >>> 24), (byte)(i >>> 16), (byte)(i >>> 8), (byte)i };
+    }
+    
+    /**
+     * Gets the number of a client from its client id.
+     * 
+     * @return the client, or -1 if not a client id of this simulator
+     */
+    protected static int getClient(DhcpV6ClientIdOption dhcpClientId)
+    {
+    	if (dhcpClientId == null) {
+    		return -1;
+    	}
+    	byte[] duid = getBytes(dhcpClientId.getOpaqueData());
+    	if ((duid == null) || (duid.length != DUID_LENGTH) ||
+    			(duid[1] != 3) || (duid[4] != (byte)0xde) || (duid[5] != (byte)0xb1)) {
+    		return -1;
+    	}
+    	return ((duid[6] & 0xff) << 24) | ((duid[7] & 0xff) << 16) | 
+    			((duid[8] & 0xff) << 8) | (duid[9] & 0xff);
+    }
+    
+    protected static byte[] getBytes(BaseOpaqueData opaqueData)
+    {
+    	if (opaqueData.getHex() != null) {
+    		return opaqueData.getHex();
+    	}
+    	// decoded as ascii, if all bytes happen to be printable
+    	return (opaqueData.getAscii() != null) ? opaqueData.getAscii().getBytes() : null;
+    }
+    
+    /**
+     * Build the link-local address of a client, from its DUID-LL.
+     */
+    protected InetAddress buildLinkLocalAddress(int i)
+    {
+    	byte[] addr = new byte[16];
+    	addr[0] = (byte)0xfe;
+    	addr[1] = (byte)0x80;
+    	System.arraycopy(buildDuid(i), 4, addr, 10, 6);
+    	try {
+			return InetAddress.getByAddress(addr);
+		}
+    	catch (UnknownHostException ex) {
+    		// not for a sixteen byte address
+    		throw new IllegalArgumentException(ex);
+		}
+    }
+    
+    static byte[] addToAddress(byte[] addr, int n)
+    {
+    	byte[] sum = addr.clone();
+    	int carry = n;
+    	for (int j=sum.length-1; (j>=0) && (carry != 0); j--) {
+    		int b = (sum[j] & 0xff) + (carry & 0xff);
+    		sum[j] = (byte)b;
+    		carry = (carry >>> 8) + (b >>> 8);
+    	}
+    	return sum;
+    }
+    
+    static long getLong(byte[] b, int off)
+    {
+    	long l = 0;
+    	for (int j=0; j<8; j++) {
+    		l = (l << 8) | (b[off + j] & 0xff);
+    	}
+    	return l;
+    }
+    
+    static InetAddress toInetAddress(long high, long low)
+    {
+    	byte[] b = new byte[16];
+    	for (int j=0; j<8; j++) {
+    		b[j] = (byte)(high >>> (56 - 8*j));
+    		b[8 + j] = (byte)(low >>> (56 - 8*j));
+    	}
+    	try {
+			return InetAddress.getByAddress(b);
+		}
+    	catch (UnknownHostException ex) {
+    		// not for a sixteen byte address
+    		throw new IllegalArgumentException(ex);
+		}
+    }
+    
+    /**
+     * Gets the index of a server id in serverIds, adding it if new.
+     * Called only by the I/O thread.
+     */
+    protected int getServerIndex(DhcpV6ServerIdOption dhcpServerId)
+    {
+    	byte[] duid = (dhcpServerId != null) ? getBytes(dhcpServerId.getOpaqueData()) : null;
+    	if (duid == null) {
+    		return 0;
+    	}
+    	for (int j=0; j<serverIds.size(); j++) {
+    		if (Arrays.equals(serverIds.get(j), duid)) {
+    			return j;
+    		}
+    	}
+    	serverIds.add(duid);
+    	return serverIds.size() - 1;
+    }
+    
+    /**
+     * Check if a reply has a failure status, for the message or an IA.
+     */
+    protected static boolean isFailure(DhcpV6Message reply)
+    {
+    	if (isFailure(reply.getDhcpOption(DhcpConstants.V6OPTION_STATUS_CODE))) {
+    		return true;
+    	}
+    	for (DhcpV6IaNaOption dhcpIaNa : reply.getIaNaOptions()) {
+    		if (isFailure(dhcpIaNa.getDhcpOptionMap().get(DhcpConstants.V6OPTION_STATUS_CODE))) {
+    			return true;
+    		}
+    	}
+    	for (DhcpV6IaPdOption dhcpIaPd : reply.getIaPdOptions()) {
+    		if (isFailure(dhcpIaPd.getDhcpOptionMap().get(DhcpConstants.V6OPTION_STATUS_CODE))) {
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+    
+    protected static boolean isFailure(DhcpOption dhcpOption)
+    {
+    	return (dhcpOption instanceof DhcpV6StatusCodeOption) &&
+    		(((DhcpV6StatusCodeOption)dhcpOption).getStatusCode() != 
+    			DhcpConstants.V6STATUS_CODE_SUCCESS);
+    }
+    
+    /**
+     * Keep the leases of a reply to a client.
+     * 
+     * @return true, if the reply has a lease
+     */
+    protected boolean keepLeases(int i, DhcpV6Message reply)
+    {
+    	boolean leased = false;
+    	naHigh[i] = 0;
+    	naLow[i] = 0;
+    	for (DhcpV6IaNaOption dhcpIaNa : reply.getIaNaOptions()) {
+    		if (!dhcpIaNa.getIaAddrOptions().isEmpty()) {
+    			byte[] addr = dhcpIaNa.getIaAddrOptions().get(0).getInetAddress().getAddress();
+    			naHigh[i] = getLong(addr, 0);
+    			naLow[i] = getLong(addr, 8);
+    			leased = true;
+    			break;
+    		}
+    	}
+    	if (pdLength != null) {
+    		pdLength[i] = 0;
+	    	for (DhcpV6IaPdOption dhcpIaPd : reply.getIaPdOptions()) {
+	    		if (!dhcpIaPd.getIaPrefixOptions().isEmpty()) {
+	    			DhcpV6IaPrefixOption dhcpIaPrefix = dhcpIaPd.getIaPrefixOptions().get(0);
+	    			byte[] addr = dhcpIaPrefix.getInetAddress().getAddress();
+	    			pdHigh[i] = getLong(addr, 0);
+	    			pdLow[i] = getLong(addr, 8);
+	    			pdLength[i] = (byte)dhcpIaPrefix.getPrefixLength();
+	    			leased = true;
+	    			break;
+	    		}
+	    	}
+    	}
+    	serverIndexes[i] = getServerIndex(reply.getDhcpServerIdOption());
+    	return leased;
     }
 
 	/*
@@ -544,53 +1154,93 @@ public class ClientSimulatorV6 extends SimpleChannelUpstreamHandler
             DhcpV6Message dhcpMessage = (DhcpV6Message) message;
             if (log.isDebugEnabled())
             	log.debug("Received: " + dhcpMessage.toStringWithOptions());
-            else
-            	log.info("Received: " + dhcpMessage.toString());
             
-            if (dhcpMessage.getMessageType() == DhcpConstants.V6MESSAGE_TYPE_ADVERTISE) {
-	            ClientMachine client = 
-	            		clientMap.get(dhcpMessage.getDhcpClientIdOption().getOpaqueData().getAscii());
-	            if (client != null) {
-	            	advertisementsReceived.getAndIncrement();
-	            	client.request(dhcpMessage);
-	            }
-	            else {
-	            	log.error("Received advertise for client not found in map: duid=" + 
-	            			dhcpMessage.getDhcpClientIdOption().getOpaqueData().getAscii());
-	            }
+            // peel off the relay-reply messages
+            while (dhcpMessage instanceof DhcpV6RelayMessage) {
+            	DhcpV6RelayOption relayOption = ((DhcpV6RelayMessage)dhcpMessage).getRelayOption();
+            	dhcpMessage = (relayOption != null) ? relayOption.getDhcpMessage() : null;
+            }
+            int i = (dhcpMessage != null) ? getClient(dhcpMessage.getDhcpClientIdOption()) : -1;
+            if ((i < 0) || (i >= numRequests)) {
+            	stats.unexpected();
+            	return;
+            }
+            int state = states.get(i);
+            if (((state >>> PHASE_BITS) & XID_MASK) != dhcpMessage.getTransactionId()) {
+            	// the reply of an exchange which timed out
+            	stats.unexpected();
+            	return;
+            }
+            int gen = state >>> PHASE_BITS;
+            int phase = state & PHASE_MASK;
+            short msgType = dhcpMessage.getMessageType();
+            long sentTime = sentTimes[i];
+            
+            if ((phase == SOLICITING) && (msgType == DhcpConstants.V6MESSAGE_TYPE_ADVERTISE)) {
+            	boolean failed = isFailure(dhcpMessage);
+            	int newState = (gen << PHASE_BITS) | (failed ? IDLE : REQUESTING);
+            	sentTimes[i] = System.nanoTime();
+            	if (states.compareAndSet(i, state, newState)) {
+            		if (failed) {
+            			stats.nak(SOLICIT, sentTime);
+            			finish();
+            		}
+            		else {
+	            		stats.replied(SOLICIT, sentTime);
+	            		send(i, buildMessage(i, newState, REQUEST, dhcpMessage), REQUEST);
+            		}
+            	}
             }
-            else if (dhcpMessage.getMessageType() == DhcpConstants.V6MESSAGE_TYPE_REPLY) {
-            	String key = dhcpMessage.getDhcpClientIdOption().getOpaqueData().getAscii();
-	            ClientMachine client = clientMap.get(key);
-	            if (client != null) {
-	            	if (!client.released) {
-		            	requestRepliesReceived.getAndIncrement();
-		            	client.release(dhcpMessage);
-	            	}
-	            	else {
-	            		releaseRepliesReceived.getAndIncrement();
-	            		clientMap.remove(key);	            		
-						if (releaseRepliesReceived.get() == numRequests) {
-							endTime = System.currentTimeMillis();
-							log.info("Ending at: " + endTime);
-							synchronized (syncDone) {
-								syncDone.notifyAll();
-							}
-						}
-						else if (poolSize > 0) {
-							synchronized (clientMap) {
-								clientMap.notify();
-							}
-						}
-	            	}
-	            }
-	            else {
-	            	log.error("Received reply for client not found in map: duid=" + 
-	            			dhcpMessage.getDhcpClientIdOption().getOpaqueData().getAscii());
-	            }
+            else if ((msgType == DhcpConstants.V6MESSAGE_TYPE_REPLY) && 
+            		(phase != IDLE) && (phase != BOUND)) {
+            	int exchange = PHASE_EXCHANGES[phase];
+            	boolean failed = isFailure(dhcpMessage);
+            	int next;
+            	switch (phase) {
+            		case SOLICITING:
+            		case REQUESTING:
+            		case RENEWING:
+            		case REBINDING:
+            			failed = failed || !keepLeases(i, dhcpMessage);
+            			next = failed ? IDLE : BOUND;
+            			break;
+            		case CONFIRMING:
+            			next = failed ? IDLE : BOUND;
+            			break;
+            		case INFORMING:
+            			next = BOUND;
+            			break;
+            		default:
+            			// released or declined
+            			next = IDLE;
+            			break;
+            	}
+            	if ((rate <= 0) && (next == BOUND)) {
+            		// release, and let the next client start
+            		next = RELEASING;
+            	}
+            	int newState = (gen << PHASE_BITS) | next;
+            	sentTimes[i] = System.nanoTime();
+            	if (states.compareAndSet(i, state, newState)) {
+            		if (failed) {
+            			stats.nak(exchange, sentTime);
+            		}
+            		else {
+            			stats.replied(exchange, sentTime);
+            		}
+            		if (next == RELEASING) {
+            			send(i, buildMessage(i, newState, RELEASE, null), RELEASE);
+            		}
+            		else if (next == IDLE) {
+            			finish();
+            		}
+            	}
             }
             else {
-            	log.warn("Received unhandled message type: " + dhcpMessage.getMessageType());
+            	if (log.isDebugEnabled())
+            		log.debug("Received unexpected message type: " + msgType +
+            				" for client in phase: " + phase);
+            	stats.unexpected();
             }
         }
         else {
@@ -599,6 +1249,17 @@ public class ClientSimulatorV6 extends SimpleChannelUpstreamHandler
             log.error("Received unknown message object: " + message.getClass());
         }
     }
+	
+	/**
+	 * A client is done, when run without a rate.
+	 */
+	protected void finish()
+	{
+		if (rate <= 0) {
+			inFlight.decrementAndGet();
+			done.incrementAndGet();
+		}
+	}
 	 
 	/* (non-Javadoc)
 	 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#exceptionCaught(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ExceptionEvent)
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file LoadStats.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.client;
+
+import java.util.Formatter;
+
+import com.jagornet.dhcp.server.metrics.LatencyHistogram;
+import com.jagornet.dhcp.server.metrics.StripedCounter;
+
+/**
+ * The Class LoadStats.  The statistics of a load test, by exchange, i.e.
+ * by the kind of request and the reply which completes it.  The latency
+ * of an exchange is the time from sending the request until the reply is
+ * received.  A NAK completes an exchange, but is counted separately, and
+ * an exchange which is not completed in time is counted as a timeout.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class LoadStats
+{
+	/** The quantiles of the latencies in the report. */
+	public static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+	
+	private String[] names;
+	private StripedCounter[] sent;
+	private StripedCounter[] replies;
+	private StripedCounter[] naks;
+	private StripedCounter[] timeouts;
+	private LatencyHistogram[] latencies;
+	
+	/** The requests which could not be sent, e.g. when all clients were busy. */
+	private StripedCounter skipped = new StripedCounter();
+	
+	/** The replies which did not match an outstanding exchange. */
+	private StripedCounter unexpected = new StripedCounter();
+	
+	private long startNanos;
+	private long lastNanos;
+	private long lastSent;
+	private long lastReplies;
+	
+	/**
+	 * Instantiates new load stats.
+	 * 
+	 * @param names the names of the exchanges, indexed by exchange
+	 */
+	public LoadStats(String... names)
+	{
+		this.names = names;
+		sent = new StripedCounter[names.length];
+		replies = new StripedCounter[names.length];
+		naks = new StripedCounter[names.length];
+		timeouts = new StripedCounter[names.length];
+		latencies = new LatencyHistogram[names.length];
+		for (int i=0; i<names.length; i++) {
+			sent[i] = new StripedCounter();
+			replies[i] = new StripedCounter();
+			naks[i] = new StripedCounter();
+			timeouts[i] = new StripedCounter();
+			latencies[i] = new LatencyHistogram();
+		}
+	}
+	
+	/**
+	 * Start the clock of the throughput.
+	 */
+	public void start()
+	{
+		startNanos = System.nanoTime();
+		lastNanos = startNanos;
+	}
+	
+	public void sent(int exchange)
+	{
+		sent[exchange].increment();
+	}
+	
+	public void replied(int exchange, long sentNanos)
+	{
+		latencies[exchange].recordSince(sentNanos);
+		replies[exchange].increment();
+	}
+	
+	public void nak(int exchange, long sentNanos)
+	{
+		latencies[exchange].recordSince(sentNanos);
+		naks[exchange].increment();
+	}
+	
+	public void timeout(int exchange)
+	{
+		timeouts[exchange].increment();
+	}
+	
+	public void skipped()
+	{
+		skipped.increment();
+	}
+	
+	public void unexpected()
+	{
+		unexpected.increment();
+	}
+	
+	public long getSent()
+	{
+		return sum(sent);
+	}
+	
+	public long getSent(int exchange)
+	{
+		return sent[exchange].sum();
+	}
+	
+	/**
+	 * @return the replies, including NAKs
+	 */
+	public long getReplies()
+	{
+		return sum(replies) + sum(naks);
+	}
+	
+	public long getReplies(int exchange)
+	{
+		return replies[exchange].sum();
+	}
+	
+	public long getNaks()
+	{
+		return sum(naks);
+	}
+	
+	public long getTimeouts()
+	{
+		return sum(timeouts);
+	}
+	
+	public long getSkipped()
+	{
+		return skipped.sum();
+	}
+	
+	private static long sum(StripedCounter[] counters)
+	{
+		long sum = 0;
+		for (StripedCounter counter : counters) {
+			sum += counter.sum();
+		}
+		return sum;
+	}
+	
+	/**
+	 * Gets the progress since the last call, as one line.
+	 * 
+	 * @return the progress
+	 */
+	public String progress()
+	{
+		long now = System.nanoTime();
+		long totalSent = getSent();
+		long totalReplies = getReplies();
+		double secs = (now - lastNanos) / 1e9;
+		Formatter f = new Formatter();
+		f.format("elapsed=%ds sent=%d (%.0f/s) replies=%d (%.0f/s) naks=%d timeouts=%d skipped=%d",
+				(now - startNanos) / 1000000000L,
+				totalSent, (totalSent - lastSent) / secs,
+				totalReplies, (totalReplies - lastReplies) / secs,
+				getNaks(), getTimeouts(), getSkipped());
+		lastNanos = now;
+		lastSent = totalSent;
+		lastReplies = totalReplies;
+		return f.toString();
+	}
+	
+	/**
+	 * Gets the report of the test, with the counts and latency percentiles
+	 * of each exchange, and the throughput since start().
+	 * 
+	 * @param targetRate the target rate of requests per second, or zero
+	 * 
+	 * @return the report
+	 */
+	public String report(double targetRate)
+	{
+		double secs = (System.nanoTime() - startNanos) / 1e9;
+		Formatter f = new Formatter();
+		f.format("%-10s %10s %10s %8s %8s %8s %9s %9s %9s %9s%n", "Exchange", "Sent", "Replies", 
+				"NAK%", "Timeout%", "Avg(ms)", "p50(ms)", "p90(ms)", "p99(ms)", "p99.9(ms)");
+		for (int i=0; i<names.length; i++) {
+			long s = sent[i].sum();
+			if (s == 0) {
+				continue;
+			}
+			LatencyHistogram latency = latencies[i];
+			long[] values = latency.getValuesAtQuantiles(QUANTILES);
+			long count = latency.getCount();
+			f.format("%-10s %10d %10d %8.2f %8.2f %8.3f %9.3f %9.3f %9.3f %9.3f%n", names[i], 
+					s, replies[i].sum(), 
+					percent(naks[i].sum(), s), percent(timeouts[i].sum(), s),
+					(count > 0) ? (latency.getSum() / (double)count) / 1e6 : 0.0,
+					values[0] / 1e6, values[1] / 1e6, values[2] / 1e6, values[3] / 1e6);
+		}
+		long totalSent = getSent();
+		long totalReplies = getReplies();
+		f.format("Elapsed: %.1fs  Sent: %d (%.1f/s)  Replies: %d (%.1f/s)", secs,
+				totalSent, totalSent / secs, totalReplies, totalReplies / secs);
+		if (targetRate > 0) {
+			f.format("  Target: %.1f/s", targetRate);
+		}
+		f.format("%nNAKs: %d (%.2f%%)  Timeouts: %d (%.2f%%)  Skipped: %d  Unexpected: %d%n",
+				getNaks(), percent(getNaks(), totalSent), 
+				getTimeouts(), percent(getTimeouts(), totalSent),
+				getSkipped(), unexpected.sum());
+		return f.toString();
+	}
+	
+	private static double percent(long count, long total)
+	{
+		return (total > 0) ? (count * 100.0) / total : 0.0;
+	}
+}
@@ -70,6 +70,15 @@ public class DbSchemaManager
 	public static String SCHEMA_DERBY_V2_FILENAME = DB_HOME + "jagornet-dhcpv6-schema-derby-v2.sql";
 
     public static String[] TABLE_NAMES_V2 = { "DHCPLEASE" };
+
+	public static String SCHEMA_V3_FILENAME = DB_HOME + "jagornet-dhcpv6-schema-v3.sql";
+	public static String SCHEMA_DERBY_V3_FILENAME = DB_HOME + "jagornet-dhcpv6-schema-derby-v3.sql";
+	public static String SCHEMA_V3_IATYPE_FILENAME = DB_HOME + "jagornet-dhcpv6-schema-v3-iatype.sql";
+	public static String SCHEMA_DERBY_V3_IATYPE_FILENAME = DB_HOME + "jagornet-dhcpv6-schema-derby-v3-iatype.sql";
+
+    public static String[] TABLE_NAMES_V3 = { "DHCPBINDING" };
+    public static String[] TABLE_NAMES_V3_IATYPE = 
+    	{ "DHCPBINDING_V4", "DHCPBINDING_NA", "DHCPBINDING_TA", "DHCPBINDING_PD" };
 	
 	/**
 	 * Validate schema.
@@ -83,6 +92,34 @@ public class DbSchemaManager
 	 */
 	public static boolean validateSchema(DataSource dataSource, String schemaFilename, int schemaVersion) 
 						throws SQLException, IOException
+	{
+        String[] schemaTableNames;
+        if (schemaVersion <= 1) {
+        	schemaTableNames = TABLE_NAMES;
+        }
+        else if (schemaVersion == 2) {
+        	schemaTableNames = TABLE_NAMES_V2;
+        }
+        else {
+        	schemaTableNames = TABLE_NAMES_V3;
+        }
+        return validateSchema(dataSource, schemaFilename, schemaTableNames);
+	}
+	
+	/**
+	 * Validate schema.
+	 * 
+	 * @param dataSource the data source
+	 * @param schemaFilename the schema file to create the tables from
+	 * @param schemaTableNames the tables which the schema must consist of
+	 * 
+	 * @throws SQLException if there is a problem with the database
+	 * @throws IOExcpetion if there is a problem reading the schema file
+	 * 
+	 * returns true if database was created, false otherwise
+	 */
+	public static boolean validateSchema(DataSource dataSource, String schemaFilename, 
+			String[] schemaTableNames) throws SQLException, IOException
 	{
 		boolean schemaCreated = false;
 		
@@ -115,14 +152,6 @@ public class DbSchemaManager
           tableNames.add(rs.getString("TABLE_NAME"));
         }
         
-        String[] schemaTableNames;
-        if (schemaVersion <= 1) {
-        	schemaTableNames = TABLE_NAMES;
-        }
-        else {
-        	schemaTableNames = TABLE_NAMES_V2;
-        }
-        
 		if (tableNames.size() == schemaTableNames.length) {
 			for (int i=0; i<schemaTableNames.length; i++) {
 				if (!tableNames.contains(schemaTableNames[i])) {
@@ -137,6 +166,73 @@ public class DbSchemaManager
 		return schemaCreated;
 	}
 	
+	/**
+	 * Get the names of the tables in the database.
+	 * 
+	 * @param dataSource the data source
+	 * @return the upper case table names
+	 * 
+	 * @throws SQLException if there is a problem with the database
+	 */
+	public static List<String> getTableNames(DataSource dataSource) throws SQLException
+	{
+        List<String> tableNames = new ArrayList<String>();
+        Connection conn = dataSource.getConnection();
+        try {
+	        String[] types = { "TABLE" };
+	        ResultSet rs = conn.getMetaData().getTables(null, null, "%", types);
+	        while (rs.next()) {
+	        	tableNames.add(rs.getString("TABLE_NAME").toUpperCase());
+	        }
+	        rs.close();
+        }
+        finally {
+        	conn.close();
+        }
+        return tableNames;
+	}
+	
+	/**
+	 * Migrate a v2 schema database to the v3 schema.  The v3 tables are
+	 * created, the leases are copied from the v2 DHCPLEASE table, which
+	 * is dropped when all leases have been copied.  If a previous migration
+	 * was interrupted, the v3 tables are emptied and the migration starts
+	 * over, because the v2 table is only dropped at the end.
+	 * 
+	 * @param dataSource the data source
+	 * @param schemaFilename the v3 schema file
+	 * @param schemaTableNames the v3 tables
+	 * @param leaseManager the v3 lease manager to insert the leases
+	 * @return the number of leases migrated, or -1 if there is no v2 table
+	 * 
+	 * @throws SQLException if there is a problem with the database
+	 * @throws IOExcpetion if there is a problem reading the schema file
+	 */
+	public static int migrateSchemaV2(DataSource dataSource, String schemaFilename,
+			String[] schemaTableNames, JdbcLeaseManagerV3 leaseManager) 
+					throws SQLException, IOException
+	{
+		List<String> tableNames = getTableNames(dataSource);
+		if (!tableNames.contains(TABLE_NAMES_V2[0])) {
+			return -1;
+		}
+		log.info("Migrating database schema v2 to v3: " + schemaFilename);
+	    JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+		if (tableNames.contains(schemaTableNames[0])) {
+			for (String tableName : schemaTableNames) {
+				log.info("Deleting leases of interrupted migration from " + tableName);
+				jdbc.update("delete from " + tableName);
+			}
+		}
+		else {
+			createSchema(dataSource, schemaFilename);
+		}
+		int cnt = leaseManager.copyLeasesFromV2();
+		jdbc.execute("drop table " + TABLE_NAMES_V2[0]);
+		log.info("Migrated " + cnt + " leases to database schema v3");
+		return cnt;
+	}
+	
 	public static List<String> getSchemaDDL(String schemaFilename) throws IOException {
 		List<String> schema = new ArrayList<String>();
 		FileReader fr = null;
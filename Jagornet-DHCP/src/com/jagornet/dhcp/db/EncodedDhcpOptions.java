@@ -0,0 +1,258 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file EncodedDhcpOptions.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.db;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A list of DhcpOptions backed by the encoded ia_options/ipaddr_options
+ * blob of a DHCPLEASE row.  The blob is only decoded the first time
+ * the options are actually accessed, so callers that only need the IP
+ * address and state of a lease never pay for decoding the options.
+ * An unmodified list is written back using the original blob.
+ *
+ * The compact (version 1) encoding is a two byte header of 0xFF and
+ * the version number, followed by a varint option code, a varint value
+ * length and the value bytes for each option.  Blobs written with the
+ * original fixed encoding of a two byte code and a two byte length per
+ * option, which is never prefixed with 0xFF in practice, are still
+ * decoded as such.
+ *
+ * @author A. Gregory Rabil
+ */
+public class EncodedDhcpOptions extends AbstractList<DhcpOption>
+{
+	public static final byte ENCODING_MARKER = (byte)0xff;
+	public static final byte ENCODING_VERSION = 1;
+
+	private byte[] encoded;
+	private List<DhcpOption> decoded;
+
+	/**
+	 * Instantiates a new lazily decoded list of options.
+	 *
+	 * @param encoded the encoded options blob
+	 */
+	public EncodedDhcpOptions(byte[] encoded)
+	{
+		this.encoded = encoded;
+	}
+
+	/**
+	 * Get the encoded form of this list.  If the list has not been
+	 * decoded, and is already in the current encoding, then the
+	 * original blob is returned without re-encoding.
+	 *
+	 * @return the encoded options
+	 */
+	public byte[] getEncoded()
+	{
+		if ((decoded == null) && isCurrentEncoding(encoded)) {
+			return encoded;
+		}
+		return encode(options());
+	}
+
+	/**
+	 * Check if the list has been decoded.
+	 *
+	 * @return true if the options have been decoded
+	 */
+	public boolean isDecoded()
+	{
+		return (decoded != null);
+	}
+
+	private List<DhcpOption> options()
+	{
+		if (decoded == null) {
+			decoded = decode(encoded);
+			encoded = null;
+		}
+		return decoded;
+	}
+
+	@Override
+	public DhcpOption get(int index) {
+		return options().get(index);
+	}
+
+	@Override
+	public int size() {
+		return options().size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		if (decoded == null) {
+			return (encoded.length == 0) ||
+					(isCurrentEncoding(encoded) && (encoded.length == 2));
+		}
+		return decoded.isEmpty();
+	}
+
+	@Override
+	public DhcpOption set(int index, DhcpOption option) {
+		return options().set(index, option);
+	}
+
+	@Override
+	public void add(int index, DhcpOption option) {
+		options().add(index, option);
+		modCount++;
+	}
+
+	@Override
+	public DhcpOption remove(int index) {
+		modCount++;
+		return options().remove(index);
+	}
+
+	/**
+	 * Check if the given blob uses the current compact encoding.
+	 *
+	 * @param buf the encoded options
+	 * @return true if the blob has the current version header
+	 */
+	public static boolean isCurrentEncoding(byte[] buf)
+	{
+		return (buf != null) && (buf.length >= 2) &&
+				(buf[0] == ENCODING_MARKER) && (buf[1] == ENCODING_VERSION);
+	}
+
+	/**
+	 * Encode the options using the compact encoding.  The length of the
+	 * encoding is computed first, and the options are written directly
+	 * into the returned array, without an intermediate buffer or copy.
+	 *
+	 * @param dhcpOptions the options to encode
+	 * @return the encoded options, or null if dhcpOptions is null
+	 */
+	public static byte[] encode(Collection<DhcpOption> dhcpOptions)
+	{
+		if (dhcpOptions == null) {
+			return null;
+		}
+		if (dhcpOptions.isEmpty()) {
+			return new byte[0];
+		}
+		int len = 2;
+		for (DhcpOption option : dhcpOptions) {
+			int vlen = (option.getValue() != null) ? option.getValue().length : 0;
+			len += varintLength(option.getCode()) + varintLength(vlen) + vlen;
+		}
+		byte[] b = new byte[len];
+		ByteBuffer bb = ByteBuffer.wrap(b);
+		bb.put(ENCODING_MARKER);
+		bb.put(ENCODING_VERSION);
+		for (DhcpOption option : dhcpOptions) {
+			byte[] value = option.getValue();
+			putVarint(bb, option.getCode());
+			if (value != null) {
+				putVarint(bb, value.length);
+				bb.put(value);
+			}
+			else {
+				putVarint(bb, 0);
+			}
+		}
+		return b;
+	}
+
+	/**
+	 * Decode the options from either the compact or the original encoding.
+	 *
+	 * @param buf the encoded options
+	 * @return the list of options, or null if buf is null
+	 */
+	public static List<DhcpOption> decode(byte[] buf)
+	{
+		List<DhcpOption> options = null;
+		if (buf != null) {
+			options = new ArrayList<DhcpOption>();
+			ByteBuffer bb = ByteBuffer.wrap(buf);
+			if (isCurrentEncoding(buf)) {
+				bb.position(2);
+				while (bb.hasRemaining()) {
+					DhcpOption option = new DhcpOption();
+					option.setCode(getVarint(bb));
+					byte[] val = new byte[getVarint(bb)];
+					bb.get(val);
+					option.setValue(val);
+					options.add(option);
+				}
+			}
+			else {
+				while (bb.hasRemaining()) {
+					DhcpOption option = new DhcpOption();
+					option.setCode(bb.getShort());
+					int len = bb.getShort();
+					byte[] val = new byte[len];
+					bb.get(val);
+					option.setValue(val);
+					options.add(option);
+				}
+			}
+		}
+		return options;
+	}
+
+	private static int varintLength(int value)
+	{
+		int n = 1;
+		while ((value & ~0x7f) != 0) {
+			value >>>= 7;
+			n++;
+		}
+		return n;
+	}
+
+	private static void putVarint(ByteBuffer bb, int value)
+	{
+		while ((value & ~0x7f) != 0) {
+			bb.put((byte)((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		bb.put((byte)value);
+	}
+
+	private static int getVarint(ByteBuffer bb)
+	{
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = bb.get();
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+}
@@ -165,6 +165,15 @@ public interface IaManager
 	 */
 	public void updateIaAddr(IaAddress iaAddr);
 	
+	/**
+	 * Update the lease times of an IaAddress, which is otherwise unchanged.
+	 * 
+	 * @param iaAddr the IaAddress with the new lease times
+	 * @param deferred true if the times may be written later, with the
+	 * 		times of other addresses
+	 */
+	public void updateIaAddrTimes(IaAddress iaAddr, boolean deferred);
+	
 	/**
 	 * Delete an IaAddress.
 	 * 
@@ -215,6 +224,17 @@ public interface IaManager
 	 */
 	public List<IaAddress> findExpiredIaAddresses(byte iatype);
 
+	/**
+	 * Find the IA Prefixes within an inclusive address range, without
+	 * their options, for the prefix lengths of the prefixes in use.
+	 * 
+	 * @param startAddr the start address of the range
+	 * @param endAddr the end address of the range
+	 * 
+	 * @return the list of IaPrefix objects in the range
+	 */
+	public List<IaPrefix> findIaPrefixes(InetAddress startAddr, InetAddress endAddr);
+
 	/**
 	 * Find the unused IA Prefixes within an inclusive address range.
 	 * 
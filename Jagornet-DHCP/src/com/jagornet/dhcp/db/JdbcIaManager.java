@@ -375,6 +375,15 @@ public class JdbcIaManager extends JdbcDaoSupport implements IaManager
 		expireIA(iaAddr.getIdentityAssocId());
 	}
 	
+	/* (non-Javadoc)
+	 * @see com.jagornet.dhcp.db.IaManager#updateIaAddrTimes(com.jagornet.dhcp.db.IaAddress, boolean)
+	 */
+	public void updateIaAddrTimes(IaAddress iaAddr, boolean deferred)
+	{
+		// the times are written at once
+		iaAddrDao.update(iaAddr);
+	}
+	
 	/* (non-Javadoc)
 	 * @see com.jagornet.dhcpv6.db.IaManager#deleteIaAddr(com.jagornet.dhcpv6.db.IaAddress)
 	 */
@@ -426,6 +435,14 @@ public class JdbcIaManager extends JdbcDaoSupport implements IaManager
 		return iaAddrDao.findExpiredAddresses(iatype);
 	}
 	
+	/* (non-Javadoc)
+	 * @see com.jagornet.dhcpv6.db.IaManager#findIaPrefixes(java.net.InetAddress, java.net.InetAddress)
+	 */
+	@Override
+	public List<IaPrefix> findIaPrefixes(InetAddress startAddr, InetAddress endAddr) {
+		return iaPrefixDao.findAllByRange(startAddr, endAddr);
+	}
+	
 	/* (non-Javadoc)
 	 * @see com.jagornet.dhcpv6.db.IaManager#findUnusedIaPrefixes(java.net.InetAddress, java.net.InetAddress)
 	 */
@@ -61,6 +61,14 @@ public class JdbcLeaseManager extends LeaseManager
 {	
 	private static Logger log = LoggerFactory.getLogger(JdbcLeaseManager.class);
 	
+	/**
+	 * The dhcplease columns, without the ia_options and ipaddr_options
+	 * blobs, for queries which do not need the options of the leases.
+	 */
+	protected static final String LEASE_COLUMNS =
+			"ipaddress, duid, iatype, iaid, prefixlen, state," +
+			" starttime, preferredendtime, validendtime";
+	
 	protected DataSource dataSource;
 	protected JdbcTemplate jdbcTemplate;
 	
@@ -217,6 +225,42 @@ public class JdbcLeaseManager extends LeaseManager
 			}
 		});
 	}
+	
+	/**
+	 * Update the end times of a committed ipaddr.
+	 */
+	protected void updateIpAddrTimes(final InetAddress inetAddr, 
+									final Date preferredEndTime, final Date validEndTime)
+	{
+		getJdbcTemplate().update("update dhcplease" +
+				" set preferredendtime=?," +
+				" validendtime=?" +
+				" where ipaddress=? and state=?",
+				new PreparedStatementSetter() {
+			@Override
+			public void setValues(PreparedStatement ps)
+					throws SQLException {
+				setTimestamp(ps, 1, preferredEndTime);
+				setTimestamp(ps, 2, validEndTime);
+				ps.setBytes(3, inetAddr.getAddress());
+				ps.setByte(4, IaAddress.COMMITTED);
+			}
+		});
+	}
+	
+	/**
+	 * Sets a timestamp parameter in GMT, or null.
+	 */
+	protected static void setTimestamp(PreparedStatement ps, int i, Date date)
+			throws SQLException
+	{
+		if (date != null) {
+			ps.setTimestamp(i, new java.sql.Timestamp(date.getTime()), Util.GMT_CALENDAR);
+		}
+		else {
+			ps.setNull(i, java.sql.Types.TIMESTAMP);
+		}
+	}
 
 	/**
 	 * Find dhcp leases for ia.
@@ -405,8 +449,9 @@ public class JdbcLeaseManager extends LeaseManager
 	}
 
 	protected List<DhcpLease> findExpiredLeases(final byte iatype) {
+		// the reaper only needs the ipaddr_options for any DDNS delete
         return getJdbcTemplate().query(
-                "select * from dhcplease" +
+                "select " + LEASE_COLUMNS + ", ipaddr_options from dhcplease" +
                 " where iatype = ?" +
                 " and state != " + IaAddress.STATIC +
                 " and validendtime < ? order by validendtime",
@@ -418,7 +463,27 @@ public class JdbcLeaseManager extends LeaseManager
             			ps.setTimestamp(2, ts, Util.GMT_CALENDAR);
             		}
                 },
-                new DhcpLeaseRowMapper());
+                new DhcpLeaseRowMapper(false, true));
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.jagornet.dhcpv6.db.IaManager#findIaPrefixes(java.net.InetAddress, java.net.InetAddress)
+	 */
+	@Override
+	public List<IaPrefix> findIaPrefixes(final InetAddress startAddr, final InetAddress endAddr) {
+        List<DhcpLease> leases = getJdbcTemplate().query(
+                "select " + LEASE_COLUMNS + " from dhcplease" +
+                " where ipaddress >= ? and ipaddress <= ?" +
+                " order by ipaddress",
+                new PreparedStatementSetter() {
+					@Override
+					public void setValues(PreparedStatement ps) throws SQLException {
+						ps.setBytes(1, startAddr.getAddress());
+						ps.setBytes(2, endAddr.getAddress());
+					}                	
+                },
+                new DhcpLeaseRowMapper(false, false));
+		return toIaPrefixes(leases);
 	}
 	
 	/* (non-Javadoc)
@@ -454,7 +519,7 @@ public class JdbcLeaseManager extends LeaseManager
 	@Override
 	public List<IaPrefix> findExpiredIaPrefixes() {
         List<DhcpLease> leases = getJdbcTemplate().query(
-                "select * from dhcplease" +
+                "select " + LEASE_COLUMNS + " from dhcplease" +
                 " where iatype = " + IdentityAssoc.PD_TYPE +
                 " and validendtime < ? order by validendtime",
                 new PreparedStatementSetter() {
@@ -464,7 +529,7 @@ public class JdbcLeaseManager extends LeaseManager
             			ps.setTimestamp(1, ts, Util.GMT_CALENDAR);
             		}
                 },
-                new DhcpLeaseRowMapper());
+                new DhcpLeaseRowMapper(false, false));
 		return toIaPrefixes(leases);
 	}
 	
@@ -492,13 +557,29 @@ public class JdbcLeaseManager extends LeaseManager
      * The Class DhcpLeaseRowMapper.
      */
     protected class DhcpLeaseRowMapper implements RowMapper<DhcpLease> 
-    {    	
+    {
+    	private final ResultSetExtractor<DhcpLease> rsExtractor;
+    	
+    	public DhcpLeaseRowMapper() {
+    		this(true, true);
+    	}
+    	
+    	/**
+    	 * Instantiates a new row mapper for a query which may not select
+    	 * the options columns.
+    	 *
+    	 * @param iaOptions true if the query selects the ia_options column
+    	 * @param ipAddrOptions true if the query selects the ipaddr_options column
+    	 */
+    	public DhcpLeaseRowMapper(boolean iaOptions, boolean ipAddrOptions) {
+    		rsExtractor = new DhcpLeaseResultSetExtractor(iaOptions, ipAddrOptions);
+    	}
+    	
 	    /* (non-Javadoc)
 	     * @see org.springframework.jdbc.core.simple.RowMapper#mapRow(java.sql.ResultSet, int)
 	     */
 	    @Override
         public DhcpLease mapRow(ResultSet rs, int rowNum) throws SQLException {
-	    	ResultSetExtractor<DhcpLease> rsExtractor = new DhcpLeaseResultSetExtractor();
 	    	return rsExtractor.extractData(rs);
         }
     }
@@ -508,6 +589,17 @@ public class JdbcLeaseManager extends LeaseManager
      */
     protected class DhcpLeaseResultSetExtractor implements ResultSetExtractor<DhcpLease>
     {
+    	private final boolean iaOptions;
+    	private final boolean ipAddrOptions;
+    	
+    	public DhcpLeaseResultSetExtractor() {
+    		this(true, true);
+    	}
+    	
+    	public DhcpLeaseResultSetExtractor(boolean iaOptions, boolean ipAddrOptions) {
+    		this.iaOptions = iaOptions;
+    		this.ipAddrOptions = ipAddrOptions;
+    	}
 		
 		/* (non-Javadoc)
 		 * @see org.springframework.jdbc.core.ResultSetExtractor#extractData(java.sql.ResultSet)
@@ -531,8 +623,12 @@ public class JdbcLeaseManager extends LeaseManager
 			lease.setStartTime(rs.getTimestamp("starttime", Util.GMT_CALENDAR));
 			lease.setPreferredEndTime(rs.getTimestamp("preferredendtime", Util.GMT_CALENDAR));
 			lease.setValidEndTime(rs.getTimestamp("validendtime", Util.GMT_CALENDAR));
-			lease.setIaDhcpOptions(decodeOptions(rs.getBytes("ia_options")));
-			lease.setIaAddrDhcpOptions(decodeOptions(rs.getBytes("ipaddr_options")));
+			if (iaOptions) {
+				lease.setIaDhcpOptions(decodeOptions(rs.getBytes("ia_options")));
+			}
+			if (ipAddrOptions) {
+				lease.setIaAddrDhcpOptions(decodeOptions(rs.getBytes("ipaddr_options")));
+			}
             return lease;
 		};
     }
@@ -0,0 +1,985 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file JdbcLeaseManagerV3.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.db;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.server.request.binding.Range;
+import com.jagornet.dhcp.util.Util;
+
+/**
+ * The JdbcLeaseManagerV3 implementation class for the IaManager interface,
+ * for the v3 database schema.
+ *
+ * The v3 DHCPBINDING table keys each lease by two fixed width BIGINT
+ * columns, IPHI and IPLO, which hold the upper and lower 64 bits of the
+ * IPv6 address, or of the IPv4-mapped IPv6 address, of the lease, so
+ * that IPv4 and IPv6 leases share one key of the same width.  The sign
+ * bit of each half is flipped, so that the signed order of the columns
+ * is the unsigned order of the addresses, and address ranges can be
+ * searched with the primary key and the composite indexes.
+ *
+ * Optionally, the leases of each iatype are stored in a table of their
+ * own, DHCPBINDING_V4, _NA, _TA and _PD.  A lookup by IPv6 address alone
+ * then searches the NA, TA and PD tables.
+ *
+ * @author A. Gregory Rabil
+ */
+public class JdbcLeaseManagerV3 extends JdbcLeaseManager
+{
+	private static Logger log = LoggerFactory.getLogger(JdbcLeaseManagerV3.class);
+
+	public static final String TABLE_NAME = "dhcpbinding";
+
+	// the tables indexed by iatype, when using a table per iatype
+	private static final String[] IATYPE_TABLE_NAMES =
+		{ "dhcpbinding_v4", "dhcpbinding_na", "dhcpbinding_ta", "dhcpbinding_pd" };
+
+	/**
+	 * The dhcpbinding columns, without the ia_options and ipaddr_options
+	 * blobs, for queries which do not need the options of the leases.
+	 */
+	protected static final String BINDING_COLUMNS =
+			"iphi, iplo, duid, iatype, iaid, prefixlen, state," +
+			" starttime, preferredendtime, validendtime";
+
+	private static final int MIGRATION_BATCH_SIZE = 1000;
+
+	private static final long V4_MAPPED_PREFIX = 0xffffL << 32;
+
+	protected boolean tablePerIaType;
+
+	public boolean isTablePerIaType() {
+		return tablePerIaType;
+	}
+	public void setTablePerIaType(boolean tablePerIaType) {
+		this.tablePerIaType = tablePerIaType;
+	}
+
+	// Spring bean init-method
+	@Override
+	public void init() throws Exception {
+		tablePerIaType = DhcpServerPolicies.globalPolicyAsBoolean(Property.DATABASE_TABLE_PER_IATYPE);
+        String schemaType = DhcpServerPolicies.globalPolicy(Property.DATABASE_SCHEMA_TYTPE);
+        String schemaFilename = null;
+        if (schemaType.toLowerCase().endsWith("derby")) {
+        	schemaFilename = tablePerIaType ? DbSchemaManager.SCHEMA_DERBY_V3_IATYPE_FILENAME :
+        									DbSchemaManager.SCHEMA_DERBY_V3_FILENAME;
+        }
+        else {
+        	schemaFilename = tablePerIaType ? DbSchemaManager.SCHEMA_V3_IATYPE_FILENAME :
+											DbSchemaManager.SCHEMA_V3_FILENAME;
+        }
+        String[] tableNames = tablePerIaType ? DbSchemaManager.TABLE_NAMES_V3_IATYPE :
+        										DbSchemaManager.TABLE_NAMES_V3;
+        DbSchemaManager.migrateSchemaV2(dataSource, schemaFilename, tableNames, this);
+		DbSchemaManager.validateSchema(dataSource, schemaFilename, tableNames);
+	}
+
+	// Address keys
+
+	/**
+	 * Get the upper key column value for an address.
+	 *
+	 * @param inetAddr the address
+	 * @return the upper 64 bits of the (IPv4-mapped) IPv6 address, sign flipped
+	 */
+	public static long addressHi(InetAddress inetAddr)
+	{
+		byte[] b = inetAddr.getAddress();
+		if (b.length == 4) {
+			return Long.MIN_VALUE;
+		}
+		return toLong(b, 0) ^ Long.MIN_VALUE;
+	}
+
+	/**
+	 * Get the lower key column value for an address.
+	 *
+	 * @param inetAddr the address
+	 * @return the lower 64 bits of the (IPv4-mapped) IPv6 address, sign flipped
+	 */
+	public static long addressLo(InetAddress inetAddr)
+	{
+		byte[] b = inetAddr.getAddress();
+		if (b.length == 4) {
+			return (V4_MAPPED_PREFIX | (toLong(b, 0) >>> 32)) ^ Long.MIN_VALUE;
+		}
+		return toLong(b, 8) ^ Long.MIN_VALUE;
+	}
+
+	/**
+	 * Get the address for the key column values.
+	 *
+	 * @param hi the upper key column value
+	 * @param lo the lower key column value
+	 * @return the IPv4 address, for an IPv4-mapped key, or the IPv6 address
+	 * @throws UnknownHostException
+	 */
+	public static InetAddress toInetAddress(long hi, long lo) throws UnknownHostException
+	{
+		hi ^= Long.MIN_VALUE;
+		lo ^= Long.MIN_VALUE;
+		if ((hi == 0) && ((lo & 0xffffffff00000000L) == V4_MAPPED_PREFIX)) {
+			byte[] b = new byte[4];
+			putLong(b, 0, lo << 32, 4);
+			return InetAddress.getByAddress(b);
+		}
+		byte[] b = new byte[16];
+		putLong(b, 0, hi, 8);
+		putLong(b, 8, lo, 8);
+		return InetAddress.getByAddress(b);
+	}
+
+	private static long toLong(byte[] b, int offset)
+	{
+		long l = 0;
+		int end = Math.min(offset + 8, b.length);
+		for (int i=offset; i<end; i++) {
+			l = (l << 8) | (b[i] & 0xff);
+		}
+		// left align a short (IPv4) address
+		return l << (8 * (offset + 8 - end));
+	}
+
+	private static void putLong(byte[] b, int offset, long l, int len)
+	{
+		for (int i=0; i<len; i++) {
+			b[offset + i] = (byte)(l >>> (56 - 8*i));
+		}
+	}
+
+	/**
+	 * Set the key of an address as two statement parameters.
+	 *
+	 * @return the index of the next parameter
+	 */
+	protected static int setAddress(PreparedStatement ps, int i, InetAddress inetAddr)
+			throws SQLException
+	{
+		ps.setLong(i++, addressHi(inetAddr));
+		ps.setLong(i++, addressLo(inetAddr));
+		return i;
+	}
+
+	/**
+	 * Get the where clause for an address range.  When both ends of the
+	 * range have the same upper key, which is always true for IPv4, and
+	 * for IPv6 ranges within a /64, the range is a simple search of the
+	 * lower key.
+	 */
+	protected static String rangeClause(InetAddress startAddr, InetAddress endAddr)
+	{
+		if (addressHi(startAddr) == addressHi(endAddr)) {
+			return "iphi = ? and iplo between ? and ?";
+		}
+		return "((iphi = ? and iplo >= ?) or (iphi > ? and iphi < ?) or (iphi = ? and iplo <= ?))";
+	}
+
+	/**
+	 * Set the parameters of the rangeClause.
+	 *
+	 * @return the index of the next parameter
+	 */
+	protected static int setRange(PreparedStatement ps, int i,
+			InetAddress startAddr, InetAddress endAddr) throws SQLException
+	{
+		long startHi = addressHi(startAddr);
+		long endHi = addressHi(endAddr);
+		if (startHi == endHi) {
+			ps.setLong(i++, startHi);
+			ps.setLong(i++, addressLo(startAddr));
+			ps.setLong(i++, addressLo(endAddr));
+		}
+		else {
+			ps.setLong(i++, startHi);
+			ps.setLong(i++, addressLo(startAddr));
+			ps.setLong(i++, startHi);
+			ps.setLong(i++, endHi);
+			ps.setLong(i++, endHi);
+			ps.setLong(i++, addressLo(endAddr));
+		}
+		return i;
+	}
+
+	// Tables
+
+	/**
+	 * Get the table of the leases of an iatype.
+	 */
+	protected String tableName(byte iatype)
+	{
+		if (tablePerIaType) {
+			return IATYPE_TABLE_NAMES[iatype];
+		}
+		return TABLE_NAME;
+	}
+
+	/**
+	 * Get the tables which may hold the lease for an address.
+	 */
+	protected String[] tableNames(InetAddress inetAddr)
+	{
+		if (!tablePerIaType) {
+			return new String[] { TABLE_NAME };
+		}
+		if (inetAddr instanceof Inet4Address) {
+			return new String[] { tableName(IdentityAssoc.V4_TYPE) };
+		}
+		return new String[] { tableName(IdentityAssoc.NA_TYPE),
+							  tableName(IdentityAssoc.TA_TYPE),
+							  tableName(IdentityAssoc.PD_TYPE) };
+	}
+
+	/**
+	 * Get the tables which may hold the lease for an IaAddress.
+	 */
+	protected String[] tableNames(IaAddress iaAddr)
+	{
+		if (tablePerIaType && (iaAddr instanceof IaPrefix)) {
+			return new String[] { tableName(IdentityAssoc.PD_TYPE) };
+		}
+		return tableNames(iaAddr.getIpAddress());
+	}
+
+	/**
+	 * Get the tables which may hold the leases of the addresses or prefixes
+	 * in a range.
+	 */
+	protected String[] tableNames(InetAddress startAddr, boolean prefixes)
+	{
+		if (!tablePerIaType) {
+			return new String[] { TABLE_NAME };
+		}
+		if (startAddr instanceof Inet4Address) {
+			return new String[] { tableName(IdentityAssoc.V4_TYPE) };
+		}
+		if (prefixes) {
+			return new String[] { tableName(IdentityAssoc.PD_TYPE) };
+		}
+		return new String[] { tableName(IdentityAssoc.NA_TYPE),
+				  			  tableName(IdentityAssoc.TA_TYPE) };
+	}
+
+	/**
+	 * Build the union of the same select from the tables.  The order by
+	 * clause, if any, applies to the union.
+	 */
+	protected static String unionSelect(String columns, String[] tables,
+			String where, String orderBy)
+	{
+		return unionSelect(columns, tables, new String[] { where }, orderBy);
+	}
+
+	/**
+	 * Build the union of the selects of each where clause from each of
+	 * the tables.  Unlike an or of the clauses, each select can use the
+	 * index for its clause.
+	 */
+	protected static String unionSelect(String columns, String[] tables,
+			String[] wheres, String orderBy)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i=0; i<tables.length; i++) {
+			for (int j=0; j<wheres.length; j++) {
+				if ((i > 0) || (j > 0)) {
+					sb.append(" union all ");
+				}
+				sb.append("select ").append(columns).append(" from ").append(tables[i]);
+				sb.append(" where ").append(wheres[j]);
+			}
+		}
+		if (orderBy != null) {
+			sb.append(" order by ").append(orderBy);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Insert dhcp lease.
+	 *
+	 * @param lease the lease
+	 */
+	@Override
+	protected void insertDhcpLease(final DhcpLease lease)
+	{
+		getJdbcTemplate().update(insertSql(lease.getIatype()),
+				new PreparedStatementSetter() {
+			@Override
+			public void setValues(PreparedStatement ps)
+					throws SQLException {
+				setInsertValues(ps, lease);
+			}
+		});
+	}
+
+	private String insertSql(byte iatype)
+	{
+		return "insert into " + tableName(iatype) +
+				" (iphi, iplo, duid, iatype, iaid, prefixlen, state," +
+				" starttime, preferredendtime, validendtime," +
+				" ia_options, ipaddr_options)" +
+				" values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	}
+
+	private void setInsertValues(PreparedStatement ps, DhcpLease lease) throws SQLException
+	{
+		int i = setAddress(ps, 1, lease.getIpAddress());
+		ps.setBytes(i++, lease.getDuid());
+		ps.setByte(i++, lease.getIatype());
+		ps.setLong(i++, lease.getIaid());
+		ps.setShort(i++, lease.getPrefixLength());
+		ps.setByte(i++, lease.getState());
+		java.sql.Timestamp sts =
+			new java.sql.Timestamp(lease.getStartTime().getTime());
+		ps.setTimestamp(i++, sts, Util.GMT_CALENDAR);
+		java.sql.Timestamp pts =
+			new java.sql.Timestamp(lease.getPreferredEndTime().getTime());
+		ps.setTimestamp(i++, pts, Util.GMT_CALENDAR);
+		java.sql.Timestamp vts =
+			new java.sql.Timestamp(lease.getValidEndTime().getTime());
+		ps.setTimestamp(i++, vts, Util.GMT_CALENDAR);
+		ps.setBytes(i++, encodeOptions(lease.getIaDhcpOptions()));
+		ps.setBytes(i++, encodeOptions(lease.getIaAddrDhcpOptions()));
+	}
+
+	/**
+	 * Insert dhcp leases as a batch for each table.
+	 *
+	 * @param leases the leases
+	 */
+	protected void insertDhcpLeases(List<DhcpLease> leases)
+	{
+		for (byte iatype = IdentityAssoc.V4_TYPE; iatype <= IdentityAssoc.PD_TYPE; iatype++) {
+			final List<DhcpLease> batch = new ArrayList<DhcpLease>();
+			for (DhcpLease lease : leases) {
+				if (!tablePerIaType || (lease.getIatype() == iatype)) {
+					batch.add(lease);
+				}
+			}
+			if (!batch.isEmpty()) {
+				getJdbcTemplate().batchUpdate(insertSql(iatype),
+						new BatchPreparedStatementSetter() {
+					@Override
+					public void setValues(PreparedStatement ps, int i) throws SQLException {
+						setInsertValues(ps, batch.get(i));
+					}
+					@Override
+					public int getBatchSize() {
+						return batch.size();
+					}
+				});
+			}
+			if (!tablePerIaType) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Update dhcp lease.
+	 *
+	 * @param lease the lease
+	 */
+	@Override
+	protected void updateDhcpLease(final DhcpLease lease)
+	{
+		getJdbcTemplate().update("update " + tableName(lease.getIatype()) +
+				" set state=?," +
+				" starttime=?," +
+				" preferredendtime=?," +
+				" validendtime=?," +
+				" ia_options=?," +
+				" ipaddr_options=?" +
+				" where iphi=? and iplo=?",
+				new PreparedStatementSetter() {
+			@Override
+			public void setValues(PreparedStatement ps)
+					throws SQLException {
+				ps.setByte(1, lease.getState());
+				java.sql.Timestamp sts =
+					new java.sql.Timestamp(lease.getStartTime().getTime());
+				ps.setTimestamp(2, sts, Util.GMT_CALENDAR);
+				java.sql.Timestamp pts =
+					new java.sql.Timestamp(lease.getPreferredEndTime().getTime());
+				ps.setTimestamp(3, pts, Util.GMT_CALENDAR);
+				java.sql.Timestamp vts =
+					new java.sql.Timestamp(lease.getValidEndTime().getTime());
+				ps.setTimestamp(4, vts, Util.GMT_CALENDAR);
+				ps.setBytes(5, encodeOptions(lease.getIaDhcpOptions()));
+				ps.setBytes(6, encodeOptions(lease.getIaAddrDhcpOptions()));
+				setAddress(ps, 7, lease.getIpAddress());
+			}
+		});
+	}
+
+	/**
+	 * Delete dhcp lease.
+	 *
+	 * @param lease the lease
+	 */
+	@Override
+	protected void deleteDhcpLease(final DhcpLease lease)
+	{
+		getJdbcTemplate().update("delete from " + tableName(lease.getIatype()) +
+				" where iphi=? and iplo=?",
+				new PreparedStatementSetter() {
+			@Override
+			public void setValues(PreparedStatement ps)
+					throws SQLException {
+				setAddress(ps, 1, lease.getIpAddress());
+			}
+		});
+	}
+
+	/**
+	 * Update a column of the lease for an address, in the first of
+	 * the tables which holds the lease.
+	 */
+	private void updateOptions(String column, final InetAddress inetAddr,
+								final Collection<DhcpOption> options)
+	{
+		final byte[] encoded = encodeOptions(options);
+		for (String table : tableNames(inetAddr)) {
+			int cnt = getJdbcTemplate().update("update " + table +
+					" set " + column + "=?" +
+					" where iphi=? and iplo=?",
+					new PreparedStatementSetter() {
+				@Override
+				public void setValues(PreparedStatement ps)
+						throws SQLException {
+					ps.setBytes(1, encoded);
+					setAddress(ps, 2, inetAddr);
+				}
+			});
+			if (cnt > 0) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Update the end times of a committed ipaddr.
+	 */
+	@Override
+	protected void updateIpAddrTimes(final InetAddress inetAddr, 
+									final Date preferredEndTime, final Date validEndTime)
+	{
+		for (String table : tableNames(inetAddr)) {
+			int cnt = getJdbcTemplate().update("update " + table +
+					" set preferredendtime=?," +
+					" validendtime=?" +
+					" where iphi=? and iplo=? and state=?",
+					new PreparedStatementSetter() {
+				@Override
+				public void setValues(PreparedStatement ps)
+						throws SQLException {
+					setTimestamp(ps, 1, preferredEndTime);
+					setTimestamp(ps, 2, validEndTime);
+					setAddress(ps, 3, inetAddr);
+					ps.setByte(5, IaAddress.COMMITTED);
+				}
+			});
+			if (cnt > 0) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Update ia options.
+	 */
+	@Override
+	protected void updateIaOptions(final InetAddress inetAddr,
+									final Collection<DhcpOption> iaOptions)
+	{
+		updateOptions("ia_options", inetAddr, iaOptions);
+	}
+
+	/**
+	 * Update ipaddr options.
+	 */
+	@Override
+	protected void updateIpAddrOptions(final InetAddress inetAddr,
+									final Collection<DhcpOption> ipAddrOptions)
+	{
+		updateOptions("ipaddr_options", inetAddr, ipAddrOptions);
+	}
+
+	/**
+	 * Find dhcp leases for ia.
+	 *
+	 * @param duid the duid
+	 * @param iatype the iatype
+	 * @param iaid the iaid
+	 * @return the list
+	 */
+	@Override
+	protected List<DhcpLease> findDhcpLeasesForIA(final byte[] duid, final byte iatype, final long iaid)
+	{
+		return getJdbcTemplate().query(
+                "select * from " + tableName(iatype) +
+                " where duid = ?" +
+                " and iatype = ?" +
+                " and iaid = ?" +
+                " order by iphi, iplo",
+                new PreparedStatementSetter() {
+            		@Override
+            		public void setValues(PreparedStatement ps) throws SQLException {
+            			ps.setBytes(1, duid);
+            			ps.setByte(2, iatype);
+            			ps.setLong(3, iaid);
+            		}
+            	},
+                new DhcpBindingRowMapper());
+	}
+
+	/**
+	 * Find dhcp lease for InetAddr.
+	 *
+	 * @param inetAddr the InetAddr
+	 * @return the DhcpLease
+	 */
+	@Override
+	protected DhcpLease findDhcpLeaseForInetAddr(final InetAddress inetAddr)
+	{
+		for (String table : tableNames(inetAddr)) {
+	        List<DhcpLease> leases = getJdbcTemplate().query(
+	                "select * from " + table +
+	                " where iphi = ? and iplo = ?",
+	                new PreparedStatementSetter() {
+	            		@Override
+	            		public void setValues(PreparedStatement ps) throws SQLException {
+	            			setAddress(ps, 1, inetAddr);
+	            		}
+	            	},
+	                new DhcpBindingRowMapper());
+	        if ((leases != null) && !leases.isEmpty()) {
+	        	return leases.get(0);
+	        }
+		}
+        return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jagornet.dhcpv6.db.IaManager#updateIaAddr(com.jagornet.dhcpv6.db.IaAddress)
+	 */
+	@Override
+	public void updateIaAddr(final IaAddress iaAddr)
+	{
+		for (String table : tableNames(iaAddr)) {
+			int cnt = getJdbcTemplate().update("update " + table +
+					" set state = ?," +
+					((iaAddr instanceof IaPrefix) ? " prefixlen = ?," : "") +
+					" starttime = ?," +
+					" preferredendtime = ?," +
+					" validendtime = ?" +
+					" where iphi = ? and iplo = ?",
+					new PreparedStatementSetter() {
+				@Override
+				public void setValues(PreparedStatement ps) throws SQLException {
+					int i = 1;
+					ps.setByte(i++, iaAddr.getState());
+					if (iaAddr instanceof IaPrefix) {
+						ps.setShort(i++, ((IaPrefix)iaAddr).getPrefixLength());
+					}
+					Date start = iaAddr.getStartTime();
+					if (start != null) {
+						java.sql.Timestamp sts = new java.sql.Timestamp(start.getTime());
+						ps.setTimestamp(i++, sts, Util.GMT_CALENDAR);
+					}
+					else {
+						ps.setNull(i++, java.sql.Types.TIMESTAMP);
+					}
+					Date preferred = iaAddr.getPreferredEndTime();
+					if (preferred != null) {
+						java.sql.Timestamp pts = new java.sql.Timestamp(preferred.getTime());
+						ps.setTimestamp(i++, pts, Util.GMT_CALENDAR);
+					}
+					else {
+						ps.setNull(i++, java.sql.Types.TIMESTAMP);
+					}
+					Date valid = iaAddr.getValidEndTime();
+					if (valid != null) {
+						java.sql.Timestamp vts = new java.sql.Timestamp(valid.getTime());
+						ps.setTimestamp(i++, vts, Util.GMT_CALENDAR);
+					}
+					else {
+						ps.setNull(i++, java.sql.Types.TIMESTAMP);
+					}
+					setAddress(ps, i, iaAddr.getIpAddress());
+				}
+			});
+			if (cnt > 0) {
+				break;
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jagornet.dhcpv6.db.IaManager#deleteIaAddr(com.jagornet.dhcpv6.db.IaAddress)
+	 */
+	@Override
+	public void deleteIaAddr(final IaAddress iaAddr)
+	{
+		for (String table : tableNames(iaAddr)) {
+			int cnt = getJdbcTemplate().update("delete from " + table +
+					" where iphi = ? and iplo = ?",
+					new PreparedStatementSetter() {
+				@Override
+				public void setValues(PreparedStatement ps) throws SQLException {
+					setAddress(ps, 1, iaAddr.getIpAddress());
+				}
+			});
+			if (cnt > 0) {
+				break;
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jagornet.dhcpv6.db.IaManager#findExistingIPs(java.net.InetAddress, java.net.InetAddress)
+	 */
+	@Override
+	public List<InetAddress> findExistingIPs(final InetAddress startAddr, final InetAddress endAddr)
+	{
+		final String[] tables = tableNames(startAddr);
+        return getJdbcTemplate().query(
+        		unionSelect("iphi, iplo", tables, rangeClause(startAddr, endAddr), "iphi, iplo"),
+                new PreparedStatementSetter() {
+					@Override
+					public void setValues(PreparedStatement ps) throws SQLException {
+						int i = 1;
+						for (int t=0; t<tables.length; t++) {
+							i = setRange(ps, i, startAddr, endAddr);
+						}
+					}
+                },
+                new RowMapper<InetAddress>() {
+                    @Override
+                    public InetAddress mapRow(ResultSet rs, int rowNum) throws SQLException {
+                    	try {
+                			return toInetAddress(rs.getLong("iphi"), rs.getLong("iplo"));
+                		}
+                    	catch (UnknownHostException e) {
+                    		// re-throw as SQLException
+                			throw new SQLException("Unable to map ipaddress", e);
+                		}
+                    }
+                });
+	}
+
+	/**
+	 * Find the leases in a range which can be offered, ordered by state and
+	 * validendtime, using the (state, iphi, iplo) index for each state.
+	 */
+	private List<DhcpLease> findUnusedLeases(final InetAddress startAddr, final InetAddress endAddr,
+			final long offerExpiration, boolean prefixes)
+	{
+		final String[] tables = tableNames(startAddr, prefixes);
+		String range = rangeClause(startAddr, endAddr);
+		String[] wheres = { "state=" + IaAddress.ADVERTISED + " and " + range + " and starttime <= ?",
+							"state=" + IaAddress.EXPIRED + " and " + range,
+							"state=" + IaAddress.RELEASED + " and " + range };
+        return getJdbcTemplate().query(
+        		unionSelect("*", tables, wheres, "state, validendtime, iphi, iplo"),
+                new PreparedStatementSetter() {
+					@Override
+					public void setValues(PreparedStatement ps) throws SQLException {
+						int i = 1;
+						for (int t=0; t<tables.length; t++) {
+							i = setRange(ps, i, startAddr, endAddr);
+							java.sql.Timestamp ts = new java.sql.Timestamp(offerExpiration);
+							ps.setTimestamp(i++, ts);
+							i = setRange(ps, i, startAddr, endAddr);
+							i = setRange(ps, i, startAddr, endAddr);
+						}
+					}
+                },
+                new DhcpBindingRowMapper());
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jagornet.dhcpv6.db.IaManager#findUnusedIaAddresses(java.net.InetAddress, java.net.InetAddress)
+	 */
+	@Override
+	public List<IaAddress> findUnusedIaAddresses(final InetAddress startAddr, final InetAddress endAddr)
+	{
+		long offerExpireMillis =
+			DhcpServerPolicies.globalPolicyAsLong(Property.BINDING_MANAGER_OFFER_EXPIRATION);
+		final long offerExpiration = new Date().getTime() - offerExpireMillis;
+		return toIaAddresses(findUnusedLeases(startAddr, endAddr, offerExpiration, false));
+	}
+
+	@Override
+	protected List<DhcpLease> findExpiredLeases(final byte iatype) {
+		// the reaper only needs the ipaddr_options for any DDNS delete
+        return getJdbcTemplate().query(
+                "select " + BINDING_COLUMNS + ", ipaddr_options from " + tableName(iatype) +
+                " where iatype = ?" +
+                " and validendtime < ?" +
+                " and state != " + IaAddress.STATIC +
+                " order by validendtime",
+                new PreparedStatementSetter() {
+            		@Override
+            		public void setValues(PreparedStatement ps) throws SQLException {
+            			ps.setByte(1, iatype);
+            			java.sql.Timestamp ts = new java.sql.Timestamp(new Date().getTime());
+            			ps.setTimestamp(2, ts, Util.GMT_CALENDAR);
+            		}
+                },
+                new DhcpBindingRowMapper(false, true));
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jagornet.dhcpv6.db.IaManager#findIaPrefixes(java.net.InetAddress, java.net.InetAddress)
+	 */
+	@Override
+	public List<IaPrefix> findIaPrefixes(final InetAddress startAddr, final InetAddress endAddr) {
+		final String[] tables = tableNames(startAddr, true);
+        List<DhcpLease> leases = getJdbcTemplate().query(
+        		unionSelect(BINDING_COLUMNS, tables, rangeClause(startAddr, endAddr), "iphi, iplo"),
+                new PreparedStatementSetter() {
+					@Override
+					public void setValues(PreparedStatement ps) throws SQLException {
+						int i = 1;
+						for (int t=0; t<tables.length; t++) {
+							i = setRange(ps, i, startAddr, endAddr);
+						}
+					}
+                },
+                new DhcpBindingRowMapper(false, false));
+		return toIaPrefixes(leases);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jagornet.dhcpv6.db.IaManager#findUnusedIaPrefixes(java.net.InetAddress, java.net.InetAddress)
+	 */
+	@Override
+	public List<IaPrefix> findUnusedIaPrefixes(final InetAddress startAddr, final InetAddress endAddr) {
+		final long offerExpiration = new Date().getTime() - 12000;	// 2 min = 120 sec = 12000 ms
+		return toIaPrefixes(findUnusedLeases(startAddr, endAddr, offerExpiration, true));
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jagornet.dhcpv6.db.IaManager#findExpiredIaPrefixes()
+	 */
+	@Override
+	public List<IaPrefix> findExpiredIaPrefixes() {
+        List<DhcpLease> leases = getJdbcTemplate().query(
+                "select " + BINDING_COLUMNS + " from " + tableName(IdentityAssoc.PD_TYPE) +
+                " where iatype = " + IdentityAssoc.PD_TYPE +
+                " and validendtime < ? order by validendtime",
+                new PreparedStatementSetter() {
+            		@Override
+            		public void setValues(PreparedStatement ps) throws SQLException {
+            			java.sql.Timestamp ts = new java.sql.Timestamp(new Date().getTime());
+            			ps.setTimestamp(1, ts, Util.GMT_CALENDAR);
+            		}
+                },
+                new DhcpBindingRowMapper(false, false));
+		return toIaPrefixes(leases);
+	}
+
+	/**
+	 * Reconcile the leases of the address family of the ranges, so that
+	 * reconciling the IPv4 ranges does not delete the IPv6 leases,
+	 * and vice versa.
+	 *
+	 * @see com.jagornet.dhcpv6.db.IaManager#reconcileIaAddresses(java.util.List)
+	 */
+	@Override
+	public void reconcileIaAddresses(List<Range> ranges) {
+		if ((ranges == null) || ranges.isEmpty()) {
+			return;
+		}
+		InetAddress firstAddr = ranges.get(0).getStartAddress();
+		List<Object> args = new ArrayList<Object>();
+		StringBuilder where = new StringBuilder();
+		// the IPv4-mapped addresses
+		if (!(firstAddr instanceof Inet4Address)) {
+			where.append("not ");
+		}
+		where.append("(iphi = ? and iplo >= ? and iplo <= ?)");
+		args.add(Long.MIN_VALUE);
+		args.add(V4_MAPPED_PREFIX ^ Long.MIN_VALUE);
+		args.add((V4_MAPPED_PREFIX | 0xffffffffL) ^ Long.MIN_VALUE);
+		for (Range range : ranges) {
+			InetAddress start = range.getStartAddress();
+			InetAddress end = range.getEndAddress();
+			where.append(" and not (iphi >= ? and iphi <= ?" +
+					" and (iphi <> ? or iplo >= ?) and (iphi <> ? or iplo <= ?))");
+			args.add(addressHi(start));
+			args.add(addressHi(end));
+			args.add(addressHi(start));
+			args.add(addressLo(start));
+			args.add(addressHi(end));
+			args.add(addressLo(end));
+		}
+		for (String table : tableNames(firstAddr)) {
+			getJdbcTemplate().update("delete from " + table + " where " + where, args.toArray());
+		}
+	}
+
+	/**
+	 * Copy the leases from the v2 dhcplease table.
+	 *
+	 * @return the number of leases copied
+	 */
+	protected int copyLeasesFromV2()
+	{
+		final List<DhcpLease> batch = new ArrayList<DhcpLease>();
+		final ResultSetExtractor<DhcpLease> v2Extractor = new DhcpLeaseResultSetExtractor();
+		final int[] cnt = new int[1];
+		getJdbcTemplate().query("select * from " + DbSchemaManager.TABLE_NAMES_V2[0],
+				new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet rs) throws SQLException {
+				batch.add(v2Extractor.extractData(rs));
+				if (batch.size() >= MIGRATION_BATCH_SIZE) {
+					insertDhcpLeases(batch);
+					cnt[0] += batch.size();
+					batch.clear();
+					log.info("Migrated " + cnt[0] + " leases");
+				}
+			}
+		});
+		if (!batch.isEmpty()) {
+			insertDhcpLeases(batch);
+			cnt[0] += batch.size();
+		}
+		return cnt[0];
+	}
+
+    /**
+     * The Class DhcpBindingRowMapper.
+     */
+    protected class DhcpBindingRowMapper implements RowMapper<DhcpLease>
+    {
+    	private final ResultSetExtractor<DhcpLease> rsExtractor;
+
+    	public DhcpBindingRowMapper() {
+    		this(true, true);
+    	}
+
+    	/**
+    	 * Instantiates a new row mapper for a query which may not select
+    	 * the options columns.
+    	 *
+    	 * @param iaOptions true if the query selects the ia_options column
+    	 * @param ipAddrOptions true if the query selects the ipaddr_options column
+    	 */
+    	public DhcpBindingRowMapper(boolean iaOptions, boolean ipAddrOptions) {
+    		rsExtractor = new DhcpBindingResultSetExtractor(iaOptions, ipAddrOptions);
+    	}
+
+	    /* (non-Javadoc)
+	     * @see org.springframework.jdbc.core.simple.RowMapper#mapRow(java.sql.ResultSet, int)
+	     */
+	    @Override
+        public DhcpLease mapRow(ResultSet rs, int rowNum) throws SQLException {
+	    	return rsExtractor.extractData(rs);
+        }
+    }
+
+    /**
+     * The Class DhcpBindingResultSetExtractor.
+     */
+    protected class DhcpBindingResultSetExtractor implements ResultSetExtractor<DhcpLease>
+    {
+    	private final boolean iaOptions;
+    	private final boolean ipAddrOptions;
+
+    	public DhcpBindingResultSetExtractor(boolean iaOptions, boolean ipAddrOptions) {
+    		this.iaOptions = iaOptions;
+    		this.ipAddrOptions = ipAddrOptions;
+    	}
+
+		/* (non-Javadoc)
+		 * @see org.springframework.jdbc.core.ResultSetExtractor#extractData(java.sql.ResultSet)
+		 */
+		@Override
+		public DhcpLease extractData(ResultSet rs)
+				throws SQLException, DataAccessException {
+	    	DhcpLease lease = new DhcpLease();
+	    	lease.setDuid(rs.getBytes("duid"));
+	    	lease.setIatype(rs.getByte("iatype"));
+	    	lease.setIaid(rs.getLong("iaid"));
+        	try {
+				lease.setIpAddress(toInetAddress(rs.getLong("iphi"), rs.getLong("iplo")));
+			}
+        	catch (UnknownHostException e) {
+        		// re-throw as SQLException
+				throw new SQLException("Unable to map dhcpbinding", e);
+			}
+        	lease.setPrefixLength(rs.getShort("prefixlen"));
+			lease.setState(rs.getByte("state"));
+			lease.setStartTime(rs.getTimestamp("starttime", Util.GMT_CALENDAR));
+			lease.setPreferredEndTime(rs.getTimestamp("preferredendtime", Util.GMT_CALENDAR));
+			lease.setValidEndTime(rs.getTimestamp("validendtime", Util.GMT_CALENDAR));
+			if (iaOptions) {
+				lease.setIaDhcpOptions(decodeOptions(rs.getBytes("ia_options")));
+			}
+			if (ipAddrOptions) {
+				lease.setIaAddrDhcpOptions(decodeOptions(rs.getBytes("ipaddr_options")));
+			}
+            return lease;
+		};
+    }
+
+	/**
+	 * For unit tests only
+	 */
+	@Override
+	public void deleteAllIAs() {
+		String[] tables = tablePerIaType ? IATYPE_TABLE_NAMES : new String[] { TABLE_NAME };
+		int cnt = 0;
+		for (String table : tables) {
+			cnt += getJdbcTemplate().update("delete from " + table);
+		}
+		log.info("Deleted all " + cnt + " dhcpbindings");
+	}
+}
@@ -29,19 +29,54 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.server.metrics.DhcpMetrics;
+
 public abstract class LeaseManager implements IaManager {
 	
 	private static Logger log = LoggerFactory.getLogger(LeaseManager.class);
+	
+	/** 
+	 * The addresses with options saved or deleted since the last flush,
+	 * which are written by the next flush, or with the lease, if it is
+	 * written first.
+	 */
+	private ConcurrentMap<InetAddress, IaAddress> pendingOptions = 
+		new ConcurrentHashMap<InetAddress, IaAddress>();
+	
+	/** The flush period of the options in milliseconds, or 0 to write them at once. */
+	private long optionsFlushPeriod = -1;
+	
+	private ScheduledExecutorService optionsFlusher;
+	
+	/** 
+	 * The addresses with lease times extended since the last flush, which
+	 * are written by the next flush, unless the lease is written first.
+	 */
+	private ConcurrentMap<InetAddress, IaAddress> pendingTimes = 
+		new ConcurrentHashMap<InetAddress, IaAddress>();
+	
+	/** The flush period of the lease times in milliseconds, or 0 to write them at once. */
+	private long timesFlushPeriod = -1;
+	
+	private ScheduledExecutorService timesFlusher;
 
 	protected abstract void insertDhcpLease(final DhcpLease lease);
 	protected abstract void updateDhcpLease(final DhcpLease lease);
@@ -50,6 +85,8 @@ public abstract class LeaseManager implements IaManager {
 			final Collection<DhcpOption> iaOptions);
 	protected abstract void updateIpAddrOptions(final InetAddress inetAddr,
 			final Collection<DhcpOption> ipAddrOptions);
+	protected abstract void updateIpAddrTimes(final InetAddress inetAddr, 
+			final Date preferredEndTime, final Date validEndTime);
 	protected abstract List<DhcpLease> findDhcpLeasesForIA(final byte[] duid, 
 			final byte iatype, final long iaid);
 	protected abstract DhcpLease findDhcpLeaseForInetAddr(final InetAddress inetAddr);
@@ -61,12 +98,17 @@ public abstract class LeaseManager implements IaManager {
 	 */
 	public void createIA(IdentityAssoc ia) {
 		if (ia != null) {
+			long start = System.nanoTime();
 			List<DhcpLease> leases = toDhcpLeases(ia);
 			if ((leases != null) && !leases.isEmpty()) {
 				for (final DhcpLease lease : leases) {
+					// any pending options are of a previous lease of the address
+					pendingOptions.remove(lease.getIpAddress());
+					pendingTimes.remove(lease.getIpAddress());
 					insertDhcpLease(lease);
 				}
 			}
+			DhcpMetrics.LEASE_CREATE.recordSince(start);
 		}
 	}
 	
@@ -76,24 +118,49 @@ public abstract class LeaseManager implements IaManager {
 	public void updateIA(IdentityAssoc ia, Collection<? extends IaAddress> addAddrs,
 			Collection<? extends IaAddress> updateAddrs, Collection<? extends IaAddress> delAddrs)
 	{
+		long start = System.nanoTime();
 		if ((addAddrs != null) && !addAddrs.isEmpty()) {
 			for (IaAddress addAddr : addAddrs) {
 				DhcpLease lease = toDhcpLease(ia, addAddr);
+				pendingOptions.remove(lease.getIpAddress());
+				pendingTimes.remove(lease.getIpAddress());
 				insertDhcpLease(lease);
 			}
 		}
 		if ((updateAddrs != null) && !updateAddrs.isEmpty()) {
 			for (IaAddress updateAddr : updateAddrs) {
 				DhcpLease lease = toDhcpLease(ia, updateAddr);
+				mergePendingOptions(lease);
+				// the lease is written with the current times
+				pendingTimes.remove(lease.getIpAddress());
 				updateDhcpLease(lease);
 			}
 		}
 		if ((delAddrs != null) && !delAddrs.isEmpty()) {
 			for (IaAddress delAddr : delAddrs) {
 				DhcpLease lease = toDhcpLease(ia, delAddr);
+				pendingOptions.remove(lease.getIpAddress());
+				pendingTimes.remove(lease.getIpAddress());
 				deleteDhcpLease(lease);
 			}
 		}
+		DhcpMetrics.LEASE_UPDATE.recordSince(start);
+	}
+	
+	/**
+	 * Merge the pending options of a lease into the lease to be written,
+	 * so they are written with the lease instead of by the next flush.
+	 * The binding managers do not change the address options, so the
+	 * options of the pending address replace those of the lease.
+	 * 
+	 * @param lease the lease
+	 */
+	protected void mergePendingOptions(DhcpLease lease)
+	{
+		IaAddress iaAddr = pendingOptions.remove(lease.getIpAddress());
+		if (iaAddr != null) {
+			lease.setIaAddrDhcpOptions(copyDhcpOptions(iaAddr));
+		}
 	}
 
 	/* (non-Javadoc)
@@ -102,12 +169,16 @@ public abstract class LeaseManager implements IaManager {
 	public void deleteIA(IdentityAssoc ia)
 	{
 		if (ia != null) {
+			long start = System.nanoTime();
 			List<DhcpLease> leases = toDhcpLeases(ia);
 			if ((leases != null) && !leases.isEmpty()) {
 				for (final DhcpLease lease : leases) {
+					pendingOptions.remove(lease.getIpAddress());
+					pendingTimes.remove(lease.getIpAddress());
 					deleteDhcpLease(lease);
 				}
 			}
+			DhcpMetrics.LEASE_DELETE.recordSince(start);
 		}
 	}
 	
@@ -126,85 +197,255 @@ public abstract class LeaseManager implements IaManager {
 		return toIaAddresses(leases);
 	}
 
+	/**
+	 * Save an option of an address.  The option is set in the given IaAddress,
+	 * which must hold the options of the lease, and written by the next flush
+	 * of the options, unless it is unchanged.  Saving the same option again
+	 * before the flush, e.g. when both the forward and reverse DDNS updates
+	 * complete, does not cause another write.
+	 * 
+	 * @see com.jagornet.dhcp.db.IaManager#saveDhcpOption(com.jagornet.dhcp.db.IaAddress, com.jagornet.dhcp.option.base.BaseDhcpOption)
+	 */
 	public void saveDhcpOption(IaAddress iaAddr, 
 							   com.jagornet.dhcp.option.base.BaseDhcpOption baseOption)
 	{
 		try {
-			byte[] newVal = baseOption.encode().array();
+			ByteBuffer bb = baseOption.encode();
 			// don't store the option code, start with length to
 			// simplify decoding when retrieving from database
-			if (baseOption.isV4()) {
-				newVal = Arrays.copyOfRange(newVal, 1, newVal.length);
-			}
-			else {
-				newVal = Arrays.copyOfRange(newVal, 2, newVal.length);
-			}
-//			DhcpOption dbOption = iaAddr.getDhcpOption(baseOption.getCode());
-			DhcpOption dbOption = findIaAddressOption(iaAddr, baseOption);
-			if (dbOption == null) {
-				dbOption = new com.jagornet.dhcp.db.DhcpOption();
-				dbOption.setCode(baseOption.getCode());
-				dbOption.setValue(newVal);
-				setDhcpOption(iaAddr, dbOption);
-			}
-			else {
-				if(!Arrays.equals(dbOption.getValue(), newVal)) {
-					dbOption.setValue(newVal);
-					setDhcpOption(iaAddr, dbOption);
+			bb.position(baseOption.isV4() ? 1 : 2);
+			synchronized (iaAddr) {
+				DhcpOption dbOption = iaAddr.getDhcpOption(baseOption.getCode());
+				if ((dbOption == null) || (dbOption.getValue() == null) ||
+						!bb.equals(ByteBuffer.wrap(dbOption.getValue()))) {
+					dbOption = new com.jagornet.dhcp.db.DhcpOption();
+					dbOption.setCode(baseOption.getCode());
+					dbOption.setValue(remainingBytes(bb));
+					iaAddr.setDhcpOption(dbOption);
+				}
+				else {
+					return;
 				}
 			}
+			writeDhcpOptions(iaAddr);
 		} 
 		catch (IOException ex) {
 			log.error("Failed to update binding with option", ex);
 		}
 		
 	}
+	
+	private static byte[] remainingBytes(ByteBuffer bb)
+	{
+		byte[] b = new byte[bb.remaining()];
+		bb.get(b);
+		return b;
+	}
 
+	/**
+	 * Delete an option of an address.  The option is removed from the given
+	 * IaAddress, which must hold the options of the lease, and the options
+	 * are written by the next flush.
+	 * 
+	 * @see com.jagornet.dhcp.db.IaManager#deleteDhcpOption(com.jagornet.dhcp.db.IaAddress, com.jagornet.dhcp.option.base.BaseDhcpOption)
+	 */
 	public void deleteDhcpOption(IaAddress iaAddr, 
 							   com.jagornet.dhcp.option.base.BaseDhcpOption baseOption)
 	{
-		DhcpLease lease = findDhcpLeaseForInetAddr(iaAddr.getIpAddress());
-		if (lease != null) {
-			Collection<DhcpOption> iaAddrOptions = lease.getIaAddrDhcpOptions();
-			if (iaAddrOptions != null) {
-				boolean deleted = false;
-				for (DhcpOption iaAddrOption : iaAddrOptions) {
-					if (iaAddrOption.getCode() == baseOption.getCode()) {
-						iaAddrOptions.remove(iaAddrOption);
-						deleted = true;
-						break;
+		synchronized (iaAddr) {
+			Collection<DhcpOption> iaAddrOptions = iaAddr.getDhcpOptions();
+			if (iaAddrOptions == null) {
+				return;
+			}
+			DhcpOption dbOption = iaAddr.getDhcpOption(baseOption.getCode());
+			if ((dbOption == null) || !iaAddrOptions.remove(dbOption)) {
+				return;
+			}
+		}
+		writeDhcpOptions(iaAddr);
+	}
+	
+	/**
+	 * Write the options of an address, at the next flush, or at once if the
+	 * database.optionsFlushPeriod policy is 0.
+	 * 
+	 * @param iaAddr the address with the options
+	 */
+	protected void writeDhcpOptions(IaAddress iaAddr)
+	{
+		if (getOptionsFlushPeriod() <= 0) {
+			updateIpAddrOptions(iaAddr.getIpAddress(), copyDhcpOptions(iaAddr));
+		}
+		else {
+			pendingOptions.put(iaAddr.getIpAddress(), iaAddr);
+		}
+	}
+	
+	/**
+	 * Copy the options of an address, which may be changed while written.
+	 * 
+	 * @param iaAddr the address
+	 * @return the options
+	 */
+	private static List<DhcpOption> copyDhcpOptions(IaAddress iaAddr)
+	{
+		synchronized (iaAddr) {
+			if (iaAddr.getDhcpOptions() == null) {
+				return new ArrayList<DhcpOption>();
+			}
+			return new ArrayList<DhcpOption>(iaAddr.getDhcpOptions());
+		}
+	}
+	
+	/**
+	 * Gets the flush period of the options, and starts the flush thread
+	 * the first time.
+	 * 
+	 * @return the flush period in milliseconds
+	 */
+	protected synchronized long getOptionsFlushPeriod()
+	{
+		if (optionsFlushPeriod < 0) {
+			optionsFlushPeriod = 
+				DhcpServerPolicies.globalPolicyAsLong(Property.DATABASE_OPTIONS_FLUSH_PERIOD);
+			if (optionsFlushPeriod > 0) {
+				optionsFlusher = startFlusher("LeaseOptionsFlusher", optionsFlushPeriod,
+						new Runnable() {
+					@Override
+					public void run() {
+						try {
+							flushDhcpOptions();
+						}
+						catch (Exception ex) {
+							log.error("Failed to flush lease options", ex);
+						}
 					}
+				});
+			}
+		}
+		return optionsFlushPeriod;
+	}
+	
+	/**
+	 * Start a daemon thread to run a flush periodically.
+	 * 
+	 * @param name the name of the thread
+	 * @param period the period in milliseconds
+	 * @param flush the flush
+	 * @return the executor of the thread
+	 */
+	private static ScheduledExecutorService startFlusher(final String name, long period,
+			Runnable flush)
+	{
+		ScheduledExecutorService flusher = 
+			Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, name);
+					thread.setDaemon(true);
+					return thread;
 				}
-				if (deleted) {
-					updateIpAddrOptions(iaAddr.getIpAddress(), iaAddrOptions);
-				}
+			});
+		flusher.scheduleWithFixedDelay(flush, period, period, TimeUnit.MILLISECONDS);
+		return flusher;
+	}
+	
+	/**
+	 * Write the options saved or deleted since the last flush, one write
+	 * for each address.
+	 * 
+	 * @return the number of addresses written
+	 */
+	public int flushDhcpOptions()
+	{
+		int cnt = 0;
+		Iterator<IaAddress> iter = pendingOptions.values().iterator();
+		while (iter.hasNext()) {
+			IaAddress iaAddr = iter.next();
+			if (pendingOptions.remove(iaAddr.getIpAddress(), iaAddr)) {
+				updateIpAddrOptions(iaAddr.getIpAddress(), copyDhcpOptions(iaAddr));
+				cnt++;
 			}
 		}
+		if ((cnt > 0) && log.isDebugEnabled()) {
+			log.debug("Flushed options of " + cnt + " leases");
+		}
+		return cnt;
+	}
+
+	/**
+	 * Update the lease times of a committed address, which is otherwise
+	 * unchanged, e.g. when a client renews the lease.  Only the preferred
+	 * and valid end times are written, and only if the lease is still
+	 * committed, so a late write does not change a released lease.
+	 * 
+	 * @see com.jagornet.dhcp.db.IaManager#updateIaAddrTimes(com.jagornet.dhcp.db.IaAddress, boolean)
+	 */
+	public void updateIaAddrTimes(IaAddress iaAddr, boolean deferred)
+	{
+		if (deferred && (getTimesFlushPeriod() > 0)) {
+			pendingTimes.put(iaAddr.getIpAddress(), iaAddr);
+		}
+		else {
+			long start = System.nanoTime();
+			pendingTimes.remove(iaAddr.getIpAddress());
+			updateIpAddrTimes(iaAddr.getIpAddress(), 
+					iaAddr.getPreferredEndTime(), iaAddr.getValidEndTime());
+			DhcpMetrics.LEASE_UPDATE.recordSince(start);
+		}
 	}
 	
-	protected DhcpOption findIaAddressOption(IaAddress iaAddr,
-			com.jagornet.dhcp.option.base.BaseDhcpOption baseOption) 
+	/**
+	 * Gets the flush period of the lease times, and starts the flush thread
+	 * the first time.
+	 * 
+	 * @return the flush period in milliseconds
+	 */
+	protected synchronized long getTimesFlushPeriod()
 	{
-		DhcpOption dbOption = null;
-		DhcpLease lease = findDhcpLeaseForInetAddr(iaAddr.getIpAddress());
-		if (lease != null) {
-			Collection<DhcpOption> iaAddrOptions = lease.getIaAddrDhcpOptions();
-			if (iaAddrOptions != null) {
-				for (DhcpOption iaAddrOption : iaAddrOptions) {
-					if (iaAddrOption.getCode() == baseOption.getCode()) {
-						dbOption = iaAddrOption;
-						break;
+		if (timesFlushPeriod < 0) {
+			timesFlushPeriod = 
+				DhcpServerPolicies.globalPolicyAsLong(Property.DATABASE_LEASE_TIMES_FLUSH_PERIOD);
+			if (timesFlushPeriod > 0) {
+				timesFlusher = startFlusher("LeaseTimesFlusher", timesFlushPeriod,
+						new Runnable() {
+					@Override
+					public void run() {
+						try {
+							flushLeaseTimes();
+						}
+						catch (Exception ex) {
+							log.error("Failed to flush lease times", ex);
+						}
 					}
-				}
+				});
 			}
 		}
-		return dbOption;
+		return timesFlushPeriod;
 	}
 	
-	protected void setDhcpOption(IaAddress iaAddr, DhcpOption option)
+	/**
+	 * Write the lease times extended since the last flush, one write for
+	 * each address, with the latest times of the address.
+	 * 
+	 * @return the number of addresses written
+	 */
+	public int flushLeaseTimes()
 	{
-		iaAddr.setDhcpOption(option);
-		updateIpAddrOptions(iaAddr.getIpAddress(), iaAddr.getDhcpOptions());
+		int cnt = 0;
+		Iterator<IaAddress> iter = pendingTimes.values().iterator();
+		while (iter.hasNext()) {
+			IaAddress iaAddr = iter.next();
+			if (pendingTimes.remove(iaAddr.getIpAddress(), iaAddr)) {
+				updateIpAddrTimes(iaAddr.getIpAddress(), 
+						iaAddr.getPreferredEndTime(), iaAddr.getValidEndTime());
+				cnt++;
+			}
+		}
+		if ((cnt > 0) && log.isDebugEnabled()) {
+			log.debug("Flushed times of " + cnt + " leases");
+		}
+		return cnt;
 	}
 
 	/* (non-Javadoc)
@@ -212,8 +453,11 @@ public abstract class LeaseManager implements IaManager {
 	 */
 	public IdentityAssoc findIA(final byte[] duid, final byte iatype, final long iaid)
 	{
+		long start = System.nanoTime();
         List<DhcpLease> leases = findDhcpLeasesForIA(duid, iatype, iaid);        
-        return toIdentityAssoc(leases);
+        IdentityAssoc ia = toIdentityAssoc(leases);
+        DhcpMetrics.LEASE_FIND.recordSince(start);
+        return ia;
 	}
 
 	/* (non-Javadoc)
@@ -240,6 +484,7 @@ public abstract class LeaseManager implements IaManager {
 	 */
 	public IdentityAssoc findIA(final InetAddress inetAddr, boolean allBindings)
 	{
+		long start = System.nanoTime();
 		IdentityAssoc ia = null;
         DhcpLease lease = findDhcpLeaseForInetAddr(inetAddr);
         if (lease != null) {
@@ -252,6 +497,7 @@ public abstract class LeaseManager implements IaManager {
 	        }
         	ia = toIdentityAssoc(leases);
         }
+        DhcpMetrics.LEASE_FIND.recordSince(start);
         return ia;
 	}
 	
@@ -420,6 +666,9 @@ public abstract class LeaseManager implements IaManager {
 		lease.setIaid(ia.getIaid());
 		lease.setIatype(ia.getIatype());
 		lease.setIpAddress(iaAddr.getIpAddress());
+		if (iaAddr instanceof IaPrefix) {
+			lease.setPrefixLength(((IaPrefix)iaAddr).getPrefixLength());
+		}
 		lease.setState(iaAddr.getState());
 		lease.setStartTime(iaAddr.getStartTime());
 		lease.setPreferredEndTime(iaAddr.getPreferredEndTime());
@@ -430,51 +679,35 @@ public abstract class LeaseManager implements IaManager {
 	}
 	
 	/**
-	 * Encode options.
+	 * Encode options.  Options read from the database which have not
+	 * been accessed are written back as is, without re-encoding.
 	 *
 	 * @param dhcpOptions the dhcp options
 	 * @return the byte[]
+	 * @see EncodedDhcpOptions
 	 */
 	protected byte[] encodeOptions(Collection<DhcpOption> dhcpOptions)
 	{
-        if (dhcpOptions != null) {
-        	ByteBuffer bb = ByteBuffer.allocate(1024);
-            for (DhcpOption option : dhcpOptions) {
-        		bb.putShort((short)option.getCode());
-        		bb.putShort((short)option.getValue().length);
-        		bb.put(option.getValue());
-            }
-            bb.flip();
-            byte[] b = new byte[bb.limit()];
-            bb.get(b);
-            return b;
-        }
-        return null;
+		if (dhcpOptions instanceof EncodedDhcpOptions) {
+			return ((EncodedDhcpOptions)dhcpOptions).getEncoded();
+		}
+		return EncodedDhcpOptions.encode(dhcpOptions);
 	}
 	
 	/**
-	 * Decode options.
+	 * Decode options.  The options are not actually decoded until
+	 * the returned collection is accessed.
 	 *
 	 * @param buf the buf
 	 * @return the collection
+	 * @see EncodedDhcpOptions
 	 */
 	protected Collection<DhcpOption> decodeOptions(byte[] buf)
 	{
-		Collection<DhcpOption> options = null;
-        if (buf != null) {
-        	ByteBuffer bb = ByteBuffer.wrap(buf);
-        	options = new ArrayList<DhcpOption>();
-        	while (bb.hasRemaining()) {
-        		DhcpOption option = new DhcpOption();
-        		option.setCode(bb.getShort());
-        		int len = bb.getShort();
-        		byte[] val = new byte[len];
-        		bb.get(val);
-        		option.setValue(val);
-        		options.add(option);
-        	}
-        }
-        return options;
+		if (buf != null) {
+			return new EncodedDhcpOptions(buf);
+		}
+		return null;
 	}
 
 }
@@ -29,6 +29,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
@@ -244,6 +245,20 @@ public class MongoLeaseManager extends LeaseManager
 				new BasicDBObject("iaAddrDhcpOptions", convertDhcpOptions(ipAddrOptions)));
 		dhcpLeases.update(ipAddressQuery(inetAddr), update);
 	}
+	
+	/**
+	 * Update the end times of a committed ipaddr.
+	 */
+	protected void updateIpAddrTimes(final InetAddress inetAddr, 
+									final Date preferredEndTime, final Date validEndTime)
+	{
+		DBObject query = ipAddressQuery(inetAddr);
+		query.put("state", IaAddress.COMMITTED);
+		DBObject update = new BasicDBObject("$set", 
+				new BasicDBObject("preferredEndTime", preferredEndTime).
+						append("validEndTime", validEndTime));
+		dhcpLeases.update(query, update);
+	}
 
 	/**
 	 * Find dhcp leases for ia.
@@ -344,11 +359,16 @@ public class MongoLeaseManager extends LeaseManager
 		
 		DBObject query = new BasicDBObject("$and", ipBetw);
 
-		DBCursor cursor = dhcpLeases.find(query).sort(new BasicDBObject("ipAddress", 1));
+		// only fetch the ipAddress field, there is no need for the whole lease
+		DBCursor cursor = dhcpLeases.find(query, new BasicDBObject("ipAddress", 1))
+											.sort(new BasicDBObject("ipAddress", 1));
 		try {
-			if (cursor.count() > 0) {
-				while (cursor.hasNext()) {
-					inetAddrs.add(convertDBObject(cursor.next()).getIpAddress());
+			while (cursor.hasNext()) {
+				try {
+					inetAddrs.add(InetAddress.getByAddress((byte[])cursor.next().get("ipAddress")));
+				}
+				catch (UnknownHostException ex) {
+					log.error("Failed to convert ipAddress: " + ex);
 				}
 			}
 		}
@@ -412,7 +432,9 @@ public class MongoLeaseManager extends LeaseManager
 		DBObject query = new BasicDBObject("iatype", iatype).
 									append("state", new BasicDBObject("$ne", IaAddress.STATIC)).
 									append("validEndTime", new BasicDBObject("$lt", new Date()));
-		DBCursor cursor = dhcpLeases.find(query).sort(new BasicDBObject("validEndTime", 1));
+		// the reaper only needs the iaAddrDhcpOptions for any DDNS delete
+		DBObject fields = new BasicDBObject("iaDhcpOptions", 0);
+		DBCursor cursor = dhcpLeases.find(query, fields).sort(new BasicDBObject("validEndTime", 1));
 		try {
 			if (cursor.count() > 0) {
 				leases = new ArrayList<DhcpLease>();
@@ -427,6 +449,29 @@ public class MongoLeaseManager extends LeaseManager
 		return leases;
 	}
 	
+	/* (non-Javadoc)
+	 * @see com.jagornet.dhcpv6.db.IaManager#findIaPrefixes(java.net.InetAddress, java.net.InetAddress)
+	 */
+	@Override
+	public List<IaPrefix> findIaPrefixes(final InetAddress startAddr, final InetAddress endAddr) {
+		BasicDBList ipBetw = new BasicDBList();
+		ipBetw.add(new BasicDBObject("ipAddress", new BasicDBObject("$gte", startAddr.getAddress())));
+		ipBetw.add(new BasicDBObject("ipAddress", new BasicDBObject("$lte", endAddr.getAddress())));
+		
+		DBObject query = new BasicDBObject("$and", ipBetw);
+		DBCursor cursor = dhcpLeases.find(query).sort(new BasicDBObject("ipAddress", 1));
+		try {
+			List<DhcpLease> leases = new ArrayList<DhcpLease>();
+			while (cursor.hasNext()) {
+				leases.add(convertDBObject(cursor.next()));
+			}
+			return toIaPrefixes(leases);
+		}
+		finally {
+			cursor.close();
+		}
+	}
+	
 	/* (non-Javadoc)
 	 * @see com.jagornet.dhcpv6.db.IaManager#findUnusedIaPrefixes(java.net.InetAddress, java.net.InetAddress)
 	 */
@@ -483,7 +528,10 @@ public class MongoLeaseManager extends LeaseManager
 		List<DhcpLease> leases = null;
 		DBObject query = new BasicDBObject("iatype", IdentityAssoc.PD_TYPE).
 									append("validEndTime", new BasicDBObject("$lt", new Date()));
-		DBCursor cursor = dhcpLeases.find(query).sort(new BasicDBObject("validEndTime", 1));
+		// the prefix reaper does not need any options
+		DBObject fields = new BasicDBObject("iaDhcpOptions", 0).
+									append("iaAddrDhcpOptions", 0);
+		DBCursor cursor = dhcpLeases.find(query, fields).sort(new BasicDBObject("validEndTime", 1));
 		try {
 			if (cursor.count() > 0) {
 				leases = new ArrayList<DhcpLease>();
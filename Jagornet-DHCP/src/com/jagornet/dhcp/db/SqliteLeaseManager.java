@@ -56,6 +56,14 @@ public class SqliteLeaseManager extends LeaseManager
 	
 	protected static File DATABASE_FILE = new File("db/sqlite/jagornet-dhcpv6");
 	
+	/**
+	 * The dhcplease columns, without the ia_options and ipaddr_options
+	 * blobs, for queries which do not need the options of the leases.
+	 */
+	protected static final String LEASE_COLUMNS =
+			"ipaddress, duid, iatype, iaid, prefixlen, state," +
+			" starttime, preferredendtime, validendtime";
+	
 	private static final ThreadLocal<SQLiteConnection> threadConnection =
 		new ThreadLocal<SQLiteConnection>() {
 		    @Override
@@ -275,6 +283,49 @@ public class SqliteLeaseManager extends LeaseManager
 			closeConnection(connection);
 		}
 	}
+	
+	/**
+	 * Update the end times of a committed ipaddr.
+	 */
+	protected void updateIpAddrTimes(final InetAddress inetAddr, 
+									final Date preferredEndTime, final Date validEndTime)
+	{
+		SQLiteConnection connection = null;
+		SQLiteStatement statement = null;
+		try {
+			connection = getSQLiteConnection();
+			statement = connection.prepare("update dhcplease" +
+						" set preferredendtime=?," +
+						" validendtime=?" +
+						" where ipaddress=? and state=?");
+			if (preferredEndTime != null) {
+				statement.bind(1, preferredEndTime.getTime());
+			}
+			else {
+				statement.bindNull(1);
+			}
+			if (validEndTime != null) {
+				statement.bind(2, validEndTime.getTime());
+			}
+			else {
+				statement.bindNull(2);
+			}
+			statement.bind(3, inetAddr.getAddress());
+			statement.bind(4, IaAddress.COMMITTED);
+			
+			while (statement.step()) {
+				log.debug("updateIpAddrTimes: step=true");
+			}
+		}
+		catch (SQLiteException ex) {
+			log.error("updateIpAddrTimes failed", ex);
+			throw new RuntimeException(ex);
+		}
+		finally {
+			closeStatement(statement);
+			closeConnection(connection);
+		}
+	}
 
 	/**
 	 * Find dhcp leases for ia.
@@ -519,15 +570,16 @@ public class SqliteLeaseManager extends LeaseManager
 		SQLiteStatement statement = null;
 		try {
 			connection = getSQLiteConnection();
+			// the reaper only needs the ipaddr_options for any DDNS delete
 			statement = connection.prepare(
-		                "select * from dhcplease" +
+		                "select " + LEASE_COLUMNS + ", ipaddr_options from dhcplease" +
 		                " where iatype = ?" +
 		                " and state != " + IaAddress.STATIC +
 		                " and validendtime < ? order by validendtime");
 			statement.bind(1, iatype);
 			statement.bind(2, new Date().getTime());
 			
-			return mapLeases(statement);
+			return mapLeases(statement, false, true);
 		}
 		catch (SQLiteException ex) {
 			log.error("findExpiredLeases failed", ex);
@@ -539,6 +591,34 @@ public class SqliteLeaseManager extends LeaseManager
 		}
 	}
 	
+	/* (non-Javadoc)
+	 * @see com.jagornet.dhcpv6.db.IaManager#findIaPrefixes(java.net.InetAddress, java.net.InetAddress)
+	 */
+	@Override
+	public List<IaPrefix> findIaPrefixes(final InetAddress startAddr, final InetAddress endAddr) {
+		SQLiteConnection connection = null;
+		SQLiteStatement statement = null;
+		try {
+			connection = getSQLiteConnection();
+			statement = connection.prepare(
+		                "select " + LEASE_COLUMNS + " from dhcplease" +
+		                " where ipaddress >= ? and ipaddress <= ?" +
+		                " order by ipaddress");
+			statement.bind(1, startAddr.getAddress());
+			statement.bind(2, endAddr.getAddress());
+			
+			return toIaPrefixes(mapLeases(statement, false, false));
+		}
+		catch (SQLiteException ex) {
+			log.error("findIaPrefixes failed", ex);
+			throw new RuntimeException(ex);
+		}
+		finally {
+			closeStatement(statement);
+			closeConnection(connection);
+		}
+	}
+	
 	/* (non-Javadoc)
 	 * @see com.jagornet.dhcpv6.db.IaManager#findUnusedIaPrefixes(java.net.InetAddress, java.net.InetAddress)
 	 */
@@ -587,11 +667,11 @@ public class SqliteLeaseManager extends LeaseManager
 		try {
 			connection = getSQLiteConnection();
 			statement = connection.prepare(
-						"select * from dhcplease" +
+						"select " + LEASE_COLUMNS + " from dhcplease" +
 		                " where iatype = " + IdentityAssoc.PD_TYPE +
 		                " and validendtime < ? order by validendtime");
             statement.bind(1, new Date().getTime());
-            List<DhcpLease> leases = mapLeases(statement);
+            List<DhcpLease> leases = mapLeases(statement, false, false);
             return toIaPrefixes(leases);
 		}
 		catch (SQLiteException ex) {
@@ -645,9 +725,22 @@ public class SqliteLeaseManager extends LeaseManager
 	}
 
     /**
-     * The Class DhcpLeaseRowMapper.
+     * Map the leases selected by the statement.
      */
     protected List<DhcpLease> mapLeases(SQLiteStatement statement) throws SQLiteException {
+    	return mapLeases(statement, true, true);
+    }
+
+    /**
+     * Map the leases selected by a statement which may not select the
+     * options columns, which must otherwise be the last columns selected.
+     *
+     * @param statement the statement
+     * @param iaOptions true if the statement selects the ia_options column
+     * @param ipAddrOptions true if the statement selects the ipaddr_options column
+     */
+    protected List<DhcpLease> mapLeases(SQLiteStatement statement, 
+    		boolean iaOptions, boolean ipAddrOptions) throws SQLiteException {
 		
     	List<DhcpLease> leases = new ArrayList<DhcpLease>();
     	
@@ -673,8 +766,13 @@ public class SqliteLeaseManager extends LeaseManager
 	    	long validendtime;
 	    	validendtime = statement.columnLong(8);
 			lease.setValidEndTime(new Date(validendtime));
-			lease.setIaDhcpOptions(decodeOptions(statement.columnBlob(9)));
-			lease.setIaAddrDhcpOptions(decodeOptions(statement.columnBlob(10)));
+			int col = 9;
+			if (iaOptions) {
+				lease.setIaDhcpOptions(decodeOptions(statement.columnBlob(col++)));
+			}
+			if (ipAddrOptions) {
+				lease.setIaAddrDhcpOptions(decodeOptions(statement.columnBlob(col++)));
+			}
 			leases.add(lease);
 		}
 		return leases;
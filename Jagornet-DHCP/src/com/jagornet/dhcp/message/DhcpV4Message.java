@@ -123,6 +123,13 @@ public class DhcpV4Message implements DhcpMessage
     protected String file;
     protected static byte[] magicCookie = new byte[] { (byte)99, (byte)130, (byte)83, (byte)99 };
     protected Map<Integer, DhcpOption> dhcpOptions = new HashMap<Integer, DhcpOption>();
+    
+    // the options in wire format, starting with the magic cookie, as received
+    protected byte[] receivedOptions;
+    
+    // the options in wire format to be sent instead of encoding the options,
+    // which is dropped when the options are changed
+    protected byte[] encodedOptions;
 
     /**
      * Construct a DhcpMessage.
@@ -232,6 +239,9 @@ public class DhcpV4Message implements DhcpMessage
      */
     protected ByteBuffer encodeOptions() throws IOException
     {
+    	if (encodedOptions != null) {
+    		return ByteBuffer.wrap(encodedOptions);
+    	}
     	ByteBuffer buf = ByteBuffer.allocate(788); // 788 - 236 = 1020 (options)
         if (dhcpOptions != null) {
         	// magic cookie as per rfc1497
@@ -358,6 +368,7 @@ public class DhcpV4Message implements DhcpMessage
       			buf.get(fbuf);
       			file = new String(fbuf);
       			log.debug("file=" + file);
+      			int optionsStart = buf.position();
       			byte[] cookieBuf = new byte[4];
       			buf.get(cookieBuf);
       			if (!Arrays.equals(cookieBuf, magicCookie)) {
@@ -366,6 +377,9 @@ public class DhcpV4Message implements DhcpMessage
                     throw new IOException(errmsg);
       			}
       			decodeOptions(buf);
+      			receivedOptions = new byte[buf.position() - optionsStart];
+      			buf.position(optionsStart);
+      			buf.get(receivedOptions);
             }
             else {
                 String errmsg = "Failed to decode DHCPv4 message: packet too short";
@@ -470,11 +484,13 @@ public class DhcpV4Message implements DhcpMessage
     {
         if(dhcpOption != null) {
             dhcpOptions.put(dhcpOption.getCode(), dhcpOption);
+            encodedOptions = null;
         }
     }
     public void putAllDhcpOptions(Map<Integer, DhcpOption> dhcpOptions)
     {
     	this.dhcpOptions.putAll(dhcpOptions);
+    	encodedOptions = null;
     }
     
     public Map<Integer, DhcpOption> getDhcpOptionMap()
@@ -484,6 +500,48 @@ public class DhcpV4Message implements DhcpMessage
     public void setDhcpOptionMap(Map<Integer, DhcpOption> dhcpOptions)
     {
         this.dhcpOptions = dhcpOptions;
+        encodedOptions = null;
+    }
+    
+    /**
+     * Gets the options as received, in wire format starting with the magic
+     * cookie, e.g. to compare the options of two requests of a client.
+     * 
+     * @return the received options, or null if the message was not decoded
+     */
+    public byte[] getReceivedOptions()
+    {
+    	return receivedOptions;
+    }
+    
+    /**
+     * Gets the options in wire format, as they are sent.
+     * 
+     * @return the encoded options, starting with the magic cookie
+     * @throws IOException
+     */
+    public byte[] getEncodedOptions() throws IOException
+    {
+    	if (encodedOptions != null) {
+    		return encodedOptions;
+    	}
+    	ByteBuffer buf = encodeOptions();
+    	byte[] b = new byte[buf.remaining()];
+    	buf.get(b);
+    	return b;
+    }
+    
+    /**
+     * Sets the options in wire format, which are sent instead of encoding the
+     * options of this message, until the options are changed.  The options
+     * must be the encoding of the options of this message, as the options are
+     * used for everything but the encoding.
+     * 
+     * @param encodedOptions the encoded options, starting with the magic cookie
+     */
+    public void setEncodedOptions(byte[] encodedOptions)
+    {
+    	this.encodedOptions = encodedOptions;
     }
 
     public Collection<DhcpOption> getDhcpOptions()
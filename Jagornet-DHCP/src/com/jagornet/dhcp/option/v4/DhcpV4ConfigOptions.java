@@ -70,10 +70,9 @@ public class DhcpV4ConfigOptions
 	 */
 	public DhcpV4ConfigOptions(V4ConfigOptionsType configOptions)
 	{
-		if (configOptions != null) 
-			this.configOptions = configOptions;
-		else
-			this.configOptions = V4ConfigOptionsType.Factory.newInstance();
+		// without options, the empty XML object is created when it is needed,
+		// since most links and pools have few of their kinds of options
+		this.configOptions = configOptions;
 		
 		initDhcpV4OptionMap();
 	}
@@ -86,6 +85,9 @@ public class DhcpV4ConfigOptions
     public Map<Integer, DhcpOption> initDhcpV4OptionMap()
     {
 		optionMap.clear();
+		if (configOptions == null) {
+			return optionMap;
+		}
 		
 		if (configOptions.isSetV4DomainNameOption()) {
 			V4DomainNameOption domainNameOption = configOptions.getV4DomainNameOption();
@@ -192,6 +194,9 @@ public class DhcpV4ConfigOptions
 	 * @return the config options
 	 */
 	public V4ConfigOptionsType getV4ConfigOptions() {
+		if (configOptions == null) {
+			configOptions = V4ConfigOptionsType.Factory.newInstance();
+		}
 		return configOptions;
 	}
 
@@ -80,10 +80,9 @@ public class DhcpV6ConfigOptions
 	 */
 	public DhcpV6ConfigOptions(V6ConfigOptionsType configOptions)
 	{
-		if (configOptions != null) 
-			this.configOptions = configOptions;
-		else
-			this.configOptions = V6ConfigOptionsType.Factory.newInstance();
+		// without options, the empty XML object is created when it is needed,
+		// since most links and pools have few of their kinds of options
+		this.configOptions = configOptions;
 		
 		initDhcpOptionMap();
 	}
@@ -96,6 +95,9 @@ public class DhcpV6ConfigOptions
     public Map<Integer, DhcpOption> initDhcpOptionMap()
     {
 		optionMap.clear();
+		if (configOptions == null) {
+			return optionMap;
+		}
 		
 		if (configOptions.isSetV6BcmcsAddressesOption()) {
 			V6BcmcsAddressesOption bcmcsAddressesOption = configOptions.getV6BcmcsAddressesOption();
@@ -280,6 +282,9 @@ public class DhcpV6ConfigOptions
 	 * @return the config options
 	 */
 	public V6ConfigOptionsType getV6ConfigOptions() {
+		if (configOptions == null) {
+			configOptions = V6ConfigOptionsType.Factory.newInstance();
+		}
 		return configOptions;
 	}
 
@@ -32,6 +32,7 @@ import java.lang.management.ManagementFactory;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.InterfaceAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
@@ -66,11 +67,17 @@ import org.springframework.context.support.ClassPathXmlApplicationContext;
 import com.jagornet.dhcp.Version;
 import com.jagornet.dhcp.db.DbSchemaManager;
 import com.jagornet.dhcp.db.IaManager;
+import com.jagornet.dhcp.db.LeaseManager;
 import com.jagornet.dhcp.server.config.DhcpServerConfigException;
 import com.jagornet.dhcp.server.config.DhcpServerConfiguration;
 import com.jagornet.dhcp.server.config.DhcpServerPolicies;
 import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.server.log.TransactionLog;
+import com.jagornet.dhcp.server.metrics.BindingPoolCollector;
+import com.jagornet.dhcp.server.metrics.MetricsHttpServer;
+import com.jagornet.dhcp.server.metrics.MetricsRegistry;
 import com.jagornet.dhcp.server.netty.NettyDhcpServer;
+import com.jagornet.dhcp.server.request.binding.AddressAffinityIndex;
 import com.jagornet.dhcp.server.request.binding.V4AddrBindingManager;
 import com.jagornet.dhcp.server.request.binding.V6NaAddrBindingManager;
 import com.jagornet.dhcp.server.request.binding.V6PrefixBindingManager;
@@ -111,6 +118,7 @@ public class JagornetDhcpServer
     public static String APP_CONTEXT_JDBC_FILENAME = "com/jagornet/dhcp/context_jdbc.xml";
     public static String APP_CONTEXT_JDBC_V1SCHEMA_FILENAME = "com/jagornet/dhcp/context_jdbc_v1schema.xml";
     public static String APP_CONTEXT_JDBC_V2SCHEMA_FILENAME = "com/jagornet/dhcp/context_jdbc_v2schema.xml";    
+    public static String APP_CONTEXT_JDBC_V3SCHEMA_FILENAME = "com/jagornet/dhcp/context_jdbc_v3schema.xml";    
     public static String APP_CONTEXT_SQLITE_V2SCHEMA_FILENAME = "com/jagornet/dhcp/context_sqlite_v2schema.xml";    
     public static String APP_CONTEXT_MONGO_V2SCHEMA_FILENAME = "com/jagornet/dhcp/context_mongo_v2schema.xml";    
     
@@ -130,6 +138,8 @@ public class JagornetDhcpServer
     
     protected DhcpServerConfiguration serverConfig = null;
     protected ApplicationContext context = null;
+    protected MetricsHttpServer metricsServer = null;
+    protected TransactionLog transactionLog = null;
     
     /**
      * Instantiates the DHCPv6 server.
@@ -177,6 +187,19 @@ public class JagornetDhcpServer
             public void run() {
             	  log.info("Stopping Jagornet DHCPv6 Server");
                   System.out.println("Stopping Jagornet DHCPv6 Server: " + new Date());
+                  if ((serverConfig != null) && (serverConfig.getIaMgr() instanceof LeaseManager)) {
+                	  ((LeaseManager)serverConfig.getIaMgr()).flushDhcpOptions();
+                  }
+                  if (metricsServer != null) {
+                	  metricsServer.shutdown();
+                  }
+                  if (transactionLog != null) {
+                	  transactionLog.shutdown();
+                  }
+                  AddressAffinityIndex affinityIndex = AddressAffinityIndex.getInstance();
+                  if (affinityIndex != null) {
+                	  affinityIndex.save();
+                  }
                 }
             });
     	
@@ -200,7 +223,17 @@ public class JagornetDhcpServer
 		
 		loadManagers();
 		
+        long reloadCheckPeriod = 
+        	DhcpServerPolicies.globalPolicyAsLong(Property.CONFIG_RELOAD_CHECK_PERIOD);
+        if (reloadCheckPeriod > 0) {
+        	serverConfig.startReloadChecker(reloadCheckPeriod);
+        }
+		
         registerLog4jInJmx();
+        
+        startMetricsServer();
+        
+        transactionLog = TransactionLog.getInstance();
 
         String msg = null;
         
@@ -286,6 +319,9 @@ public class JagornetDhcpServer
         	else if (schemaVersion == 2) {
         		jdbcContext = APP_CONTEXT_JDBC_V2SCHEMA_FILENAME;
         	}
+        	else if (schemaVersion == 3) {
+        		jdbcContext = APP_CONTEXT_JDBC_V3SCHEMA_FILENAME;
+        	}
         	else {
         		throw new IllegalStateException("Unsupported schema version: " + schemaVersion);
         	}
@@ -433,6 +469,15 @@ public class JagornetDhcpServer
         	.create("c");
         options.addOption(configFileOption);
         
+        Option configDigestOption =
+        	OptionBuilder.withLongOpt("configdigest")
+        	.withArgName("filename")
+        	.withDescription("Configuration digest file, to skip the validation of" +
+        			" an unchanged configuration file at startup (default = none).")
+        	.hasArg()
+        	.create("cd");
+        options.addOption(configDigestOption);
+        
         Option portOption =
         	OptionBuilder.withLongOpt("v6port")
         	.withArgName("portnum")
@@ -536,6 +581,9 @@ public class JagornetDhcpServer
             if (cmd.hasOption("c")) {
                 configFilename = cmd.getOptionValue("c");
             }
+            if (cmd.hasOption("cd")) {
+            	DhcpServerConfiguration.configDigestFilename = cmd.getOptionValue("cd");
+            }
             if (cmd.hasOption("6p")) {
             	String p = cmd.getOptionValue("6p");
             	try {
@@ -988,6 +1036,27 @@ public class JagornetDhcpServer
         return DhcpServerConfiguration.getInstance().getDhcpServerConfig();
     }
         
+    /**
+     * Start the HTTP server of the metrics, and add the gauges of the
+     * binding pools, unless the metrics.http.port policy is zero.
+     * 
+     * @throws IOException if the socket can not be bound
+     */
+    protected void startMetricsServer() throws IOException
+    {
+        int port = DhcpServerPolicies.globalPolicyAsInt(Property.METRICS_HTTP_PORT);
+        if (port <= 0) {
+        	log.info("Metrics HTTP server disabled");
+        	return;
+        }
+        InetAddress addr = 
+        	InetAddress.getByName(DhcpServerPolicies.globalPolicy(Property.METRICS_HTTP_ADDRESS));
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.addCollector(new BindingPoolCollector(serverConfig));
+        metricsServer = new MetricsHttpServer(registry, new InetSocketAddress(addr, port));
+        metricsServer.start();
+    }
+    
     /**
      * Register Log4J in JMX to allow dynamic configuration
      * of server logging using JMX client (e.g. jconsole).
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file DhcpServerConfigDigest.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.config;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagornet.dhcp.xml.DhcpServerConfigDocument;
+
+/**
+ * The Class DhcpServerConfigDigest.  Records the digest of the last server
+ * configuration file which passed the schema validation, so an unchanged
+ * file is not validated again when the server is restarted.  Only the
+ * validation is skipped: the configuration is still parsed from the file.
+ * 
+ * The digest file is a small binary file with the name of the compiled schema
+ * type system, and the length and SHA-1 digest of the configuration file.
+ * A digest file written for another schema, or which can not be read, does not
+ * match any configuration.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class DhcpServerConfigDigest
+{
+	private static Logger log = LoggerFactory.getLogger(DhcpServerConfigDigest.class);
+	
+	private static final int MAGIC = 0x4A444344;	// JDCD
+	private static final int VERSION = 1;
+	
+	private String filename;
+	
+	/**
+	 * Instantiates a new configuration digest.
+	 * 
+	 * @param filename the digest file
+	 */
+	public DhcpServerConfigDigest(String filename)
+	{
+		this.filename = filename;
+	}
+	
+	/**
+	 * Gets the digest of the contents of a configuration file.
+	 * 
+	 * @param data the contents of the file
+	 * 
+	 * @return the digest
+	 */
+	public static byte[] digest(byte[] data)
+	{
+		try {
+			return MessageDigest.getInstance("SHA-1").digest(data);
+		}
+		catch (NoSuchAlgorithmException ex) {
+			// every Java platform is required to support SHA-1
+			throw new IllegalStateException(ex);
+		}
+	}
+	
+	/**
+	 * Checks if the configuration with the digest was validated.
+	 * 
+	 * @param length the length of the configuration file
+	 * @param digest the digest of the configuration file
+	 * 
+	 * @return true, if the digest file matches the configuration
+	 */
+	public boolean isValidated(long length, byte[] digest)
+	{
+		File file = new File(filename);
+		if (!file.exists()) {
+			return false;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(file));
+			if ((in.readInt() != MAGIC) || (in.readInt() != VERSION) ||
+					!in.readUTF().equals(getSchemaName()) || (in.readLong() != length)) {
+				return false;
+			}
+			byte[] recorded = new byte[in.readUnsignedShort()];
+			in.readFully(recorded);
+			return Arrays.equals(recorded, digest);
+		}
+		catch (IOException ex) {
+			log.warn("Failed to read configuration digest: " + filename + ": " + ex);
+			return false;
+		}
+		finally {
+			if (in != null) {
+				try { in.close(); } catch (IOException ex) { }
+			}
+		}
+	}
+	
+	/**
+	 * Record the configuration with the digest as validated.  A failure to
+	 * write the digest file is logged, and only means the next load validates.
+	 * 
+	 * @param length the length of the configuration file
+	 * @param digest the digest of the configuration file
+	 */
+	public void setValidated(long length, byte[] digest)
+	{
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new FileOutputStream(filename));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(getSchemaName());
+			out.writeLong(length);
+			out.writeShort(digest.length);
+			out.write(digest);
+			out.close();
+			out = null;
+			log.info("Configuration digest saved: " + filename);
+		}
+		catch (IOException ex) {
+			log.warn("Failed to save configuration digest: " + filename + ": " + ex);
+		}
+		finally {
+			if (out != null) {
+				try { out.close(); } catch (IOException ex) { }
+			}
+		}
+	}
+	
+	/**
+	 * The name of the type system of the schema, which changes
+	 * whenever the schema is compiled.
+	 */
+	private static String getSchemaName()
+	{
+		return DhcpServerConfigDocument.type.getTypeSystem().getName();
+	}
+}
@@ -25,6 +25,9 @@
  */
 package com.jagornet.dhcp.server.config;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -34,15 +37,24 @@ import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.TreeMap;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.xmlbeans.QNameSet;
 import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlObject;
 import org.apache.xmlbeans.XmlOptions;
 import org.apache.xmlbeans.XmlValidationError;
 import org.slf4j.Logger;
@@ -68,6 +80,7 @@ import com.jagornet.dhcp.server.request.binding.V6PrefixBindingManager;
 import com.jagornet.dhcp.server.request.binding.V6TaAddrBindingManager;
 import com.jagornet.dhcp.util.DhcpConstants;
 import com.jagornet.dhcp.util.Subnet;
+import com.jagornet.dhcp.util.SubnetTrie;
 import com.jagornet.dhcp.util.Util;
 import com.jagornet.dhcp.xml.ClientClassExpression;
 import com.jagornet.dhcp.xml.DhcpServerConfigDocument;
@@ -95,9 +108,14 @@ import com.jagornet.dhcp.xml.V6ServerIdOption;
  * Title: DhcpServerConfiguration
  * Description: The class representing the DHCPv6 server configuration.
  * 
+ * The configuration loaded from the file is kept in an immutable Snapshot,
+ * which is replaced as a whole when the configuration is reloaded.  Each
+ * request uses the snapshot that was current when it looked up its link,
+ * so requests in progress finish against the configuration they started with.
+ * 
  * @author A. Gregory Rabil
  */
-public class DhcpServerConfiguration
+public class DhcpServerConfiguration implements DhcpServerConfigurationMBean
 {	
 	
 	/** The log. */
@@ -105,24 +123,22 @@ public class DhcpServerConfiguration
     
     /** The config filename. */
     public static String configFilename = JagornetDhcpServer.DEFAULT_CONFIG_FILENAME;
+    
+    /** The file of the DhcpServerConfigDigest, null to always validate the configuration. */
+    public static String configDigestFilename;
 
 	/** The INSTANCE. */
 	private static DhcpServerConfiguration INSTANCE;
 	
-    /** The XML object representing the configuration. */
-    private DhcpServerConfig xmlServerConfig;
-    
-    private DhcpV6ConfigOptions globalMsgConfigOptions;
-    private DhcpV6ConfigOptions globalIaNaConfigOptions;
-    private DhcpV6ConfigOptions globalNaAddrConfigOptions;
-    private DhcpV6ConfigOptions globalIaTaConfigOptions;
-    private DhcpV6ConfigOptions globalTaAddrConfigOptions;
-    private DhcpV6ConfigOptions globalIaPdConfigOptions;
-    private DhcpV6ConfigOptions globalPrefixConfigOptions;
-    private DhcpV4ConfigOptions globalV4ConfigOptions;
+	public static final String OBJECT_NAME = "com.jagornet.dhcp:type=DhcpServerConfiguration";
+	
+    /** The current configuration. */
+    private volatile Snapshot snapshot;
     
-    /** The link map. */
-    private SortedMap<Subnet, DhcpLink> linkMap;
+    private int reloadCount;
+    private Date lastReloadTime;
+    private String lastReloadError;
+    private Timer reloadChecker;
     
     private V6NaAddrBindingManager naAddrBindingMgr;
     private V6TaAddrBindingManager taAddrBindingMgr;
@@ -140,6 +156,7 @@ public class DhcpServerConfiguration
     	if (INSTANCE == null) {
     		try {
     			INSTANCE = new DhcpServerConfiguration();
+    			INSTANCE.registerMBean();
     		}
     		catch (Exception ex) {
     			log.error("Failed to initialize DhcpServerConfiguration", ex);
@@ -155,31 +172,38 @@ public class DhcpServerConfiguration
      */
     private DhcpServerConfiguration() throws DhcpServerConfigException, XmlException, IOException
     {
-    	xmlServerConfig = loadConfig(configFilename);
-    	if (xmlServerConfig != null) {
-	    	initServerIds();
-	    	globalMsgConfigOptions = new DhcpV6ConfigOptions(xmlServerConfig.getV6MsgConfigOptions());
-	    	globalIaNaConfigOptions = new DhcpV6ConfigOptions(xmlServerConfig.getV6IaNaConfigOptions());
-	    	globalNaAddrConfigOptions = new DhcpV6ConfigOptions(xmlServerConfig.getV6NaAddrConfigOptions());
-	    	globalIaTaConfigOptions = new DhcpV6ConfigOptions(xmlServerConfig.getV6IaTaConfigOptions());
-	    	globalTaAddrConfigOptions = new DhcpV6ConfigOptions(xmlServerConfig.getV6TaAddrConfigOptions());
-	    	globalIaPdConfigOptions = new DhcpV6ConfigOptions(xmlServerConfig.getV6IaPdConfigOptions());
-	    	globalPrefixConfigOptions = new DhcpV6ConfigOptions(xmlServerConfig.getV6PrefixConfigOptions());
-	    	globalV4ConfigOptions = new DhcpV4ConfigOptions(xmlServerConfig.getV4ConfigOptions());
-	    	initLinkMap();
-    	}
-    	else {
-    		throw new IllegalStateException("Failed to load configuration file: " + configFilename);
-    	}
+    	snapshot = loadSnapshot(configFilename);
     }
     
+    /**
+     * Load a configuration snapshot from a file.
+     * 
+     * @param filename the full path and filename for the configuration
+     * 
+     * @return the snapshot
+     * 
+     * @throws DhcpServerConfigException, XmlException, IOException
+     */
+    protected Snapshot loadSnapshot(String filename) 
+    		throws DhcpServerConfigException, XmlException, IOException
+    {
+    	DhcpServerConfig xmlServerConfig = loadConfig(filename);
+    	if (xmlServerConfig == null) {
+    		throw new IllegalStateException("Failed to load configuration file: " + filename);
+    	}
+    	initServerIds(xmlServerConfig, filename);
+    	return new Snapshot(xmlServerConfig, buildLinkMap(xmlServerConfig));
+    }
     
     /**
      * Initialize the server ids.
      * 
+     * @param xmlServerConfig the configuration
+     * @param filename the file of the configuration, saved if the ids are generated
+     * 
      * @throws IOException the exception
      */
-    protected void initServerIds() throws IOException
+    protected void initServerIds(DhcpServerConfig xmlServerConfig, String filename) throws IOException
     {
     	V6ServerIdOption v6ServerId = xmlServerConfig.getV6ServerIdOption();
     	if (v6ServerId == null) {
@@ -195,7 +219,7 @@ public class DhcpServerConfiguration
     		}
     		v6ServerId.setOpaqueData(duid);
     		xmlServerConfig.setV6ServerIdOption(v6ServerId);
-    		saveConfig(xmlServerConfig, configFilename);
+    		saveConfig(xmlServerConfig, filename);
     	}
     	
     	V4ServerIdOption v4ServerId = xmlServerConfig.getV4ServerIdOption();
@@ -206,20 +230,48 @@ public class DhcpServerConfiguration
 		if ((ip == null) || (ip.length() <= 0)) {
 			v4ServerId.setIpAddress(InetAddress.getLocalHost().getHostAddress());
 			xmlServerConfig.setV4ServerIdOption(v4ServerId);
-			saveConfig(xmlServerConfig, configFilename);
+			saveConfig(xmlServerConfig, filename);
 		}
     }
     
     /**
-     * Initialize the link map.
+     * Gets the child elements of an element, such as the links of the links
+     * element, in document order.  The XML store is searched once, while
+     * each get() of a list accessor such as getLinkList() searches it from
+     * the start.
+     * 
+     * @param parent the element
+     * @param type the class of the child elements
+     * 
+     * @return the list of child elements
+     */
+    public static <T extends XmlObject> List<T> getChildList(XmlObject parent, Class<T> type)
+    {
+    	XmlObject[] children = parent.selectChildren(QNameSet.ALL);
+    	List<T> list = new ArrayList<T>(children.length);
+    	for (XmlObject child : children) {
+    		list.add(type.cast(child));
+    	}
+    	return list;
+    }
+    
+    /**
+     * Build the link map.
+     * 
+     * @param xmlServerConfig the configuration
+     * 
+     * @return the link map, or null if no links are configured
      * 
      * @throws DhcpServerConfigException the exception
      */
-    protected void initLinkMap() throws DhcpServerConfigException
+    protected SortedMap<Subnet, DhcpLink> buildLinkMap(DhcpServerConfig xmlServerConfig) 
+    		throws DhcpServerConfigException
     {
+    	SortedMap<Subnet, DhcpLink> linkMap = null;
     	LinksType linksType = xmlServerConfig.getLinks();
     	if (linksType != null) {
-        	List<Link> links = linksType.getLinkList();
+    		// not getLinkList(), which searches the XML store for each link
+        	List<Link> links = getChildList(linksType, Link.class);
             if ((links != null) && !links.isEmpty()) {
                 linkMap = new TreeMap<Subnet, DhcpLink>();
                 for (Link link : links) {
@@ -297,6 +349,7 @@ public class DhcpServerConfiguration
                 }
         	}
     	}
+    	return linkMap;
     }
     
     /**
@@ -306,7 +359,7 @@ public class DhcpServerConfiguration
      */
     public DhcpServerConfig getDhcpServerConfig()
     {
-    	return xmlServerConfig;
+    	return snapshot.xmlServerConfig;
     }
     
     /**
@@ -316,7 +369,123 @@ public class DhcpServerConfiguration
      */
     public SortedMap<Subnet, DhcpLink> getLinkMap()
     {
-        return linkMap;
+        return snapshot.linkMap;
+    }
+    
+    /**
+     * Reload the configuration file, and then the binding managers.  The new
+     * configuration is loaded completely before it replaces the current one,
+     * so a configuration which fails to load leaves the server unchanged.
+     * 
+     * @throws DhcpServerConfigException, XmlException, IOException
+     */
+    public synchronized void reload() throws DhcpServerConfigException, XmlException, IOException
+    {
+    	log.info("Reloading server configuration");
+    	Snapshot newSnapshot = loadSnapshot(configFilename);
+    	// requests which already found a link of the old snapshot finish
+    	// with it, and the binding managers follow with their new pools
+    	snapshot = newSnapshot;
+    	if (v4AddrBindingMgr != null) {
+    		v4AddrBindingMgr.reload();
+    	}
+    	if (naAddrBindingMgr != null) {
+    		naAddrBindingMgr.reload();
+    	}
+    	if (taAddrBindingMgr != null) {
+    		taAddrBindingMgr.reload();
+    	}
+    	if (prefixBindingMgr != null) {
+    		prefixBindingMgr.reload();
+    	}
+    	reloadCount++;
+    	lastReloadTime = new Date();
+    	lastReloadError = null;
+    	log.info("Server configuration reloaded: links=" + getLinkCount());
+    }
+    
+    /**
+     * Start checking the configuration file for changes, and reload
+     * the configuration when the file is modified.
+     * 
+     * @param period the milliseconds between checks
+     */
+    public synchronized void startReloadChecker(long period)
+    {
+    	if (reloadChecker != null) {
+    		reloadChecker.cancel();
+    	}
+    	final File file = new File(configFilename);
+    	final long[] lastModified = new long[] { file.lastModified() };
+    	reloadChecker = new Timer("ConfigReloadChecker", true);
+    	reloadChecker.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				long modified = file.lastModified();
+				if ((modified != 0) && (modified != lastModified[0])) {
+					lastModified[0] = modified;
+					log.info("Server configuration file modified: " + file);
+					reloadConfig();
+				}
+			}
+		}, period, period);
+    	log.info("Checking server configuration file for changes every " + period + "ms");
+    }
+    
+    /**
+     * Register the MBean of the configuration.
+     */
+    protected void registerMBean()
+    {
+    	try {
+    		MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+    		ObjectName name = new ObjectName(OBJECT_NAME);
+    		if (!mbs.isRegistered(name)) {
+    			mbs.registerMBean(this, name);
+    		}
+    	}
+    	catch (Exception ex) {
+    		log.error("Failed to register MBean: " + OBJECT_NAME + ": " + ex);
+    	}
+    }
+    
+    @Override
+    public String getConfigFilename() {
+    	return configFilename;
+    }
+    
+    @Override
+    public int getLinkCount() {
+    	SortedMap<Subnet, DhcpLink> linkMap = snapshot.linkMap;
+    	return (linkMap != null) ? linkMap.size() : 0;
+    }
+    
+    @Override
+    public synchronized int getReloadCount() {
+    	return reloadCount;
+    }
+    
+    @Override
+    public synchronized Date getLastReloadTime() {
+    	return lastReloadTime;
+    }
+    
+    @Override
+    public synchronized String getLastReloadError() {
+    	return lastReloadError;
+    }
+    
+    @Override
+    public synchronized String reloadConfig() {
+    	try {
+    		reload();
+    		return "Reloaded " + configFilename + ": links=" + getLinkCount();
+    	}
+    	catch (Exception ex) {
+    		log.error("Failed to reload server configuration", ex);
+    		lastReloadError = ex.toString();
+    		return "Reload failed: " + ex;
+    	}
     }
     
     public V6NaAddrBindingManager getNaAddrBindingMgr() {
@@ -365,77 +534,11 @@ public class DhcpServerConfiguration
      * 
      * @param inetAddr an InetAddress (v4/v6) to find a Link for
      * 
-     * @return the link
+     * @return the link with an address pool which contains the address
      */
     public DhcpLink findLinkForAddress(InetAddress inetAddr)
     {
-    	if (inetAddr instanceof Inet6Address) {
-            if ((linkMap != null) && !linkMap.isEmpty()) {
-            	for (DhcpLink link : linkMap.values()) {
-            		V6AddressPoolsType addrPoolType = link.getLink().getV6NaAddrPools();
-            		if (addrPoolType != null) {
-            			List<V6AddressPool> addrPools = addrPoolType.getPoolList();
-            			if (addrPools != null) {
-            				for (V6AddressPool addrPool : addrPools) {
-            					try {
-    	        					Range range = new Range(addrPool.getRange());
-    	        					if (range.contains(inetAddr)) {
-    	        						return link;
-    	        					}
-            					}
-            					catch (Exception ex) {
-            						log.error("Invalid AddressPool range: " + addrPool.getRange() +
-            								": " + ex);
-            					}
-            				}
-            			}
-            		}
-            		addrPoolType = link.getLink().getV6TaAddrPools();
-            		if (addrPoolType != null) {
-            			List<V6AddressPool> addrPools = addrPoolType.getPoolList();
-            			if (addrPools != null) {
-            				for (V6AddressPool addrPool : addrPools) {
-            					try {
-    	        					Range range = new Range(addrPool.getRange());
-    	        					if (range.contains(inetAddr)) {
-    	        						return link;
-    	        					}
-            					}
-            					catch (Exception ex) {
-            						log.error("Invalid AddressPool range: " + addrPool.getRange() +
-            								": " + ex);
-            					}
-            				}
-            			}
-            		}
-            	}
-            }
-    	}
-    	else {
-            if ((linkMap != null) && !linkMap.isEmpty()) {
-            	for (DhcpLink link : linkMap.values()) {
-            		V4AddressPoolsType addrPoolType = link.getLink().getV4AddrPools();
-            		if (addrPoolType != null) {
-            			List<V4AddressPool> addrPools = addrPoolType.getPoolList();
-            			if (addrPools != null) {
-            				for (V4AddressPool addrPool : addrPools) {
-            					try {
-    	        					Range range = new Range(addrPool.getRange());
-    	        					if (range.contains(inetAddr)) {
-    	        						return link;
-    	        					}
-            					}
-            					catch (Exception ex) {
-            						log.error("Invalid V4AddressPool range: " + addrPool.getRange() +
-            								": " + ex);
-            					}
-            				}
-            			}
-            		}
-            	}
-            }
-    	}
-        return null;
+    	return snapshot.poolLinkTrie.get(inetAddr);
     }
 
     /**
@@ -449,35 +552,39 @@ public class DhcpServerConfiguration
     public DhcpLink findDhcpLink(Inet6Address local, Inet6Address remote)
     {
         DhcpLink link = null;
-        if ((linkMap != null) && !linkMap.isEmpty()) {
+        Snapshot s = snapshot;
+        if ((s.linkMap != null) && !s.linkMap.isEmpty()) {
         	if (local.isLinkLocalAddress()) {
         		// if the local address is link-local, then the request
         		// was received directly from the client on the interface
         		// with that link-local address, which is the linkMap key
-        		log.debug("Looking for Link by link local address: " + local.getHostAddress());
-	            Subnet s = new Subnet(local, 128);
-        		link = linkMap.get(s);
+        		if (log.isDebugEnabled())
+        			log.debug("Looking for Link by link local address: " + local.getHostAddress());
+        		link = s.linkTrie.get(local, 128);
         	}
         	else if (!remote.isLinkLocalAddress()) { 
         		// if the remote (client) address is not link-local, then the client
         		// already has an address, so use that address to search the linkMap
-        		log.debug("Looking for Link by remote global address: " + remote.getHostAddress());
-        		link = findLink(remote);
+        		if (log.isDebugEnabled())
+        			log.debug("Looking for Link by remote global address: " + remote.getHostAddress());
+        		link = s.linkTrie.get(remote);
         	}
         	else {
         		// if the local address is not link-local, and the remote
         		// address is link-local, then this message was relayed and
         		// the local address is the client link address
-        		log.debug("Looking for Link by address: " + local.getHostAddress());
-        		link = findLink(local);
+        		if (log.isDebugEnabled())
+        			log.debug("Looking for Link by address: " + local.getHostAddress());
+        		link = s.linkTrie.get(local);
         	}
         }
         else {
         	log.error("linkMap is null or empty");
         }
         if (link != null) {
-        	log.info("Found configured Link for client request: " + 
-        				link.getLink().getName());
+        	if (log.isDebugEnabled())
+        		log.debug("Found configured Link for client request: " + 
+        					link.getLink().getName());
         }
         return link;
     }
@@ -493,61 +600,36 @@ public class DhcpServerConfiguration
     public DhcpLink findDhcpLink(Inet4Address local, Inet4Address remote)
     {
         DhcpLink link = null;
-        if ((linkMap != null) && !linkMap.isEmpty()) {
+        Snapshot s = snapshot;
+        if ((s.linkMap != null) && !s.linkMap.isEmpty()) {
         	if (remote.equals(DhcpConstants.ZEROADDR_V4)) {
         		// if the remote address is zero, then the request was received
         		// from a client without an address on the broadcast channel, so
         		// use the local address to search the linkMap
-        		log.debug("Looking for Link by local address: " + local.getHostAddress());
-        		link = findLink(local);
+        		if (log.isDebugEnabled())
+        			log.debug("Looking for Link by local address: " + local.getHostAddress());
+        		link = s.linkTrie.get(local);
         	}
         	else {
         		// if the remote address is non-zero, then the request was received
         		// from a client or relay with that address, so use the remote address
         		// to search the linkMap
-        		log.debug("Looking for Link by remote address: " + remote.getHostAddress());
-        		link = findLink(remote);
+        		if (log.isDebugEnabled())
+        			log.debug("Looking for Link by remote address: " + remote.getHostAddress());
+        		link = s.linkTrie.get(remote);
         	}
         }
         else {
         	log.error("linkMap is null or empty");
         }
         if (link != null) {
-        	log.info("Found configured Link for client request: " + 
-        				link.getLink().getName());
+        	if (log.isDebugEnabled())
+        		log.debug("Found configured Link for client request: " + 
+        					link.getLink().getName());
         }
         return link;
     }
-    
-    private DhcpLink findLink(InetAddress addr)
-    {
-        Subnet s = null;
-        if (addr instanceof Inet4Address) {
-        	s = new Subnet(addr, 32);
-        }
-        else {
-        	s = new Subnet(addr, 128);
-        }
-        // find links less than the given address
-        SortedMap<Subnet, DhcpLink> subMap = linkMap.headMap(s);
-        if ((subMap != null) && !subMap.isEmpty()) {
-        	// the last one in the sub map should contain the address
-            Subnet k = subMap.lastKey();
-            if (k.contains(addr)) {
-                return subMap.get(k);
-            }
-        }
-        // find links greater or equal to given address
-        subMap = linkMap.tailMap(s);
-        if ((subMap != null) && !subMap.isEmpty()) {
-        	// the first one in the sub map should contain the address
-            Subnet k = subMap.firstKey();
-            if (k.contains(addr)) {
-                return subMap.get(k);
-            }
-        }
-        return null;
-    }
+
     
     /**
      * Find the NA address pool for an address on a link
@@ -689,7 +771,11 @@ public class DhcpServerConfiguration
     		throws DhcpServerConfigException, XmlException, IOException 
     {
         log.info("Loading server configuration file: " + filename);
-    	DhcpServerConfig config = parseConfig(filename);
+        DhcpServerConfigDigest validated = null;
+        if (configDigestFilename != null) {
+        	validated = new DhcpServerConfigDigest(configDigestFilename);
+        }
+    	DhcpServerConfig config = parseConfig(filename, validated);
     	if (config != null) {
         	log.info("Server configuration file loaded.");
     	}
@@ -702,34 +788,70 @@ public class DhcpServerConfiguration
     public static DhcpServerConfig parseConfig(String filename) 
     		throws DhcpServerConfigException, XmlException, IOException
     {
-    	DhcpServerConfig config = null;
-    	FileInputStream fis = null;
+    	return parseConfig(filename, null);
+    }
+    
+    /**
+     * Parse and validate the server configuration from a file.  The validation
+     * is skipped if the digest shows that the same file was already validated.
+     * 
+     * @param filename the full path and filename for the configuration
+     * @param validated the digest of the validated configuration, or null
+     * 
+     * @return the parsed DhcpServerConfig
+     * 
+     * @throws DhcpServerConfigException if the configuration is not valid
+     * @throws XmlException, IOException
+     */
+    public static DhcpServerConfig parseConfig(String filename, DhcpServerConfigDigest validated) 
+    		throws DhcpServerConfigException, XmlException, IOException
+    {
+    	// the file is read once, for the digest and the parser
+    	byte[] data = null;
+    	DataInputStream dis = null;
     	try {
-	        fis = new FileInputStream(filename);
-	        config = DhcpServerConfigDocument.Factory.parse(fis).getDhcpServerConfig();
-	        
-	        ArrayList<XmlValidationError> validationErrors = new ArrayList<XmlValidationError>();
-	        XmlOptions validationOptions = new XmlOptions();
-	        validationOptions.setErrorListener(validationErrors);
-
-	        // During validation, errors are added to the ArrayList
-	        boolean isValid = config.validate(validationOptions);
-	        if (!isValid) {
-	        	StringBuilder sb = new StringBuilder();
-	            Iterator<XmlValidationError> iter = validationErrors.iterator();
-	            while (iter.hasNext())
-	            {
-	                sb.append(iter.next());
-	                sb.append('\n');
-	            }
-	            throw new DhcpServerConfigException(sb.toString());
-	        }
+    		File file = new File(filename);
+    		data = new byte[(int) file.length()];
+    		dis = new DataInputStream(new FileInputStream(file));
+    		dis.readFully(data);
     	}
     	finally {
-    		if (fis != null) {
-    			fis.close();
+    		if (dis != null) {
+    			dis.close();
     		}
     	}
+    	
+        DhcpServerConfig config = 
+        	DhcpServerConfigDocument.Factory.parse(new ByteArrayInputStream(data)).getDhcpServerConfig();
+        
+        byte[] digest = null;
+        if (validated != null) {
+        	digest = DhcpServerConfigDigest.digest(data);
+        	if (validated.isValidated(data.length, digest)) {
+        		log.info("Server configuration file unchanged since validated: " + filename);
+        		return config;
+        	}
+        }
+        
+        ArrayList<XmlValidationError> validationErrors = new ArrayList<XmlValidationError>();
+        XmlOptions validationOptions = new XmlOptions();
+        validationOptions.setErrorListener(validationErrors);
+
+        // During validation, errors are added to the ArrayList
+        boolean isValid = config.validate(validationOptions);
+        if (!isValid) {
+        	StringBuilder sb = new StringBuilder();
+            Iterator<XmlValidationError> iter = validationErrors.iterator();
+            while (iter.hasNext())
+            {
+                sb.append(iter.next());
+                sb.append('\n');
+            }
+            throw new DhcpServerConfigException(sb.toString());
+        }
+        if (validated != null) {
+        	validated.setValidated(data.length, digest);
+        }
     	return config;
     }
     
@@ -769,11 +891,12 @@ public class DhcpServerConfiguration
     public Map<Integer, DhcpOption> effectiveMsgOptions(DhcpV6Message requestMsg)
     {
     	Map<Integer, DhcpOption> optionMap = new HashMap<Integer, DhcpOption>();
-    	if (globalMsgConfigOptions != null) {
-    		optionMap.putAll(globalMsgConfigOptions.getDhcpOptionMap());
+    	Snapshot s = snapshot;
+    	if (s.globalMsgConfigOptions != null) {
+    		optionMap.putAll(s.globalMsgConfigOptions.getDhcpOptionMap());
     	}
     	Map<Integer, DhcpOption> filteredOptions = 
-    		filteredMsgOptions(requestMsg, xmlServerConfig.getFilters());
+    		filteredMsgOptions(requestMsg, s.xmlServerConfig.getFilters());
     	if (filteredOptions != null) {
     		optionMap.putAll(filteredOptions);
     	}
@@ -816,12 +939,13 @@ public class DhcpServerConfiguration
     public Map<Integer, DhcpOption> effectiveIaNaOptions(DhcpV6Message requestMsg)
     {
     	Map<Integer, DhcpOption> optionMap = new HashMap<Integer, DhcpOption>();
-    	if (globalIaNaConfigOptions != null) {
-    		optionMap.putAll(globalIaNaConfigOptions.getDhcpOptionMap());
+    	Snapshot s = snapshot;
+    	if (s.globalIaNaConfigOptions != null) {
+    		optionMap.putAll(s.globalIaNaConfigOptions.getDhcpOptionMap());
     	}
     	
     	Map<Integer, DhcpOption> filteredOptions = 
-    		filteredIaNaOptions(requestMsg, xmlServerConfig.getFilters());
+    		filteredIaNaOptions(requestMsg, s.xmlServerConfig.getFilters());
     	if (filteredOptions != null) {
     		optionMap.putAll(filteredOptions);
     	}
@@ -864,12 +988,13 @@ public class DhcpServerConfiguration
     public Map<Integer, DhcpOption> effectiveNaAddrOptions(DhcpV6Message requestMsg)
     {
     	Map<Integer, DhcpOption> optionMap = new HashMap<Integer, DhcpOption>();
-    	if (globalNaAddrConfigOptions != null) {
-    		optionMap.putAll(globalNaAddrConfigOptions.getDhcpOptionMap());
+    	Snapshot s = snapshot;
+    	if (s.globalNaAddrConfigOptions != null) {
+    		optionMap.putAll(s.globalNaAddrConfigOptions.getDhcpOptionMap());
     	}
     	
     	Map<Integer, DhcpOption> filteredOptions = 
-    		filteredNaAddrOptions(requestMsg, xmlServerConfig.getFilters());
+    		filteredNaAddrOptions(requestMsg, s.xmlServerConfig.getFilters());
     	if (filteredOptions != null) {
     		optionMap.putAll(filteredOptions);
     	}
@@ -940,12 +1065,13 @@ public class DhcpServerConfiguration
     public Map<Integer, DhcpOption> effectiveIaTaOptions(DhcpV6Message requestMsg)
     {
     	Map<Integer, DhcpOption> optionMap = new HashMap<Integer, DhcpOption>();
-    	if (globalIaTaConfigOptions != null) {
-    		optionMap.putAll(globalIaTaConfigOptions.getDhcpOptionMap());
+    	Snapshot s = snapshot;
+    	if (s.globalIaTaConfigOptions != null) {
+    		optionMap.putAll(s.globalIaTaConfigOptions.getDhcpOptionMap());
     	}
     	
     	Map<Integer, DhcpOption> filteredOptions = 
-    		filteredIaTaOptions(requestMsg, xmlServerConfig.getFilters());
+    		filteredIaTaOptions(requestMsg, s.xmlServerConfig.getFilters());
     	if (filteredOptions != null) {
     		optionMap.putAll(filteredOptions);
     	}
@@ -988,12 +1114,13 @@ public class DhcpServerConfiguration
     public Map<Integer, DhcpOption> effectiveTaAddrOptions(DhcpV6Message requestMsg)
     {
     	Map<Integer, DhcpOption> optionMap = new HashMap<Integer, DhcpOption>();
-    	if (globalTaAddrConfigOptions != null) {
-    		optionMap.putAll(globalTaAddrConfigOptions.getDhcpOptionMap());
+    	Snapshot s = snapshot;
+    	if (s.globalTaAddrConfigOptions != null) {
+    		optionMap.putAll(s.globalTaAddrConfigOptions.getDhcpOptionMap());
     	}
     	
     	Map<Integer, DhcpOption> filteredOptions = 
-    		filteredNaAddrOptions(requestMsg, xmlServerConfig.getFilters());
+    		filteredNaAddrOptions(requestMsg, s.xmlServerConfig.getFilters());
     	if (filteredOptions != null) {
     		optionMap.putAll(filteredOptions);
     	}
@@ -1064,12 +1191,13 @@ public class DhcpServerConfiguration
     public Map<Integer, DhcpOption> effectiveIaPdOptions(DhcpV6Message requestMsg)
     {
     	Map<Integer, DhcpOption> optionMap = new HashMap<Integer, DhcpOption>();
-    	if (globalIaPdConfigOptions != null) {
-    		optionMap.putAll(globalIaPdConfigOptions.getDhcpOptionMap());
+    	Snapshot s = snapshot;
+    	if (s.globalIaPdConfigOptions != null) {
+    		optionMap.putAll(s.globalIaPdConfigOptions.getDhcpOptionMap());
     	}
     	
     	Map<Integer, DhcpOption> filteredOptions = 
-    		filteredIaPdOptions(requestMsg, xmlServerConfig.getFilters());
+    		filteredIaPdOptions(requestMsg, s.xmlServerConfig.getFilters());
     	if (filteredOptions != null) {
     		optionMap.putAll(filteredOptions);
     	}
@@ -1112,12 +1240,13 @@ public class DhcpServerConfiguration
     public Map<Integer, DhcpOption> effectivePrefixOptions(DhcpV6Message requestMsg)
     {
     	Map<Integer, DhcpOption> optionMap = new HashMap<Integer, DhcpOption>();
-    	if (globalPrefixConfigOptions != null) {
-    		optionMap.putAll(globalPrefixConfigOptions.getDhcpOptionMap());
+    	Snapshot s = snapshot;
+    	if (s.globalPrefixConfigOptions != null) {
+    		optionMap.putAll(s.globalPrefixConfigOptions.getDhcpOptionMap());
     	}
     	
     	Map<Integer, DhcpOption> filteredOptions = 
-    		filteredPrefixOptions(requestMsg, xmlServerConfig.getFilters());
+    		filteredPrefixOptions(requestMsg, s.xmlServerConfig.getFilters());
     	if (filteredOptions != null) {
     		optionMap.putAll(filteredOptions);
     	}
@@ -1188,12 +1317,13 @@ public class DhcpServerConfiguration
     public Map<Integer, DhcpOption> effectiveV4AddrOptions(DhcpV4Message requestMsg)
     {
     	Map<Integer, DhcpOption> optionMap = new HashMap<Integer, DhcpOption>();
-    	if (globalV4ConfigOptions != null) {
-    		optionMap.putAll(globalV4ConfigOptions.getDhcpOptionMap());
+    	Snapshot s = snapshot;
+    	if (s.globalV4ConfigOptions != null) {
+    		optionMap.putAll(s.globalV4ConfigOptions.getDhcpOptionMap());
     	}
     	
     	Map<Integer, DhcpOption> filteredOptions = 
-    		filteredV4Options(requestMsg, xmlServerConfig.getFilters());
+    		filteredV4Options(requestMsg, s.xmlServerConfig.getFilters());
     	if (filteredOptions != null) {
     		optionMap.putAll(filteredOptions);
     	}
@@ -1304,7 +1434,8 @@ public class DhcpServerConfiguration
 		if ((filters != null) && !filters.isEmpty()) {
             for (Filter filter : filters) {
             	if (msgMatchesFilter(requestMsg, filter)) {
-                    log.info("Request matches filter: " + filter.getName());
+                    if (log.isDebugEnabled())
+                    	log.debug("Request matches filter: " + filter.getName());
                 	DhcpV6ConfigOptions filterConfigOptions = 
                 		new DhcpV6ConfigOptions(filter.getV6MsgConfigOptions());
                 	if (filterConfigOptions != null) {
@@ -1366,7 +1497,8 @@ public class DhcpServerConfiguration
 		if ((filters != null) && !filters.isEmpty()) {
 		    for (Filter filter : filters) {
 		    	if (msgMatchesFilter(requestMsg, filter)) {
-		            log.info("Request matches filter: " + filter.getName());
+		            if (log.isDebugEnabled())
+		            	log.debug("Request matches filter: " + filter.getName());
 		        	DhcpV6ConfigOptions filterConfigOptions = 
 		        		new DhcpV6ConfigOptions(filter.getV6IaNaConfigOptions());
 		        	if (filterConfigOptions != null) {
@@ -1428,7 +1560,8 @@ public class DhcpServerConfiguration
 		if ((filters != null) && !filters.isEmpty()) {
             for (Filter filter : filters) {
             	if (msgMatchesFilter(requestMsg, filter)) {
-                    log.info("Request matches filter: " + filter.getName());
+                    if (log.isDebugEnabled())
+                    	log.debug("Request matches filter: " + filter.getName());
                 	DhcpV6ConfigOptions filterConfigOptions = 
                 		new DhcpV6ConfigOptions(filter.getV6NaAddrConfigOptions());
                 	if (filterConfigOptions != null) {
@@ -1490,7 +1623,8 @@ public class DhcpServerConfiguration
 		if ((filters != null) && !filters.isEmpty()) {
 		    for (Filter filter : filters) {
 		    	if (msgMatchesFilter(requestMsg, filter)) {
-		            log.info("Request matches filter: " + filter.getName());
+		            if (log.isDebugEnabled())
+		            	log.debug("Request matches filter: " + filter.getName());
 		        	DhcpV6ConfigOptions filterConfigOptions = 
 		        		new DhcpV6ConfigOptions(filter.getV6IaTaConfigOptions());
 		        	if (filterConfigOptions != null) {
@@ -1552,7 +1686,8 @@ public class DhcpServerConfiguration
 		if ((filters != null) && !filters.isEmpty()) {
             for (Filter filter : filters) {
             	if (msgMatchesFilter(requestMsg, filter)) {
-                    log.info("Request matches filter: " + filter.getName());
+                    if (log.isDebugEnabled())
+                    	log.debug("Request matches filter: " + filter.getName());
                 	DhcpV6ConfigOptions filterConfigOptions = 
                 		new DhcpV6ConfigOptions(filter.getV6TaAddrConfigOptions());
                 	if (filterConfigOptions != null) {
@@ -1614,7 +1749,8 @@ public class DhcpServerConfiguration
 		if ((filters != null) && !filters.isEmpty()) {
 		    for (Filter filter : filters) {
 		    	if (msgMatchesFilter(requestMsg, filter)) {
-		            log.info("Request matches filter: " + filter.getName());
+		            if (log.isDebugEnabled())
+		            	log.debug("Request matches filter: " + filter.getName());
 		        	DhcpV6ConfigOptions filterConfigOptions = 
 		        		new DhcpV6ConfigOptions(filter.getV6IaPdConfigOptions());
 		        	if (filterConfigOptions != null) {
@@ -1676,7 +1812,8 @@ public class DhcpServerConfiguration
 		if ((filters != null) && !filters.isEmpty()) {
             for (Filter filter : filters) {
             	if (msgMatchesFilter(requestMsg, filter)) {
-                    log.info("Request matches filter: " + filter.getName());
+                    if (log.isDebugEnabled())
+                    	log.debug("Request matches filter: " + filter.getName());
                 	DhcpV6ConfigOptions filterConfigOptions = 
                 		new DhcpV6ConfigOptions(filter.getV6PrefixConfigOptions());
                 	if (filterConfigOptions != null) {
@@ -1738,7 +1875,8 @@ public class DhcpServerConfiguration
 		if ((filters != null) && !filters.isEmpty()) {
             for (Filter filter : filters) {
             	if (msgMatchesFilter(requestMsg, filter)) {
-                    log.info("Request matches filter: " + filter.getName());
+                    if (log.isDebugEnabled())
+                    	log.debug("Request matches filter: " + filter.getName());
                 	DhcpV4ConfigOptions filterConfigOptions = 
                 		new DhcpV4ConfigOptions(filter.getV4ConfigOptions());
                 	if (filterConfigOptions != null) {
@@ -1870,4 +2008,88 @@ public class DhcpServerConfiguration
 		}
 		return true;
     }
+    
+    /**
+     * The configuration loaded from a file, with the global options and the
+     * links built from it.  A snapshot is not changed once it is built.
+     */
+    protected static class Snapshot
+    {
+    	final DhcpServerConfig xmlServerConfig;
+    	
+    	final DhcpV6ConfigOptions globalMsgConfigOptions;
+    	final DhcpV6ConfigOptions globalIaNaConfigOptions;
+    	final DhcpV6ConfigOptions globalNaAddrConfigOptions;
+    	final DhcpV6ConfigOptions globalIaTaConfigOptions;
+    	final DhcpV6ConfigOptions globalTaAddrConfigOptions;
+    	final DhcpV6ConfigOptions globalIaPdConfigOptions;
+    	final DhcpV6ConfigOptions globalPrefixConfigOptions;
+    	final DhcpV4ConfigOptions globalV4ConfigOptions;
+    	
+        /** The link map. */
+    	final SortedMap<Subnet, DhcpLink> linkMap;
+        
+        /** The links by subnet, for the longest prefix match of a link address. */
+    	final SubnetTrie<DhcpLink> linkTrie;
+        
+        /** The links by the ranges of their address pools. */
+    	final SubnetTrie<DhcpLink> poolLinkTrie;
+    	
+    	/**
+    	 * Build the snapshot.  The first link in the map is kept for a subnet
+    	 * or pool range configured on more than one link.
+    	 * 
+    	 * @param xmlServerConfig the configuration
+    	 * @param linkMap the link map of the configuration
+    	 */
+    	Snapshot(DhcpServerConfig xmlServerConfig, SortedMap<Subnet, DhcpLink> linkMap)
+    	{
+    		this.xmlServerConfig = xmlServerConfig;
+	    	globalMsgConfigOptions = new DhcpV6ConfigOptions(xmlServerConfig.getV6MsgConfigOptions());
+	    	globalIaNaConfigOptions = new DhcpV6ConfigOptions(xmlServerConfig.getV6IaNaConfigOptions());
+	    	globalNaAddrConfigOptions = new DhcpV6ConfigOptions(xmlServerConfig.getV6NaAddrConfigOptions());
+	    	globalIaTaConfigOptions = new DhcpV6ConfigOptions(xmlServerConfig.getV6IaTaConfigOptions());
+	    	globalTaAddrConfigOptions = new DhcpV6ConfigOptions(xmlServerConfig.getV6TaAddrConfigOptions());
+	    	globalIaPdConfigOptions = new DhcpV6ConfigOptions(xmlServerConfig.getV6IaPdConfigOptions());
+	    	globalPrefixConfigOptions = new DhcpV6ConfigOptions(xmlServerConfig.getV6PrefixConfigOptions());
+	    	globalV4ConfigOptions = new DhcpV4ConfigOptions(xmlServerConfig.getV4ConfigOptions());
+	    	this.linkMap = linkMap;
+	    	linkTrie = new SubnetTrie<DhcpLink>();
+	    	poolLinkTrie = new SubnetTrie<DhcpLink>();
+	    	if (linkMap != null) {
+	    		for (DhcpLink link : linkMap.values()) {
+	    			linkTrie.put(link.getSubnet(), link);
+	    			V6AddressPoolsType v6PoolsType = link.getLink().getV6NaAddrPools();
+	    			if (v6PoolsType != null) {
+	    				for (V6AddressPool addrPool : v6PoolsType.getPoolList()) {
+	    					putPoolRange(link, addrPool.getRange());
+	    				}
+	    			}
+	    			v6PoolsType = link.getLink().getV6TaAddrPools();
+	    			if (v6PoolsType != null) {
+	    				for (V6AddressPool addrPool : v6PoolsType.getPoolList()) {
+	    					putPoolRange(link, addrPool.getRange());
+	    				}
+	    			}
+	    			V4AddressPoolsType v4PoolsType = link.getLink().getV4AddrPools();
+	    			if (v4PoolsType != null) {
+	    				for (V4AddressPool addrPool : v4PoolsType.getPoolList()) {
+	    					putPoolRange(link, addrPool.getRange());
+	    				}
+	    			}
+	    		}
+	    	}
+    	}
+	    
+	    private void putPoolRange(DhcpLink link, String range)
+	    {
+	    	try {
+	    		Range r = new Range(range);
+	    		poolLinkTrie.putRange(r.getStartAddress(), r.getEndAddress(), link);
+	    	}
+	    	catch (Exception ex) {
+	    		log.error("Invalid AddressPool range: " + range + ": " + ex);
+	    	}
+	    }
+    }
 }
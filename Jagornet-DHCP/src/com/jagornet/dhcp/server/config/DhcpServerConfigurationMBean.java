@@ -0,0 +1,69 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file DhcpServerConfigurationMBean.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.config;
+
+import java.util.Date;
+
+/**
+ * The JMX interface of the DhcpServerConfiguration.
+ *
+ * @author A. Gregory Rabil
+ */
+public interface DhcpServerConfigurationMBean
+{
+	/**
+	 * @return the configuration file
+	 */
+	public String getConfigFilename();
+
+	/**
+	 * @return the number of links in the current configuration
+	 */
+	public int getLinkCount();
+
+	/**
+	 * @return the number of successful reloads of the configuration
+	 */
+	public int getReloadCount();
+
+	/**
+	 * @return the time of the last successful reload, or null if never reloaded
+	 */
+	public Date getLastReloadTime();
+
+	/**
+	 * @return the error of the last failed reload, or null if the last reload succeeded
+	 */
+	public String getLastReloadError();
+
+	/**
+	 * Reload the configuration file, keeping the current configuration
+	 * if the file fails to load.
+	 *
+	 * @return the result of the reload
+	 */
+	public String reloadConfig();
+}
@@ -63,16 +63,31 @@ public class DhcpServerPolicies
 		CHANNEL_MAX_TOTAL_MEMORY("channel.maxTotalMemory", "1048576"),		// 1024 x 1024
 		CHANNEL_READ_BUFFER_SIZE("channel.readBufferSize", "307200"),		// 300 bytes x 1K clients
 		CHANNEL_WRITE_BUFFER_SIZE("channel.writeBufferSize", "307200"),		// 300 bytes x 1K clients
+		CHANNEL_LOGGING_HANDLER("channel.loggingHandler", "false"),
 		DATABASE_SCHEMA_TYTPE("database.schemaType", "jdbc-derby"),
 		DATABASE_SCHEMA_VERSION("database.schemaVersion", "2"),
+		DATABASE_TABLE_PER_IATYPE("database.tablePerIaType", "false"),
+		DATABASE_OPTIONS_FLUSH_PERIOD("database.optionsFlushPeriod", "1000"),
+		DATABASE_LEASE_TIMES_FLUSH_PERIOD("database.leaseTimesFlushPeriod", "5000"),
 		DHCP_PROCESSOR_RECENT_MESSAGE_TIMER("dhcp.processor.recentMessageTimer", "5000"),
 		DHCP_IGNORE_LOOPBACK("dhcp.ignoreLoopback", "true"),
 		DHCP_IGNORE_LINKLOCAL("dhcp.ignoreLinkLocal", "true"),
 		DHCP_IGNORE_SELF_PACKETS("dhcp.ignoreSelfPackets", "true"),
+		CONFIG_RELOAD_CHECK_PERIOD("config.reload.checkPeriod", "0"),	// 0 to disable
+		METRICS_HTTP_ADDRESS("metrics.http.address", "127.0.0.1"),
+		METRICS_HTTP_PORT("metrics.http.port", "9067"),		// 0 to disable
+		TRANSACTION_LOG_FILE("transactionLog.file", "log/transactions.log"),	// empty to disable
+		TRANSACTION_LOG_BUFFER_SIZE("transactionLog.bufferSize", "8192"),
+		TRANSACTION_LOG_MAX_FILE_SIZE("transactionLog.maxFileSize", "10485760"),	// 10MB
+		TRANSACTION_LOG_MAX_BACKUP_INDEX("transactionLog.maxBackupIndex", "10"),
 		BINDING_MANAGER_REAPER_STARTUP_DELAY("binding.manager.reaper.startupDelay", "10000"),
 		BINDING_MANAGER_REAPER_RUN_PERIOD("binding.manager.reaper.runPeriod", "60000"),
 		BINDING_MANAGER_OFFER_EXPIRATION("binding.manager.offerExpiration", "12000"),
+		BINDING_MANAGER_RENEW_SAFETY_MARGIN("binding.manager.renewSafetyMargin", "60000"),
+		BINDING_MANAGER_LAZY_RENEW_FRACTION("binding.manager.lazyRenewFraction", "0"),
 		BINDING_MANAGER_DELETE_OLD_BINDINGS("binding.manager.deleteOldBindings", "false"),
+		BINDING_MANAGER_AFFINITY_SIZE("binding.manager.affinity.size", "10000"),	// 0 to disable
+		BINDING_MANAGER_AFFINITY_FILE("binding.manager.affinity.file", ""),	// empty for memory only
 		SEND_REQUESTED_OPTIONS_ONLY("sendRequestedOptionsOnly", "false"),
 		SUPPORT_RAPID_COMMIT("supportRapidCommit", "false"),
 		VERIFY_UNKNOWN_REBIND("verifyUnknownRebind", "false"),
@@ -82,8 +97,17 @@ public class DhcpServerPolicies
 		IA_NA_T2("iaNaT2", "0.8"),
 		IA_PD_T1("iaPdT1", "0.5"),
 		IA_PD_T2("iaPdT2", "0.8"),
+		IA_PD_MIN_PREFIX_LENGTH("iaPdMinPrefixLength", "0"),	// 0 for the pool prefixLength
+		IA_PD_MAX_PREFIX_LENGTH("iaPdMaxPrefixLength", "0"),	// 0 for the pool prefixLength
 		DDNS_UPDATE("ddns.update", "none"),	// acceptable values: none, server, client, etc...
-		DDNS_SYNCHRONIZE("ddns.synchronize", "false"),
+		DDNS_SYNCHRONIZE("ddns.synchronize", "false"),	// acceptable values: false, true, forward
+		DDNS_SYNCHRONIZE_TIMEOUT("ddns.synchronize.timeout", "2000"),
+		DDNS_QUEUE_THREADS("ddns.queue.threads", "4"),
+		DDNS_QUEUE_SIZE("ddns.queue.size", "1000"),		// per zone
+		DDNS_QUEUE_BATCH_SIZE("ddns.queue.batchSize", "20"),
+		DDNS_RETRY_COUNT("ddns.retry.count", "3"),
+		DDNS_RETRY_DELAY("ddns.retry.delay", "1000"),		// doubled for each retry
+		DDNS_RETRY_MAX_DELAY("ddns.retry.maxDelay", "60000"),
 		DDNS_DOMAIN("ddns.domain", ""),
 		DDNS_TTL("ddns.ttl", "0.3"),	// 1/3 of the lifetime
 		DDNS_SERVER("ddns.server", ""),
@@ -108,6 +132,8 @@ public class DhcpServerPolicies
 		V4_IGNORED_MACS("v4.ignoredMacAddrs", "000000000000, FFFFFFFFFFFF"),
 		V4_DEFAULT_LEASETIME("v4.defaultLeasetime", "3600"),
 		V4_PINGCHECK_TIMEOUT("v4.pingCheckTimeout", "0"),
+		V4_RENEW_FAST_PATH("v4.renewFastPath", "true"),
+		V4_OFFER_IN_MEMORY("v4.offerInMemory", "true"),
 		;
 		
 	    /** The key. */
@@ -0,0 +1,659 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file TransactionLog.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagornet.dhcp.message.DhcpV4Message;
+import com.jagornet.dhcp.message.DhcpV6Message;
+import com.jagornet.dhcp.message.DhcpV6RelayMessage;
+import com.jagornet.dhcp.option.base.BaseOpaqueData;
+import com.jagornet.dhcp.option.v6.DhcpV6ClientIdOption;
+import com.jagornet.dhcp.option.v6.DhcpV6IaAddrOption;
+import com.jagornet.dhcp.option.v6.DhcpV6IaNaOption;
+import com.jagornet.dhcp.option.v6.DhcpV6IaPdOption;
+import com.jagornet.dhcp.option.v6.DhcpV6IaPrefixOption;
+import com.jagornet.dhcp.option.v6.DhcpV6IaTaOption;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.server.metrics.Gauge;
+import com.jagornet.dhcp.server.metrics.MetricsRegistry;
+import com.jagornet.dhcp.server.metrics.StripedCounter;
+import com.jagornet.dhcp.util.DhcpConstants;
+
+/**
+ * The Class TransactionLog.  Writes one record for each request and its
+ * reply, as a line of JSON, to a file which is rolled over by size.
+ * 
+ * The request threads only claim a slot of a preallocated ring buffer and
+ * keep the request and reply messages in it, so logging a transaction does
+ * not format or allocate anything.  A single thread formats the records and
+ * writes them to the file.  If the ring buffer is full, the record is
+ * dropped and counted, so the request threads never wait for the file.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class TransactionLog implements Runnable
+{
+	private static Logger log = LoggerFactory.getLogger(TransactionLog.class);
+	
+	/** The instance, null if disabled. */
+	private static TransactionLog instance;
+	private static boolean initialized;
+	
+	/** The time to wait when there are no records to write. */
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	
+	private File file;
+	private long maxFileSize;
+	private int maxBackupIndex;
+	
+	private Slot[] slots;
+	private int mask;
+	
+	/** The next sequence to be claimed by a request thread. */
+	private AtomicLong next = new AtomicLong();
+	
+	/** The next sequence to be written, i.e. the number of records written. */
+	private volatile long consumed;
+	
+	private StripedCounter dropped = new StripedCounter();
+	
+	private volatile boolean running;
+	private Thread thread;
+	
+	// used only by the writer thread
+	private Writer writer;
+	private long fileSize;
+	private StringBuilder line = new StringBuilder(512);
+	private char[] chars = new char[512];
+	private SimpleDateFormat dateFormat;
+	private long cachedSecond = -1;
+	private String cachedSecondText;
+	
+	/**
+	 * A record of the ring buffer.  The sequence is set last by the
+	 * request thread, to publish the record to the writer thread.
+	 */
+	static class Slot
+	{
+		volatile long sequence = -1;
+		long time;
+		long nanos;
+		DhcpV4Message v4Request;
+		DhcpV4Message v4Reply;
+		DhcpV6Message v6Request;
+		DhcpV6Message v6Reply;
+	}
+	
+	/**
+	 * Gets the single instance, configured by the transactionLog policies.
+	 * 
+	 * @return the instance, or null if the transactionLog.file policy is empty
+	 * or the file can not be opened
+	 */
+	public static synchronized TransactionLog getInstance()
+	{
+		if (!initialized) {
+			initialized = true;
+			String filename = DhcpServerPolicies.globalPolicy(Property.TRANSACTION_LOG_FILE);
+			if ((filename == null) || (filename.trim().length() == 0)) {
+				log.info("Transaction log disabled");
+				return null;
+			}
+			File file = new File(filename.trim());
+			if (!file.isAbsolute() && (DhcpConstants.JAGORNET_DHCP_HOME != null)) {
+				file = new File(DhcpConstants.JAGORNET_DHCP_HOME, filename.trim());
+			}
+			try {
+				TransactionLog txLog = new TransactionLog(file, 
+						DhcpServerPolicies.globalPolicyAsInt(Property.TRANSACTION_LOG_BUFFER_SIZE),
+						DhcpServerPolicies.globalPolicyAsLong(Property.TRANSACTION_LOG_MAX_FILE_SIZE),
+						DhcpServerPolicies.globalPolicyAsInt(Property.TRANSACTION_LOG_MAX_BACKUP_INDEX));
+				txLog.start();
+				txLog.registerMetrics();
+				instance = txLog;
+				log.info("Transaction log: " + file);
+			}
+			catch (IOException ex) {
+				log.error("Failure opening transaction log " + file + ": " + ex);
+			}
+		}
+		return instance;
+	}
+	
+	/**
+	 * Instantiates a new transaction log.
+	 * 
+	 * @param file the file
+	 * @param bufferSize the number of records buffered, rounded up to a power of two
+	 * @param maxFileSize the size of the file when it is rolled over
+	 * @param maxBackupIndex the number of rolled over files which are kept
+	 * 
+	 * @throws IOException if the file can not be opened
+	 */
+	public TransactionLog(File file, int bufferSize, long maxFileSize, int maxBackupIndex)
+		throws IOException
+	{
+		this.file = file;
+		this.maxFileSize = maxFileSize;
+		this.maxBackupIndex = maxBackupIndex;
+		int size = 1;
+		while (size < bufferSize) {
+			size <<= 1;
+		}
+		slots = new Slot[size];
+		for (int i=0; i<size; i++) {
+			slots[i] = new Slot();
+		}
+		mask = size - 1;
+		dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.");
+		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		openFile();
+	}
+	
+	/**
+	 * Start the writer thread.
+	 */
+	public void start()
+	{
+		running = true;
+		thread = new Thread(this, "TransactionLog");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Register the metrics in the metrics registry.
+	 */
+	protected void registerMetrics()
+	{
+		MetricsRegistry registry = MetricsRegistry.getInstance();
+		registry.counter("dhcp_transaction_log_dropped_total", 
+				"The transaction log records dropped because the buffer was full.", "",
+				new Gauge() {
+					public double getValue() {
+						return getDropped();
+					}
+				});
+		registry.gauge("dhcp_transaction_log_buffered", 
+				"The transaction log records waiting to be written.", "",
+				new Gauge() {
+					public double getValue() {
+						return getBuffered();
+					}
+				});
+	}
+	
+	/**
+	 * Stop the writer thread, after it writes the buffered records,
+	 * and close the file.
+	 */
+	public void shutdown()
+	{
+		running = false;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+			try {
+				thread.join(5000);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Log a DHCPv4 transaction.
+	 * 
+	 * @param request the request
+	 * @param reply the reply, or null if the request was not answered
+	 * @param start the System.nanoTime() when processing of the request started
+	 * 
+	 * @return true, if logged, false if the buffer is full
+	 */
+	public boolean log(DhcpV4Message request, DhcpV4Message reply, long start)
+	{
+		long seq = claim();
+		if (seq < 0) {
+			return false;
+		}
+		Slot slot = slots[(int)(seq & mask)];
+		slot.time = System.currentTimeMillis();
+		slot.nanos = System.nanoTime() - start;
+		slot.v4Request = request;
+		slot.v4Reply = reply;
+		slot.sequence = seq;
+		return true;
+	}
+	
+	/**
+	 * Log a DHCPv6 transaction.
+	 * 
+	 * @param request the request, which may be a relay message
+	 * @param reply the reply, or null if the request was not answered
+	 * @param start the System.nanoTime() when processing of the request started
+	 * 
+	 * @return true, if logged, false if the buffer is full
+	 */
+	public boolean log(DhcpV6Message request, DhcpV6Message reply, long start)
+	{
+		long seq = claim();
+		if (seq < 0) {
+			return false;
+		}
+		Slot slot = slots[(int)(seq & mask)];
+		slot.time = System.currentTimeMillis();
+		slot.nanos = System.nanoTime() - start;
+		slot.v6Request = request;
+		slot.v6Reply = reply;
+		slot.sequence = seq;
+		return true;
+	}
+	
+	/**
+	 * Claim the next slot of the ring buffer.
+	 * 
+	 * @return the sequence of the slot, or -1 if the buffer is full
+	 */
+	private long claim()
+	{
+		while (true) {
+			long seq = next.get();
+			if (seq - consumed >= slots.length) {
+				dropped.increment();
+				return -1;
+			}
+			if (next.compareAndSet(seq, seq + 1)) {
+				return seq;
+			}
+		}
+	}
+	
+	public long getDropped()
+	{
+		return dropped.sum();
+	}
+	
+	public long getWritten()
+	{
+		return consumed;
+	}
+	
+	public long getBuffered()
+	{
+		return next.get() - consumed;
+	}
+
+	/**
+	 * Write the records as they are published, flushing the file when
+	 * there are no more records to write.
+	 */
+	@Override
+	public void run()
+	{
+		boolean dirty = false;
+		while (true) {
+			long seq = consumed;
+			Slot slot = slots[(int)(seq & mask)];
+			if (slot.sequence == seq) {
+				try {
+					write(slot);
+					dirty = true;
+				}
+				catch (Exception ex) {
+					log.error("Failure writing transaction log: " + ex);
+				}
+				slot.v4Request = null;
+				slot.v4Reply = null;
+				slot.v6Request = null;
+				slot.v6Reply = null;
+				consumed = seq + 1;
+			}
+			else if (running || (seq < next.get())) {
+				// a claimed record may not be published yet after shutdown,
+				// in which case shutdown() stops waiting for it
+				if (dirty) {
+					flush();
+					dirty = false;
+				}
+				LockSupport.parkNanos(IDLE_NANOS);
+			}
+			else {
+				break;
+			}
+		}
+		flush();
+		try {
+			writer.close();
+		}
+		catch (IOException ex) {
+			log.error("Failure closing transaction log: " + ex);
+		}
+	}
+	
+	private void flush()
+	{
+		try {
+			writer.flush();
+		}
+		catch (IOException ex) {
+			log.error("Failure flushing transaction log: " + ex);
+		}
+	}
+	
+	private void openFile() throws IOException
+	{
+		File dir = file.getAbsoluteFile().getParentFile();
+		if ((dir != null) && !dir.exists()) {
+			dir.mkdirs();
+		}
+		fileSize = file.length();
+		writer = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file, true), "UTF-8"), 65536);
+	}
+	
+	/**
+	 * Roll over the file, like the log4j RollingFileAppender.
+	 */
+	private void rollOver() throws IOException
+	{
+		writer.close();
+		if (maxBackupIndex > 0) {
+			File oldest = new File(file.getPath() + "." + maxBackupIndex);
+			if (oldest.exists()) {
+				oldest.delete();
+			}
+			for (int i=maxBackupIndex-1; i>=1; i--) {
+				File backup = new File(file.getPath() + "." + i);
+				if (backup.exists()) {
+					backup.renameTo(new File(file.getPath() + "." + (i+1)));
+				}
+			}
+			file.renameTo(new File(file.getPath() + ".1"));
+		}
+		else {
+			file.delete();
+		}
+		openFile();
+	}
+	
+	private void write(Slot slot) throws IOException
+	{
+		StringBuilder sb = line;
+		sb.setLength(0);
+		sb.append("{\"time\":\"");
+		appendTime(sb, slot.time);
+		sb.append('"');
+		if (slot.v4Request != null) {
+			formatV4(sb, slot.v4Request, slot.v4Reply);
+		}
+		else {
+			formatV6(sb, slot.v6Request, slot.v6Reply);
+		}
+		sb.append(",\"usecs\":").append(slot.nanos / 1000);
+		sb.append("}\n");
+		
+		int len = sb.length();
+		if (chars.length < len) {
+			chars = new char[len * 2];
+		}
+		sb.getChars(0, len, chars, 0);
+		writer.write(chars, 0, len);
+		fileSize += len;
+		if ((maxFileSize > 0) && (fileSize >= maxFileSize)) {
+			rollOver();
+		}
+	}
+	
+	private void formatV4(StringBuilder sb, DhcpV4Message request, DhcpV4Message reply)
+	{
+		sb.append(",\"v\":4,\"peer\":\"");
+		appendAddress(sb, request.getRemoteAddress());
+		sb.append("\",\"link\":\"");
+		InetAddress giAddr = request.getGiAddr();
+		if ((giAddr != null) && !giAddr.equals(DhcpConstants.ZEROADDR_V4)) {
+			appendAddress(sb, giAddr);
+		}
+		else {
+			appendAddress(sb, request.getLocalAddress().getAddress());
+		}
+		sb.append("\",\"xid\":\"");
+		appendHex(sb, request.getTransactionId(), 8);
+		sb.append("\",\"chaddr\":\"");
+		appendHex(sb, request.getChAddr());
+		sb.append("\",\"type\":\"")
+			.append(DhcpConstants.getV4MessageString(request.getMessageType()))
+			.append('"');
+		if (reply != null) {
+			sb.append(",\"reply\":\"")
+				.append(DhcpConstants.getV4MessageString(reply.getMessageType()))
+				.append('"');
+			InetAddress yiAddr = reply.getYiAddr();
+			if ((yiAddr != null) && !yiAddr.equals(DhcpConstants.ZEROADDR_V4)) {
+				sb.append(",\"yiaddr\":\"");
+				appendAddress(sb, yiAddr);
+				sb.append('"');
+			}
+		}
+		else {
+			sb.append(",\"reply\":null");
+		}
+	}
+	
+	private void formatV6(StringBuilder sb, DhcpV6Message request, DhcpV6Message reply)
+	{
+		sb.append(",\"v\":6,\"peer\":\"");
+		appendAddress(sb, request.getRemoteAddress());
+		sb.append("\",\"link\":\"");
+		InetAddress link = request.getLocalAddress().getAddress();
+		DhcpV6Message msg = request;
+		while ((msg instanceof DhcpV6RelayMessage) && 
+				(((DhcpV6RelayMessage)msg).getRelayOption() != null)) {
+			DhcpV6RelayMessage relay = (DhcpV6RelayMessage)msg;
+			// the link of the client is the link address of the innermost relay
+			link = relay.getLinkAddress();
+			msg = relay.getRelayOption().getDhcpMessage();
+		}
+		appendAddress(sb, link);
+		sb.append("\",\"xid\":\"");
+		appendHex(sb, msg.getTransactionId(), 6);
+		sb.append('"');
+		DhcpV6ClientIdOption clientId = msg.getDhcpClientIdOption();
+		if ((clientId != null) && (clientId.getOpaqueData() != null)) {
+			sb.append(",\"duid\":\"");
+			BaseOpaqueData duid = clientId.getOpaqueData();
+			if (duid.getHex() != null) {
+				appendHex(sb, duid.getHex());
+			}
+			else {
+				appendEscaped(sb, duid.getAscii());
+			}
+			sb.append('"');
+		}
+		sb.append(",\"type\":\"")
+			.append(DhcpConstants.getV6MessageString(msg.getMessageType()))
+			.append('"');
+		if (reply != null) {
+			while ((reply instanceof DhcpV6RelayMessage) && 
+					(((DhcpV6RelayMessage)reply).getRelayOption() != null)) {
+				reply = ((DhcpV6RelayMessage)reply).getRelayOption().getDhcpMessage();
+			}
+			sb.append(",\"reply\":\"")
+				.append(DhcpConstants.getV6MessageString(reply.getMessageType()))
+				.append('"');
+			int start = sb.length();
+			sb.append(",\"addrs\":[");
+			int addrs = 0;
+			List<DhcpV6IaNaOption> iaNas = reply.getIaNaOptions();
+			if (iaNas != null) {
+				for (DhcpV6IaNaOption iaNa : iaNas) {
+					addrs += appendIaAddrs(sb, iaNa.getIaAddrOptions(), addrs);
+				}
+			}
+			List<DhcpV6IaTaOption> iaTas = reply.getIaTaOptions();
+			if (iaTas != null) {
+				for (DhcpV6IaTaOption iaTa : iaTas) {
+					addrs += appendIaAddrs(sb, iaTa.getIaAddrOptions(), addrs);
+				}
+			}
+			List<DhcpV6IaPdOption> iaPds = reply.getIaPdOptions();
+			if (iaPds != null) {
+				for (DhcpV6IaPdOption iaPd : iaPds) {
+					List<DhcpV6IaPrefixOption> iaPrefixes = iaPd.getIaPrefixOptions();
+					if (iaPrefixes != null) {
+						for (DhcpV6IaPrefixOption iaPrefix : iaPrefixes) {
+							if (addrs++ > 0) {
+								sb.append(',');
+							}
+							sb.append('"').append(iaPrefix.getIpAddress()).append('/')
+								.append(iaPrefix.getPrefixLength()).append('"');
+						}
+					}
+				}
+			}
+			if (addrs > 0) {
+				sb.append(']');
+			}
+			else {
+				sb.setLength(start);
+			}
+		}
+		else {
+			sb.append(",\"reply\":null");
+		}
+	}
+	
+	private int appendIaAddrs(StringBuilder sb, List<DhcpV6IaAddrOption> iaAddrs, int count)
+	{
+		int added = 0;
+		if (iaAddrs != null) {
+			for (DhcpV6IaAddrOption iaAddr : iaAddrs) {
+				if (count + added > 0) {
+					sb.append(',');
+				}
+				sb.append('"').append(iaAddr.getIpAddress()).append('"');
+				added++;
+			}
+		}
+		return added;
+	}
+	
+	/**
+	 * Append the ISO 8601 time in UTC, formatting the date only once a second.
+	 */
+	private void appendTime(StringBuilder sb, long time)
+	{
+		long second = time / 1000;
+		if (second != cachedSecond) {
+			cachedSecond = second;
+			cachedSecondText = dateFormat.format(new Date(second * 1000));
+		}
+		int millis = (int)(time - (second * 1000));
+		sb.append(cachedSecondText);
+		if (millis < 100) {
+			sb.append('0');
+		}
+		if (millis < 10) {
+			sb.append('0');
+		}
+		sb.append(millis).append('Z');
+	}
+	
+	private static void appendAddress(StringBuilder sb, InetSocketAddress sockAddr)
+	{
+		if (sockAddr != null) {
+			appendAddress(sb, sockAddr.getAddress());
+		}
+	}
+	
+	private static void appendAddress(StringBuilder sb, InetAddress addr)
+	{
+		if (addr instanceof Inet4Address) {
+			byte[] b = addr.getAddress();
+			sb.append(b[0] & 0xff).append('.').append(b[1] & 0xff).append('.')
+				.append(b[2] & 0xff).append('.').append(b[3] & 0xff);
+		}
+		else if (addr != null) {
+			sb.append(addr.getHostAddress());
+		}
+	}
+	
+	private static void appendHex(StringBuilder sb, long value, int digits)
+	{
+		for (int shift=(digits-1)*4; shift>=0; shift-=4) {
+			sb.append(HEX[(int)(value >>> shift) & 0xf]);
+		}
+	}
+	
+	private static void appendHex(StringBuilder sb, byte[] bytes)
+	{
+		if (bytes != null) {
+			for (byte b : bytes) {
+				sb.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+			}
+		}
+	}
+	
+	private static void appendEscaped(StringBuilder sb, String s)
+	{
+		if (s == null) {
+			return;
+		}
+		for (int i=0; i<s.length(); i++) {
+			char c = s.charAt(i);
+			if ((c == '"') || (c == '\\')) {
+				sb.append('\\').append(c);
+			}
+			else if (c < 0x20) {
+				sb.append("\\u00").append(HEX[(c >> 4) & 0xf]).append(HEX[c & 0xf]);
+			}
+			else {
+				sb.append(c);
+			}
+		}
+	}
+}
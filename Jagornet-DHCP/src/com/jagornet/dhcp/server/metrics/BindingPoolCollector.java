@@ -0,0 +1,130 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file BindingPoolCollector.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.metrics;
+
+import static com.jagornet.dhcp.server.metrics.MetricsWriter.labels;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.jagornet.dhcp.server.config.DhcpServerConfiguration;
+import com.jagornet.dhcp.server.request.binding.BaseBindingManager;
+import com.jagornet.dhcp.server.request.binding.BindingPool;
+
+/**
+ * The Class BindingPoolCollector.  Writes the size, used count and
+ * utilization of each binding pool, and their totals for each link,
+ * for the binding managers of the server configuration.  The pools are
+ * read each time, so a change of the configuration is seen at once.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class BindingPoolCollector implements MetricsCollector
+{
+	private DhcpServerConfiguration serverConfig;
+	
+	public BindingPoolCollector(DhcpServerConfiguration serverConfig)
+	{
+		this.serverConfig = serverConfig;
+	}
+
+	@Override
+	public void collect(MetricsWriter writer)
+	{
+		List<String> poolLabels = new ArrayList<String>();
+		List<double[]> poolValues = new ArrayList<double[]>();
+		List<String> linkLabels = new ArrayList<String>();
+		List<double[]> linkValues = new ArrayList<double[]>();
+		
+		addPools("v4", serverConfig.getV4AddrBindingMgr(), 
+				poolLabels, poolValues, linkLabels, linkValues);
+		addPools("na", serverConfig.getNaAddrBindingMgr(), 
+				poolLabels, poolValues, linkLabels, linkValues);
+		addPools("ta", serverConfig.getTaAddrBindingMgr(), 
+				poolLabels, poolValues, linkLabels, linkValues);
+		addPools("pd", serverConfig.getPrefixBindingMgr(), 
+				poolLabels, poolValues, linkLabels, linkValues);
+		
+		write(writer, "dhcp_pool", "binding pool", poolLabels, poolValues);
+		write(writer, "dhcp_link", "link, for all its binding pools", linkLabels, linkValues);
+	}
+	
+	private void addPools(String kind, Object bindingMgr, 
+			List<String> poolLabels, List<double[]> poolValues,
+			List<String> linkLabels, List<double[]> linkValues)
+	{
+		if (!(bindingMgr instanceof BaseBindingManager)) {
+			return;
+		}
+		Map<String, List<? extends BindingPool>> poolMap = 
+			((BaseBindingManager) bindingMgr).getBindingPoolMap();
+		if (poolMap == null) {
+			return;
+		}
+		for (Map.Entry<String, List<? extends BindingPool>> entry : poolMap.entrySet()) {
+			String link = entry.getKey();
+			double linkSize = 0;
+			double linkUsed = 0;
+			for (BindingPool pool : entry.getValue()) {
+				double size = pool.getSize().doubleValue();
+				double used = pool.getUsedCount();
+				poolLabels.add(labels("kind", kind, "link", link, "pool", 
+						pool.getStartAddress().getHostAddress() + "-" + 
+						pool.getEndAddress().getHostAddress()));
+				poolValues.add(new double[] { size, used });
+				linkSize += size;
+				linkUsed += used;
+			}
+			linkLabels.add(labels("kind", kind, "link", link));
+			linkValues.add(new double[] { linkSize, linkUsed });
+		}
+	}
+	
+	private void write(MetricsWriter writer, String prefix, String of, 
+			List<String> labels, List<double[]> values)
+	{
+		if (labels.isEmpty()) {
+			return;
+		}
+		writer.family(prefix + "_size", MetricsWriter.GAUGE, 
+				"The number of addresses or prefixes of a " + of + ".");
+		for (int i=0; i<labels.size(); i++) {
+			writer.sample(prefix + "_size", labels.get(i), values.get(i)[0]);
+		}
+		writer.family(prefix + "_used", MetricsWriter.GAUGE, 
+				"The number of addresses or prefixes used of a " + of + ".");
+		for (int i=0; i<labels.size(); i++) {
+			writer.sample(prefix + "_used", labels.get(i), values.get(i)[1]);
+		}
+		writer.family(prefix + "_utilization", MetricsWriter.GAUGE, 
+				"The fraction of the addresses or prefixes used of a " + of + ".");
+		for (int i=0; i<labels.size(); i++) {
+			double[] v = values.get(i);
+			writer.sample(prefix + "_utilization", labels.get(i), (v[0] > 0) ? v[1] / v[0] : 0);
+		}
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file DhcpMetrics.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.metrics;
+
+import static com.jagornet.dhcp.server.metrics.MetricsWriter.labels;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import com.jagornet.dhcp.util.DhcpConstants;
+
+/**
+ * The Class DhcpMetrics.  The metrics of the stages of the request
+ * processing: decode, processing by message type, the lease store calls,
+ * the DDNS updates, and encode, with the counts of the messages received
+ * and sent by type.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class DhcpMetrics
+{
+	private static MetricsRegistry registry = MetricsRegistry.getInstance();
+	
+	public static final String RECEIVED = "dhcp_messages_received_total";
+	public static final String SENT = "dhcp_messages_sent_total";
+	public static final String DROPPED = "dhcp_messages_dropped_total";
+	public static final String DECODE = "dhcp_decode_seconds";
+	public static final String PROCESS = "dhcp_process_seconds";
+	public static final String ENCODE = "dhcp_encode_seconds";
+	public static final String LEASE_STORE = "dhcp_lease_store_seconds";
+	public static final String DDNS_UPDATE = "dhcp_ddns_update_seconds";
+	
+	private static final String[] V4_TYPES = DhcpConstants.V4MESSAGE_STRING;
+	private static final String[] V6_TYPES = DhcpConstants.V6MESSAGE_STRING;
+
+	private static final StripedCounter[] v4Received = 
+		counters(RECEIVED, "The DHCP messages received, by type.", "4", V4_TYPES);
+	private static final StripedCounter[] v4Sent = 
+		counters(SENT, "The DHCP messages sent, by type.", "4", V4_TYPES);
+	private static final StripedCounter[] v6Received = 
+		counters(RECEIVED, "The DHCP messages received, by type.", "6", V6_TYPES);
+	private static final StripedCounter[] v6Sent = 
+		counters(SENT, "The DHCP messages sent, by type.", "6", V6_TYPES);
+	
+	private static final LatencyHistogram[] v4Process = 
+		histograms(PROCESS, "The time to process a request, by type.", "4", V4_TYPES);
+	private static final LatencyHistogram[] v6Process = 
+		histograms(PROCESS, "The time to process a request, by type.", "6", V6_TYPES);
+	
+	public static final StripedCounter V4_DROPPED = registry.counter(DROPPED, 
+			"The DHCP messages received which were not answered.", labels("version", "4"));
+	public static final StripedCounter V6_DROPPED = registry.counter(DROPPED, 
+			"The DHCP messages received which were not answered.", labels("version", "6"));
+
+	public static final LatencyHistogram V4_DECODE = registry.histogram(DECODE, 
+			"The time to decode a received message.", labels("version", "4"));
+	public static final LatencyHistogram V6_DECODE = registry.histogram(DECODE, 
+			"The time to decode a received message.", labels("version", "6"));
+	public static final LatencyHistogram V4_ENCODE = registry.histogram(ENCODE, 
+			"The time to encode a reply message.", labels("version", "4"));
+	public static final LatencyHistogram V6_ENCODE = registry.histogram(ENCODE, 
+			"The time to encode a reply message.", labels("version", "6"));
+
+	/** The messages decoded and waiting for a thread of the channel executor. */
+	public static final StripedCounter V4_QUEUED = new StripedCounter();
+	public static final StripedCounter V6_QUEUED = new StripedCounter();
+	
+	public static final LatencyHistogram LEASE_CREATE = leaseStore("createIA");
+	public static final LatencyHistogram LEASE_UPDATE = leaseStore("updateIA");
+	public static final LatencyHistogram LEASE_DELETE = leaseStore("deleteIA");
+	public static final LatencyHistogram LEASE_FIND = leaseStore("findIA");
+	public static final StripedCounter LEASE_UPDATE_SKIPPED = registry.counter(
+			"dhcp_lease_update_skipped_total", 
+			"The renewals not written, as the stored lease was still current.", labels());
+	public static final StripedCounter ADDRESS_AFFINITY_HIT = registry.counter(
+			"dhcp_address_affinity_hit_total", 
+			"The new bindings given the last address of the client again.", labels());
+	public static final StripedCounter OFFER_EXPIRED = registry.counter(
+			"dhcp_offer_expired_total", 
+			"The offers kept in memory which expired without a request.", labels());
+	
+	public static final StripedCounter V4_RENEW_REPLY_BUILT = registry.counter(
+			"dhcp_v4_renew_fast_path_total", 
+			"The DHCPv4 renewals answered from memory, by reply.", labels("reply", "built"));
+	public static final StripedCounter V4_RENEW_REPLY_CACHED = registry.counter(
+			"dhcp_v4_renew_fast_path_total", 
+			"The DHCPv4 renewals answered from memory, by reply.", labels("reply", "cached"));
+	
+	public static final LatencyHistogram DDNS_FORWARD = registry.histogram(DDNS_UPDATE, 
+			"The time from queueing a DDNS update until it completes, by direction.", 
+			labels("direction", "forward"));
+	public static final LatencyHistogram DDNS_REVERSE = registry.histogram(DDNS_UPDATE, 
+			"The time from queueing a DDNS update until it completes, by direction.", 
+			labels("direction", "reverse"));
+	
+	static {
+		registry.gauge("dhcp_channel_queue_depth", 
+				"The messages received and waiting for a thread.", labels("version", "4"),
+				new Gauge() {
+					public double getValue() {
+						return V4_QUEUED.sum();
+					}
+				});
+		registry.gauge("dhcp_channel_queue_depth", 
+				"The messages received and waiting for a thread.", labels("version", "6"),
+				new Gauge() {
+					public double getValue() {
+						return V6_QUEUED.sum();
+					}
+				});
+	}
+	
+	private static StripedCounter[] counters(String name, String help, 
+			String version, String[] types)
+	{
+		StripedCounter[] counters = new StripedCounter[types.length];
+		for (int i=0; i<types.length; i++) {
+			counters[i] = registry.counter(name, help, 
+					labels("version", version, "type", types[i]));
+		}
+		return counters;
+	}
+	
+	private static LatencyHistogram[] histograms(String name, String help, 
+			String version, String[] types)
+	{
+		LatencyHistogram[] histograms = new LatencyHistogram[types.length];
+		for (int i=0; i<types.length; i++) {
+			histograms[i] = registry.histogram(name, help, 
+					labels("version", version, "type", types[i]));
+		}
+		return histograms;
+	}
+	
+	private static LatencyHistogram leaseStore(String op)
+	{
+		return registry.histogram(LEASE_STORE, 
+				"The time of the calls to the lease store, by operation.", labels("op", op));
+	}
+
+	/**
+	 * Gets the index of a message type, or 0 for an unknown type.
+	 */
+	private static int index(short msgType, int length)
+	{
+		return ((msgType > 0) && (msgType < length)) ? msgType : 0;
+	}
+	
+	public static StripedCounter v4Received(short msgType)
+	{
+		return v4Received[index(msgType, v4Received.length)];
+	}
+	
+	public static StripedCounter v4Sent(short msgType)
+	{
+		return v4Sent[index(msgType, v4Sent.length)];
+	}
+	
+	public static StripedCounter v6Received(short msgType)
+	{
+		return v6Received[index(msgType, v6Received.length)];
+	}
+	
+	public static StripedCounter v6Sent(short msgType)
+	{
+		return v6Sent[index(msgType, v6Sent.length)];
+	}
+	
+	public static LatencyHistogram v4Process(short msgType)
+	{
+		return v4Process[index(msgType, v4Process.length)];
+	}
+	
+	public static LatencyHistogram v6Process(short msgType)
+	{
+		return v6Process[index(msgType, v6Process.length)];
+	}
+	
+	/**
+	 * Register the gauges of the executor of a channel.
+	 * 
+	 * @param channel the local address of the channel
+	 * @param executor the executor
+	 */
+	public static void registerExecutor(String channel, final ThreadPoolExecutor executor)
+	{
+		String labels = labels("channel", channel);
+		registry.gauge("dhcp_channel_threads", 
+				"The threads of the executor of a channel.", labels,
+				new Gauge() {
+					public double getValue() {
+						return executor.getPoolSize();
+					}
+				});
+		registry.gauge("dhcp_channel_threads_active", 
+				"The threads of the executor of a channel processing a message.", labels,
+				new Gauge() {
+					public double getValue() {
+						return executor.getActiveCount();
+					}
+				});
+		registry.gauge("dhcp_channel_executor_queue", 
+				"The tasks waiting in the executor of a channel.", labels,
+				new Gauge() {
+					public double getValue() {
+						return executor.getQueue().size();
+					}
+				});
+	}
+}
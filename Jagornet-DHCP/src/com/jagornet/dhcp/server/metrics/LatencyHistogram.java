@@ -0,0 +1,180 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file LatencyHistogram.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The Class LatencyHistogram.  A histogram of durations in nanoseconds,
+ * with buckets laid out like an HdrHistogram: each power of two is split
+ * into 16 linear sub-buckets, so a recorded value is known to within
+ * 1/16th (about 6%) at any magnitude, with a fixed number of buckets and
+ * no allocation when recording.  Values of more than about 18 minutes are
+ * counted in the last bucket.
+ * 
+ * The count and sum are striped counters.  The buckets are not, since the
+ * values of a busy histogram are spread over many of them.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class LatencyHistogram
+{
+	/** The bits of a value which select the sub-bucket. */
+	private static final int SUB_BITS = 4;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	
+	/** The highest power of two of the values tracked, 2^40 ns is about 18 minutes. */
+	private static final int MAX_MAGNITUDE = 39;
+	
+	private static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BITS + 2) * SUB_COUNT;
+	
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final StripedCounter count = new StripedCounter();
+	private final StripedCounter sum = new StripedCounter();
+
+	/**
+	 * Record a duration.
+	 * 
+	 * @param nanos the duration in nanoseconds
+	 */
+	public void record(long nanos)
+	{
+		if (nanos < 0) {
+			nanos = 0;		// nanoTime of another core
+		}
+		buckets.incrementAndGet(bucketIndex(nanos));
+		count.increment();
+		sum.add(nanos);
+	}
+	
+	/**
+	 * Record the duration since a start time.
+	 * 
+	 * @param startNanos the start time from System.nanoTime()
+	 */
+	public void recordSince(long startNanos)
+	{
+		record(System.nanoTime() - startNanos);
+	}
+	
+	/**
+	 * Gets the bucket index of a value.
+	 * 
+	 * @param value the value
+	 * 
+	 * @return the bucket index
+	 */
+	static int bucketIndex(long value)
+	{
+		if (value < SUB_COUNT) {
+			return (int) value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		if (magnitude > MAX_MAGNITUDE) {
+			return BUCKET_COUNT - 1;
+		}
+		int sub = (int) (value >>> (magnitude - SUB_BITS)) & (SUB_COUNT - 1);
+		return (magnitude - SUB_BITS + 1) * SUB_COUNT + sub;
+	}
+	
+	/**
+	 * Gets the highest value counted in a bucket.
+	 * 
+	 * @param index the bucket index
+	 * 
+	 * @return the highest value
+	 */
+	static long bucketMaxValue(int index)
+	{
+		if (index < SUB_COUNT) {
+			return index;
+		}
+		int magnitude = (index / SUB_COUNT) + SUB_BITS - 1;
+		long sub = SUB_COUNT + (index % SUB_COUNT);
+		int shift = magnitude - SUB_BITS;
+		return ((sub + 1) << shift) - 1;
+	}
+	
+	/**
+	 * @return the number of durations recorded
+	 */
+	public long getCount()
+	{
+		return count.sum();
+	}
+	
+	/**
+	 * @return the sum of the durations recorded, in nanoseconds
+	 */
+	public long getSum()
+	{
+		return sum.sum();
+	}
+	
+	/**
+	 * Gets the values at the given quantiles, read from one pass over the buckets.
+	 * 
+	 * @param quantiles the quantiles, between 0 and 1, in ascending order
+	 * 
+	 * @return the highest value of the bucket holding each quantile,
+	 * in nanoseconds, or 0 if nothing was recorded
+	 */
+	public long[] getValuesAtQuantiles(double[] quantiles)
+	{
+		long[] counts = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int i=0; i<BUCKET_COUNT; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		long[] values = new long[quantiles.length];
+		if (total == 0) {
+			return values;
+		}
+		int q = 0;
+		long cumulative = 0;
+		for (int i=0; (i<BUCKET_COUNT) && (q<quantiles.length); i++) {
+			cumulative += counts[i];
+			while ((q < quantiles.length) && 
+					(cumulative >= Math.max(1, (long) Math.ceil(quantiles[q] * total)))) {
+				values[q++] = bucketMaxValue(i);
+			}
+		}
+		return values;
+	}
+	
+	/**
+	 * Gets the value at a quantile.
+	 * 
+	 * @param quantile the quantile, between 0 and 1
+	 * 
+	 * @return the highest value of the bucket holding the quantile
+	 */
+	public long getValueAtQuantile(double quantile)
+	{
+		return getValuesAtQuantiles(new double[] { quantile })[0];
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file MetricsCollector.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.metrics;
+
+/**
+ * The Interface MetricsCollector.  Writes a set of metrics which is not
+ * known in advance, e.g. the gauges of the configured binding pools, each
+ * time the metrics are exposed.
+ * 
+ * @author A. Gregory Rabil
+ */
+public interface MetricsCollector
+{
+	/**
+	 * Write the metrics.  The samples of a metric must be written together,
+	 * after the family of the metric.
+	 * 
+	 * @param writer the writer
+	 */
+	public void collect(MetricsWriter writer);
+}
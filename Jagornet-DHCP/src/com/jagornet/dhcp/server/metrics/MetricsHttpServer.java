@@ -0,0 +1,144 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file MetricsHttpServer.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The Class MetricsHttpServer.  A small HTTP server which answers GET
+ * requests for /metrics with the metrics of a registry in the Prometheus
+ * text format, using one thread.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class MetricsHttpServer implements HttpHandler
+{
+	private static Logger log = LoggerFactory.getLogger(MetricsHttpServer.class);
+	
+	public static final String CONTEXT = "/metrics";
+
+	private MetricsRegistry registry;
+	private InetSocketAddress sockAddr;
+	private HttpServer server;
+	private ExecutorService executor;
+	
+	/**
+	 * Instantiates a new metrics http server.
+	 * 
+	 * @param registry the registry
+	 * @param sockAddr the address to listen on
+	 */
+	public MetricsHttpServer(MetricsRegistry registry, InetSocketAddress sockAddr)
+	{
+		this.registry = registry;
+		this.sockAddr = sockAddr;
+	}
+	
+	/**
+	 * Start the server.
+	 * 
+	 * @throws IOException if the socket can not be bound
+	 */
+	public void start() throws IOException
+	{
+		server = HttpServer.create(sockAddr, 0);
+		server.createContext(CONTEXT, this);
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "MetricsHttpServer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executor);
+		server.start();
+		log.info("Metrics available at http://" + getAddress().getAddress().getHostAddress() + ":" + 
+				getAddress().getPort() + CONTEXT);
+	}
+	
+	/**
+	 * Gets the address the server is bound to.
+	 * 
+	 * @return the address
+	 */
+	public InetSocketAddress getAddress()
+	{
+		return server.getAddress();
+	}
+	
+	/**
+	 * Stop the server.
+	 */
+	public void shutdown()
+	{
+		if (server != null) {
+			server.stop(0);
+			executor.shutdown();
+		}
+	}
+	
+	@Override
+	public void handle(HttpExchange exchange) throws IOException
+	{
+		try {
+			String method = exchange.getRequestMethod();
+			if (!"GET".equals(method) && !"HEAD".equals(method)) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			byte[] body = registry.scrape().getBytes("UTF-8");
+			exchange.getResponseHeaders().set("Content-Type", MetricsWriter.CONTENT_TYPE);
+			if ("HEAD".equals(method)) {
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(200, body.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		}
+		catch (IOException ex) {
+			log.warn("Failure sending metrics: " + ex);
+			throw ex;
+		}
+		finally {
+			exchange.close();
+		}
+	}
+}
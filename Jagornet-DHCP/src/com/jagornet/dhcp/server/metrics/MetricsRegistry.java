@@ -0,0 +1,253 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file MetricsRegistry.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class MetricsRegistry.  The registry of the server's metrics, which
+ * are the counters, histograms and gauges registered by name and labels,
+ * and the collectors of the metrics which are only known when exposed.
+ * 
+ * Registering a metric returns the existing one for the same name and
+ * labels, so the metrics are usually registered once, and kept in static
+ * fields by the code which updates them.  Updating a metric does not use
+ * the registry.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class MetricsRegistry
+{
+	private static Logger log = LoggerFactory.getLogger(MetricsRegistry.class);
+
+	/** The instance. */
+	private static MetricsRegistry instance = new MetricsRegistry();
+
+	/** The metrics by name. */
+	private Map<String, Family> families = new TreeMap<String, Family>();
+	
+	private List<MetricsCollector> collectors = new CopyOnWriteArrayList<MetricsCollector>();
+	
+	/**
+	 * Gets the single instance.
+	 * 
+	 * @return the instance
+	 */
+	public static MetricsRegistry getInstance()
+	{
+		return instance;
+	}
+	
+	/**
+	 * Gets or registers a counter.
+	 * 
+	 * @param name the name
+	 * @param help the help text
+	 * @param labels the labels, see MetricsWriter.labels()
+	 * 
+	 * @return the counter
+	 */
+	public StripedCounter counter(String name, String help, String labels)
+	{
+		return (StripedCounter) register(name, MetricsWriter.COUNTER, help, labels, 
+				new StripedCounter());
+	}
+	
+	/**
+	 * Registers a counter which is kept elsewhere.
+	 * 
+	 * @param name the name
+	 * @param help the help text
+	 * @param labels the labels, see MetricsWriter.labels()
+	 * @param counter the value of the counter
+	 */
+	public void counter(String name, String help, String labels, Gauge counter)
+	{
+		register(name, MetricsWriter.COUNTER, help, labels, counter);
+	}
+	
+	/**
+	 * Gets or registers a histogram.
+	 * 
+	 * @param name the name
+	 * @param help the help text
+	 * @param labels the labels, see MetricsWriter.labels()
+	 * 
+	 * @return the histogram
+	 */
+	public LatencyHistogram histogram(String name, String help, String labels)
+	{
+		return (LatencyHistogram) register(name, MetricsWriter.SUMMARY, help, labels, 
+				new LatencyHistogram());
+	}
+	
+	/**
+	 * Registers a gauge.
+	 * 
+	 * @param name the name
+	 * @param help the help text
+	 * @param labels the labels, see MetricsWriter.labels()
+	 * @param gauge the gauge
+	 */
+	public void gauge(String name, String help, String labels, Gauge gauge)
+	{
+		register(name, MetricsWriter.GAUGE, help, labels, gauge);
+	}
+	
+	/**
+	 * Register a metric, unless one is registered for the name and labels.
+	 * A gauge replaces a registered gauge.
+	 *
+	 * @return the registered metric
+	 */
+	protected synchronized Object register(String name, String type, String help,
+			String labels, Object metric)
+	{
+		Family family = families.get(name);
+		if (family == null) {
+			family = new Family(type, help);
+			families.put(name, family);
+		}
+		else if (!family.type.equals(type)) {
+			throw new IllegalArgumentException("Metric " + name + 
+					" is already registered as a " + family.type);
+		}
+		Object existing = family.metrics.get(labels);
+		if ((existing instanceof Gauge) && (metric instanceof Gauge)) {
+			// replaced, e.g. by the same gauge of a new instance
+			family.metrics.put(labels, metric);
+			return metric;
+		}
+		if (existing != null) {
+			if (existing.getClass() != metric.getClass()) {
+				throw new IllegalArgumentException("Metric " + name + "{" + labels +
+						"} is already registered");
+			}
+			return existing;
+		}
+		family.metrics.put(labels, metric);
+		return metric;
+	}
+	
+	/**
+	 * Remove a metric.
+	 * 
+	 * @param name the name
+	 * @param labels the labels
+	 */
+	public synchronized void remove(String name, String labels)
+	{
+		Family family = families.get(name);
+		if (family != null) {
+			family.metrics.remove(labels);
+			if (family.metrics.isEmpty()) {
+				families.remove(name);
+			}
+		}
+	}
+	
+	/**
+	 * Add a collector.
+	 * 
+	 * @param collector the collector
+	 */
+	public void addCollector(MetricsCollector collector)
+	{
+		collectors.add(collector);
+	}
+	
+	/**
+	 * Remove a collector.
+	 * 
+	 * @param collector the collector
+	 */
+	public void removeCollector(MetricsCollector collector)
+	{
+		collectors.remove(collector);
+	}
+
+	/**
+	 * Write all metrics in the Prometheus text format.
+	 * 
+	 * @return the metrics
+	 */
+	public String scrape()
+	{
+		MetricsWriter writer = new MetricsWriter();
+		synchronized (this) {
+			for (Map.Entry<String, Family> entry : families.entrySet()) {
+				String name = entry.getKey();
+				Family family = entry.getValue();
+				writer.family(name, family.type, family.help);
+				for (Map.Entry<String, Object> metric : family.metrics.entrySet()) {
+					String labels = metric.getKey();
+					Object value = metric.getValue();
+					if (value instanceof StripedCounter) {
+						writer.sample(name, labels, ((StripedCounter)value).sum());
+					}
+					else if (value instanceof LatencyHistogram) {
+						writer.summary(name, labels, (LatencyHistogram)value);
+					}
+					else {
+						writer.sample(name, labels, ((Gauge)value).getValue());
+					}
+				}
+			}
+		}
+		for (MetricsCollector collector : collectors) {
+			try {
+				collector.collect(writer);
+			}
+			catch (Exception ex) {
+				log.error("Failure collecting metrics from " + collector + ": " + ex);
+			}
+		}
+		return writer.toString();
+	}
+	
+	/**
+	 * The metrics of a name, by labels.
+	 */
+	static class Family
+	{
+		final String type;
+		final String help;
+		final Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+		
+		Family(String type, String help)
+		{
+			this.type = type;
+			this.help = help;
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file MetricsWriter.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.metrics;
+
+/**
+ * The Class MetricsWriter.  Writes metrics in the Prometheus text
+ * exposition format, version 0.0.4.  The labels of a sample are given as
+ * a string of comma separated name="value" pairs, see labels().
+ * 
+ * @author A. Gregory Rabil
+ */
+public class MetricsWriter
+{
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	
+	public static final String COUNTER = "counter";
+	public static final String GAUGE = "gauge";
+	public static final String SUMMARY = "summary";
+
+	/** The quantiles written for a histogram. */
+	public static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+	
+	private static final String[] QUANTILE_LABELS = { "0.5", "0.9", "0.99", "0.999" };
+	
+	private static final double NANOS_PER_SECOND = 1e9;
+	
+	private StringBuilder sb = new StringBuilder(8192);
+	
+	/**
+	 * Build the labels of a sample.
+	 * 
+	 * @param namesAndValues the label names and values
+	 * 
+	 * @return the labels
+	 */
+	public static String labels(String... namesAndValues)
+	{
+		StringBuilder labels = new StringBuilder();
+		for (int i=0; i<namesAndValues.length-1; i+=2) {
+			if (labels.length() > 0) {
+				labels.append(',');
+			}
+			labels.append(namesAndValues[i]).append("=\"");
+			String value = namesAndValues[i+1];
+			for (int j=0; j<value.length(); j++) {
+				char c = value.charAt(j);
+				if ((c == '\\') || (c == '"')) {
+					labels.append('\\').append(c);
+				}
+				else if (c == '\n') {
+					labels.append("\\n");
+				}
+				else {
+					labels.append(c);
+				}
+			}
+			labels.append('"');
+		}
+		return labels.toString();
+	}
+
+	/**
+	 * Write the help and type of a metric.
+	 * 
+	 * @param name the name
+	 * @param type the type, counter, gauge or summary
+	 * @param help the help text
+	 */
+	public void family(String name, String type, String help)
+	{
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+	
+	/**
+	 * Write a sample.
+	 * 
+	 * @param name the name
+	 * @param labels the labels, or null
+	 * @param value the value
+	 */
+	public void sample(String name, String labels, double value)
+	{
+		sb.append(name);
+		if ((labels != null) && (labels.length() > 0)) {
+			sb.append('{').append(labels).append('}');
+		}
+		sb.append(' ');
+		if ((value == Math.rint(value)) && !Double.isInfinite(value) && 
+				(Math.abs(value) < Long.MAX_VALUE)) {
+			sb.append((long) value);
+		}
+		else if (Double.isNaN(value)) {
+			sb.append("NaN");
+		}
+		else {
+			sb.append(value);
+		}
+		sb.append('\n');
+	}
+	
+	/**
+	 * Write a histogram as a summary, in seconds.
+	 * 
+	 * @param name the name
+	 * @param labels the labels, or null
+	 * @param histogram the histogram
+	 */
+	public void summary(String name, String labels, LatencyHistogram histogram)
+	{
+		String prefix = ((labels != null) && (labels.length() > 0)) ? labels + "," : "";
+		long[] values = histogram.getValuesAtQuantiles(QUANTILES);
+		for (int i=0; i<QUANTILES.length; i++) {
+			sample(name, prefix + "quantile=\"" + QUANTILE_LABELS[i] + "\"", 
+					values[i] / NANOS_PER_SECOND);
+		}
+		sample(name + "_sum", labels, histogram.getSum() / NANOS_PER_SECOND);
+		sample(name + "_count", labels, histogram.getCount());
+	}
+	
+	public String toString()
+	{
+		return sb.toString();
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file StripedCounter.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The Class StripedCounter.  A counter which is spread over a number of
+ * cells, each on its own cache line, so threads updating the counter at
+ * the same time do not contend for the same cell.  The cell of a thread
+ * is chosen by its id.  Reading the counter sums the cells, so it is much
+ * slower than updating it, and is meant for the metrics exposition only.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class StripedCounter
+{
+	/** The number of longs in a cache line, so each cell is on its own line. */
+	private static final int PAD = 8;
+	
+	/** The number of cells, a power of two. */
+	private static final int STRIPES = stripes();
+	
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+
+	private static int stripes()
+	{
+		int n = 1;
+		int cpus = Runtime.getRuntime().availableProcessors();
+		while ((n < cpus * 2) && (n < 64)) {
+			n <<= 1;
+		}
+		return n;
+	}
+	
+	/**
+	 * Increment the counter.
+	 */
+	public void increment()
+	{
+		add(1);
+	}
+
+	/**
+	 * Decrement the counter.
+	 */
+	public void decrement()
+	{
+		add(-1);
+	}
+	
+	/**
+	 * Add to the counter.
+	 * 
+	 * @param x the amount to add
+	 */
+	public void add(long x)
+	{
+		int cell = ((int) Thread.currentThread().getId() & (STRIPES - 1)) * PAD;
+		cells.getAndAdd(cell, x);
+	}
+	
+	/**
+	 * Gets the sum of the cells.  The sum is not a snapshot, if the counter
+	 * is updated while it is read.
+	 * 
+	 * @return the sum
+	 */
+	public long sum()
+	{
+		long sum = 0;
+		for (int i=0; i<STRIPES; i++) {
+			sum += cells.get(i * PAD);
+		}
+		return sum;
+	}
+	
+	public String toString()
+	{
+		return String.valueOf(sum());
+	}
+}
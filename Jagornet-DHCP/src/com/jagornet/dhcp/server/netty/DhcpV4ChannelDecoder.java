@@ -39,6 +39,7 @@ import org.slf4j.LoggerFactory;
 
 import com.jagornet.dhcp.message.DhcpV4Message;
 import com.jagornet.dhcp.server.JagornetDhcpServer;
+import com.jagornet.dhcp.server.metrics.DhcpMetrics;
 import com.jagornet.dhcp.util.DhcpConstants;
 
 /**
@@ -100,8 +101,14 @@ public class DhcpV4ChannelDecoder extends OneToOneDecoder
     	
         if (msg instanceof ChannelBuffer) {
         	ChannelBuffer buf = (ChannelBuffer) msg;
+            long start = System.nanoTime();
             DhcpV4Message dhcpMessage =  
             	DhcpV4Message.decode(buf.toByteBuffer(), localSocketAddress, remoteSocketAddress);
+            DhcpMetrics.V4_DECODE.recordSince(start);
+            if (dhcpMessage != null) {
+            	// waiting for a thread of the executor until handled
+            	DhcpMetrics.V4_QUEUED.increment();
+            }
             return dhcpMessage;
         }
         else {
@@ -36,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jagornet.dhcp.message.DhcpV4Message;
+import com.jagornet.dhcp.server.metrics.DhcpMetrics;
 
 /**
  * Title: DhcpV4ChannelEncoder
@@ -61,7 +62,9 @@ public class DhcpV4ChannelEncoder extends OneToOneEncoder
     {
         if (msg instanceof DhcpV4Message) {
             DhcpV4Message dhcpMessage = (DhcpV4Message) msg;
+            long start = System.nanoTime();
             ByteBuffer buf = dhcpMessage.encode();
+            DhcpMetrics.V4_ENCODE.recordSince(start);
             if (log.isDebugEnabled())
             	log.debug("Encoded message buffer limit=" + buf.limit());
             return new ByteBufferBackedChannelBuffer(buf);
@@ -36,6 +36,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jagornet.dhcp.message.DhcpV4Message;
+import com.jagornet.dhcp.server.log.TransactionLog;
+import com.jagornet.dhcp.server.metrics.DhcpMetrics;
 import com.jagornet.dhcp.server.request.DhcpV4MessageHandler;
 import com.jagornet.dhcp.util.DhcpConstants;
 
@@ -55,10 +57,13 @@ public class DhcpV4ChannelHandler extends SimpleChannelHandler
 
 	private Channel broadcastSendChannel;
 	
+	/** The transaction log, null if disabled. */
+	private TransactionLog transactionLog;
 	
 	public DhcpV4ChannelHandler(Channel broadcastSendChannel)
 	{
 		this.broadcastSendChannel = broadcastSendChannel;
+		this.transactionLog = TransactionLog.getInstance();
 	}
 	
 	/*
@@ -72,18 +77,24 @@ public class DhcpV4ChannelHandler extends SimpleChannelHandler
         if (message instanceof DhcpV4Message) {
             
             DhcpV4Message dhcpMessage = (DhcpV4Message) message;
+            DhcpMetrics.V4_QUEUED.decrement();
+            short msgType = dhcpMessage.getMessageType();
+            DhcpMetrics.v4Received(msgType).increment();
             if (log.isDebugEnabled()) {
             	log.debug("Received: " + dhcpMessage.toStringWithOptions());
             }
-            else {
-            	log.info("Received: " + dhcpMessage.toString());
-            }
             
+            long start = System.nanoTime();
             DhcpV4Message replyMessage = 
             	DhcpV4MessageHandler.handleMessage(dhcpMessage.getLocalAddress().getAddress(), 
             										dhcpMessage);
+            DhcpMetrics.v4Process(msgType).recordSince(start);
+            if (transactionLog != null) {
+            	transactionLog.log(dhcpMessage, replyMessage, start);
+            }
             
             if (replyMessage != null) {
+            	DhcpMetrics.v4Sent(replyMessage.getMessageType()).increment();
             	if ((broadcastSendChannel != null) &&
             		(replyMessage.getRemoteAddress().getAddress().equals(DhcpConstants.ZEROADDR_V4))) {
         			if (log.isDebugEnabled())
@@ -100,6 +111,7 @@ public class DhcpV4ChannelHandler extends SimpleChannelHandler
         		}
             }
             else {
+            	DhcpMetrics.V4_DROPPED.increment();
                 log.warn("Null DHCP reply message returned from handler");
             }
         }
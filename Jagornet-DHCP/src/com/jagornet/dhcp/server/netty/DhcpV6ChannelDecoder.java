@@ -39,6 +39,7 @@ import org.slf4j.LoggerFactory;
 
 import com.jagornet.dhcp.message.DhcpV6Message;
 import com.jagornet.dhcp.server.JagornetDhcpServer;
+import com.jagornet.dhcp.server.metrics.DhcpMetrics;
 
 /**
  * Title: DhcpChannelDecoder
@@ -83,8 +84,14 @@ public class DhcpV6ChannelDecoder extends OneToOneDecoder
     	}
     	if (msg instanceof ChannelBuffer) {
             ChannelBuffer buf = (ChannelBuffer) msg;
+            long start = System.nanoTime();
             DhcpV6Message dhcpMessage = 
             	DhcpV6Message.decode(buf.toByteBuffer(), localSocketAddress, remoteSocketAddress);
+            DhcpMetrics.V6_DECODE.recordSince(start);
+            if (dhcpMessage != null) {
+            	// waiting for a thread of the executor until handled
+            	DhcpMetrics.V6_QUEUED.increment();
+            }
             return dhcpMessage;
         }
         else {
@@ -36,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jagornet.dhcp.message.DhcpV6Message;
+import com.jagornet.dhcp.server.metrics.DhcpMetrics;
 
 /**
  * Title: DhcpChannelEncoder
@@ -59,7 +60,9 @@ public class DhcpV6ChannelEncoder extends OneToOneEncoder
     {
         if (msg instanceof DhcpV6Message) {
             DhcpV6Message dhcpMessage = (DhcpV6Message) msg;
+            long start = System.nanoTime();
             ByteBuffer buf = dhcpMessage.encode();
+            DhcpMetrics.V6_ENCODE.recordSince(start);
             return new ByteBufferBackedChannelBuffer(buf);
         }
         else {
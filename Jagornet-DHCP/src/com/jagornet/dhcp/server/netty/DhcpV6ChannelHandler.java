@@ -37,6 +37,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jagornet.dhcp.message.DhcpV6Message;
+import com.jagornet.dhcp.server.log.TransactionLog;
+import com.jagornet.dhcp.server.metrics.DhcpMetrics;
 import com.jagornet.dhcp.server.request.DhcpV6MessageHandler;
 
 /**
@@ -50,6 +52,9 @@ import com.jagornet.dhcp.server.request.DhcpV6MessageHandler;
 public class DhcpV6ChannelHandler extends SimpleChannelHandler
 {
 	private static Logger log = LoggerFactory.getLogger(DhcpV6ChannelHandler.class);
+	
+	/** The transaction log, null if disabled. */
+	private TransactionLog transactionLog = TransactionLog.getInstance();
 
 	/*
 	 * (non-Javadoc)
@@ -62,20 +67,28 @@ public class DhcpV6ChannelHandler extends SimpleChannelHandler
         if (message instanceof DhcpV6Message) {
             
             DhcpV6Message dhcpMessage = (DhcpV6Message) message;
+            DhcpMetrics.V6_QUEUED.decrement();
+            short msgType = dhcpMessage.getMessageType();
+            DhcpMetrics.v6Received(msgType).increment();
             if (log.isDebugEnabled())
             	log.debug("Received: " + dhcpMessage.toStringWithOptions());
-            else
-            	log.info("Received: " + dhcpMessage.toString());
             
             SocketAddress remoteAddress = e.getRemoteAddress();
             InetAddress localAddr = ((InetSocketAddress)e.getChannel().getLocalAddress()).getAddress(); 
+            long start = System.nanoTime();
             DhcpV6Message replyMessage = 
             	DhcpV6MessageHandler.handleMessage(localAddr, dhcpMessage);
+            DhcpMetrics.v6Process(msgType).recordSince(start);
+            if (transactionLog != null) {
+            	transactionLog.log(dhcpMessage, replyMessage, start);
+            }
             
             if (replyMessage != null) {
+            	DhcpMetrics.v6Sent(replyMessage.getMessageType()).increment();
             	e.getChannel().write(replyMessage, remoteAddress);
             }
             else {
+            	DhcpMetrics.V6_DROPPED.increment();
                 log.warn("Null DHCP reply message returned from handler");
             }
             
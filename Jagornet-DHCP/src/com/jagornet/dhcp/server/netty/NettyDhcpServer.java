@@ -61,6 +61,7 @@ import org.slf4j.LoggerFactory;
 import com.jagornet.dhcp.server.config.DhcpServerConfigException;
 import com.jagornet.dhcp.server.config.DhcpServerPolicies;
 import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.server.metrics.DhcpMetrics;
 import com.jagornet.dhcp.util.DhcpConstants;
 import com.jagornet.dhcp.util.Util;
 
@@ -134,6 +135,8 @@ public class NettyDhcpServer
         	
         	boolean ignoreSelfPackets = 
         			DhcpServerPolicies.globalPolicyAsBoolean(Property.DHCP_IGNORE_SELF_PACKETS);
+        	boolean loggingHandler = 
+        			DhcpServerPolicies.globalPolicyAsBoolean(Property.CHANNEL_LOGGING_HANDLER);
         	int corePoolSize = 
         			DhcpServerPolicies.globalPolicyAsInt(Property.CHANNEL_THREADPOOL_SIZE);
         	int maxChannelMemorySize = 
@@ -162,13 +165,13 @@ public class NettyDhcpServer
 	        		// local address for packets received on this channel
 		            InetSocketAddress sockAddr = new InetSocketAddress(addr, v6Port); 
 	        		ChannelPipeline pipeline = Channels.pipeline();
-		            pipeline.addLast("logger", new LoggingHandler());
+		            if (loggingHandler) {
+		            	pipeline.addLast("logger", new LoggingHandler());
+		            }
 		            pipeline.addLast("decoder", new DhcpV6UnicastChannelDecoder(sockAddr, ignoreSelfPackets));
 		            pipeline.addLast("encoder", new DhcpV6ChannelEncoder());
-		            pipeline.addLast("executor", new ExecutionHandler(
-		            		new OrderedMemoryAwareThreadPoolExecutor(corePoolSize, 
-		            												maxChannelMemorySize,
-		            												maxTotalMemorySize)));
+		            pipeline.addLast("executor", newExecutionHandler(sockAddr, corePoolSize, 
+		            		maxChannelMemorySize, maxTotalMemorySize));
 		            pipeline.addLast("handler", new DhcpV6ChannelHandler());
 	        		
 		            String io = null;
@@ -217,13 +220,13 @@ public class NettyDhcpServer
 	        		// local address for packets received on this channel
 		            InetSocketAddress sockAddr = new InetSocketAddress(addr, v6Port); 
 		            ChannelPipeline pipeline = Channels.pipeline();
-		            pipeline.addLast("logger", new LoggingHandler());
+		            if (loggingHandler) {
+		            	pipeline.addLast("logger", new LoggingHandler());
+		            }
 		            pipeline.addLast("decoder", new DhcpV6ChannelDecoder(sockAddr, ignoreSelfPackets));
 		            pipeline.addLast("encoder", new DhcpV6ChannelEncoder());
-		            pipeline.addLast("executor", new ExecutionHandler(
-		            		new OrderedMemoryAwareThreadPoolExecutor(corePoolSize, 
-																	maxChannelMemorySize,
-																	maxTotalMemorySize)));
+		            pipeline.addLast("executor", newExecutionHandler(sockAddr, corePoolSize, 
+		            		maxChannelMemorySize, maxTotalMemorySize));
 		            pipeline.addLast("handler", new DhcpV6ChannelHandler());
 	
 		        	// Use OioDatagramChannels for IPv6 multicast interfaces
@@ -268,13 +271,13 @@ public class NettyDhcpServer
 	        		// local address for packets received on this channel
 		            InetSocketAddress sockAddr = new InetSocketAddress(addr, v4Port); 
 	        		ChannelPipeline pipeline = Channels.pipeline();
-		            pipeline.addLast("logger", new LoggingHandler());
+		            if (loggingHandler) {
+		            	pipeline.addLast("logger", new LoggingHandler());
+		            }
 		            pipeline.addLast("decoder", new DhcpV4UnicastChannelDecoder(sockAddr, ignoreSelfPackets));
 		            pipeline.addLast("encoder", new DhcpV4ChannelEncoder());
-		            pipeline.addLast("executor", new ExecutionHandler(
-		            		new OrderedMemoryAwareThreadPoolExecutor(corePoolSize, 
-																	maxChannelMemorySize,
-																	maxTotalMemorySize)));
+		            pipeline.addLast("executor", newExecutionHandler(sockAddr, corePoolSize, 
+		            		maxChannelMemorySize, maxTotalMemorySize));
 		            pipeline.addLast("handler", new DhcpV4ChannelHandler(null));
 	        		
 		            String io = null;
@@ -332,13 +335,13 @@ public class NettyDhcpServer
 		        		foundV4Addr = true;
 			            InetSocketAddress sockAddr = new InetSocketAddress(addr, v4Port); 
         				ChannelPipeline pipeline = Channels.pipeline();
-			            pipeline.addLast("logger", new LoggingHandler());
+			            if (loggingHandler) {
+			            	pipeline.addLast("logger", new LoggingHandler());
+			            }
 			            pipeline.addLast("decoder", new DhcpV4ChannelDecoder(sockAddr, ignoreSelfPackets));
 			            pipeline.addLast("encoder", new DhcpV4ChannelEncoder());
-			            pipeline.addLast("executor", new ExecutionHandler(
-			            		new OrderedMemoryAwareThreadPoolExecutor(corePoolSize, 
-																		maxChannelMemorySize,
-																		maxTotalMemorySize)));
+			            pipeline.addLast("executor", newExecutionHandler(sockAddr, corePoolSize, 
+		            		maxChannelMemorySize, maxTotalMemorySize));
 			            pipeline.addLast("handler", new DhcpV4ChannelHandler(bcastChannel));
 		        		
 			            DatagramChannelFactory factory = new NioDatagramChannelFactory(executorService);
@@ -381,6 +384,28 @@ public class NettyDhcpServer
             });
     }
     
+    /**
+     * Create the execution handler of a channel, and register the
+     * gauges of its executor.
+     * 
+     * @param sockAddr the local address of the channel
+     * @param corePoolSize the number of threads
+     * @param maxChannelMemorySize the maximum size of the queued messages of a channel
+     * @param maxTotalMemorySize the maximum size of all queued messages
+     * @return the execution handler
+     */
+    protected ExecutionHandler newExecutionHandler(InetSocketAddress sockAddr, int corePoolSize,
+    		int maxChannelMemorySize, int maxTotalMemorySize)
+    {
+    	OrderedMemoryAwareThreadPoolExecutor executor = 
+    		new OrderedMemoryAwareThreadPoolExecutor(corePoolSize, 
+    												maxChannelMemorySize,
+    												maxTotalMemorySize);
+    	DhcpMetrics.registerExecutor(sockAddr.getAddress().getHostAddress() + ":" + 
+    									sockAddr.getPort(), executor);
+    	return new ExecutionHandler(executor);
+    }
+    
     private void checkSocket(int port) throws SocketException {
     	DatagramSocket ds = null;
     	try {
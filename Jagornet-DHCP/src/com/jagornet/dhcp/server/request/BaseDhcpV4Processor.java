@@ -177,9 +177,6 @@ public abstract class BaseDhcpV4Processor implements DhcpV4MessageProcessor
     		if (log.isDebugEnabled()) {
     			log.debug("Processing: " + requestMsg.toStringWithOptions());
     		}
-    		else if (log.isInfoEnabled()) {
-    	        log.info("Processing: " + requestMsg.toString());
-    		}
 	        
 	        // build a reply message using the local and remote sockets from the request
 	        replyMsg = new DhcpV4Message(requestMsg.getLocalAddress(), requestMsg.getRemoteAddress());
@@ -204,9 +201,6 @@ public abstract class BaseDhcpV4Processor implements DhcpV4MessageProcessor
 	        if (log.isDebugEnabled()) {
 	        	log.debug("Returning: " + replyMsg.toStringWithOptions());
 	        }
-	        else if (log.isInfoEnabled()) {
-	        	log.info("Returning: " + replyMsg.toString());
-	        }
 	        
     	}
     	finally {
@@ -381,18 +375,21 @@ public abstract class BaseDhcpV4Processor implements DhcpV4MessageProcessor
 			
 			String policy = DhcpServerPolicies.effectivePolicy(requestMsg,
 					clientLink.getLink(), Property.DDNS_UPDATE);
-			log.info("Server configuration for ddns.update policy: " + policy);
+			if (log.isDebugEnabled())
+				log.debug("Server configuration for ddns.update policy: " + policy);
 			if ((policy == null) || policy.equalsIgnoreCase("none")) {
-				log.info("Server configuration for ddns.update policy is null or 'none'." +
-						"  No DDNS updates performed.");
+				if (log.isDebugEnabled())
+					log.debug("Server configuration for ddns.update policy is null or 'none'." +
+							"  No DDNS updates performed.");
 				replyFqdnOption.setNoUpdateBit(true);	// tell client that server did no updates
 				replyMsg.putDhcpOption(replyFqdnOption);
 				return;
 			}
 					
 			if (clientFqdnOption.getNoUpdateBit() && policy.equalsIgnoreCase("honorNoUpdate")) {
-				log.info("Client FQDN NoUpdate flag set.  Server configured to honor request." +
-						"  No DDNS updates performed.");
+				if (log.isDebugEnabled())
+					log.debug("Client FQDN NoUpdate flag set.  Server configured to honor request." +
+							"  No DDNS updates performed.");
 				replyFqdnOption.setNoUpdateBit(true);	// tell client that server did no updates
 				replyMsg.putDhcpOption(replyFqdnOption);
 				//TODO: RFC 4704 Section 6.1
@@ -402,8 +399,9 @@ public abstract class BaseDhcpV4Processor implements DhcpV4MessageProcessor
 			}
 
 			if (!clientFqdnOption.getUpdateABit() && policy.equalsIgnoreCase("honorNoA")) {
-				log.info("Client FQDN NoA flag set.  Server configured to honor request." +
-						"  No FORWARD DDNS updates performed.");
+				if (log.isDebugEnabled())
+					log.debug("Client FQDN NoA flag set.  Server configured to honor request." +
+							"  No FORWARD DDNS updates performed.");
 				doForwardUpdate = false;
 			}
 			else {
@@ -413,7 +411,8 @@ public abstract class BaseDhcpV4Processor implements DhcpV4MessageProcessor
 			}
 		
 			if ((domain != null) && !domain.isEmpty()) {
-				log.info("Server configuration for domain policy: " + domain);
+				if (log.isDebugEnabled())
+					log.debug("Server configuration for domain policy: " + domain);
 				// if there is a configured domain, then replace the domain provide by the client
 				int dot = fqdn.indexOf('.');
 				if (dot > 0) {
@@ -435,7 +434,8 @@ public abstract class BaseDhcpV4Processor implements DhcpV4MessageProcessor
 			replyFqdnOption = new DhcpV4ClientFqdnOption();
 			fqdn = hostnameOption.getString();
 			if ((domain != null) && !domain.isEmpty()) {
-				log.info("Server configuration for domain policy: " + domain);
+				if (log.isDebugEnabled())
+					log.debug("Server configuration for domain policy: " + domain);
 				fqdn = fqdn + "." + domain;
 				// since the client did NOT send option 81, do not put
 				// the fabricated fqdnOption into the reply packet
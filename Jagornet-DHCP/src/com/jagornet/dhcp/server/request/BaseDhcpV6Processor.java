@@ -417,9 +417,6 @@ public abstract class BaseDhcpV6Processor implements DhcpV6MessageProcessor
     		if (log.isDebugEnabled()) {
     			log.debug("Processing: " + requestMsg.toStringWithOptions());
     		}
-    		else if (log.isInfoEnabled()) {
-    	        log.info("Processing: " + requestMsg.toString());
-    		}
 	        
 	        // build a reply message using the local and remote sockets from the request
 	        replyMsg = new DhcpV6Message(requestMsg.getLocalAddress(), requestMsg.getRemoteAddress());
@@ -440,9 +437,6 @@ public abstract class BaseDhcpV6Processor implements DhcpV6MessageProcessor
 	        if (log.isDebugEnabled()) {
 	        	log.debug("Returning: " + replyMsg.toStringWithOptions());
 	        }
-	        else if (log.isInfoEnabled()) {
-	        	log.info("Returning: " + replyMsg.toString());
-	        }
 	        
     	}
     	finally {
@@ -1019,10 +1013,12 @@ public abstract class BaseDhcpV6Processor implements DhcpV6MessageProcessor
 		
 		String policy = DhcpServerPolicies.effectivePolicy(requestMsg,
 				clientLink.getLink(), Property.DDNS_UPDATE);
-		log.info("Server configuration for ddns.update policy: " + policy);
+		if (log.isDebugEnabled())
+			log.debug("Server configuration for ddns.update policy: " + policy);
 		if ((policy == null) || policy.equalsIgnoreCase("none")) {
-			log.info("Server configuration for ddns.update policy is null or 'none'." +
-					"  No DDNS updates performed.");
+			if (log.isDebugEnabled())
+				log.debug("Server configuration for ddns.update policy is null or 'none'." +
+						"  No DDNS updates performed.");
 			if (includeFqdnOptionInReply) {
 				replyFqdnOption.setNoUpdateBit(true);	// tell client that server did no updates
 				replyMsg.putDhcpOption(replyFqdnOption);
@@ -1031,8 +1027,9 @@ public abstract class BaseDhcpV6Processor implements DhcpV6MessageProcessor
 		}
 				
 		if (clientFqdnOption.getNoUpdateBit() && policy.equalsIgnoreCase("honorNoUpdate")) {
-			log.info("Client FQDN NoUpdate flag set.  Server configured to honor request." +
-					"  No DDNS updates performed.");
+			if (log.isDebugEnabled())
+				log.debug("Client FQDN NoUpdate flag set.  Server configured to honor request." +
+						"  No DDNS updates performed.");
 			if (includeFqdnOptionInReply) {
 				replyFqdnOption.setNoUpdateBit(true);	// tell client that server did no updates
 				replyMsg.putDhcpOption(replyFqdnOption);
@@ -1045,8 +1042,9 @@ public abstract class BaseDhcpV6Processor implements DhcpV6MessageProcessor
 
 		boolean doForwardUpdate = true;
 		if (!clientFqdnOption.getUpdateAaaaBit() && policy.equalsIgnoreCase("honorNoAAAA")) {
-			log.info("Client FQDN NoAAAA flag set.  Server configured to honor request." +
-					"  No FORWARD DDNS updates performed.");
+			if (log.isDebugEnabled())
+				log.debug("Client FQDN NoAAAA flag set.  Server configured to honor request." +
+						"  No FORWARD DDNS updates performed.");
 			doForwardUpdate = false;
 		}
 		else {
@@ -1057,7 +1055,8 @@ public abstract class BaseDhcpV6Processor implements DhcpV6MessageProcessor
 		
 		String domain = DhcpServerPolicies.effectivePolicy(clientLink.getLink(), Property.DDNS_DOMAIN); 
 		if ((domain != null) && !domain.isEmpty()) {
-			log.info("Server configuration for domain policy: " + domain);
+			if (log.isDebugEnabled())
+				log.debug("Server configuration for domain policy: " + domain);
 			// if there is a configured domain, then replace the domain provide by the client
 			int dot = fqdn.indexOf('.');
 			if (dot > 0) {
@@ -1128,9 +1127,10 @@ public abstract class BaseDhcpV6Processor implements DhcpV6MessageProcessor
 						V6AddressPool p = DhcpServerConfiguration.findNaAddrPool(clientLink.getLink(),
 									iaAddrOpt.getInetAddress());
 						if (p == null) {
-							log.info("No local address pool found for requested IA_NA: " + 
-									iaAddrOpt.getInetAddress().getHostAddress() +
-									" - considered to be off link");
+							if (log.isDebugEnabled())
+								log.debug("No local address pool found for requested IA_NA: " + 
+										iaAddrOpt.getInetAddress().getHostAddress() +
+										" - considered to be off link");
 							iaAddrOpt.setPreferredLifetime(0);
 							iaAddrOpt.setValidLifetime(0);
 							onLink = false;
@@ -1140,8 +1140,9 @@ public abstract class BaseDhcpV6Processor implements DhcpV6MessageProcessor
 						// it the Link address is remote, then check 
 						// if the address is valid for that link
 						if (!clientLink.getSubnet().contains(iaAddrOpt.getInetAddress())) {
-							log.info("Setting zero(0) lifetimes for off link address: " +
-									iaAddrOpt.getInetAddress().getHostAddress());
+							if (log.isDebugEnabled())
+								log.debug("Setting zero(0) lifetimes for off link address: " +
+										iaAddrOpt.getInetAddress().getHostAddress());
 							iaAddrOpt.setPreferredLifetime(0);
 							iaAddrOpt.setValidLifetime(0);
 							onLink = false;
@@ -1176,9 +1177,10 @@ public abstract class BaseDhcpV6Processor implements DhcpV6MessageProcessor
 						V6AddressPool p = DhcpServerConfiguration.findTaAddrPool(clientLink.getLink(),
 									iaAddrOpt.getInetAddress());
 						if (p == null) {
-							log.info("No local address pool found for requested IA_TA: " + 
-									iaAddrOpt.getInetAddress().getHostAddress() +
-									" - considered to be off link");
+							if (log.isDebugEnabled())
+								log.debug("No local address pool found for requested IA_TA: " + 
+										iaAddrOpt.getInetAddress().getHostAddress() +
+										" - considered to be off link");
 							iaAddrOpt.setPreferredLifetime(0);
 							iaAddrOpt.setValidLifetime(0);
 							onLink = false;
@@ -1186,8 +1188,9 @@ public abstract class BaseDhcpV6Processor implements DhcpV6MessageProcessor
 					}
 					else {
 						if (!clientLink.getSubnet().contains(iaAddrOpt.getInetAddress())) {
-							log.info("Setting zero(0) lifetimes for off link address: " +
-									iaAddrOpt.getInetAddress().getHostAddress());
+							if (log.isDebugEnabled())
+								log.debug("Setting zero(0) lifetimes for off link address: " +
+										iaAddrOpt.getInetAddress().getHostAddress());
 							iaAddrOpt.setPreferredLifetime(0);
 							iaAddrOpt.setValidLifetime(0);
 							onLink = false;
@@ -1222,9 +1225,10 @@ public abstract class BaseDhcpV6Processor implements DhcpV6MessageProcessor
 						V6PrefixPool p = DhcpServerConfiguration.findPrefixPool(clientLink.getLink(),
 									iaPrefixOpt.getInetAddress());
 						if (p == null) {
-							log.info("No local prefix pool found for requested IA_PD: " + 
-									iaPrefixOpt.getInetAddress().getHostAddress() +
-									" - considered to be off link");
+							if (log.isDebugEnabled())
+								log.debug("No local prefix pool found for requested IA_PD: " + 
+										iaPrefixOpt.getInetAddress().getHostAddress() +
+										" - considered to be off link");
 							iaPrefixOpt.setPreferredLifetime(0);
 							iaPrefixOpt.setValidLifetime(0);
 							onLink = false;
@@ -1232,8 +1236,9 @@ public abstract class BaseDhcpV6Processor implements DhcpV6MessageProcessor
 					}
 					else {
 						if (!clientLink.getSubnet().contains(iaPrefixOpt.getInetAddress())) {
-							log.info("Setting zero(0) lifetimes for off link prefix: " +
-									iaPrefixOpt.getInetAddress().getHostAddress());
+							if (log.isDebugEnabled())
+								log.debug("Setting zero(0) lifetimes for off link prefix: " +
+										iaPrefixOpt.getInetAddress().getHostAddress());
 							iaPrefixOpt.setPreferredLifetime(0);
 							iaPrefixOpt.setValidLifetime(0);
 							onLink = false;
@@ -97,9 +97,10 @@ public class DhcpV4DeclineProcessor extends BaseDhcpV4Processor
 		
 		V4AddrBindingManager bindingMgr = dhcpServerConfig.getV4AddrBindingMgr();
 		if (bindingMgr != null) {
-			log.info("Processing Decline" +
-					 " from chAddr=" + Util.toHexString(chAddr) +
-					 " requestedIp=" + requestedIpAddrOption.getIpAddress());
+			if (log.isDebugEnabled())
+				log.debug("Processing Decline" +
+					 	" from chAddr=" + Util.toHexString(chAddr) +
+					 	" requestedIp=" + requestedIpAddrOption.getIpAddress());
 			Binding binding = bindingMgr.findCurrentBinding(clientLink, 
 															chAddr, requestMsg);
 			if (binding != null) {
@@ -104,7 +104,8 @@ public class DhcpV4DiscoverProcessor extends BaseDhcpV4Processor
 		
 		V4AddrBindingManager bindingMgr = dhcpServerConfig.getV4AddrBindingMgr();
 		if (bindingMgr != null) {
-			log.info("Processing Discover from: chAddr=" + Util.toHexString(chAddr));
+			if (log.isDebugEnabled())
+				log.debug("Processing Discover from: chAddr=" + Util.toHexString(chAddr));
 			Binding binding = bindingMgr.findCurrentBinding(clientLink, 
 					chAddr, requestMsg);
 			if (binding == null) {
@@ -53,13 +53,15 @@ public class DhcpV4MessageHandler
     		InetAddress linkAddress = null;
     		if (dhcpMessage.getGiAddr().equals(DhcpConstants.ZEROADDR_V4)) {
     			linkAddress = localAddress;
-				log.info("Handling client request on local client link address: " +
-						linkAddress.getHostAddress());
+				if (log.isDebugEnabled())
+					log.debug("Handling client request on local client link address: " +
+							linkAddress.getHostAddress());
     		}
     		else {
     			linkAddress = dhcpMessage.getGiAddr();
-				log.info("Handling client request on remote client link address: " +
-						linkAddress.getHostAddress());
+				if (log.isDebugEnabled())
+					log.debug("Handling client request on remote client link address: " +
+							linkAddress.getHostAddress());
     		}
     		DhcpV4MsgTypeOption msgTypeOption = (DhcpV4MsgTypeOption) 
     				dhcpMessage.getDhcpOption(DhcpConstants.V4OPTION_MESSAGE_TYPE);
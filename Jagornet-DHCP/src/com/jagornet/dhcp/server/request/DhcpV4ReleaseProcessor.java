@@ -97,9 +97,10 @@ public class DhcpV4ReleaseProcessor extends BaseDhcpV4Processor
 		
 		V4AddrBindingManager bindingMgr = dhcpServerConfig.getV4AddrBindingMgr();
 		if (bindingMgr != null) {
-			log.info("Processing Release" +
-					 " from chAddr=" + Util.toHexString(chAddr) +
-					 " ciAddr=" + requestMsg.getCiAddr().getHostAddress());
+			if (log.isDebugEnabled())
+				log.debug("Processing Release" +
+					 	" from chAddr=" + Util.toHexString(chAddr) +
+					 	" ciAddr=" + requestMsg.getCiAddr().getHostAddress());
 			Binding binding = bindingMgr.findCurrentBinding(clientLink, 
 															chAddr, requestMsg);
 			if (binding != null) {
@@ -25,15 +25,21 @@
  */
 package com.jagornet.dhcp.server.request;
 
+import java.io.IOException;
 import java.net.InetAddress;
+import java.util.HashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jagornet.dhcp.db.IdentityAssoc;
 import com.jagornet.dhcp.message.DhcpV4Message;
+import com.jagornet.dhcp.option.base.DhcpOption;
 import com.jagornet.dhcp.option.v4.DhcpV4RequestedIpAddressOption;
 import com.jagornet.dhcp.option.v4.DhcpV4ServerIdOption;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.server.metrics.DhcpMetrics;
 import com.jagornet.dhcp.server.request.binding.Binding;
 import com.jagornet.dhcp.server.request.binding.V4AddrBindingManager;
 import com.jagornet.dhcp.util.DhcpConstants;
@@ -148,16 +154,21 @@ public class DhcpV4RequestProcessor extends BaseDhcpV4Processor
 		
 		V4AddrBindingManager bindingMgr = dhcpServerConfig.getV4AddrBindingMgr();
 		if (bindingMgr != null) {
-			log.info("Processing " + type +
-					 " from chAddr=" + Util.toHexString(chAddr) +
-					 " ciAddr=" + requestMsg.getCiAddr().getHostAddress() +
-					 " requestedIpAddrOption=" + requestedIpAddrOption);
+			if (log.isDebugEnabled())
+				log.debug("Processing " + type +
+					 	" from chAddr=" + Util.toHexString(chAddr) +
+					 	" ciAddr=" + requestMsg.getCiAddr().getHostAddress() +
+					 	" requestedIpAddrOption=" + requestedIpAddrOption);
 
 			if (!addrOnLink(requestedIpAddrOption, clientLink)) {
-    			log.info("Client requested IP is off-link, returning NAK");
+    			if (log.isDebugEnabled())
+    				log.debug("Client requested IP is off-link, returning NAK");
     			replyMsg.setMessageType((short)DhcpConstants.V4MESSAGE_TYPE_NAK);
     			return sendReply;
     		}
+			else if (isFastRenewal() && renewFromMemory(bindingMgr, chAddr)) {
+				return sendReply;
+			}
     		else {
     			Binding binding = bindingMgr.findCurrentBinding(clientLink, 
     															chAddr, requestMsg);
@@ -190,8 +201,70 @@ public class DhcpV4RequestProcessor extends BaseDhcpV4Processor
             replyMsg.setMessageType((short)DhcpConstants.V4MESSAGE_TYPE_ACK);
             if (!bindings.isEmpty()) {
     			processDdnsUpdates(true);
+    			if (isFastRenewal()) {
+    				// the reply for the next renewal from memory
+    				bindings.get(0).setReplyTemplate(replyMsg);
+    			}
             }
     	}
 		return sendReply;    	
     }
+    
+    /**
+     * Checks if the request is a renewal which may be answered from memory.
+     * 
+     * @return true if renewing or rebinding, and the v4.renewFastPath policy is set
+     */
+    protected boolean isFastRenewal()
+    {
+    	return ((type == RequestType.Request_Renewing) || 
+    			(type == RequestType.Request_Rebinding)) &&
+    			DhcpServerPolicies.globalPolicyAsBoolean(Property.V4_RENEW_FAST_PATH);
+    }
+    
+    /**
+     * Renew the binding of the client from memory.  The reply is a copy of
+     * the last reply for the binding, which was built for a request with
+     * the same options, so it is not built again, and the DDNS updates
+     * of the binding are not repeated.  If there is no last reply, the
+     * reply is built, and kept for the next renewal.
+     * 
+     * @param bindingMgr the binding manager
+     * @param chAddr the chaddr of the client
+     * 
+     * @return true if renewed, false if the binding must be read from the database
+     */
+    protected boolean renewFromMemory(V4AddrBindingManager bindingMgr, byte[] chAddr)
+    {
+    	Binding binding = bindingMgr.renewBinding(clientLink, chAddr, requestMsg);
+    	if (binding == null) {
+    		return false;
+    	}
+    	DhcpV4Message template = (DhcpV4Message) binding.getReplyTemplate();
+    	if (template != null) {
+    		try {
+    			byte[] encodedOptions = template.getEncodedOptions();
+    			// encode the template once
+    			template.setEncodedOptions(encodedOptions);
+    			replyMsg.setYiAddr(template.getYiAddr());
+    			replyMsg.setsName(template.getsName());
+    			replyMsg.setFile(template.getFile());
+    			replyMsg.setDhcpOptionMap(
+    					new HashMap<Integer, DhcpOption>(template.getDhcpOptionMap()));
+    			replyMsg.setEncodedOptions(encodedOptions);
+    			DhcpMetrics.V4_RENEW_REPLY_CACHED.increment();
+    			return true;
+    		}
+    		catch (IOException ex) {
+    			log.error("Failed to encode reply template: " + ex);
+    		}
+    	}
+		addBindingToReply(clientLink, binding);
+		bindings.add(binding);
+        replyMsg.setMessageType((short)DhcpConstants.V4MESSAGE_TYPE_ACK);
+		processDdnsUpdates(true);
+		binding.setReplyTemplate(replyMsg);
+		DhcpMetrics.V4_RENEW_REPLY_BUILT.increment();
+		return true;
+    }
 }
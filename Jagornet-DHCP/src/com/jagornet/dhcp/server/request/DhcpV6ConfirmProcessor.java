@@ -120,7 +120,8 @@ public class DhcpV6ConfirmProcessor extends BaseDhcpV6Processor
 		List<DhcpV6IaNaOption> iaNaOptions = requestMsg.getIaNaOptions();
     	if (iaNaOptions != null) {
     		for (DhcpV6IaNaOption dhcpIaNaOption : iaNaOptions) {
-    			log.info("Processing IA_NA Confirm: " + dhcpIaNaOption.toString());
+    			if (log.isDebugEnabled())
+    				log.debug("Processing IA_NA Confirm: " + dhcpIaNaOption.toString());
     			if ((dhcpIaNaOption.getIaAddrOptions() != null) &&
     					!dhcpIaNaOption.getIaAddrOptions().isEmpty()) {
 		    		if (!allIaAddrsOnLink(dhcpIaNaOption, clientLink)) {
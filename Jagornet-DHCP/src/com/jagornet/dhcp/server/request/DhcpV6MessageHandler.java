@@ -85,8 +85,9 @@ public class DhcpV6MessageHandler
 		    }
 		}
 		else {
-			log.info("Handling client request on local client link address: " +
-					localAddress.getHostAddress());
+			if (log.isDebugEnabled())
+				log.debug("Handling client request on local client link address: " +
+						localAddress.getHostAddress());
 			replyMessage = handleClientRequest(localAddress, dhcpMessage);
 		}
 		return replyMessage;
@@ -102,7 +103,8 @@ public class DhcpV6MessageHandler
     private static DhcpV6RelayMessage handleRelayForward(DhcpV6RelayMessage relayMessage)
     {
         InetAddress linkAddr = relayMessage.getLinkAddress();
-		log.info("Handling relay forward on link address: " + linkAddr.getHostAddress());
+		if (log.isDebugEnabled())
+			log.debug("Handling relay forward on link address: " + linkAddr.getHostAddress());
         DhcpV6RelayOption relayOption = relayMessage.getRelayOption();
         if (relayOption != null) {
             DhcpV6Message relayOptionMessage = relayOption.getDhcpMessage();
@@ -126,8 +128,9 @@ public class DhcpV6MessageHandler
                 else {
                     // we've peeled off all the layers of the relay message(s),
                     // so now go handle the client request
-        			log.info("Handling client request on remote client link address: " +
-        					linkAddr.getHostAddress());
+        			if (log.isDebugEnabled())
+        				log.debug("Handling client request on remote client link address: " +
+        						linkAddr.getHostAddress());
                 	DhcpV6Message replyMessage = handleClientRequest(linkAddr, relayOptionMessage);
                     if (replyMessage != null) {
                         // replace the original client request message inside
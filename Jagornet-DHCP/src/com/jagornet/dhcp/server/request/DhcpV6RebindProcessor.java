@@ -140,7 +140,8 @@ public class DhcpV6RebindProcessor extends BaseDhcpV6Processor
     		V6NaAddrBindingManager bindingMgr = dhcpServerConfig.getNaAddrBindingMgr();
     		if (bindingMgr != null) {
 	    		for (DhcpV6IaNaOption dhcpIaNaOption : iaNaOptions) {
-	    			log.info("Processing IA_NA Rebind: " + dhcpIaNaOption.toString());
+	    			if (log.isDebugEnabled())
+	    				log.debug("Processing IA_NA Rebind: " + dhcpIaNaOption.toString());
 					Binding binding = bindingMgr.findCurrentBinding(clientLink, 
 							clientIdOption, dhcpIaNaOption, requestMsg);
 					if (binding != null) {
@@ -183,7 +184,8 @@ public class DhcpV6RebindProcessor extends BaseDhcpV6Processor
     		V6TaAddrBindingManager bindingMgr = dhcpServerConfig.getTaAddrBindingMgr();
     		if (bindingMgr != null) {
 	    		for (DhcpV6IaTaOption dhcpIaTaOption : iaTaOptions) {
-	    			log.info("Processing IA_TA Rebind: " + dhcpIaTaOption.toString());
+	    			if (log.isDebugEnabled())
+	    				log.debug("Processing IA_TA Rebind: " + dhcpIaTaOption.toString());
 					Binding binding = bindingMgr.findCurrentBinding(clientLink, 
 							clientIdOption, dhcpIaTaOption, requestMsg);
 					if (binding != null) {
@@ -226,7 +228,8 @@ public class DhcpV6RebindProcessor extends BaseDhcpV6Processor
     		V6PrefixBindingManager bindingMgr = dhcpServerConfig.getPrefixBindingMgr();
     		if (bindingMgr != null) {
 	    		for (DhcpV6IaPdOption dhcpIaPdOption : iaPdOptions) {
-	    			log.info("Processing IA_PD Rebind: " + dhcpIaPdOption.toString());
+	    			if (log.isDebugEnabled())
+	    				log.debug("Processing IA_PD Rebind: " + dhcpIaPdOption.toString());
 					Binding binding = bindingMgr.findCurrentBinding(clientLink, 
 							clientIdOption, dhcpIaPdOption, requestMsg);
 					if (binding != null) {
@@ -166,7 +166,8 @@ public class DhcpV6ReleaseProcessor extends BaseDhcpV6Processor
     		V6NaAddrBindingManager bindingMgr = dhcpServerConfig.getNaAddrBindingMgr();
     		if (bindingMgr != null) {
 	    		for (DhcpV6IaNaOption dhcpIaNaOption : iaNaOptions) {
-	    			log.info("Processing IA_NA Release: " + dhcpIaNaOption.toString());
+	    			if (log.isDebugEnabled())
+	    				log.debug("Processing IA_NA Release: " + dhcpIaNaOption.toString());
 					Binding binding = bindingMgr.findCurrentBinding(clientLink, 
 							clientIdOption, dhcpIaNaOption, requestMsg);
 					if (binding != null) {
@@ -194,7 +195,8 @@ public class DhcpV6ReleaseProcessor extends BaseDhcpV6Processor
     		V6TaAddrBindingManager bindingMgr = dhcpServerConfig.getTaAddrBindingMgr();
     		if (bindingMgr != null) {
 	    		for (DhcpV6IaTaOption dhcpIaTaOption : iaTaOptions) {
-	    			log.info("Processing IA_TA Release: " + dhcpIaTaOption.toString());
+	    			if (log.isDebugEnabled())
+	    				log.debug("Processing IA_TA Release: " + dhcpIaTaOption.toString());
 					Binding binding = bindingMgr.findCurrentBinding(clientLink, 
 							clientIdOption, dhcpIaTaOption, requestMsg);
 					if (binding != null) {
@@ -222,7 +224,8 @@ public class DhcpV6ReleaseProcessor extends BaseDhcpV6Processor
     		V6PrefixBindingManager bindingMgr = dhcpServerConfig.getPrefixBindingMgr();
     		if (bindingMgr != null) {
 	    		for (DhcpV6IaPdOption dhcpIaPdOption : iaPdOptions) {
-	    			log.info("Processing IA_PD Release: " + dhcpIaPdOption.toString());
+	    			if (log.isDebugEnabled())
+	    				log.debug("Processing IA_PD Release: " + dhcpIaPdOption.toString());
 					Binding binding = bindingMgr.findCurrentBinding(clientLink, 
 							clientIdOption, dhcpIaPdOption, requestMsg);
 					if (binding != null) {
@@ -155,7 +155,8 @@ public class DhcpV6RenewProcessor extends BaseDhcpV6Processor
     		V6NaAddrBindingManager bindingMgr = dhcpServerConfig.getNaAddrBindingMgr();
     		if (bindingMgr != null) {
 	    		for (DhcpV6IaNaOption dhcpIaNaOption : iaNaOptions) {
-	    			log.info("Processing IA_NA Renew: " + dhcpIaNaOption.toString());
+	    			if (log.isDebugEnabled())
+	    				log.debug("Processing IA_NA Renew: " + dhcpIaNaOption.toString());
 					Binding binding = bindingMgr.findCurrentBinding(clientLink, 
 							clientIdOption, dhcpIaNaOption, requestMsg);
 					if (binding != null) {
@@ -194,7 +195,8 @@ public class DhcpV6RenewProcessor extends BaseDhcpV6Processor
     		V6TaAddrBindingManager bindingMgr = dhcpServerConfig.getTaAddrBindingMgr();
     		if (bindingMgr != null) {
 	    		for (DhcpV6IaTaOption dhcpIaTaOption : iaTaOptions) {
-	    			log.info("Processing IA_TA Renew: " + dhcpIaTaOption.toString());
+	    			if (log.isDebugEnabled())
+	    				log.debug("Processing IA_TA Renew: " + dhcpIaTaOption.toString());
 					Binding binding = bindingMgr.findCurrentBinding(clientLink, 
 							clientIdOption, dhcpIaTaOption, requestMsg);
 					if (binding != null) {
@@ -233,7 +235,8 @@ public class DhcpV6RenewProcessor extends BaseDhcpV6Processor
     		V6PrefixBindingManager bindingMgr = dhcpServerConfig.getPrefixBindingMgr();
     		if (bindingMgr != null) {
 	    		for (DhcpV6IaPdOption dhcpIaPdOption : iaPdOptions) {
-	    			log.info("Processing IA_PD Renew: " + dhcpIaPdOption.toString());
+	    			if (log.isDebugEnabled())
+	    				log.debug("Processing IA_PD Renew: " + dhcpIaPdOption.toString());
 					Binding binding = bindingMgr.findCurrentBinding(clientLink, 
 							clientIdOption, dhcpIaPdOption, requestMsg);
 					if (binding != null) {
@@ -152,7 +152,8 @@ public class DhcpV6RequestProcessor extends BaseDhcpV6Processor
     		V6NaAddrBindingManager bindingMgr = dhcpServerConfig.getNaAddrBindingMgr();
     		if (bindingMgr != null) {
 	    		for (DhcpV6IaNaOption dhcpIaNaOption : iaNaOptions) {
-	    			log.info("Processing IA_NA Request: " + dhcpIaNaOption.toString());
+	    			if (log.isDebugEnabled())
+	    				log.debug("Processing IA_NA Request: " + dhcpIaNaOption.toString());
 		    		if (!allIaAddrsOnLink(dhcpIaNaOption, clientLink)) {
 		    			addIaNaOptionStatusToReply(dhcpIaNaOption,
 		    					DhcpConstants.V6STATUS_CODE_NOTONLINK);
@@ -197,7 +198,8 @@ public class DhcpV6RequestProcessor extends BaseDhcpV6Processor
     		V6TaAddrBindingManager bindingMgr = dhcpServerConfig.getTaAddrBindingMgr();
     		if (bindingMgr != null) {
 	    		for (DhcpV6IaTaOption dhcpIaTaOption : iaTaOptions) {
-	    			log.info("Processing IA_TA Request: " + dhcpIaTaOption.toString());
+	    			if (log.isDebugEnabled())
+	    				log.debug("Processing IA_TA Request: " + dhcpIaTaOption.toString());
 		    		if (!allIaAddrsOnLink(dhcpIaTaOption, clientLink)) {
 		    			addIaTaOptionStatusToReply(dhcpIaTaOption,
 		    					DhcpConstants.V6STATUS_CODE_NOTONLINK);
@@ -242,7 +244,8 @@ public class DhcpV6RequestProcessor extends BaseDhcpV6Processor
     		V6PrefixBindingManager bindingMgr = dhcpServerConfig.getPrefixBindingMgr();
     		if (bindingMgr != null) {
 	    		for (DhcpV6IaPdOption dhcpIaPdOption : iaPdOptions) {
-	    			log.info("Processing IA_PD Request: " + dhcpIaPdOption.toString());
+	    			if (log.isDebugEnabled())
+	    				log.debug("Processing IA_PD Request: " + dhcpIaPdOption.toString());
 		    		if (!allIaPrefixesOnLink(dhcpIaPdOption, clientLink)) {
 		    			// for PD return NoPrefixAvail instead of NotOnLink
 		    			addIaPdOptionStatusToReply(dhcpIaPdOption,
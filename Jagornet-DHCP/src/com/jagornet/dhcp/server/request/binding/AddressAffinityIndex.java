@@ -0,0 +1,273 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file AddressAffinityIndex.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.util.DhcpConstants;
+import com.jagornet.dhcp.util.Util;
+
+/**
+ * The Class AddressAffinityIndex.  The last address or prefix bound to
+ * each client IA, so a returning client whose binding has been deleted is
+ * offered the same address again, if it is still free, instead of the next
+ * free address of the pool.  This keeps the DDNS names and the state of the
+ * network which follows the addresses of the clients.
+ * 
+ * The index is a bounded LRU map in memory, and may be saved to a file
+ * when the server stops, and loaded when it starts.  Each line of the file
+ * is the DUID (or chaddr) in hex, the IA type, the IAID and the address,
+ * from the least to the most recently bound.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class AddressAffinityIndex
+{
+	private static Logger log = LoggerFactory.getLogger(AddressAffinityIndex.class);
+	
+	private static AddressAffinityIndex instance;
+	private static boolean initialized;
+	
+	private final int maxSize;
+	private final File file;
+	
+	/** The addresses by IA key, in access order. */
+	private final LinkedHashMap<StaticBindingIndex.Key, InetAddress> addrs;
+	
+	/**
+	 * Gets the single instance, configured by the binding.manager.affinity
+	 * policies, and loaded from the file, if any.
+	 * 
+	 * @return the instance, or null if the binding.manager.affinity.size
+	 * policy is zero
+	 */
+	public static synchronized AddressAffinityIndex getInstance()
+	{
+		if (!initialized) {
+			initialized = true;
+			int maxSize = DhcpServerPolicies.globalPolicyAsInt(
+					Property.BINDING_MANAGER_AFFINITY_SIZE);
+			if (maxSize <= 0) {
+				log.info("Address affinity disabled");
+				return null;
+			}
+			File file = null;
+			String filename = DhcpServerPolicies.globalPolicy(
+					Property.BINDING_MANAGER_AFFINITY_FILE);
+			if ((filename != null) && (filename.trim().length() > 0)) {
+				file = new File(filename.trim());
+				if (!file.isAbsolute() && (DhcpConstants.JAGORNET_DHCP_HOME != null)) {
+					file = new File(DhcpConstants.JAGORNET_DHCP_HOME, filename.trim());
+				}
+			}
+			instance = new AddressAffinityIndex(maxSize, file);
+			instance.load();
+			log.info("Address affinity: size=" + maxSize + 
+					((file != null) ? " file=" + file : ""));
+		}
+		return instance;
+	}
+	
+	/**
+	 * Instantiates a new address affinity index.
+	 * 
+	 * @param maxSize the maximum number of IAs, the least recently bound
+	 * are removed
+	 * @param file the file to save the index to, or null
+	 */
+	public AddressAffinityIndex(final int maxSize, File file)
+	{
+		this.maxSize = maxSize;
+		this.file = file;
+		addrs = new LinkedHashMap<StaticBindingIndex.Key, InetAddress>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<StaticBindingIndex.Key, InetAddress> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+	
+	/**
+	 * Gets the key of an IA.
+	 */
+	protected static StaticBindingIndex.Key key(byte[] duid, byte iatype, long iaid)
+	{
+		return new StaticBindingIndex.Key(iatype, duid, iaid);
+	}
+	
+	/**
+	 * Puts the address bound to an IA.
+	 * 
+	 * @param duid the DUID, or chaddr for DHCPv4
+	 * @param iatype the IA type
+	 * @param iaid the IAID
+	 * @param inetAddr the address or prefix
+	 */
+	public synchronized void put(byte[] duid, byte iatype, long iaid, InetAddress inetAddr)
+	{
+		addrs.put(key(duid, iatype, iaid), inetAddr);
+	}
+	
+	/**
+	 * Gets the last address bound to an IA.
+	 * 
+	 * @param duid the DUID, or chaddr for DHCPv4
+	 * @param iatype the IA type
+	 * @param iaid the IAID
+	 * 
+	 * @return the address or prefix, or null if none
+	 */
+	public synchronized InetAddress get(byte[] duid, byte iatype, long iaid)
+	{
+		return addrs.get(key(duid, iatype, iaid));
+	}
+	
+	/**
+	 * Removes the address of an IA, e.g. when the address is declined.
+	 * 
+	 * @param duid the DUID, or chaddr for DHCPv4
+	 * @param iatype the IA type
+	 * @param iaid the IAID
+	 */
+	public synchronized void remove(byte[] duid, byte iatype, long iaid)
+	{
+		addrs.remove(key(duid, iatype, iaid));
+	}
+	
+	public synchronized int size()
+	{
+		return addrs.size();
+	}
+	
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+	
+	/**
+	 * Loads the index from the file, if any.
+	 */
+	public void load()
+	{
+		if ((file == null) || !file.exists()) {
+			return;
+		}
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			int count = 0;
+			String line = null;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.trim().split(" ");
+				if (fields.length != 4) {
+					continue;
+				}
+				try {
+					put(Util.fromHexString(fields[0]), Byte.parseByte(fields[1]), 
+							Long.parseLong(fields[2]), InetAddress.getByName(fields[3]));
+					count++;
+				}
+				catch (Exception ex) {
+					log.warn("Invalid address affinity: " + line);
+				}
+			}
+			log.info("Loaded " + count + " address affinities from " + file);
+		}
+		catch (IOException ex) {
+			log.error("Failure loading address affinities from " + file + ": " + ex);
+		}
+		finally {
+			if (reader != null) {
+				try { reader.close(); } catch (IOException ex) { }
+			}
+		}
+	}
+	
+	/**
+	 * Saves the index to the file, if any.  The file is written as a new
+	 * file which then replaces the previous one.
+	 */
+	public void save()
+	{
+		if (file == null) {
+			return;
+		}
+		Map<StaticBindingIndex.Key, InetAddress> copy = null;
+		synchronized (this) {
+			copy = new LinkedHashMap<StaticBindingIndex.Key, InetAddress>(addrs);
+		}
+		File tmp = new File(file.getPath() + ".tmp");
+		Writer writer = null;
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+			for (Map.Entry<StaticBindingIndex.Key, InetAddress> entry : copy.entrySet()) {
+				StaticBindingIndex.Key key = entry.getKey();
+				writer.write(Util.toHexString(key.getId()));
+				writer.write(' ');
+				writer.write(String.valueOf(key.getIatype()));
+				writer.write(' ');
+				writer.write(String.valueOf(key.getIaid()));
+				writer.write(' ');
+				writer.write(entry.getValue().getHostAddress());
+				writer.write('\n');
+			}
+			writer.close();
+			writer = null;
+			if (file.exists() && !file.delete()) {
+				throw new IOException("Unable to replace " + file);
+			}
+			if (!tmp.renameTo(file)) {
+				throw new IOException("Unable to rename " + tmp + " to " + file);
+			}
+			log.info("Saved " + copy.size() + " address affinities to " + file);
+		}
+		catch (IOException ex) {
+			log.error("Failure saving address affinities to " + file + ": " + ex);
+		}
+		finally {
+			if (writer != null) {
+				try { writer.close(); } catch (IOException ex) { }
+			}
+		}
+	}
+}
@@ -92,7 +92,8 @@ public abstract class BaseAddrBindingManager extends BaseBindingManager
 	public void releaseIaAddress(IdentityAssoc ia, IaAddress iaAddr)
 	{
 		try {
-			log.info("Releasing address: " + iaAddr.getIpAddress().getHostAddress());
+			if (log.isDebugEnabled())
+				log.debug("Releasing address: " + iaAddr.getIpAddress().getHostAddress());
 			ddnsDelete(ia, iaAddr);
 			if (DhcpServerPolicies.globalPolicyAsBoolean(
 					Property.BINDING_MANAGER_DELETE_OLD_BINDINGS)) {
@@ -108,7 +109,8 @@ public abstract class BaseAddrBindingManager extends BaseBindingManager
 				iaAddr.setValidEndTime(null);
 				iaAddr.setState(IaAddress.RELEASED);
 				iaMgr.updateIaAddr(iaAddr);
-				log.info("Address released: " + iaAddr.toString());
+				if (log.isDebugEnabled())
+					log.debug("Address released: " + iaAddr.toString());
 			}
 		}
 		catch (Exception ex) {
@@ -126,14 +128,16 @@ public abstract class BaseAddrBindingManager extends BaseBindingManager
 	public void declineIaAddress(IdentityAssoc ia, IaAddress iaAddr)
 	{
 		try {
-			log.info("Declining address: " + iaAddr.getIpAddress().getHostAddress());
+			if (log.isDebugEnabled())
+				log.debug("Declining address: " + iaAddr.getIpAddress().getHostAddress());
 			ddnsDelete(ia, iaAddr);
 			iaAddr.setStartTime(null);
 			iaAddr.setPreferredEndTime(null);
 			iaAddr.setValidEndTime(null);
 			iaAddr.setState(IaAddress.DECLINED);
 			iaMgr.updateIaAddr(iaAddr);
-			log.info("Address declined: " + iaAddr.toString());
+			if (log.isDebugEnabled())
+				log.debug("Address declined: " + iaAddr.toString());
 		}
 		catch (Exception ex) {
 			log.error("Failed to decline address", ex);
@@ -175,26 +179,35 @@ public abstract class BaseAddrBindingManager extends BaseBindingManager
 	
 	/**
 	 * Callback from the ReaperTimerTask started when the BindingManager initialized.
-	 * Find any expired addresses as of now, and expire them already.
+	 * Find any expired addresses as of now, and expire them already.  An address
+	 * in the grace period of a lazily renewed lease is not expired yet.
 	 */
 	public void expireAddresses()
 	{
 		List<IdentityAssoc> expiredIAs = iaMgr.findExpiredIAs(getIaType());
 		if ((expiredIAs != null) && !expiredIAs.isEmpty()) {
-			log.info("Found " + expiredIAs.size() + " expired bindings of type: " + 
-					IdentityAssoc.iaTypeToString(getIaType()));
+			long now = System.currentTimeMillis();
+			int graceCount = 0;
 			for (IdentityAssoc ia : expiredIAs) {
 				Collection<? extends IaAddress> expiredAddrs = ia.getIaAddresses();
 				if ((expiredAddrs != null) && !expiredAddrs.isEmpty()) {
 					// due to the implementation of findExpiredIAs, each IdentityAssoc
 					// SHOULD have only one IaAddress within it to be expired
-					log.info("Found " + expiredAddrs.size() + " expired bindings for IA: " + 
-							"duid=" + Util.toHexString(ia.getDuid()) + " iaid=" + ia.getIaid());
 					for (IaAddress iaAddress : expiredAddrs) {
+						if (!isLeaseExpired(iaAddress, now)) {
+							graceCount++;
+							continue;
+						}
+						log.info("Found expired binding for IA: " + 
+								"duid=" + Util.toHexString(ia.getDuid()) + " iaid=" + ia.getIaid());
 						expireIaAddress(ia, iaAddress);
 					}
 				}
 			}
+			if (log.isDebugEnabled() && (graceCount > 0))
+				log.debug("Found " + graceCount + " bindings of type: " + 
+						IdentityAssoc.iaTypeToString(getIaType()) + 
+						" in the grace period of a lazy renewal");
 		}
 	}
 	
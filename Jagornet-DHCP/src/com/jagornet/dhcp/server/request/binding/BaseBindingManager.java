@@ -37,6 +37,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.Timer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
@@ -50,8 +52,13 @@ import com.jagornet.dhcp.server.config.DhcpConfigObject;
 import com.jagornet.dhcp.server.config.DhcpLink;
 import com.jagornet.dhcp.server.config.DhcpServerConfigException;
 import com.jagornet.dhcp.server.config.DhcpServerConfiguration;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.server.metrics.DhcpMetrics;
 import com.jagornet.dhcp.util.DhcpConstants;
+import com.jagornet.dhcp.util.IpAddress;
 import com.jagornet.dhcp.util.Subnet;
+import com.jagornet.dhcp.util.SubnetTrie;
 import com.jagornet.dhcp.xml.Link;
 import com.jagornet.dhcp.xml.LinkFilter;
 
@@ -73,20 +80,40 @@ public abstract class BaseBindingManager
      * The map of binding binding pools for this manager.  The key is the link address
      *  and the value is the list of configured BindingPools for the link. 
      */
-    protected Map<String, List<? extends BindingPool>> bindingPoolMap;
+    protected volatile Map<String, List<? extends BindingPool>> bindingPoolMap;
+    
+    /**
+     * The binding pools of all links, by the ranges of the pools.
+     */
+    protected volatile SubnetTrie<BindingPool> bindingPoolTrie;
     
     /**
      * The map of static bindings for this manager.  The key is the link address
-     * and the value is the list of configured StaticBindings for the link. 
+     * and the value is the index of the configured StaticBindings for the link. 
      */
-    protected Map<String, List<? extends StaticBinding>> staticBindingMap;
+    protected volatile Map<String, StaticBindingIndex> staticBindingMap;
+    
+    /**
+     * The binding pools of the replaced configuration, by range, while the
+     * pools are built for a reloaded configuration.
+     */
+    private Map<String, BindingPool> reloadPoolMap;
 
 	/** The reaper thread for cleaning expired bindings. */
 	protected Timer reaper;
 	
-	/** The lock for access to the reuseAvailableAddress method */
+	/** The last addresses of the clients, or null if disabled. */
+	protected AddressAffinityIndex affinityIndex = AddressAffinityIndex.getInstance();
+	
+	/**
+	 * The locks for reusing the available addresses of each pool, by range.
+	 * Each pool has its own lock, so requests for the pools of different
+	 * links never wait for each other, and the pool of the same range in a
+	 * reloaded configuration keeps the lock of the replaced pool.
+	 */
 	// the ReentrantLock class is better than synchronized
-	private final ReentrantLock lock = new ReentrantLock();
+	private final ConcurrentMap<String, ReentrantLock> poolLocks =
+		new ConcurrentHashMap<String, ReentrantLock>();
 	
 	/**
 	 * Initialize the manager.  Read the configuration and build
@@ -100,6 +127,109 @@ public abstract class BaseBindingManager
 		startReaper();
 	}
 	
+	/**
+	 * Reload the pool map and static bindings, after the server's configuration
+	 * has been reloaded.  A pool of the same range as a pool of the replaced
+	 * configuration carries over the free list of that pool, so only the new
+	 * and changed pools read the addresses in use from the database.  The new
+	 * pool map replaces the current one when it is complete.
+	 * 
+	 * @throws DhcpServerConfigException
+	 */
+	public synchronized void reload() throws DhcpServerConfigException
+	{
+		List<BindingPool> oldPools = new ArrayList<BindingPool>();
+		Map<String, BindingPool> poolsByRange = new HashMap<String, BindingPool>();
+		Map<String, List<? extends BindingPool>> oldPoolMap = bindingPoolMap;
+		if (oldPoolMap != null) {
+			for (List<? extends BindingPool> bps : oldPoolMap.values()) {
+				for (BindingPool bindingPool : bps) {
+					oldPools.add(bindingPool);
+					poolsByRange.put(rangeKey(bindingPool), bindingPool);
+				}
+			}
+		}
+		reloadPoolMap = poolsByRange;
+		try {
+			initPoolMap();
+		}
+		finally {
+			reloadPoolMap = null;
+		}
+		initStaticBindings();
+		for (BindingPool bindingPool : oldPools) {
+			bindingPool.close();
+		}
+		// drop the locks of the ranges no longer configured
+		Set<String> ranges = new HashSet<String>();
+		Map<String, List<? extends BindingPool>> poolMap = bindingPoolMap;
+		if (poolMap != null) {
+			for (List<? extends BindingPool> bps : poolMap.values()) {
+				for (BindingPool bindingPool : bps) {
+					ranges.add(rangeKey(bindingPool));
+				}
+			}
+		}
+		poolLocks.keySet().retainAll(ranges);
+	}
+	
+	/**
+	 * Carry over the free list of the pool of the same range in the replaced
+	 * configuration, when the pools are built for a reloaded configuration.
+	 * 
+	 * @param bindingPool the new binding pool
+	 * @return true, if carried over, false if the addresses in use of the pool
+	 * 		must be read from the database
+	 */
+	protected boolean carryOverFreeList(BindingPool bindingPool)
+	{
+		if (reloadPoolMap != null) {
+			BindingPool oldPool = reloadPoolMap.get(rangeKey(bindingPool));
+			if ((oldPool != null) && bindingPool.carryOver(oldPool)) {
+				log.info("Carried over binding pool: " + rangeKey(bindingPool) + 
+						" used=" + bindingPool.getUsedCount());
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Checks if the pools are being built for a reloaded configuration.
+	 * 
+	 * @return true, if reloading
+	 */
+	protected boolean isReloading()
+	{
+		return (reloadPoolMap != null);
+	}
+	
+	private static String rangeKey(BindingPool bindingPool)
+	{
+		return bindingPool.getStartAddress().getHostAddress() + "-" +
+				bindingPool.getEndAddress().getHostAddress();
+	}
+	
+	/**
+	 * Gets the lock for reusing the available addresses of a pool.
+	 * 
+	 * @param bindingPool the binding pool
+	 * @return the lock of the range of the pool
+	 */
+	protected ReentrantLock getPoolLock(BindingPool bindingPool)
+	{
+		String key = rangeKey(bindingPool);
+		ReentrantLock poolLock = poolLocks.get(key);
+		if (poolLock == null) {
+			poolLock = new ReentrantLock();
+			ReentrantLock existing = poolLocks.putIfAbsent(key, poolLock);
+			if (existing != null) {
+				poolLock = existing;
+			}
+		}
+		return poolLock;
+	}
+	
     /**
      * Initialize the pool map.  Read through the link map from the server's
      * configuration and build the pool map keyed by link address with a
@@ -111,16 +241,26 @@ public abstract class BaseBindingManager
     {
 		SortedMap<Subnet, DhcpLink> linkMap = serverConfig.getLinkMap();
 		if ((linkMap != null) && !linkMap.isEmpty()) {
-    		bindingPoolMap = new HashMap<String, List<? extends BindingPool>>();
+			Map<String, List<? extends BindingPool>> poolMap = 
+				new HashMap<String, List<? extends BindingPool>>();
+    		SubnetTrie<BindingPool> poolTrie = new SubnetTrie<BindingPool>();
 			for (DhcpLink dhcpLink : linkMap.values()) {
 				List<? extends BindingPool> bindingPools = buildBindingPools(dhcpLink.getLink());
 				if ((bindingPools != null) && !bindingPools.isEmpty()) {
-					bindingPoolMap.put(dhcpLink.getLinkAddress(), bindingPools);
+					poolMap.put(dhcpLink.getLinkAddress(), bindingPools);
+					for (BindingPool bindingPool : bindingPools) {
+						poolTrie.putRange(bindingPool.getStartAddress(), 
+								bindingPool.getEndAddress(), bindingPool);
+					}
 				}
 			}
+			bindingPoolMap = poolMap;
+			bindingPoolTrie = poolTrie;
 		}
 		else {
 			log.error("LinkMap is null for DhcpServerConfiguration");
+			bindingPoolMap = null;
+			bindingPoolTrie = null;
 		}
     }
 
@@ -141,7 +281,7 @@ public abstract class BaseBindingManager
     /**
      * Initialize the static bindings.  Read through the link map from the server's
      * configuration and build the binding map keyed by link address with a
-     * value of the list of (na/ta/v4 address or prefix) bindings for the link.
+     * value of the index of (na/ta/v4 address or prefix) bindings for the link.
      * 
      * 
      * @throws DhcpServerConfigException the exception
@@ -150,13 +290,20 @@ public abstract class BaseBindingManager
     {
 		SortedMap<Subnet, DhcpLink> linkMap = serverConfig.getLinkMap();
 		if (linkMap != null) {
-    		staticBindingMap = new HashMap<String, List<? extends StaticBinding>>();
+			Map<String, StaticBindingIndex> bindingMap = new HashMap<String, StaticBindingIndex>();
 			for (DhcpLink dhcpLink : linkMap.values()) {
 				List<? extends StaticBinding> staticBindings = buildStaticBindings(dhcpLink.getLink());
 				if ((staticBindings != null) && !staticBindings.isEmpty()) {
-					staticBindingMap.put(dhcpLink.getLinkAddress(), staticBindings);
+					StaticBindingIndex staticBindingIndex = new StaticBindingIndex(staticBindings);
+					if (staticBindingIndex.getUnindexedSize() > 0) {
+						log.info("Link " + dhcpLink.getLinkAddress() + ": " +
+								staticBindingIndex.getUnindexedSize() + " of " +
+								staticBindingIndex.size() + " static bindings are not indexed");
+					}
+					bindingMap.put(dhcpLink.getLinkAddress(), staticBindingIndex);
 				}
 			}
+			staticBindingMap = bindingMap;
 		}
     }
     
@@ -192,6 +339,7 @@ public abstract class BaseBindingManager
 	{
 		List<? extends BindingPool> bps = bindingPoolMap.get(link.getAddress());
 		if ((bps != null) && !bps.isEmpty()) {
+			IpAddress ipAddr = IpAddress.valueOf(inetAddr);
 			for (BindingPool bindingPool : bps) {
 //				if (log.isDebugEnabled()) {
 //					if (bindingPool instanceof AddressBindingPool) {
@@ -200,16 +348,18 @@ public abstract class BaseBindingManager
 //						log.debug("FreeList: " + abp.freeListToString());
 //					}
 //				}
-				if (bindingPool.contains(inetAddr)) {
+				if (bindingPool.contains(ipAddr)) {
 					if ((requestMsg != null) && (bindingPool.getLinkFilter() != null)) {
 						if (DhcpServerConfiguration.msgMatchesFilter(requestMsg, 
 								bindingPool.getLinkFilter())) {
-							log.info("Found filter binding pool: " + bindingPool);
+							if (log.isDebugEnabled())
+								log.debug("Found filter binding pool: " + bindingPool);
 							return bindingPool;
 						}
 					}
 					else {
-						log.info("Found binding pool: " + bindingPool);
+						if (log.isDebugEnabled())
+							log.debug("Found binding pool: " + bindingPool);
 						return bindingPool;
 					}
 				}
@@ -219,8 +369,8 @@ public abstract class BaseBindingManager
 	}
     
 	/**
-	 * Find binding pool for the given IP address.  Search through all
-	 * the pools on all links to find the IP's binding pool.
+	 * Find binding pool for the given IP address.  Search the ranges
+	 * of the pools on all links to find the IP's binding pool.
 	 * 
 	 * @param inetAddr the IP address
 	 * 
@@ -228,16 +378,15 @@ public abstract class BaseBindingManager
 	 */
 	protected BindingPool findBindingPool(InetAddress inetAddr)
 	{
-		Collection<List<? extends BindingPool>> allPools = bindingPoolMap.values();
-		if ((allPools != null) && !allPools.isEmpty()) {
-			for (List<? extends BindingPool> bps : allPools) {
-				for (BindingPool bindingPool : bps) {
-					if (bindingPool.contains(inetAddr))
-						log.info("Found binding pool for address=" + 
-								inetAddr.getHostAddress() +
-								": " + bindingPool);
-						return bindingPool;
-				}
+		SubnetTrie<BindingPool> poolTrie = bindingPoolTrie;
+		if (poolTrie != null) {
+			BindingPool bindingPool = poolTrie.get(inetAddr);
+			if (bindingPool != null) {
+				if (log.isDebugEnabled())
+					log.debug("Found binding pool for address=" + 
+							inetAddr.getHostAddress() +
+							": " + bindingPool);
+				return bindingPool;
 			}
 		}
 		return null;
@@ -295,20 +444,23 @@ public abstract class BaseBindingManager
 		try {
 			IdentityAssoc ia = iaMgr.findIA(duid, iatype, iaid);
 			if (ia != null) {
-				log.info("Found current binding for " + 
-						IdentityAssoc.keyToString(duid, iatype, iaid) +
-						" state=" + ia.getState());
+				if (log.isDebugEnabled())
+					log.debug("Found current binding for " + 
+							IdentityAssoc.keyToString(duid, iatype, iaid) +
+							" state=" + ia.getState());
 				binding = buildBindingFromIa(ia, clientLink, requestMsg);
 				if (binding != null) {
-					log.info("Successfully built Binding object: " + binding);
+					if (log.isDebugEnabled())
+						log.debug("Successfully built Binding object: " + binding);
 				}
 				else {
 					log.error("Failed to build Binding object");
 				}
 			}
 			else {
-				log.info("No current binding found for " +
-						IdentityAssoc.keyToString(duid, iatype, iaid));
+				if (log.isDebugEnabled())
+					log.debug("No current binding found for " +
+							IdentityAssoc.keyToString(duid, iatype, iaid));
 			}
 		}
 		catch (Exception ex) {
@@ -331,14 +483,15 @@ public abstract class BaseBindingManager
 			DhcpMessage requestMsg)
 	{
 		try {
-			List<? extends StaticBinding> staticBindings = 
+			StaticBindingIndex staticBindingIndex = 
 				staticBindingMap.get(clientLink.getAddress());
-			if ((staticBindings != null) && !staticBindings.isEmpty()) {
-				for (StaticBinding staticBinding : staticBindings) {
-					if (staticBinding.matches(duid, iatype, iaid, requestMsg)) {
-						log.info("Found static binding: " + staticBinding);
-						return staticBinding;
-					}
+			if (staticBindingIndex != null) {
+				StaticBinding staticBinding = 
+					staticBindingIndex.find(duid, iatype, iaid, requestMsg);
+				if (staticBinding != null) {
+					if (log.isDebugEnabled())
+						log.debug("Found static binding: " + staticBinding);
+					return staticBinding;
 				}
 			}
 		}
@@ -363,36 +516,25 @@ public abstract class BaseBindingManager
 	protected Binding createBinding(DhcpLink clientLink, byte[] duid, byte iatype, long iaid,
 			List<InetAddress> requestAddrs, DhcpMessage requestMsg, byte state)
 	{
-		Binding binding = null;
-		log.debug("Getting addresses for new binding");
-		List<InetAddress> inetAddrs = 
-			getInetAddrs(clientLink, duid, iatype, iaid, requestAddrs, requestMsg);
-		if ((inetAddrs != null) && !inetAddrs.isEmpty()) {
-			log.debug("Got " + inetAddrs.size() + " addresses, building binding");
-			binding = buildBinding(clientLink, duid, iatype, iaid, state);
-			log.debug("Building binding objects");
-			Set<BindingObject> bindingObjs = 
-				buildBindingObjects(clientLink, inetAddrs, requestMsg, state);
-			if ((bindingObjs != null) && !bindingObjs.isEmpty()) {
-				binding.setBindingObjects(bindingObjs);
-				log.info("Creating new binding");
-				try {
-					iaMgr.createIA(binding);
-				}
-				catch (Exception ex) {
-					log.error("Failed to create persistent binding", ex);
-					return null;
-				}
+		Binding binding = 
+			buildNewBinding(clientLink, duid, iatype, iaid, requestAddrs, requestMsg, state);
+		if (binding != null) {
+			if (log.isDebugEnabled())
+				log.debug("Creating new binding");
+			try {
+				iaMgr.createIA(binding);
 			}
-			else {
-				log.error("Failed to build binding object(s)");
+			catch (Exception ex) {
+				log.error("Failed to create persistent binding", ex);
 				return null;
 			}
+			setAffinity(binding);
 		}
 		
 		String bindingType = (iatype == IdentityAssoc.V4_TYPE) ? "discover" : "solicit";
 		if (binding != null) {
-			log.info("Created " + bindingType + " binding: " + binding.toString());
+			if (log.isDebugEnabled())
+				log.debug("Created " + bindingType + " binding: " + binding.toString());
 		}
 		else {
 			log.warn("Failed to create " + bindingType + " binding");
@@ -400,6 +542,41 @@ public abstract class BaseBindingManager
 		return binding;
 	}
 	
+	/**
+	 * Build a new binding for the given client IA, with the addresses set used
+	 * in their pools, but not stored in the database.
+	 * 
+	 * @param clientLink the link for the client request message
+	 * @param duid the DUID of the client
+	 * @param iatype the IA type of the client request
+	 * @param iaid the IAID of the client request
+	 * @param requestAddrs the list of requested IP addresses, if any
+	 * @param requestMsg the client request message
+	 * @param state the binding state
+	 * @return the new Binding, or null if no addresses are available
+	 */
+	protected Binding buildNewBinding(DhcpLink clientLink, byte[] duid, byte iatype, long iaid,
+			List<InetAddress> requestAddrs, DhcpMessage requestMsg, byte state)
+	{
+		log.debug("Getting addresses for new binding");
+		List<InetAddress> inetAddrs = 
+			getInetAddrs(clientLink, duid, iatype, iaid, requestAddrs, requestMsg);
+		if ((inetAddrs == null) || inetAddrs.isEmpty()) {
+			return null;
+		}
+		log.debug("Got " + inetAddrs.size() + " addresses, building binding");
+		Binding binding = buildBinding(clientLink, duid, iatype, iaid, state);
+		log.debug("Building binding objects");
+		Set<BindingObject> bindingObjs = 
+			buildBindingObjects(clientLink, inetAddrs, requestMsg, state);
+		if ((bindingObjs == null) || bindingObjs.isEmpty()) {
+			log.error("Failed to build binding object(s)");
+			return null;
+		}
+		binding.setBindingObjects(bindingObjs);
+		return binding;
+	}
+	
 	/**
 	 * Create a binding in from a StaticBinding
 	 * 
@@ -450,7 +627,8 @@ public abstract class BaseBindingManager
 		
 		String bindingType = (iatype == IdentityAssoc.V4_TYPE) ? "discover" : "solicit";
 		if (binding != null) {
-			log.info("Created static " + bindingType + " binding: " + binding.toString());
+			if (log.isDebugEnabled())
+				log.debug("Created static " + bindingType + " binding: " + binding.toString());
 		}
 		else {
 			log.warn("Failed to create static " + bindingType + " binding");
@@ -487,8 +665,24 @@ public abstract class BaseBindingManager
 		Collection<BindingObject> bindingObjs = binding.getBindingObjects();
 		if ((bindingObjs != null) && !bindingObjs.isEmpty()) {
 			// current binding has addresses, so update times
+			long[] storedValidEnds = getValidEndTimes(bindingObjs);
 			setBindingObjsTimes(bindingObjs);
-			// the existing IaAddress binding objects will be updated
+			if ((binding.getState() == IaAddress.COMMITTED) && 
+					(state == IaAddress.COMMITTED) &&
+					isStoredLeaseCurrent(bindingObjs, storedValidEnds)) {
+				if (log.isDebugEnabled())
+					log.debug("Stored lease still current, binding not updated: " + 
+							binding.toString());
+				DhcpMetrics.LEASE_UPDATE_SKIPPED.increment();
+				binding.setTimesStored(false);
+				setAffinity(binding);
+				return binding;
+			}
+			// the existing IaAddress binding objects will be updated,
+			// with the state of the binding, e.g. committed when offered
+			for (BindingObject bindingObj : bindingObjs) {
+				bindingObj.setState(state);
+			}
 			updateIaAddresses = binding.getIaAddresses();
 		}
 		else {
@@ -507,9 +701,13 @@ public abstract class BaseBindingManager
 		}
 		binding.setState(state);
 		try {
-			log.info("Updating binding");
+			if (log.isDebugEnabled())
+				log.debug("Updating binding");
 			iaMgr.updateIA(binding, addIaAddresses, updateIaAddresses, delIaAddresses);
-			log.info("Binding updated: " + binding.toString());
+			binding.setTimesStored(true);
+			setAffinity(binding);
+			if (log.isDebugEnabled())
+				log.debug("Binding updated: " + binding.toString());
 			return binding;	// if we get here, it worked
 		}
 		catch (Exception ex) {
@@ -518,6 +716,102 @@ public abstract class BaseBindingManager
 		}
 	}
 
+	/**
+	 * Gets the valid end times of the binding objects, as read from the database.
+	 * 
+	 * @param bindingObjs the binding objects
+	 * @return the valid end times in ms, in the order of the binding objects,
+	 * 		-1 for a lease which does not expire or has no end time
+	 */
+	protected long[] getValidEndTimes(Collection<BindingObject> bindingObjs)
+	{
+		long[] validEnds = new long[bindingObjs.size()];
+		int i = 0;
+		for (BindingObject bindingObj : bindingObjs) {
+			Date validEnd = bindingObj.getValidEndTime();
+			validEnds[i++] = (validEnd != null) ? validEnd.getTime() : -1;
+		}
+		return validEnds;
+	}
+	
+	/**
+	 * Check if the lease stored in the database still covers the renewed lease
+	 * of the binding objects, so the renewal need not be written.  The stored
+	 * valid end time of each binding object must be at least the fraction of
+	 * the binding.manager.lazyRenewFraction policy of the renewed lease from now.
+	 * The renewed lease then ends at most (1 - fraction) of the lease after the
+	 * stored end time, which is the grace period of an expired lease, see
+	 * isLeaseExpired.
+	 * 
+	 * @param bindingObjs the renewed binding objects
+	 * @param storedValidEnds the stored valid end times of the binding objects
+	 * @return true, if the renewal need not be written
+	 */
+	protected boolean isStoredLeaseCurrent(Collection<BindingObject> bindingObjs, 
+			long[] storedValidEnds)
+	{
+		float fraction = getLazyRenewFraction();
+		if (fraction <= 0) {
+			return false;
+		}
+		long now = System.currentTimeMillis();
+		int i = 0;
+		for (BindingObject bindingObj : bindingObjs) {
+			long storedValidEnd = storedValidEnds[i++];
+			Date validEnd = bindingObj.getValidEndTime();
+			if ((storedValidEnd < 0) || (validEnd == null) || (validEnd.getTime() < 0)) {
+				// a lease which does not expire is always written
+				return false;
+			}
+			if ((storedValidEnd - now) < (long)(fraction * (validEnd.getTime() - now))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Check if a lease found expired in the database is expired.  A renewal
+	 * is not written while the stored lease is current, so the renewed lease
+	 * ends up to (1 - binding.manager.lazyRenewFraction) of the valid lifetime
+	 * of the pool after the stored valid end time.  The lease is not expired
+	 * until then, also after a restart of the server, when the renewed lease
+	 * times are lost.
+	 * 
+	 * @param iaAddr the lease found expired
+	 * @param now the current time in ms
+	 * @return true, if the lease is expired
+	 */
+	protected boolean isLeaseExpired(IaAddress iaAddr, long now)
+	{
+		float fraction = getLazyRenewFraction();
+		Date validEnd = iaAddr.getValidEndTime();
+		if ((fraction <= 0) || (validEnd == null)) {
+			return true;
+		}
+		BindingPool bp = findBindingPool(iaAddr.getIpAddress());
+		if (bp == null) {
+			return true;
+		}
+		long grace = (long)((1 - fraction) * bp.getValidLifetimeMs());
+		return (validEnd.getTime() + grace) <= now;
+	}
+	
+	/**
+	 * Gets the binding.manager.lazyRenewFraction policy.
+	 * 
+	 * @return the fraction, or zero if renewals are always written
+	 */
+	protected float getLazyRenewFraction()
+	{
+		float fraction = 
+			DhcpServerPolicies.globalPolicyAsFloat(Property.BINDING_MANAGER_LAZY_RENEW_FRACTION);
+		if ((fraction <= 0) || (fraction >= 1)) {
+			return 0;
+		}
+		return fraction;
+	}
+
 	/**
 	 * Update an existing static binding.
 	 * 
@@ -539,7 +833,8 @@ public abstract class BaseBindingManager
 		Collection<? extends IaAddress> delIaAddresses = null;	// not used currently
 
 		if (staticBinding != null) {
-			log.info("Updating static binding: " + binding);
+			if (log.isDebugEnabled())
+				log.debug("Updating static binding: " + binding);
 			Collection<BindingObject> bindingObjs = binding.getBindingObjects();
 			if ((bindingObjs != null) && !bindingObjs.isEmpty()) {
 				for (BindingObject bindingObj : bindingObjs) {
@@ -613,8 +908,9 @@ public abstract class BaseBindingManager
 						// because that address is either off-link or no longer valid
 						continue;
 					}
-					log.info("Searching existing bindings for requested IP=" +
-							reqAddr.getHostAddress());
+					if (log.isDebugEnabled())
+						log.debug("Searching existing bindings for requested IP=" +
+								reqAddr.getHostAddress());
 					IdentityAssoc ia = null;
 					try {
 						ia = iaMgr.findIA(reqAddr); 
@@ -630,13 +926,20 @@ public abstract class BaseBindingManager
 										".  Allowing this requested IP.");
 							}
 							else {
-								log.info("Requested IP=" + reqAddr.getHostAddress() +
-										" is held by ANOTHER client " +
-										IdentityAssoc.keyToString(duid, iatype, iaid));
+								if (log.isDebugEnabled())
+									log.debug("Requested IP=" + reqAddr.getHostAddress() +
+											" is held by ANOTHER client " +
+											IdentityAssoc.keyToString(duid, iatype, iaid));
 								// the address is held by another IA, so get a new one
 								reqAddr = getNextFreeAddress(clientLink, requestMsg);
 							}
 						}
+						else if (isOfferedToAnother(reqAddr, duid, iatype, iaid)) {
+							if (log.isDebugEnabled())
+								log.debug("Requested IP=" + reqAddr.getHostAddress() +
+										" is offered to ANOTHER client");
+							reqAddr = getNextFreeAddress(clientLink, requestMsg);
+						}
 						if (reqAddr != null) {
 							inetAddrs.add(reqAddr);
 						}
@@ -649,8 +952,13 @@ public abstract class BaseBindingManager
 		}
 		
 		if (inetAddrs.isEmpty()) {
-			// the client did not request any valid addresses, so get the next one
-			InetAddress inetAddr = getNextFreeAddress(clientLink, requestMsg);
+			// the client did not request any valid addresses, so get its
+			// last address, if it is still available, or the next one
+			InetAddress inetAddr = 
+				getAffinityAddress(clientLink, duid, iatype, iaid, requestMsg);
+			if (inetAddr == null) {
+				inetAddr = getNextFreeAddress(clientLink, requestMsg);
+			}
 			if (inetAddr != null) {
 				inetAddrs.add(inetAddr);
 			}
@@ -658,6 +966,23 @@ public abstract class BaseBindingManager
 		return inetAddrs;
 	}
 	
+	/**
+	 * Checks if an address, which is not held by any IA in the database, is
+	 * offered to another client by a reservation kept in memory.
+	 * 
+	 * @param inetAddr the address
+	 * @param duid the DUID
+	 * @param iatype the IA type
+	 * @param iaid the IAID
+	 * 
+	 * @return true, if offered to another client
+	 */
+	protected boolean isOfferedToAnother(InetAddress inetAddr, byte[] duid, byte iatype, 
+			long iaid)
+	{
+		return false;
+	}
+	
 	/**
 	 * Checks if the duid-iatype-iaid tuple matches the given IA.
 	 * 
@@ -698,8 +1023,9 @@ public abstract class BaseBindingManager
     				LinkFilter filter = bp.getLinkFilter();
     				if ((requestMsg != null) && (filter != null)) {
     					if (!DhcpServerConfiguration.msgMatchesFilter(requestMsg, filter)) {
-    						log.info("Client request does not match filter, skipping pool: " +
-    								bp.toString());
+    						if (log.isDebugEnabled())
+    							log.debug("Client request does not match filter, skipping pool: " +
+    									bp.toString());
     						continue;
     					}
     				}
@@ -725,8 +1051,9 @@ public abstract class BaseBindingManager
     				LinkFilter filter = bp.getLinkFilter();
     				if ((requestMsg != null) && (filter != null)) {
     					if (!DhcpServerConfiguration.msgMatchesFilter(requestMsg, filter)) {
-    						log.info("Client request does not match filter, skipping pool: " +
-    								bp.toString());
+    						if (log.isDebugEnabled())
+    							log.debug("Client request does not match filter, skipping pool: " +
+    									bp.toString());
     						continue;
     					}
     				}
@@ -750,12 +1077,14 @@ public abstract class BaseBindingManager
 	/**
 	 * Find an address that can be reused.  This method is invoked only
 	 * when no "virgin" leases can be found for a new client request.
+	 * Only the requests for the same pool wait for the lock of the pool.
 	 * 
 	 * @param bp the binding pool
 	 * @return the oldest available address, if any
 	 */
 	protected InetAddress reuseAvailableAddress(BindingPool bp)
 	{
+		ReentrantLock lock = getPoolLock(bp);
 		lock.lock();
 		try {
 			if (log.isDebugEnabled())
@@ -790,6 +1119,87 @@ public abstract class BaseBindingManager
 		return null;
 	}
 	
+	/**
+	 * Remember the address of a committed binding, as the address which
+	 * the client is given again when it returns after the binding is gone.
+	 * 
+	 * @param binding the binding
+	 */
+	protected void setAffinity(Binding binding)
+	{
+		if ((affinityIndex != null) && (binding.getState() == IaAddress.COMMITTED)) {
+			Collection<BindingObject> bindingObjs = binding.getBindingObjects();
+			if ((bindingObjs != null) && !bindingObjs.isEmpty()) {
+				affinityIndex.put(binding.getDuid(), binding.getIatype(), binding.getIaid(),
+						bindingObjs.iterator().next().getIpAddress());
+			}
+		}
+	}
+	
+	/**
+	 * Gets the last address of the client, if it is still in a pool of the
+	 * client link and available.  The address is available if it is free in
+	 * the pool, or if it is held by a released or expired lease of another
+	 * client, which is deleted, as when reusing the oldest available address.
+	 * 
+	 * @param clientLink the client link
+	 * @param duid the DUID
+	 * @param iatype the IA type
+	 * @param iaid the IAID
+	 * @param requestMsg the request message
+	 * 
+	 * @return the last address, set used, or null if not available
+	 */
+	protected InetAddress getAffinityAddress(DhcpLink clientLink, byte[] duid, byte iatype, 
+			long iaid, DhcpMessage requestMsg)
+	{
+		if ((affinityIndex == null) || (clientLink == null)) {
+			return null;
+		}
+		InetAddress inetAddr = affinityIndex.get(duid, iatype, iaid);
+		if (inetAddr == null) {
+			return null;
+		}
+		BindingPool bp = findBindingPool(clientLink.getLink(), inetAddr, requestMsg);
+		if (bp == null) {
+			if (log.isDebugEnabled())
+				log.debug("Last address " + inetAddr.getHostAddress() + 
+						" is not in a pool of the client link");
+			return null;
+		}
+		if (bp.setUsedIfFree(inetAddr)) {
+			if (log.isDebugEnabled())
+				log.debug("Found free last address: " + inetAddr.getHostAddress());
+			DhcpMetrics.ADDRESS_AFFINITY_HIT.increment();
+			return inetAddr;
+		}
+		ReentrantLock lock = getPoolLock(bp);
+		lock.lock();
+		try {
+			IdentityAssoc ia = iaMgr.findIA(inetAddr);
+			if ((ia != null) && !isMyIa(duid, iatype, iaid, ia) && 
+					(ia.getIaAddresses() != null)) {
+				for (IaAddress iaAddr : ia.getIaAddresses()) {
+					if (inetAddr.equals(iaAddr.getIpAddress()) &&
+							((iaAddr.getState() == IaAddress.RELEASED) ||
+							 (iaAddr.getState() == IaAddress.EXPIRED))) {
+						log.info("Deleting available last address: " + iaAddr.toString());
+						iaMgr.deleteIaAddr(iaAddr);
+						DhcpMetrics.ADDRESS_AFFINITY_HIT.increment();
+						return inetAddr;
+					}
+				}
+			}
+		}
+		catch (Exception ex) {
+			log.error("Failure finding IA for last address", ex);
+		}
+		finally {
+			lock.unlock();
+		}
+		return null;
+	}
+	
 	/**
 	 * Create a Binding given an IdentityAssoc loaded from the database.
 	 * 
@@ -943,6 +1353,15 @@ public abstract class BaseBindingManager
 		}
 	}
 
+	/**
+	 * Gets the binding pools, keyed by link address.
+	 * 
+	 * @return the binding pool map, or null if no links are configured
+	 */
+	public Map<String, List<? extends BindingPool>> getBindingPoolMap() {
+		return bindingPoolMap;
+	}
+
 	public IaManager getIaMgr() {
 		return iaMgr;
 	}
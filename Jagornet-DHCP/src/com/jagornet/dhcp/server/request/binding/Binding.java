@@ -32,6 +32,7 @@ import org.springframework.beans.BeanUtils;
 
 import com.jagornet.dhcp.db.IaAddress;
 import com.jagornet.dhcp.db.IdentityAssoc;
+import com.jagornet.dhcp.message.DhcpMessage;
 import com.jagornet.dhcp.server.config.DhcpLink;
 
 /**
@@ -44,6 +45,9 @@ public class Binding extends IdentityAssoc
 {
 	private IdentityAssoc origIa;
 	private DhcpLink dhcpLink;
+	private volatile DhcpMessage replyTemplate;
+	private boolean timesStored = true;
+	private volatile boolean offered;
 	
 	/**
 	 * Instantiates a new binding.
@@ -76,6 +80,63 @@ public class Binding extends IdentityAssoc
 		this.dhcpLink = dhcpLink;
 	}
 
+	/**
+	 * Gets the reply template.
+	 * 
+	 * @return the reply last sent for this binding, or null if none
+	 */
+	public DhcpMessage getReplyTemplate() {
+		return replyTemplate;
+	}
+
+	/**
+	 * Sets the reply template, the reply sent for this binding, which can be
+	 * sent again to answer a renewal with the same request options.
+	 * 
+	 * @param replyTemplate the reply
+	 */
+	public void setReplyTemplate(DhcpMessage replyTemplate) {
+		this.replyTemplate = replyTemplate;
+	}
+
+	/**
+	 * Checks if the lease times are stored.
+	 * 
+	 * @return true, if the lease times of the binding objects are stored in
+	 * 		the database, false if the last renewal was not written
+	 */
+	public boolean isTimesStored() {
+		return timesStored;
+	}
+
+	/**
+	 * Sets if the lease times are stored.
+	 * 
+	 * @param timesStored false, if the last renewal was not written
+	 */
+	public void setTimesStored(boolean timesStored) {
+		this.timesStored = timesStored;
+	}
+
+	/**
+	 * Checks if the binding is offered.
+	 * 
+	 * @return true, if the binding is an offer kept in memory, which is
+	 * 		not written to the database yet
+	 */
+	public boolean isOffered() {
+		return offered;
+	}
+
+	/**
+	 * Sets if the binding is offered.
+	 * 
+	 * @param offered false, when the offered binding is written
+	 */
+	public void setOffered(boolean offered) {
+		this.offered = offered;
+	}
+
 	/**
 	 * Gets the binding objects.
 	 * 
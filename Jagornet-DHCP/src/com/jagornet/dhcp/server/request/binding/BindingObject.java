@@ -43,5 +43,6 @@ public interface BindingObject
 	public void setStartTime(Date startDate);
 	public void setPreferredEndTime(Date preferredDate);
 	public void setValidEndTime(Date validDate);
+	public Date getValidEndTime();
 	public InetAddress getIpAddress();
 }
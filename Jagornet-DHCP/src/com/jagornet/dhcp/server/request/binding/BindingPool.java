@@ -29,6 +29,7 @@ import java.math.BigInteger;
 import java.net.InetAddress;
 
 import com.jagornet.dhcp.server.config.DhcpConfigObject;
+import com.jagornet.dhcp.util.IpAddress;
 import com.jagornet.dhcp.xml.LinkFilter;
 
 /**
@@ -43,8 +44,35 @@ public interface BindingPool extends DhcpConfigObject
 	public InetAddress getEndAddress();
 	public InetAddress getNextAvailableAddress();
 	public void setUsed(InetAddress addr);
+	
+	/**
+	 * Sets an address used, if it is free, e.g. the address a client
+	 * was last bound to.
+	 * 
+	 * @param addr the address
+	 * @return true, if the address was free
+	 */
+	public boolean setUsedIfFree(InetAddress addr);
+	
 	public void setFree(InetAddress addr);
 	public boolean contains(InetAddress addr);
+	public boolean contains(IpAddress addr);
 	public LinkFilter getLinkFilter();
 	public BigInteger getSize();
+	public long getUsedCount();
+	
+	/**
+	 * Carry over the addresses in use of the pool which this pool replaces,
+	 * when the configuration is reloaded.  The pools share the free list, so
+	 * requests still using the replaced pool allocate from the same list.
+	 * 
+	 * @param oldPool the pool of the replaced configuration
+	 * @return true, if carried over, false if the pools are not the same range
+	 */
+	public boolean carryOver(BindingPool oldPool);
+	
+	/**
+	 * Release the resources of a pool which is no longer configured.
+	 */
+	public void close();
 }
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file BuddyFreeList.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.jagornet.dhcp.server.config.DhcpServerConfigException;
+
+/**
+ * The Class BuddyFreeList.  The used and free blocks of a range of 2^maxOrder
+ * units, for the prefixes of different lengths of a prefix pool.  A block of
+ * order k is 2^k units, starting at an offset which is a multiple of 2^k, so
+ * the unit is a prefix of the longest length, and a block of order k is the
+ * prefix which is k bits shorter.
+ * 
+ * A free block is split in halves, its buddies, to allocate a smaller block,
+ * and a freed block is merged with its buddy when that is free, so the lists
+ * only hold the free blocks around the used ones, and the memory used grows
+ * with the number of blocks used, not with the size of the range.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class BuddyFreeList
+{
+	/** The largest order, so the offsets are non-negative longs. */
+	public static final int MAX_ORDER = 62;
+	
+	protected int maxOrder;
+	
+	/** The offsets of the free blocks, by order. */
+	protected List<TreeSet<Long>> freeBlocks;
+	
+	/** The orders of the used blocks, by offset. */
+	protected Map<Long, Integer> usedBlocks;
+	
+	/** The number of blocks used, updated under the lock. */
+	protected volatile long usedCount;
+	
+	// the ReentrantLock class is better than synchronized
+	private final ReentrantLock lock = new ReentrantLock();
+	
+	/**
+	 * Instantiates a new buddy free list, with all units free.
+	 * 
+	 * @param maxOrder the order of the range, which is 2^maxOrder units
+	 */
+	public BuddyFreeList(int maxOrder) throws DhcpServerConfigException
+	{
+		if ((maxOrder < 0) || (maxOrder > MAX_ORDER)) {
+			throw new DhcpServerConfigException(
+					"Failed to create BuddyFreeList: order not in 0.." + MAX_ORDER);
+		}
+		this.maxOrder = maxOrder;
+		freeBlocks = new ArrayList<TreeSet<Long>>(maxOrder + 1);
+		for (int i=0; i<=maxOrder; i++) {
+			freeBlocks.add(new TreeSet<Long>());
+		}
+		freeBlocks.get(maxOrder).add(Long.valueOf(0));
+		usedBlocks = new HashMap<Long, Integer>();
+	}
+	
+	public int getMaxOrder()
+	{
+		return maxOrder;
+	}
+	
+	/**
+	 * Gets the number of units of the range.
+	 */
+	public long getSize()
+	{
+		return 1L << maxOrder;
+	}
+	
+	public boolean isInList(long offset)
+	{
+		return (offset >= 0) && (offset < getSize());
+	}
+	
+	/**
+	 * Gets the next free block of an order, which is the lowest free block
+	 * of the smallest order which fits, split down to the order, and marks
+	 * it used.
+	 * 
+	 * @param order the order
+	 * 
+	 * @return the offset of the block, or -1 if no block of the order is free
+	 */
+	public long getNextFree(int order)
+	{
+		if ((order < 0) || (order > maxOrder)) {
+			return -1;
+		}
+		lock.lock();
+		try {
+			for (int k=order; k<=maxOrder; k++) {
+				TreeSet<Long> free = freeBlocks.get(k);
+				if (!free.isEmpty()) {
+					long offset = free.pollFirst().longValue();
+					// keep the lower half, the upper halves are free
+					while (k > order) {
+						k--;
+						freeBlocks.get(k).add(Long.valueOf(offset + (1L << k)));
+					}
+					usedBlocks.put(Long.valueOf(offset), Integer.valueOf(order));
+					usedCount++;
+					return offset;
+				}
+			}
+			return -1;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Marks a block used, for example a prefix loaded from the leases.
+	 * 
+	 * @param offset the offset of the block, a multiple of 2^order
+	 * @param order the order
+	 * 
+	 * @return true, if the block is used, false if it overlaps another block
+	 */
+	public boolean setUsed(long offset, int order)
+	{
+		if ((order < 0) || (order > maxOrder) || !isInList(offset) ||
+				((offset & ((1L << order) - 1)) != 0)) {
+			return false;
+		}
+		lock.lock();
+		try {
+			Integer used = usedBlocks.get(Long.valueOf(offset));
+			if (used != null) {
+				return (used.intValue() == order);
+			}
+			// find the free block which contains the block, and split it
+			for (int k=order; k<=maxOrder; k++) {
+				long block = offset & ~((1L << k) - 1);
+				if (freeBlocks.get(k).remove(Long.valueOf(block))) {
+					while (k > order) {
+						k--;
+						long half = 1L << k;
+						if ((offset & half) != 0) {
+							freeBlocks.get(k).add(Long.valueOf(block));
+							block += half;
+						}
+						else {
+							freeBlocks.get(k).add(Long.valueOf(block + half));
+						}
+					}
+					usedBlocks.put(Long.valueOf(offset), Integer.valueOf(order));
+					usedCount++;
+					return true;
+				}
+			}
+			return false;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Marks a block used, if it is free.
+	 * 
+	 * @param offset the offset of the block, a multiple of 2^order
+	 * @param order the order
+	 * 
+	 * @return true, if the block was free
+	 */
+	public boolean setUsedIfFree(long offset, int order)
+	{
+		lock.lock();
+		try {
+			if (usedBlocks.containsKey(Long.valueOf(offset))) {
+				return false;
+			}
+			return setUsed(offset, order);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Marks a used block free, and merges it with its free buddies.
+	 * 
+	 * @param offset the offset of the block
+	 * 
+	 * @return the order of the block, or -1 if no block is used at the offset
+	 */
+	public int setFree(long offset)
+	{
+		lock.lock();
+		try {
+			Integer used = usedBlocks.remove(Long.valueOf(offset));
+			if (used == null) {
+				return -1;
+			}
+			usedCount--;
+			int k = used.intValue();
+			long block = offset;
+			while (k < maxOrder) {
+				long buddy = block ^ (1L << k);
+				if (!freeBlocks.get(k).remove(Long.valueOf(buddy))) {
+					break;
+				}
+				block = Math.min(block, buddy);
+				k++;
+			}
+			freeBlocks.get(k).add(Long.valueOf(block));
+			return used.intValue();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Gets the order of a used block.
+	 * 
+	 * @param offset the offset of the block
+	 * 
+	 * @return the order, or -1 if no block is used at the offset
+	 */
+	public int getOrder(long offset)
+	{
+		lock.lock();
+		try {
+			Integer used = usedBlocks.get(Long.valueOf(offset));
+			return (used != null) ? used.intValue() : -1;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	
+	public boolean isUsed(long offset)
+	{
+		return (getOrder(offset) >= 0);
+	}
+	
+	/**
+	 * Gets the number of blocks used.
+	 */
+	public long getUsedCount()
+	{
+		return usedCount;
+	}
+	
+	/**
+	 * Gets the number of free blocks, which are held in the lists.
+	 */
+	public long getFreeBlockCount()
+	{
+		lock.lock();
+		try {
+			long count = 0;
+			for (TreeSet<Long> free : freeBlocks) {
+				count += free.size();
+			}
+			return count;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	
+	public String toString() {
+		return "BuddyFreeList: order=" + maxOrder + " used=" + usedCount +
+				" free=" + getFreeBlockCount();
+	}
+}
@@ -25,35 +25,44 @@
  */
 package com.jagornet.dhcp.server.request.binding;
 
-import java.math.BigInteger;
-import java.util.ArrayList;
 import java.util.BitSet;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.locks.ReentrantLock;
 
 import com.jagornet.dhcp.server.config.DhcpServerConfigException;
 
 /**
- * The Class FreeList.
+ * The Class FreeList.  The used and free values of a range of non-negative
+ * longs, which are the offsets of the addresses or prefixes of a pool from
+ * the start of the pool.
  * 
  * @author A. Gregory Rabil
  */
 public class FreeList
 {	
-	protected BigInteger start;
-	protected BigInteger end;
+	/** The number of bits of the values of one BitSet. */
+	protected static final int CHUNK_BITS = 30;
+	
+	protected static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+	
+	protected long start;
+	protected long end;
 
 	/** 
-	 * The map of ranges, which are keyed by an index into a list of ranges, 
-	 * each offset by the maximum size of an integer. For example: 
-	 * index=0, for range of values from start to start+2147483647 
-	 * index=1, for range of values from start+2147483648 to 4294967295 
-	 * index=2, for range of values from start+4294967296 to 6442450943 
+	 * The map of ranges, which are keyed by an index of each range of
+	 * 2^30 values.  A range is only created when a value in it is used.
+	 * For example: 
+	 * index=0, for range of values from start to start+1073741823 
+	 * index=1, for range of values from start+1073741824 to start+2147483647 
 	 * ... 
 	 */
-	protected List<BitSet> bitsetRanges;
+	protected Map<Long, BitSet> bitsetRanges;
+	
+	protected long nextFreeIndex;
 	
-	protected int nextFreeIndex;
+	/** The number of values used, updated under the lock. */
+	protected volatile long usedCount;
 	
 	// the ReentrantLock class is better than synchronized
 	private final ReentrantLock lock = new ReentrantLock();
@@ -64,89 +73,95 @@ public class FreeList
 	 * @param start the range start
 	 * @param end the range end
 	 */
-	public FreeList(BigInteger start, BigInteger end) throws DhcpServerConfigException
+	public FreeList(long start, long end) throws DhcpServerConfigException
 	{
 		this.start = start;
 		this.end = end;
-		if (end.compareTo(start) >= 0) {
-			bitsetRanges = new ArrayList<BitSet>();
-			bitsetRanges.add(new BitSet());	// create one to start
+		if (start < 0) {
+			throw new DhcpServerConfigException("Failed to create FreeList: start < 0");
+		}
+		if (end >= start) {
+			bitsetRanges = new HashMap<Long, BitSet>();
+			bitsetRanges.put(Long.valueOf(0), new BitSet());	// create one to start
 		}
 		else {
 			throw new DhcpServerConfigException("Failed to create FreeList: end < start");
 		}
 	}
 	
-	public boolean isInList(BigInteger bi)
+	public boolean isInList(long value)
 	{
-		if ((bi.compareTo(start) >= 0) && (bi.compareTo(end) <= 0)) {
-			return true;
-		}
-		return false;
+		return (value >= start) && (value <= end);
 	}
 	
-	
 	/**
-	 * Gets the index into the list for the given BigInteger
+	 * Gets the index of the range for the given value
 	 * 
-	 * @param bi the bi
+	 * @param value the value
 	 * 
-	 * @return the index position in the list
+	 * @return the index of the range
 	 */
-	protected int getIndex(BigInteger bi)
+	protected long getIndex(long value)
 	{
-		return bi.subtract(start).divide(BigInteger.valueOf(Integer.MAX_VALUE)).intValue();
+		return (value - start) >>> CHUNK_BITS;
 	}
 	
 	/**
-	 * Gets the offset into the BitSet for the given BigInteger
+	 * Gets the offset into the BitSet for the given value
 	 * 
-	 * @param bi the bi
+	 * @param value the value
 	 * 
 	 * @return the offset
 	 */
-	protected int getOffset(BigInteger bi)
+	protected int getOffset(long value)
 	{
-		return bi.subtract(start).mod(BigInteger.valueOf(Integer.MAX_VALUE)).intValue();		
+		return (int)((value - start) & (CHUNK_SIZE - 1));
 	}
 	
 	/**
 	 * Sets the.
 	 * 
-	 * @param bi the bi
+	 * @param value the value
 	 * @param used the used
+	 * 
+	 * @return true, if the value was changed
 	 */
-	protected void set(BigInteger bi, boolean used)
+	protected boolean set(long value, boolean used)
 	{
 		lock.lock();
 		try {
-			if (isInList(bi)) {
-				int offset = getOffset(bi);
-				BitSet bitset = null;
-				int ndx = getIndex(bi);
-				if (ndx < bitsetRanges.size()) {
-					bitset = bitsetRanges.get(ndx);
-				}
-				else {
-					while (ndx >= bitsetRanges.size()) {
+			if (isInList(value)) {
+				int offset = getOffset(value);
+				long ndx = getIndex(value);
+				// the boxed index is cached for all but the largest pools
+				BitSet bitset = bitsetRanges.get(ndx);
+				if (used) {
+					if (bitset == null) {
 						bitset = new BitSet();
-						bitsetRanges.add(bitset);
+						bitsetRanges.put(ndx, bitset);
+					}
+					if (!bitset.get(offset)) {
+						bitset.set(offset);
+						usedCount++;
+						return true;
 					}
-				}
-				if (used) {
-					bitset.set(offset);
 				}
 				else {
-					bitset.clear(offset);
 					if (ndx < nextFreeIndex) {
 						nextFreeIndex = ndx;	// reset next free search index
 					}
+					if ((bitset != null) && bitset.get(offset)) {
+						bitset.clear(offset);
+						usedCount--;
+						return true;
+					}
 				}
 			}
 		}
 		finally {
 			lock.unlock();
 		}
+		return false;
 	}
 	
 	/**
@@ -154,17 +169,29 @@ public class FreeList
 	 * 
 	 * @param used the new used
 	 */
-	public void setUsed(BigInteger used)
+	public void setUsed(long used)
 	{
 		this.set(used, true);
 	}
 	
+	/**
+	 * Sets a value used, if it is free.
+	 * 
+	 * @param value the value
+	 * 
+	 * @return true, if the value was free
+	 */
+	public boolean setUsedIfFree(long value)
+	{
+		return this.set(value, true);
+	}
+	
 	/**
 	 * Sets the free.
 	 * 
 	 * @param free the new free
 	 */
-	public void setFree(BigInteger free)
+	public void setFree(long free)
 	{
 		this.set(free, false);
 	}
@@ -177,16 +204,19 @@ public class FreeList
 	 * 
 	 * @return true, if is used
 	 */
-	public boolean isUsed(BigInteger used)
+	public boolean isUsed(long used)
 	{
 		if (isInList(used)) {
-			int ndx = getIndex(used);
-			if (ndx < bitsetRanges.size()) {
-				BitSet bitset = bitsetRanges.get(ndx);
+			lock.lock();
+			try {
+				BitSet bitset = bitsetRanges.get(getIndex(used));
 				if (bitset != null) {
 					return bitset.get(getOffset(used));
 				}
 			}
+			finally {
+				lock.unlock();
+			}
 		}
 		return false;
 	}
@@ -198,48 +228,67 @@ public class FreeList
 	 * 
 	 * @return true, if is free
 	 */
-	public boolean isFree(BigInteger free)
+	public boolean isFree(long free)
 	{
 		return !this.isUsed(free);
 	}
 	
 	/**
-	 * Gets the next free.
+	 * Gets the next free value, and sets it used.
 	 * 
-	 * @return the next free
+	 * @return the next free value, or -1 if all values are used
 	 */
-	public BigInteger getNextFree()
+	public long getNextFree()
 	{
 		lock.lock();
 		try {
-			BigInteger next = start.add(BigInteger.valueOf(nextFreeIndex).
-											multiply(BigInteger.valueOf(Integer.MAX_VALUE)));
-			int clearBit = -1;
-			BitSet bitset = bitsetRanges.get(nextFreeIndex);
-			clearBit = bitset.nextClearBit(0);
-			if (clearBit >= 0) {
-				next = next.add(BigInteger.valueOf(clearBit));
-				if (isInList(next)) {
-					bitset.set(clearBit);
-					return next;
-				}
-			}
-			else {
-				// no more available in the last BitSet, so the next available
-				// would be the first in the next BitSet, so add max offset
-				next = next.add(BigInteger.valueOf(Integer.MAX_VALUE));
-				if (isInList(next)) {
-					nextFreeIndex++;
+			long lastIndex = getIndex(end);
+			while (nextFreeIndex <= lastIndex) {
+				BitSet bitset = bitsetRanges.get(nextFreeIndex);
+				if (bitset == null) {
 					bitset = new BitSet();
-					bitset.set(0);
-					bitsetRanges.add(nextFreeIndex, bitset);
+					bitsetRanges.put(nextFreeIndex, bitset);
+				}
+				int clearBit = bitset.nextClearBit(0);
+				if (clearBit < CHUNK_SIZE) {
+					long next = start + (nextFreeIndex << CHUNK_BITS) + clearBit;
+					if (next <= end) {
+						bitset.set(clearBit);
+						usedCount++;
+						return next;
+					}
+					break;
 				}
+				// no more available in this BitSet, so the next available
+				// would be in the next BitSet
+				nextFreeIndex++;
 			}
 		}
 		finally {
 			lock.unlock();
 		}
-		return null;
+		return -1;
+	}
+	
+	/**
+	 * Gets the number of values in the list.
+	 * 
+	 * @return the size, or Long.MAX_VALUE if larger
+	 */
+	public long getSize()
+	{
+		long size = end - start + 1;
+		return (size > 0) ? size : Long.MAX_VALUE;
+	}
+	
+	/**
+	 * Gets the number of values used, without taking the lock.
+	 * 
+	 * @return the used count
+	 */
+	public long getUsedCount()
+	{
+		return usedCount;
 	}
 	
 	public String toString() {
@@ -247,15 +296,20 @@ public class FreeList
 		sb.append("FreeList:");
 		sb.append(" start=" + start);
 		sb.append(" end=" + end);
-		if ((bitsetRanges != null) && !bitsetRanges.isEmpty()) {
-			sb.append(" ranges:\n");
-			int i = 0;
-			for (BitSet bs : bitsetRanges) {
-				sb.append(" bitset[" + i + "].cardinality=" + bs.cardinality());
-				sb.append('\n');
-				i++;
+		lock.lock();
+		try {
+			if ((bitsetRanges != null) && !bitsetRanges.isEmpty()) {
+				sb.append(" ranges:\n");
+				for (Map.Entry<Long, BitSet> entry : bitsetRanges.entrySet()) {
+					sb.append(" bitset[" + entry.getKey() + "].cardinality=" + 
+							entry.getValue().cardinality());
+					sb.append('\n');
+				}
 			}
 		}
+		finally {
+			lock.unlock();
+		}
 		return sb.toString();
 	}
 }
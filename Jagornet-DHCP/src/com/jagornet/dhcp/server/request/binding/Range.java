@@ -30,11 +30,12 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 
 import com.jagornet.dhcp.server.config.DhcpServerConfigException;
+import com.jagornet.dhcp.util.IpAddress;
 import com.jagornet.dhcp.util.Subnet;
-import com.jagornet.dhcp.util.Util;
 
 /**
- * The Class Range.
+ * The Class Range.  The start and end addresses are also kept as IpAddresses,
+ * for the containment and offsets of the addresses of the binding pools.
  * 
  * @author A. Gregory Rabil
  */
@@ -42,6 +43,8 @@ public class Range
 {
 	protected InetAddress startAddress;
 	protected InetAddress endAddress;
+	protected IpAddress start;
+	protected IpAddress end;
 
 	/**
 	 * Instantiates a new range.
@@ -73,6 +76,8 @@ public class Range
 				throw new DhcpServerConfigException("Failed to parse range: " + range);
 			}
 		}
+		start = IpAddress.valueOf(startAddress);
+		end = IpAddress.valueOf(endAddress);
 	}
 	
 	/**
@@ -85,6 +90,26 @@ public class Range
 	{
 		this.startAddress = startAddress;
 		this.endAddress = endAddress;
+		this.start = IpAddress.valueOf(startAddress);
+		this.end = IpAddress.valueOf(endAddress);
+	}
+
+	/**
+	 * Gets the start address.
+	 * 
+	 * @return the start address
+	 */
+	public IpAddress getStart() {
+		return start;
+	}
+
+	/**
+	 * Gets the end address.
+	 * 
+	 * @return the end address
+	 */
+	public IpAddress getEnd() {
+		return end;
 	}
 
 	/**
@@ -103,6 +128,7 @@ public class Range
 	 */
 	public void setStartAddress(InetAddress startAddress) {
 		this.startAddress = startAddress;
+		this.start = IpAddress.valueOf(startAddress);
 	}
 
 	/**
@@ -121,6 +147,7 @@ public class Range
 	 */
 	public void setEndAddress(InetAddress endAddress) {
 		this.endAddress = endAddress;
+		this.end = IpAddress.valueOf(endAddress);
 	}
 	
 	/**
@@ -132,16 +159,40 @@ public class Range
 	 */
 	public boolean contains(InetAddress inetAddr)
 	{
-		if ((Util.compareInetAddrs(startAddress, inetAddr) <= 0) &&
-				(Util.compareInetAddrs(endAddress, inetAddr) >= 0)) {
-			return true;
+		return contains(IpAddress.valueOf(inetAddr));
+	}
+	
+	/**
+	 * Contains.
+	 * 
+	 * @param ip the address
+	 * 
+	 * @return true, if successful
+	 */
+	public boolean contains(IpAddress ip)
+	{
+		return ip.inRange(start, end);
+	}
+	
+	/**
+	 * Gets the offset of the end address from the start address, which is
+	 * the last offset of the free list of a pool of the range.  The offset
+	 * of a range larger than a long is Long.MAX_VALUE.
+	 * 
+	 * @return the offset, or -1 if the range is invalid
+	 */
+	public long getEndOffset() {
+		if (start.isV4() != end.isV4()) {
+			return -1;
+		}
+		long offset = end.offsetFrom(start);
+		if ((offset < 0) && (end.compareTo(start) > 0)) {
+			offset = Long.MAX_VALUE;
 		}
-		return false;
+		return offset;
 	}
 	
 	public BigInteger size() {
-		return new BigInteger(endAddress.getAddress()).
-				subtract(new BigInteger(startAddress.getAddress())).
-				add(BigInteger.ONE);
+		return end.toBigInteger().subtract(start.toBigInteger()).add(BigInteger.ONE);
 	}
 }
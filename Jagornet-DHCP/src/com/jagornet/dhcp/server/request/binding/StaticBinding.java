@@ -38,6 +38,17 @@ public abstract class StaticBinding implements DhcpConfigObject
 			DhcpMessage requestMsg);
 	
 	public abstract String getIpAddress();
+	
+	/**
+	 * Gets the key of this binding in the StaticBindingIndex of the link.
+	 * A binding which matches by other than the client identifier must
+	 * return null, so that it is matched by scanning.
+	 * 
+	 * @return the index key, or null if the binding is not indexed
+	 */
+	public StaticBindingIndex.Key getIndexKey() {
+		return null;
+	}
 
 	public InetAddress getInetAddress() {
 		String ip = getIpAddress();
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file StaticBindingIndex.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jagornet.dhcp.message.DhcpMessage;
+
+/**
+ * The Class StaticBindingIndex.  The static bindings of a link, indexed
+ * by the client identifier of the binding: the chaddr for V4 bindings,
+ * and the DUID, with or without an IAID, for V6 bindings.  Bindings which
+ * do not provide an index key are matched by scanning, so that the result
+ * is the first matching binding in configuration order, the same as a
+ * scan of all the bindings.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class StaticBindingIndex
+{
+	/** The IAID of a key which matches any IAID. */
+	public static final long ANY_IAID = -1;
+	
+	/** The indexed bindings, the first configured binding for each key. */
+	private Map<Key, Entry> index = new HashMap<Key, Entry>();
+	
+	/** The bindings which are not indexed, in configuration order. */
+	private List<Entry> unindexed = new ArrayList<Entry>();
+	
+	private int size;
+	
+	/**
+	 * Instantiates a new static binding index.
+	 * 
+	 * @param staticBindings the static bindings, in configuration order
+	 */
+	public StaticBindingIndex(List<? extends StaticBinding> staticBindings)
+	{
+		for (StaticBinding staticBinding : staticBindings) {
+			Entry entry = new Entry(staticBinding, size++);
+			Key key = staticBinding.getIndexKey();
+			if (key == null) {
+				unindexed.add(entry);
+			}
+			else if (!index.containsKey(key)) {
+				index.put(key, entry);
+			}
+		}
+	}
+	
+	/**
+	 * Find the static binding for the client identity association.
+	 * 
+	 * @param duid the DUID, or chaddr, of the client
+	 * @param iatype the IA type of the client request
+	 * @param iaid the IAID of the client request
+	 * @param requestMsg the client request message
+	 * @return the first matching static binding, or null if none
+	 */
+	public StaticBinding find(byte[] duid, byte iatype, long iaid, DhcpMessage requestMsg)
+	{
+		Entry found = null;
+		if (duid != null) {
+			found = index.get(new Key(iatype, duid, iaid));
+			Entry anyIaid = index.get(new Key(iatype, duid, ANY_IAID));
+			if ((anyIaid != null) && 
+					((found == null) || (anyIaid.position < found.position))) {
+				found = anyIaid;
+			}
+		}
+		for (Entry entry : unindexed) {
+			if ((found != null) && (entry.position > found.position)) {
+				break;
+			}
+			if (entry.staticBinding.matches(duid, iatype, iaid, requestMsg)) {
+				return entry.staticBinding;
+			}
+		}
+		return (found != null) ? found.staticBinding : null;
+	}
+	
+	/**
+	 * Gets the number of static bindings.
+	 * 
+	 * @return the size
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * Gets the number of static bindings which are matched by scanning.
+	 * 
+	 * @return the number of unindexed bindings
+	 */
+	public int getUnindexedSize()
+	{
+		return unindexed.size();
+	}
+	
+	/**
+	 * A static binding and its position in the configuration.
+	 */
+	static class Entry
+	{
+		final StaticBinding staticBinding;
+		final int position;
+		
+		Entry(StaticBinding staticBinding, int position)
+		{
+			this.staticBinding = staticBinding;
+			this.position = position;
+		}
+	}
+	
+	/**
+	 * The index key of a static binding, or of the IA of a client.
+	 */
+	public static class Key
+	{
+		private final byte iatype;
+		private final byte[] id;
+		private final long iaid;
+		private final int hash;
+		
+		/**
+		 * Instantiates a new key.
+		 * 
+		 * @param iatype the IA type
+		 * @param id the client identifier, the chaddr or DUID
+		 * @param iaid the IAID, or ANY_IAID
+		 */
+		public Key(byte iatype, byte[] id, long iaid)
+		{
+			this.iatype = iatype;
+			this.id = id;
+			this.iaid = iaid;
+			hash = (31 * (31 * iatype + Arrays.hashCode(id))) + (int)(iaid ^ (iaid >>> 32));
+		}
+		
+		public byte getIatype()
+		{
+			return iatype;
+		}
+		
+		public byte[] getId()
+		{
+			return id;
+		}
+		
+		public long getIaid()
+		{
+			return iaid;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return (iatype == other.iatype) && (iaid == other.iaid) &&
+					Arrays.equals(id, other.id);
+		}
+	}
+}
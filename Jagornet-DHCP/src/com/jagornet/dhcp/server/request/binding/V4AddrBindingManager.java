@@ -46,6 +46,13 @@ public interface V4AddrBindingManager extends StaticBindingManager
 	 */
 	public void init() throws DhcpServerConfigException;
 	
+	/**
+	 * Reload the manager, after the server's configuration has been reloaded.
+	 * 
+	 * @throws DhcpServerConfigException
+	 */
+	public void reload() throws DhcpServerConfigException;
+	
 	/**
 	 * Find current binding.
 	 * 
@@ -85,6 +92,22 @@ public interface V4AddrBindingManager extends StaticBindingManager
 	public Binding updateBinding(Binding binding, DhcpLink clientLink, 
 			byte[] macAddr, DhcpMessage requestMsg, byte state);
 
+	/**
+	 * Renew the committed binding of a client from memory, without reading
+	 * the binding from the database.  The binding is renewed only if it was
+	 * last updated on the same link, by a request with the same options, and
+	 * the address is the ciaddr of the request.
+	 * 
+	 * @param clientLink the client link
+	 * @param macAddr the chaddr of the client
+	 * @param requestMsg the renewing or rebinding request msg
+	 * 
+	 * @return the renewed binding, or null if the request must be processed
+	 * 		by findCurrentBinding and updateBinding
+	 */
+	public Binding renewBinding(DhcpLink clientLink, byte[] macAddr, 
+			DhcpMessage requestMsg);
+
 	/**
 	 * Release ia address.
 	 * 
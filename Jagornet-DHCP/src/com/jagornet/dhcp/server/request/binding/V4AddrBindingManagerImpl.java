@@ -29,8 +29,14 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,13 +45,16 @@ import com.jagornet.dhcp.db.DhcpOption;
 import com.jagornet.dhcp.db.IaAddress;
 import com.jagornet.dhcp.db.IdentityAssoc;
 import com.jagornet.dhcp.message.DhcpMessage;
+import com.jagornet.dhcp.message.DhcpV4Message;
 import com.jagornet.dhcp.option.v4.DhcpV4ClientFqdnOption;
 import com.jagornet.dhcp.option.v4.DhcpV4RequestedIpAddressOption;
 import com.jagornet.dhcp.server.config.DhcpConfigObject;
 import com.jagornet.dhcp.server.config.DhcpLink;
 import com.jagornet.dhcp.server.config.DhcpServerConfigException;
+import com.jagornet.dhcp.server.config.DhcpServerConfiguration;
 import com.jagornet.dhcp.server.config.DhcpServerPolicies;
 import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.server.metrics.DhcpMetrics;
 import com.jagornet.dhcp.server.request.ddns.DdnsCallback;
 import com.jagornet.dhcp.server.request.ddns.DdnsUpdater;
 import com.jagornet.dhcp.server.request.ddns.DhcpV4DdnsComplete;
@@ -69,6 +78,19 @@ public class V4AddrBindingManagerImpl
 {
 	private static Logger log = LoggerFactory.getLogger(V4AddrBindingManagerImpl.class);
 	
+	/** The committed dynamic bindings by chaddr, for renewing without the database. */
+	private final ConcurrentMap<StaticBindingIndex.Key, RenewEntry> renewIndex =
+		new ConcurrentHashMap<StaticBindingIndex.Key, RenewEntry>();
+	
+	/** The offers of new dynamic bindings kept in memory, by chaddr and by address. */
+	private final ConcurrentMap<StaticBindingIndex.Key, OfferEntry> offerIndex =
+		new ConcurrentHashMap<StaticBindingIndex.Key, OfferEntry>();
+	private final ConcurrentMap<InetAddress, OfferEntry> offeredAddrs =
+		new ConcurrentHashMap<InetAddress, OfferEntry>();
+	
+	/** The timer which expires the offers, started by the first offer. */
+	private Timer offerTimer;	// guarded by offerIndex
+	
 	/**
 	 * Instantiates a new v4 addr binding manager impl.
 	 * 
@@ -78,6 +100,22 @@ public class V4AddrBindingManagerImpl
 	{
 		super();
 	}
+	
+	/**
+	 * Reload the manager, and drop the bindings of the renew index and the
+	 * offers, which refer to the links and pools of the replaced configuration.
+	 */
+	@Override
+	public synchronized void reload() throws DhcpServerConfigException
+	{
+		super.reload();
+		renewIndex.clear();
+		for (Map.Entry<StaticBindingIndex.Key, OfferEntry> offer : offerIndex.entrySet()) {
+			if (offerIndex.remove(offer.getKey(), offer.getValue())) {
+				releaseOffer(offer.getValue());
+			}
+		}
+	}
     
     /**
      * Build the list of V4AddressBindingPools from the list of configured V4AddressPools
@@ -138,7 +176,10 @@ public class V4AddrBindingManagerImpl
 			log.info("PoolsType is null for Link: " + link.getName());
 		}
 
-		reconcilePools(bindingPools);
+		// on a reload, the leases are in use by the running server
+		if (!isReloading()) {
+			reconcilePools(bindingPools);
+		}
 		
 		return bindingPools;
     }
@@ -197,13 +238,15 @@ public class V4AddrBindingManagerImpl
 		bp.setLeasetime(leasetime);
 		bp.setLinkFilter(linkFilter);
 		
-		List<InetAddress> usedIps = iaMgr.findExistingIPs(bp.getStartAddress(), bp.getEndAddress());
-		if ((usedIps != null) && !usedIps.isEmpty()) {
-			for (InetAddress ip : usedIps) {
-				//TODO: for the quickest startup?...
-				// set IP as used without checking if the binding has expired
-				// let the reaper thread deal with all binding cleanup activity
-				bp.setUsed(ip);
+		if (!carryOverFreeList(bp)) {
+			List<InetAddress> usedIps = iaMgr.findExistingIPs(bp.getStartAddress(), bp.getEndAddress());
+			if ((usedIps != null) && !usedIps.isEmpty()) {
+				for (InetAddress ip : usedIps) {
+					//TODO: for the quickest startup?...
+					// set IP as used without checking if the binding has expired
+					// let the reaper thread deal with all binding cleanup activity
+					bp.setUsed(ip);
+				}
 			}
 		}
 		log.info("Built v4 address binding pool: " + bp.getStartAddress().getHostAddress() + "-" + 
@@ -217,7 +260,8 @@ public class V4AddrBindingManagerImpl
 		List<V4StaticAddressBinding> staticBindings = new ArrayList<V4StaticAddressBinding>();
 		V4AddressBindingsType bindingsType = link.getV4AddrBindings();
 		if (bindingsType != null) {
-			List<V4AddressBinding> bindings = bindingsType.getBindingList();
+			List<V4AddressBinding> bindings = 
+				DhcpServerConfiguration.getChildList(bindingsType, V4AddressBinding.class);
 			if ((bindings != null) && !bindings.isEmpty()) {
 				for (V4AddressBinding binding : bindings) {
 					V4StaticAddressBinding sab = buildV4StaticBinding(binding, link);
@@ -244,10 +288,23 @@ public class V4AddrBindingManagerImpl
 		}
 	}
 
+	/**
+	 * Find the current binding of the client, which is the binding of an
+	 * unexpired offer kept in memory, or the binding in the database.
+	 */
 	@Override
 	public Binding findCurrentBinding(DhcpLink clientLink, byte[] macAddr, 
 			DhcpMessage requestMsg) {
 		
+		if (!offerIndex.isEmpty()) {
+			OfferEntry offer = offerIndex.get(renewKey(macAddr));
+			if ((offer != null) && (offer.binding.getDhcpLink() == clientLink) &&
+					(offer.expires > System.currentTimeMillis())) {
+				if (log.isDebugEnabled())
+					log.debug("Found offered binding: " + offer.binding);
+				return offer.binding;
+			}
+		}
 		return super.findCurrentBinding(clientLink, macAddr, IdentityAssoc.V4_TYPE, 
 				0, requestMsg);
 	}
@@ -263,11 +320,162 @@ public class V4AddrBindingManagerImpl
 			return super.createStaticBinding(clientLink, macAddr, IdentityAssoc.V4_TYPE, 
 					0, staticBinding, requestMsg);
 		}
+		else if ((state == IaAddress.ADVERTISED) &&
+				DhcpServerPolicies.globalPolicyAsBoolean(Property.V4_OFFER_IN_MEMORY)) {
+			return createOffer(clientLink, macAddr, requestMsg);
+		}
 		else {
 			return super.createBinding(clientLink, macAddr, IdentityAssoc.V4_TYPE, 
 					0, getInetAddrs(requestMsg), requestMsg, state);
 		}		
 	}
+	
+	/**
+	 * Create a binding for an offer kept in memory.  The offered address is
+	 * held in its pool, and the binding is written to the database only when
+	 * the client requests the address, before the offer expires.
+	 * 
+	 * @param clientLink the client link
+	 * @param macAddr the chaddr of the client
+	 * @param requestMsg the discover msg
+	 * 
+	 * @return the offered binding
+	 */
+	protected Binding createOffer(DhcpLink clientLink, byte[] macAddr, DhcpMessage requestMsg)
+	{
+		Binding binding = buildNewBinding(clientLink, macAddr, IdentityAssoc.V4_TYPE, 
+				0, getInetAddrs(requestMsg), requestMsg, IaAddress.ADVERTISED);
+		if (binding == null) {
+			log.warn("Failed to create discover binding");
+			return null;
+		}
+		binding.setOffered(true);
+		putOffer(binding, macAddr);
+		if (log.isDebugEnabled())
+			log.debug("Created offered binding: " + binding.toString());
+		return binding;
+	}
+	
+	/**
+	 * Put the binding of an offer in the offer index, to expire after the
+	 * binding.manager.offerExpiration policy.
+	 */
+	private void putOffer(Binding binding, byte[] macAddr)
+	{
+		InetAddress inetAddr = binding.getBindingObjects().iterator().next().getIpAddress();
+		long expiration = DhcpServerPolicies.globalPolicyAsLong(
+				Property.BINDING_MANAGER_OFFER_EXPIRATION);
+		final StaticBindingIndex.Key key = renewKey(macAddr);
+		final OfferEntry offer = new OfferEntry(binding, inetAddr, 
+				System.currentTimeMillis() + expiration);
+		offeredAddrs.put(inetAddr, offer);
+		OfferEntry oldOffer = offerIndex.put(key, offer);
+		if (oldOffer != null) {
+			// expired, or made on another link
+			releaseOffer(oldOffer);
+		}
+		offer.task = new TimerTask() {
+			@Override
+			public void run() {
+				if (offerIndex.remove(key, offer)) {
+					if (log.isDebugEnabled())
+						log.debug("Offer expired: " + offer.binding);
+					DhcpMetrics.OFFER_EXPIRED.increment();
+					releaseOffer(offer);
+				}
+			}
+		};
+		synchronized (offerIndex) {
+			if (offerTimer == null) {
+				offerTimer = new Timer("OfferReaper", true);
+			}
+			offerTimer.schedule(offer.task, expiration);
+		}
+	}
+	
+	/**
+	 * Free the address of an offer removed from the offer index, unless
+	 * the address is offered again.
+	 */
+	private void releaseOffer(OfferEntry offer)
+	{
+		TimerTask task = offer.task;
+		if (task != null) {
+			task.cancel();
+		}
+		if (offeredAddrs.remove(offer.inetAddr, offer)) {
+			freeAddress(offer.inetAddr);
+		}
+	}
+	
+	/**
+	 * Update the binding of an offer, which is offered again, or written to
+	 * the database when committed.  If the offer expired since the binding
+	 * was found, the address is held again if it is still free.
+	 * 
+	 * @param offer the offer
+	 * @param macAddr the chaddr of the client
+	 * @param requestMsg the request msg
+	 * @param state the new state of the binding
+	 * 
+	 * @return the updated binding, or null if the address is no longer available
+	 */
+	protected Binding updateOffer(OfferEntry offer, byte[] macAddr, DhcpMessage requestMsg,
+			byte state)
+	{
+		Binding binding = offer.binding;
+		if (offerIndex.remove(renewKey(macAddr), offer)) {
+			TimerTask task = offer.task;
+			if (task != null) {
+				task.cancel();
+			}
+		}
+		else {
+			BindingPool bp = findBindingPool(binding.getDhcpLink().getLink(), 
+					offer.inetAddr, requestMsg);
+			if ((bp == null) || !bp.setUsedIfFree(offer.inetAddr)) {
+				log.warn("Offered address is no longer available: " + 
+						offer.inetAddr.getHostAddress());
+				return null;
+			}
+			offeredAddrs.put(offer.inetAddr, offer);
+		}
+		Collection<BindingObject> bindingObjs = binding.getBindingObjects();
+		setBindingObjsTimes(bindingObjs);
+		if (state != IaAddress.COMMITTED) {
+			putOffer(binding, macAddr);
+			return binding;
+		}
+		for (BindingObject bindingObj : bindingObjs) {
+			bindingObj.setState(state);
+		}
+		binding.setState(state);
+		try {
+			iaMgr.createIA(binding);
+		}
+		catch (Exception ex) {
+			log.error("Failed to create persistent binding", ex);
+			releaseOffer(offer);
+			return null;
+		}
+		// the address is held by the binding in the database now
+		offeredAddrs.remove(offer.inetAddr, offer);
+		binding.setOffered(false);
+		binding.setTimesStored(true);
+		setAffinity(binding);
+		indexRenewal(binding, macAddr, requestMsg, -1);
+		if (log.isDebugEnabled())
+			log.debug("Offered binding committed: " + binding.toString());
+		return binding;
+	}
+	
+	@Override
+	protected boolean isOfferedToAnother(InetAddress inetAddr, byte[] duid, byte iatype, 
+			long iaid)
+	{
+		OfferEntry offer = offeredAddrs.get(inetAddr);
+		return (offer != null) && !Arrays.equals(offer.binding.getDuid(), duid);
+	}
 
 	@Override
 	public Binding updateBinding(Binding binding, DhcpLink clientLink, 
@@ -277,14 +485,160 @@ public class V4AddrBindingManagerImpl
 			findStaticBinding(clientLink.getLink(), macAddr, IdentityAssoc.V4_TYPE, 0, requestMsg);
 		
 		if (staticBinding != null) {
+			renewIndex.remove(renewKey(macAddr));
 			return super.updateStaticBinding(binding, clientLink, macAddr, IdentityAssoc.V4_TYPE, 
 					0, staticBinding, requestMsg);
 		}
 		else {
-			return super.updateBinding(binding, clientLink, macAddr, IdentityAssoc.V4_TYPE,
+			if (binding.isOffered()) {
+				OfferEntry offer = offerIndex.get(renewKey(macAddr));
+				if ((offer == null) || (offer.binding != binding)) {
+					// the offer expired since the binding was found
+					offer = new OfferEntry(binding, 
+							binding.getBindingObjects().iterator().next().getIpAddress(), 0);
+				}
+				return updateOffer(offer, macAddr, requestMsg, state);
+			}
+			// the stored lease, if the renewal is not written
+			long storedValidEnd = -1;
+			Collection<BindingObject> bindingObjs = binding.getBindingObjects();
+			if ((bindingObjs != null) && (bindingObjs.size() == 1)) {
+				storedValidEnd = getValidEndTimes(bindingObjs)[0];
+			}
+			binding = super.updateBinding(binding, clientLink, macAddr, IdentityAssoc.V4_TYPE,
 					0, getInetAddrs(requestMsg), requestMsg, state);
+			if ((binding != null) && (state == IdentityAssoc.COMMITTED)) {
+				indexRenewal(binding, macAddr, requestMsg, storedValidEnd);
+			}
+			return binding;
 		}		
 	}
+
+	@Override
+	public Binding renewBinding(DhcpLink clientLink, byte[] macAddr, 
+			DhcpMessage requestMsg)
+	{
+		if (!(requestMsg instanceof DhcpV4Message)) {
+			return null;
+		}
+		DhcpV4Message v4Msg = (DhcpV4Message) requestMsg;
+		StaticBindingIndex.Key key = renewKey(macAddr);
+		RenewEntry entry = renewIndex.get(key);
+		if ((entry == null) || (entry.binding.getDhcpLink() != clientLink) ||
+				!entry.bindingAddr.getIpAddress().equals(v4Msg.getCiAddr()) ||
+				!Arrays.equals(entry.requestOptions, v4Msg.getReceivedOptions())) {
+			return null;
+		}
+		synchronized (entry) {
+			long now = System.currentTimeMillis();
+			if ((renewIndex.get(key) != entry) || 
+					(entry.bindingAddr.getValidEndTime().getTime() <= now)) {
+				// released or expired
+				return null;
+			}
+			DhcpConfigObject configObj = entry.bindingAddr.getConfigObj();
+			setBindingObjectTimes(entry.bindingAddr, 
+					configObj.getPreferredLifetimeMs(), configObj.getValidLifetimeMs());
+			// write the times at once if the stored lease is about to expire
+			long margin = DhcpServerPolicies.globalPolicyAsLong(
+					Property.BINDING_MANAGER_RENEW_SAFETY_MARGIN);
+			boolean deferred = (entry.storedValidEnd - now) > margin;
+			try {
+				iaMgr.updateIaAddrTimes(entry.bindingAddr, deferred);
+			}
+			catch (Exception ex) {
+				log.error("Failed to renew binding", ex);
+				renewIndex.remove(key, entry);
+				return null;
+			}
+			entry.storedValidEnd = entry.bindingAddr.getValidEndTime().getTime();
+		}
+		if (log.isDebugEnabled())
+			log.debug("Binding renewed: " + entry.binding.toString());
+		return entry.binding;
+	}
+	
+	/**
+	 * Put a committed dynamic binding in the renew index, with the options of
+	 * the request which updated the binding.  A binding of a lease which does
+	 * not expire is not put in the index.
+	 * 
+	 * @param binding the updated binding
+	 * @param macAddr the chaddr of the client
+	 * @param requestMsg the request msg
+	 * @param storedValidEnd the valid end time before the update, which is 
+	 * 		still stored if the update was not written
+	 */
+	protected void indexRenewal(Binding binding, byte[] macAddr, DhcpMessage requestMsg,
+			long storedValidEnd)
+	{
+		StaticBindingIndex.Key key = renewKey(macAddr);
+		if (DhcpServerPolicies.globalPolicyAsBoolean(Property.V4_RENEW_FAST_PATH) &&
+				(requestMsg instanceof DhcpV4Message)) {
+			byte[] requestOptions = ((DhcpV4Message)requestMsg).getReceivedOptions();
+			Collection<BindingObject> bindingObjs = binding.getBindingObjects();
+			if ((requestOptions != null) && (bindingObjs != null) && (bindingObjs.size() == 1)) {
+				BindingObject bindingObj = bindingObjs.iterator().next();
+				if (bindingObj instanceof V4BindingAddress) {
+					V4BindingAddress bindingAddr = (V4BindingAddress) bindingObj;
+					if ((bindingAddr.getValidEndTime() != null) &&
+							(bindingAddr.getValidEndTime().getTime() >= 0)) {
+						RenewEntry entry = new RenewEntry(binding, bindingAddr, requestOptions);
+						if (!binding.isTimesStored()) {
+							entry.storedValidEnd = storedValidEnd;
+						}
+						renewIndex.put(key, entry);
+						return;
+					}
+				}
+			}
+		}
+		renewIndex.remove(key);
+	}
+	
+	private static StaticBindingIndex.Key renewKey(byte[] macAddr)
+	{
+		return new StaticBindingIndex.Key(IdentityAssoc.V4_TYPE, macAddr, 0);
+	}
+
+	@Override
+	public void releaseIaAddress(IdentityAssoc ia, IaAddress iaAddr)
+	{
+		renewIndex.remove(renewKey(ia.getDuid()));
+		super.releaseIaAddress(ia, iaAddr);
+	}
+
+	@Override
+	public void declineIaAddress(IdentityAssoc ia, IaAddress iaAddr)
+	{
+		renewIndex.remove(renewKey(ia.getDuid()));
+		super.declineIaAddress(ia, iaAddr);
+	}
+
+	/**
+	 * Expire an IaAddress, unless the stored lease times are of a binding
+	 * renewed from memory since, which are written instead.
+	 */
+	@Override
+	public void expireIaAddress(IdentityAssoc ia, IaAddress iaAddr)
+	{
+		StaticBindingIndex.Key key = renewKey(ia.getDuid());
+		RenewEntry entry = renewIndex.get(key);
+		if ((entry != null) && entry.bindingAddr.getIpAddress().equals(iaAddr.getIpAddress())) {
+			synchronized (entry) {
+				if ((renewIndex.get(key) == entry) &&
+						(entry.bindingAddr.getValidEndTime().getTime() > System.currentTimeMillis())) {
+					log.info("Not expiring renewed address: " + 
+							iaAddr.getIpAddress().getHostAddress());
+					iaMgr.updateIaAddrTimes(entry.bindingAddr, false);
+					entry.storedValidEnd = entry.bindingAddr.getValidEndTime().getTime();
+					return;
+				}
+				renewIndex.remove(key, entry);
+			}
+		}
+		super.expireIaAddress(ia, iaAddr);
+	}
 	
 	/**
 	 * Get the Requested IP addresses from the client message, if any was provided.
@@ -494,4 +848,44 @@ public class V4AddrBindingManagerImpl
 	protected byte getIaType() {
 		return IdentityAssoc.V4_TYPE;
 	}
+	
+	/**
+	 * A committed binding in the renew index, with the options of the request
+	 * which updated the binding from the database, and the valid end time of
+	 * the lease, as written to the database or to be written by the next flush.
+	 */
+	static class RenewEntry
+	{
+		final Binding binding;
+		final V4BindingAddress bindingAddr;
+		final byte[] requestOptions;
+		long storedValidEnd;	// guarded by this
+		
+		RenewEntry(Binding binding, V4BindingAddress bindingAddr, byte[] requestOptions)
+		{
+			this.binding = binding;
+			this.bindingAddr = bindingAddr;
+			this.requestOptions = requestOptions;
+			this.storedValidEnd = bindingAddr.getValidEndTime().getTime();
+		}
+	}
+	
+	/**
+	 * A new dynamic binding offered to a client, and kept in memory until the
+	 * client requests the offered address, or the offer expires.
+	 */
+	static class OfferEntry
+	{
+		final Binding binding;
+		final InetAddress inetAddr;
+		final long expires;
+		volatile TimerTask task;
+		
+		OfferEntry(Binding binding, InetAddress inetAddr, long expires)
+		{
+			this.binding = binding;
+			this.inetAddr = inetAddr;
+			this.expires = expires;
+		}
+	}
 }
@@ -40,7 +40,7 @@ import com.jagornet.dhcp.server.config.DhcpServerConfigException;
 import com.jagornet.dhcp.server.config.DhcpServerPolicies;
 import com.jagornet.dhcp.server.config.DhcpV4OptionConfigObject;
 import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
-import com.jagornet.dhcp.util.Util;
+import com.jagornet.dhcp.util.IpAddress;
 import com.jagornet.dhcp.xml.FiltersType;
 import com.jagornet.dhcp.xml.LinkFilter;
 import com.jagornet.dhcp.xml.PoliciesType;
@@ -85,9 +85,7 @@ public class V4AddressBindingPool implements BindingPool, DhcpV4OptionConfigObje
 			log.error("Invalid AddressPool definition", ex);
 			throw new DhcpServerConfigException("Invalid AddressPool definition", ex);
 		}
-		freeList = 
-			new FreeList(new BigInteger(range.getStartAddress().getAddress()),
-					new BigInteger(range.getEndAddress().getAddress()));
+		freeList = new FreeList(0, range.getEndOffset());
 		reaper = new Timer(pool.getRange()+"_Reaper");
 		v4ConfigOptions = new DhcpV4ConfigOptions(pool.getConfigOptions());
 	}
@@ -110,30 +108,25 @@ public class V4AddressBindingPool implements BindingPool, DhcpV4OptionConfigObje
 	public InetAddress getNextAvailableAddress()
 	{
 		if (freeList != null) {
-			BigInteger next = freeList.getNextFree();
-			if (next != null) {
-				try {
-					InetAddress ip = InetAddress.getByAddress(next.toByteArray());
-					int pingCheckTimeout = 
-						DhcpServerPolicies.globalPolicyAsInt(Property.V4_PINGCHECK_TIMEOUT);
-					if (pingCheckTimeout > 0) {
-						try {
-							if (ip.isReachable(pingCheckTimeout)) {
-								log.warn("Next free address answered ping check: " + 
-										ip.getHostAddress());
-								setUsed(ip);
-								return getNextAvailableAddress();	// try again
-							}
-						}
-						catch (IOException ex) {
-							log.error("Failed to perform v4 ping check: " + ex);
+			long next = freeList.getNextFree();
+			if (next >= 0) {
+				InetAddress ip = range.getStart().add(next).toInetAddress();
+				int pingCheckTimeout = 
+					DhcpServerPolicies.globalPolicyAsInt(Property.V4_PINGCHECK_TIMEOUT);
+				if (pingCheckTimeout > 0) {
+					try {
+						if (ip.isReachable(pingCheckTimeout)) {
+							log.warn("Next free address answered ping check: " + 
+									ip.getHostAddress());
+							setUsed(ip);
+							return getNextAvailableAddress();	// try again
 						}
 					}
-					return ip;
-				}
-				catch (UnknownHostException ex) {
-					log.error("Unable to build IPv4 address from next free: " + ex);
+					catch (IOException ex) {
+						log.error("Failed to perform v4 ping check: " + ex);
+					}
 				}
+				return ip;
 			}
 		}		
 		return null;
@@ -146,11 +139,27 @@ public class V4AddressBindingPool implements BindingPool, DhcpV4OptionConfigObje
 	 */
 	public void setUsed(InetAddress addr)
 	{
-		if (contains(addr)) {
-			freeList.setUsed(new BigInteger(addr.getAddress()));
+		IpAddress ip = IpAddress.valueOf(addr);
+		if (range.contains(ip)) {
+			freeList.setUsed(ip.offsetFrom(range.getStart()));
 		}
 	}
 	
+	/**
+	 * Sets an IP address in this address pool as used, if it is free.
+	 * 
+	 * @param addr the address
+	 * @return true, if the address was free
+	 */
+	public boolean setUsedIfFree(InetAddress addr)
+	{
+		IpAddress ip = IpAddress.valueOf(addr);
+		if (range.contains(ip)) {
+			return freeList.setUsedIfFree(ip.offsetFrom(range.getStart()));
+		}
+		return false;
+	}
+	
 	/**
 	 * Sets an IP address in this address pool as free.
 	 * 
@@ -158,8 +167,9 @@ public class V4AddressBindingPool implements BindingPool, DhcpV4OptionConfigObje
 	 */
 	public void setFree(InetAddress addr)
 	{
-		if (contains(addr)) {
-			freeList.setFree(new BigInteger(addr.getAddress()));
+		IpAddress ip = IpAddress.valueOf(addr);
+		if (range.contains(ip)) {
+			freeList.setFree(ip.offsetFrom(range.getStart()));
 		}
 	}
 	
@@ -184,11 +194,19 @@ public class V4AddressBindingPool implements BindingPool, DhcpV4OptionConfigObje
 	 */
 	public boolean contains(InetAddress addr)
 	{
-		if ((Util.compareInetAddrs(addr, range.getStartAddress()) >= 0) &&
-				(Util.compareInetAddrs(addr, range.getEndAddress()) <= 0)) {
-			return true;
-		}
-		return false;
+		return range.contains(addr);
+	}
+	
+	/**
+	 * Test if the given address is contained within this pool.
+	 * 
+	 * @param addr the address to test for containment in this pool
+	 * 
+	 * @return true, if successful
+	 */
+	public boolean contains(IpAddress addr)
+	{
+		return range.contains(addr);
 	}
 
 	/**
@@ -350,4 +368,26 @@ public class V4AddressBindingPool implements BindingPool, DhcpV4OptionConfigObje
 	public BigInteger getSize() {
 		return range.size();
 	}
+	
+	public boolean carryOver(BindingPool oldPool) {
+		if (oldPool instanceof V4AddressBindingPool) {
+			V4AddressBindingPool that = (V4AddressBindingPool) oldPool;
+			if (range.getStart().equals(that.range.getStart()) &&
+					range.getEnd().equals(that.range.getEnd())) {
+				freeList = that.freeList;
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	public void close() {
+		reaper.cancel();
+	}
+	
+	public long getUsedCount() {
+		if (freeList != null)
+			return freeList.getUsedCount();
+		return 0;
+	}
 }
@@ -65,6 +65,15 @@ public class V4StaticAddressBinding extends StaticBinding implements DhcpV4Optio
 		return rc;
 	}
 
+	@Override
+	public StaticBindingIndex.Key getIndexKey() {
+		if ((addressBinding == null) || (addressBinding.getChaddr() == null)) {
+			return null;
+		}
+		return new StaticBindingIndex.Key(IdentityAssoc.V4_TYPE, 
+				addressBinding.getChaddr(), StaticBindingIndex.ANY_IAID);
+	}
+
 	@Override
 	public String getIpAddress() {
 		return addressBinding.getIpAddress();
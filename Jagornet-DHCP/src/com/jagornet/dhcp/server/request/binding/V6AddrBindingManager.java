@@ -43,6 +43,7 @@ import com.jagornet.dhcp.option.v6.DhcpV6ClientFqdnOption;
 import com.jagornet.dhcp.server.config.DhcpConfigObject;
 import com.jagornet.dhcp.server.config.DhcpLink;
 import com.jagornet.dhcp.server.config.DhcpServerConfigException;
+import com.jagornet.dhcp.server.config.DhcpServerConfiguration;
 import com.jagornet.dhcp.server.config.DhcpServerPolicies;
 import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
 import com.jagornet.dhcp.server.request.ddns.DdnsCallback;
@@ -214,13 +215,15 @@ public abstract class V6AddrBindingManager extends BaseAddrBindingManager
 		bp.setValidLifetime(vLifetime);
 		bp.setLinkFilter(linkFilter);
 		
-		List<InetAddress> usedIps = iaMgr.findExistingIPs(bp.getStartAddress(), bp.getEndAddress());
-		if ((usedIps != null) && !usedIps.isEmpty()) {
-			for (InetAddress ip : usedIps) {
-				//TODO: for the quickest startup?...
-				// set IP as used without checking if the binding has expired
-				// let the reaper thread deal with all binding cleanup activity
-				bp.setUsed(ip);
+		if (!carryOverFreeList(bp)) {
+			List<InetAddress> usedIps = iaMgr.findExistingIPs(bp.getStartAddress(), bp.getEndAddress());
+			if ((usedIps != null) && !usedIps.isEmpty()) {
+				for (InetAddress ip : usedIps) {
+					//TODO: for the quickest startup?...
+					// set IP as used without checking if the binding has expired
+					// let the reaper thread deal with all binding cleanup activity
+					bp.setUsed(ip);
+				}
 			}
 		}
 		log.info("Built address binding pool: " + bp.getStartAddress().getHostAddress() + "-" + 
@@ -249,7 +252,8 @@ public abstract class V6AddrBindingManager extends BaseAddrBindingManager
 		List<V6StaticAddressBinding> staticBindings = new ArrayList<V6StaticAddressBinding>();
 		V6AddressBindingsType bindingsType = getV6AddressBindingsType(link);
 		if (bindingsType != null) {
-			List<V6AddressBinding> bindings = bindingsType.getBindingList();
+			List<V6AddressBinding> bindings = 
+				DhcpServerConfiguration.getChildList(bindingsType, V6AddressBinding.class);
 			if ((bindings != null) && !bindings.isEmpty()) {
 				for (V6AddressBinding binding : bindings) {
 					V6StaticAddressBinding sab = buildV6StaticBinding(binding, link);
@@ -37,7 +37,7 @@ import com.jagornet.dhcp.db.IaAddress;
 import com.jagornet.dhcp.option.v6.DhcpV6ConfigOptions;
 import com.jagornet.dhcp.server.config.DhcpServerConfigException;
 import com.jagornet.dhcp.server.config.DhcpV6OptionConfigObject;
-import com.jagornet.dhcp.util.Util;
+import com.jagornet.dhcp.util.IpAddress;
 import com.jagornet.dhcp.xml.V6AddressPool;
 import com.jagornet.dhcp.xml.FiltersType;
 import com.jagornet.dhcp.xml.LinkFilter;
@@ -83,9 +83,7 @@ public class V6AddressBindingPool implements BindingPool, DhcpV6OptionConfigObje
 			log.error("Invalid AddressPool definition", ex);
 			throw new DhcpServerConfigException("Invalid AddressPool definition", ex);
 		}
-		freeList = 
-			new FreeList(new BigInteger(range.getStartAddress().getAddress()),
-					new BigInteger(range.getEndAddress().getAddress()));
+		freeList = new FreeList(0, range.getEndOffset());
 		reaper = new Timer(pool.getRange()+"_Reaper");
 		dhcpConfigOptions = new DhcpV6ConfigOptions(pool.getAddrConfigOptions());
 	}
@@ -108,14 +106,9 @@ public class V6AddressBindingPool implements BindingPool, DhcpV6OptionConfigObje
 	public InetAddress getNextAvailableAddress()
 	{
 		if (freeList != null) {
-			BigInteger next = freeList.getNextFree();
-			if (next != null) {
-				try {
-					return InetAddress.getByAddress(next.toByteArray());
-				}
-				catch (UnknownHostException ex) {
-					log.error("Unable to build IPv6 address from next free: " + ex);
-				}
+			long next = freeList.getNextFree();
+			if (next >= 0) {
+				return range.getStart().add(next).toInetAddress();
 			}
 		}		
 		return null;
@@ -128,11 +121,27 @@ public class V6AddressBindingPool implements BindingPool, DhcpV6OptionConfigObje
 	 */
 	public void setUsed(InetAddress addr)
 	{
-		if (contains(addr)) {
-			freeList.setUsed(new BigInteger(addr.getAddress()));
+		IpAddress ip = IpAddress.valueOf(addr);
+		if (range.contains(ip)) {
+			freeList.setUsed(ip.offsetFrom(range.getStart()));
 		}
 	}
 	
+	/**
+	 * Sets an IP address in this address pool as used, if it is free.
+	 * 
+	 * @param addr the address
+	 * @return true, if the address was free
+	 */
+	public boolean setUsedIfFree(InetAddress addr)
+	{
+		IpAddress ip = IpAddress.valueOf(addr);
+		if (range.contains(ip)) {
+			return freeList.setUsedIfFree(ip.offsetFrom(range.getStart()));
+		}
+		return false;
+	}
+	
 	/**
 	 * Sets an IP address in this address pool as free.
 	 * 
@@ -140,8 +149,9 @@ public class V6AddressBindingPool implements BindingPool, DhcpV6OptionConfigObje
 	 */
 	public void setFree(InetAddress addr)
 	{
-		if (contains(addr)) {
-			freeList.setFree(new BigInteger(addr.getAddress()));
+		IpAddress ip = IpAddress.valueOf(addr);
+		if (range.contains(ip)) {
+			freeList.setFree(ip.offsetFrom(range.getStart()));
 		}
 	}
 	
@@ -166,11 +176,19 @@ public class V6AddressBindingPool implements BindingPool, DhcpV6OptionConfigObje
 	 */
 	public boolean contains(InetAddress addr)
 	{
-		if ((Util.compareInetAddrs(addr, range.getStartAddress()) >= 0) &&
-				(Util.compareInetAddrs(addr, range.getEndAddress()) <= 0)) {
-			return true;
-		}
-		return false;
+		return range.contains(addr);
+	}
+	
+	/**
+	 * Test if the given address is contained within this pool.
+	 * 
+	 * @param addr the address to test for containment in this pool
+	 * 
+	 * @return true, if successful
+	 */
+	public boolean contains(IpAddress addr)
+	{
+		return range.contains(addr);
 	}
 
 	/**
@@ -335,4 +353,26 @@ public class V6AddressBindingPool implements BindingPool, DhcpV6OptionConfigObje
 	public BigInteger getSize() {
 		return range.size();
 	}
+	
+	public boolean carryOver(BindingPool oldPool) {
+		if (oldPool instanceof V6AddressBindingPool) {
+			V6AddressBindingPool that = (V6AddressBindingPool) oldPool;
+			if (range.getStart().equals(that.range.getStart()) &&
+					range.getEnd().equals(that.range.getEnd())) {
+				freeList = that.freeList;
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	public void close() {
+		reaper.cancel();
+	}
+	
+	public long getUsedCount() {
+		if (freeList != null)
+			return freeList.getUsedCount();
+		return 0;
+	}
 }
@@ -29,7 +29,6 @@ import org.springframework.beans.BeanUtils;
 
 import com.jagornet.dhcp.db.IaAddress;
 import com.jagornet.dhcp.server.config.DhcpConfigObject;
-import com.jagornet.dhcp.server.config.DhcpV6OptionConfigObject;
 
 /**
  * The Class V6BindingAddress.  A wrapper for an IaAddress object with
@@ -58,7 +57,7 @@ public class V6BindingAddress extends IaAddress implements BindingObject
 		return configObj;
 	}
 
-	public void setConfigObj(DhcpV6OptionConfigObject configObj) {
+	public void setConfigObj(DhcpConfigObject configObj) {
 		this.configObj = configObj;
 	}
 }
@@ -29,7 +29,6 @@ import org.springframework.beans.BeanUtils;
 
 import com.jagornet.dhcp.db.IaPrefix;
 import com.jagornet.dhcp.server.config.DhcpConfigObject;
-import com.jagornet.dhcp.server.config.DhcpV6OptionConfigObject;
 
 /**
  * The Class V6BindingPrefix.  A wrapper for an IaPrefix object with
@@ -56,7 +55,7 @@ public class V6BindingPrefix extends IaPrefix implements BindingObject
 		return configObj;
 	}
 
-	public void setConfigObj(DhcpV6OptionConfigObject configObj) {
+	public void setConfigObj(DhcpConfigObject configObj) {
 		this.configObj = configObj;
 	}
 }
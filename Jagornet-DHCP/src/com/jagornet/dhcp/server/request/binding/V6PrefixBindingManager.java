@@ -47,6 +47,13 @@ public interface V6PrefixBindingManager extends StaticBindingManager
 	 */
 	public void init() throws DhcpServerConfigException;
 	
+	/**
+	 * Reload the manager, after the server's configuration has been reloaded.
+	 * 
+	 * @throws DhcpServerConfigException
+	 */
+	public void reload() throws DhcpServerConfigException;
+	
 	/**
 	 * Find current binding.
 	 * 
@@ -45,8 +45,10 @@ import com.jagornet.dhcp.option.v6.DhcpV6IaPdOption;
 import com.jagornet.dhcp.option.v6.DhcpV6IaPrefixOption;
 import com.jagornet.dhcp.server.config.DhcpLink;
 import com.jagornet.dhcp.server.config.DhcpServerConfigException;
+import com.jagornet.dhcp.server.config.DhcpServerConfiguration;
 import com.jagornet.dhcp.server.config.DhcpServerPolicies;
 import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.util.DhcpConstants;
 import com.jagornet.dhcp.xml.Link;
 import com.jagornet.dhcp.xml.LinkFilter;
 import com.jagornet.dhcp.xml.LinkFiltersType;
@@ -146,7 +148,10 @@ public class V6PrefixBindingManagerImpl
 			log.info("PoolsType is null for Link: " + link.getName());
 		}
 		
-		reconcilePools(bindingPools);
+		// on a reload, the leases are in use by the running server
+		if (!isReloading()) {
+			reconcilePools(bindingPools);
+		}
 		
 		return bindingPools;
     }
@@ -207,14 +212,23 @@ public class V6PrefixBindingManagerImpl
 			DhcpServerPolicies.effectivePolicyAsLong(bp, link, Property.VALID_LIFETIME);
 		bp.setValidLifetime(vLifetime);
 		bp.setLinkFilter(linkFilter);
+		bp.setPrefixLengthRange(
+			DhcpServerPolicies.effectivePolicyAsInt(bp, link, Property.IA_PD_MIN_PREFIX_LENGTH),
+			DhcpServerPolicies.effectivePolicyAsInt(bp, link, Property.IA_PD_MAX_PREFIX_LENGTH));
 		
-		List<InetAddress> usedIps = iaMgr.findExistingIPs(bp.getStartAddress(), bp.getEndAddress());
-		if ((usedIps != null) && !usedIps.isEmpty()) {
-			for (InetAddress ip : usedIps) {
-				//TODO: for the quickest startup?...
-				// set IP as used without checking if the binding has expired
-				// let the reaper thread deal with all binding cleanup activity
-				bp.setUsed(ip);
+		if (!carryOverFreeList(bp)) {
+			List<IaPrefix> usedPrefixes = 
+				iaMgr.findIaPrefixes(bp.getStartAddress(), bp.getEndAddress());
+			if ((usedPrefixes != null) && !usedPrefixes.isEmpty()) {
+				for (IaPrefix iaPrefix : usedPrefixes) {
+					//TODO: for the quickest startup?...
+					// set IP as used without checking if the binding has expired
+					// let the reaper thread deal with all binding cleanup activity
+					// prefixes stored without a length have the allocation length
+					int prefixLen = iaPrefix.getPrefixLength();
+					bp.setUsed(iaPrefix.getIpAddress(), 
+							(prefixLen > 0) ? prefixLen : bp.getAllocPrefixLen());
+				}
 			}
 		}
 		log.info("Built prefix binding pool: " + bp.getStartAddress().getHostAddress() + "-" + 
@@ -228,7 +242,8 @@ public class V6PrefixBindingManagerImpl
 		List<V6StaticPrefixBinding> staticBindings = new ArrayList<V6StaticPrefixBinding>();
 		V6PrefixBindingsType bindingsType = link.getV6PrefixBindings();
 		if (bindingsType != null) {
-			List<V6PrefixBinding> bindings = bindingsType.getBindingList();
+			List<V6PrefixBinding> bindings = 
+				DhcpServerConfiguration.getChildList(bindingsType, V6PrefixBinding.class);
 			if ((bindings != null) && !bindings.isEmpty()) {
 				for (V6PrefixBinding binding : bindings) {
 					V6StaticPrefixBinding spb = buildStaticBinding(binding, link);
@@ -281,7 +296,7 @@ public class V6PrefixBindingManagerImpl
 		}
 		else {
 			return super.createBinding(clientLink, duid, IdentityAssoc.PD_TYPE, 
-					iaid, getInetAddrs(iaPdOption), requestMsg, state);
+					iaid, getInetAddrs(clientLink, iaPdOption, requestMsg), requestMsg, state);
 		}
 	}
 	
@@ -300,8 +315,12 @@ public class V6PrefixBindingManagerImpl
 					iaid, staticBinding, requestMsg);
 		}
 		else {
+			// the requested prefixes are only allocated for a binding without any
+			Collection<BindingObject> bindingObjs = binding.getBindingObjects();
+			List<InetAddress> requestAddrs = ((bindingObjs != null) && !bindingObjs.isEmpty()) ?
+					getInetAddrs(iaPdOption) : getInetAddrs(clientLink, iaPdOption, requestMsg);
 			return super.updateBinding(binding, clientLink, duid, IdentityAssoc.PD_TYPE,
-					iaid, getInetAddrs(iaPdOption), requestMsg, state);
+					iaid, requestAddrs, requestMsg, state);
 		}
 	}
 	
@@ -383,7 +402,12 @@ public class V6PrefixBindingManagerImpl
 	{
 		List<IaPrefix> expiredPrefs = iaMgr.findExpiredIaPrefixes();
 		if ((expiredPrefs != null) && !expiredPrefs.isEmpty()) {
+			long now = System.currentTimeMillis();
 			for (IaPrefix iaPrefix : expiredPrefs) {
+				if (!isLeaseExpired(iaPrefix, now)) {
+					// in the grace period of a lazy renewal
+					continue;
+				}
 				expireIaPrefix(iaPrefix);
 			}
 		}
@@ -410,6 +434,78 @@ public class V6PrefixBindingManagerImpl
 		return inetAddrs;
 	}
 	
+	/**
+	 * Gets the prefixes of the IA_PD option, where an IA_PREFIX option with
+	 * the unspecified address and a prefix length is the client's hint of
+	 * the length it wants, so a free prefix of that length is allocated.
+	 * 
+	 * @param clientLink the client link
+	 * @param iaPdOption the IA_PD option
+	 * @param requestMsg the request message
+	 * 
+	 * @return the list of prefixes
+	 */
+	private List<InetAddress> getInetAddrs(DhcpLink clientLink, DhcpV6IaPdOption iaPdOption,
+			DhcpMessage requestMsg)
+	{
+		List<InetAddress> inetAddrs = null;
+		List<DhcpV6IaPrefixOption> iaPrefs = iaPdOption.getIaPrefixOptions();
+		if ((iaPrefs != null) && !iaPrefs.isEmpty()) {
+			inetAddrs = new ArrayList<InetAddress>();
+			for (DhcpV6IaPrefixOption iaPrefix : iaPrefs) {
+				InetAddress inetAddr = iaPrefix.getInetAddress();
+				if (DhcpConstants.ZEROADDR_V6.equals(inetAddr) && 
+						(iaPrefix.getPrefixLength() > 0)) {
+					InetAddress hinted = 
+						getNextFreePrefix(clientLink, requestMsg, iaPrefix.getPrefixLength());
+					if (hinted != null) {
+						inetAddr = hinted;
+					}
+				}
+				inetAddrs.add(inetAddr);
+			}
+		}
+		return inetAddrs;
+	}
+	
+	/**
+	 * Gets the next free prefix of a hinted length from the pools of the
+	 * client link which allow that length.
+	 * 
+	 * @param clientLink the client link
+	 * @param requestMsg the request message
+	 * @param prefixLen the hinted prefix length
+	 * 
+	 * @return the next free prefix, or null if no pool allows the length,
+	 * so the next free prefix of the allocation length is used
+	 */
+	protected InetAddress getNextFreePrefix(DhcpLink clientLink, DhcpMessage requestMsg,
+			int prefixLen)
+	{
+		List<? extends BindingPool> pools = bindingPoolMap.get(clientLink.getLinkAddress());
+		if (pools != null) {
+			for (BindingPool bindingPool : pools) {
+				V6PrefixBindingPool bp = (V6PrefixBindingPool) bindingPool;
+				if ((prefixLen < bp.getMinPrefixLen()) || (prefixLen > bp.getMaxPrefixLen())) {
+					continue;
+				}
+				LinkFilter filter = bp.getLinkFilter();
+				if ((requestMsg != null) && (filter != null) &&
+						!DhcpServerConfiguration.msgMatchesFilter(requestMsg, filter)) {
+					continue;
+				}
+				InetAddress free = bp.getNextAvailablePrefix(prefixLen);
+				if (free != null) {
+					if (log.isDebugEnabled())
+						log.debug("Found next available prefix for length hint " + 
+								prefixLen + ": " + free.getHostAddress());
+					return free;
+				}
+			}
+		}
+		return null;
+	}
+	
 	/**
 	 * Create a Binding given an IdentityAssoc loaded from the database.
 	 * 
@@ -514,10 +610,12 @@ public class V6PrefixBindingManagerImpl
 		V6PrefixBindingPool bp = 
 			(V6PrefixBindingPool) findBindingPool(clientLink.getLink(), inetAddr, requestMsg);
 		if (bp != null) {
-			bp.setUsed(inetAddr);	// TODO check if this is necessary
+			// the length of the prefix allocated for a hint, or of the pool
+			int prefixLen = bp.getPrefixLength(inetAddr);
+			bp.setUsed(inetAddr, prefixLen);	// TODO check if this is necessary
 			IaPrefix iaPrefix = new IaPrefix();
 			iaPrefix.setIpAddress(inetAddr);
-			iaPrefix.setPrefixLength((short)bp.getAllocPrefixLen());
+			iaPrefix.setPrefixLength((short)prefixLen);
 			V6BindingPrefix bindingPrefix = new V6BindingPrefix(iaPrefix, bp);
 			setBindingObjectTimes(bindingPrefix, 
 					bp.getPreferredLifetimeMs(), bp.getPreferredLifetimeMs());
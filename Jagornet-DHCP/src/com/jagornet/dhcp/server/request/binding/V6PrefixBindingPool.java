@@ -37,15 +37,18 @@ import com.jagornet.dhcp.db.IaAddress;
 import com.jagornet.dhcp.option.v6.DhcpV6ConfigOptions;
 import com.jagornet.dhcp.server.config.DhcpServerConfigException;
 import com.jagornet.dhcp.server.config.DhcpV6OptionConfigObject;
+import com.jagornet.dhcp.util.IpAddress;
 import com.jagornet.dhcp.util.Subnet;
-import com.jagornet.dhcp.util.Util;
 import com.jagornet.dhcp.xml.FiltersType;
 import com.jagornet.dhcp.xml.LinkFilter;
 import com.jagornet.dhcp.xml.PoliciesType;
 import com.jagornet.dhcp.xml.V6PrefixPool;
 
 /**
- * The Class V6PrefixBindingPool.
+ * The Class V6PrefixBindingPool.  The prefixes of a pool are allocated from
+ * a BuddyFreeList, so a prefix of the allocation length, or of a length in
+ * the range of hinted lengths, is split from a larger free prefix, and is
+ * merged with its free buddy when it is freed.
  */
 public class V6PrefixBindingPool implements BindingPool, DhcpV6OptionConfigObject
 {
@@ -53,7 +56,9 @@ public class V6PrefixBindingPool implements BindingPool, DhcpV6OptionConfigObjec
 	
 	protected Subnet subnet;
 	protected int allocPrefixLen;
-	protected FreeList freeList;
+	protected int minPrefixLen;
+	protected int maxPrefixLen;
+	protected BuddyFreeList freeList;
 	protected long preferredLifetime;
 	protected long validLifetime;
 	protected V6PrefixPool pool;
@@ -83,9 +88,9 @@ public class V6PrefixBindingPool implements BindingPool, DhcpV6OptionConfigObjec
 				throw new DhcpServerConfigException(
 						"Allocation prefix length must be greater or equal to pool prefix length");			
 			}
-			int numPrefixes = (int) Math.pow(2,(allocPrefixLen - subnet.getPrefixLength()));
-			freeList = new FreeList(BigInteger.ZERO, 
-					BigInteger.valueOf(numPrefixes).subtract(BigInteger.ONE));
+			minPrefixLen = allocPrefixLen;
+			maxPrefixLen = allocPrefixLen;
+			freeList = buildFreeList();
 			reaper = new Timer(pool.getRange()+"_Reaper");
 			dhcpConfigOptions = new DhcpV6ConfigOptions(pool.getPrefixConfigOptions());
 		} 
@@ -99,32 +104,124 @@ public class V6PrefixBindingPool implements BindingPool, DhcpV6OptionConfigObjec
 		}		
 	}
 	
+	/**
+	 * Builds the free list of the prefixes of the longest length, only the
+	 * first 2^62 of a larger pool.
+	 */
+	private BuddyFreeList buildFreeList() throws DhcpServerConfigException
+	{
+		int prefixBits = maxPrefixLen - subnet.getPrefixLength();
+		return new BuddyFreeList(Math.min(prefixBits, BuddyFreeList.MAX_ORDER));
+	}
+	
 	public int getAllocPrefixLen()
 	{
 		return allocPrefixLen;
 	}
 	
-	private BigInteger calculatePrefix()
+	public int getMinPrefixLen()
+	{
+		return minPrefixLen;
+	}
+	
+	public int getMaxPrefixLen()
+	{
+		return maxPrefixLen;
+	}
+	
+	/**
+	 * Sets the range of the prefix lengths which may be allocated for the
+	 * prefix length hinted by a client.  The prefixes in use must be set
+	 * after the range, which starts a new free list.
+	 * 
+	 * @param minPrefixLen the shortest prefix length, or zero for the
+	 * allocation prefix length
+	 * @param maxPrefixLen the longest prefix length, or zero for the
+	 * allocation prefix length
+	 * 
+	 * @throws DhcpServerConfigException if the range is invalid for the pool
+	 */
+	public void setPrefixLengthRange(int minPrefixLen, int maxPrefixLen) 
+			throws DhcpServerConfigException
+	{
+		if (minPrefixLen <= 0) {
+			minPrefixLen = allocPrefixLen;
+		}
+		if (maxPrefixLen <= 0) {
+			maxPrefixLen = allocPrefixLen;
+		}
+		if ((minPrefixLen < subnet.getPrefixLength()) || (minPrefixLen > allocPrefixLen) ||
+				(maxPrefixLen < allocPrefixLen) || (maxPrefixLen > 128)) {
+			throw new DhcpServerConfigException(
+					"Prefix length range must be within the pool prefix length and 128," +
+					" and include the allocation prefix length");
+		}
+		if (maxPrefixLen - minPrefixLen > BuddyFreeList.MAX_ORDER) {
+			throw new DhcpServerConfigException(
+					"Prefix length range must be at most " + BuddyFreeList.MAX_ORDER + " bits");
+		}
+		if ((minPrefixLen != this.minPrefixLen) || (maxPrefixLen != this.maxPrefixLen)) {
+			this.minPrefixLen = minPrefixLen;
+			this.maxPrefixLen = maxPrefixLen;
+			freeList = buildFreeList();
+		}
+	}
+	
+	/**
+	 * Gets the order of the blocks of the free list for a prefix length.
+	 */
+	private int getOrder(int prefixLen)
 	{
-		return BigInteger.valueOf(2).pow(128-allocPrefixLen);
+		return maxPrefixLen - prefixLen;
+	}
+	
+	/**
+	 * Gets the offset of the unit of the free list of an address.
+	 * 
+	 * @return the offset, or -1 if the address is not in the free list
+	 */
+	private long getOffset(IpAddress ip)
+	{
+		if (subnet.contains(ip)) {
+			long offset = ip.offsetFrom(subnet.getSubnetIpAddress(), 128 - maxPrefixLen);
+			if (freeList.isInList(offset)) {
+				return offset;
+			}
+		}
+		return -1;
 	}
 	
 	/**
-	 * Gets the next available prefix.
+	 * Gets the next available prefix of the allocation prefix length.
 	 * 
 	 * @return the next available prefix
 	 */
 	public InetAddress getNextAvailableAddress()
+	{
+		return getNextAvailablePrefix(allocPrefixLen);
+	}
+	
+	/**
+	 * Gets the next available prefix for a prefix length hinted by a client.
+	 * The length is limited to the range of the pool, and if no prefix of
+	 * that length is free, then a prefix of the allocation length is used.
+	 * 
+	 * @param prefixLen the hinted prefix length
+	 * 
+	 * @return the next available prefix
+	 */
+	public InetAddress getNextAvailablePrefix(int prefixLen)
 	{
 		if (freeList != null) {
-			BigInteger start = new BigInteger(subnet.getSubnetAddress().getAddress());
-			BigInteger next = freeList.getNextFree();
-			if (next != null) {
-				//TODO: if there are no more free addresses, then find one
-				//		that has been released or has been expired
+			prefixLen = Math.max(minPrefixLen, Math.min(prefixLen, maxPrefixLen));
+			long next = freeList.getNextFree(getOrder(prefixLen));
+			if ((next < 0) && (prefixLen != allocPrefixLen)) {
+				next = freeList.getNextFree(getOrder(allocPrefixLen));
+			}
+			if (next >= 0) {
 				try {
-					BigInteger prefix = next.multiply(calculatePrefix());
-					return InetAddress.getByAddress(start.add(prefix).toByteArray());
+					return subnet.getSubnetIpAddress().add(next, 128 - maxPrefixLen).
+							toInetAddress();
 				}
 				catch (Exception ex) {
 					log.error("Unable to build IPv6 prefix from next free: " + ex);
@@ -135,30 +232,80 @@ public class V6PrefixBindingPool implements BindingPool, DhcpV6OptionConfigObjec
 	}
 	
 	/**
-	 * Sets the used.
+	 * Gets the prefix length of a used prefix.
+	 * 
+	 * @param addr the prefix address
+	 * 
+	 * @return the prefix length, or the allocation prefix length if the
+	 * prefix is not used
+	 */
+	public int getPrefixLength(InetAddress addr)
+	{
+		long offset = getOffset(IpAddress.valueOf(addr));
+		if (offset >= 0) {
+			int order = freeList.getOrder(offset);
+			if (order >= 0) {
+				return maxPrefixLen - order;
+			}
+		}
+		return allocPrefixLen;
+	}
+	
+	/**
+	 * Sets a prefix of the allocation prefix length used.
 	 * 
-	 * @param addr the new used
+	 * @param addr the prefix address
 	 */
 	public void setUsed(InetAddress addr)
 	{
-		if (contains(addr)) {
-			BigInteger prefix = new BigInteger(addr.getAddress());
-			BigInteger start = new BigInteger(subnet.getSubnetAddress().getAddress());
-			freeList.setUsed(prefix.subtract(start).divide(calculatePrefix()));
+		setUsed(addr, allocPrefixLen);
+	}
+	
+	/**
+	 * Sets a prefix used.  A prefix longer than the longest length of the
+	 * pool uses the unit which contains it.
+	 * 
+	 * @param addr the prefix address
+	 * @param prefixLen the prefix length
+	 */
+	public void setUsed(InetAddress addr, int prefixLen)
+	{
+		long offset = getOffset(IpAddress.valueOf(addr));
+		if (offset >= 0) {
+			int order = Math.max(0, Math.min(getOrder(prefixLen), freeList.getMaxOrder()));
+			offset &= ~((1L << order) - 1);
+			if (!freeList.setUsed(offset, order)) {
+				log.warn("Prefix " + addr.getHostAddress() + "/" + prefixLen + 
+						" overlaps a used prefix of pool " + this);
+			}
+		}
+	}
+	
+	/**
+	 * Sets a prefix of the allocation prefix length used, if it is free.
+	 * 
+	 * @param addr the prefix address
+	 * @return true, if the prefix was free
+	 */
+	public boolean setUsedIfFree(InetAddress addr)
+	{
+		long offset = getOffset(IpAddress.valueOf(addr));
+		if (offset >= 0) {
+			return freeList.setUsedIfFree(offset, getOrder(allocPrefixLen));
 		}
+		return false;
 	}
 	
 	/**
-	 * Sets the free.
+	 * Sets a used prefix free.
 	 * 
-	 * @param addr the new free
+	 * @param addr the prefix address
 	 */
 	public void setFree(InetAddress addr)
 	{
-		if (contains(addr)) {
-			BigInteger prefix = new BigInteger(addr.getAddress());
-			BigInteger start = new BigInteger(subnet.getSubnetAddress().getAddress());
-			freeList.setFree(prefix.subtract(start).divide(calculatePrefix()));
+		long offset = getOffset(IpAddress.valueOf(addr));
+		if (offset >= 0) {
+			freeList.setFree(offset);
 		}
 	}
 	
@@ -183,11 +330,19 @@ public class V6PrefixBindingPool implements BindingPool, DhcpV6OptionConfigObjec
 	 */
 	public boolean contains(InetAddress addr)
 	{
-		if ((Util.compareInetAddrs(addr, subnet.getSubnetAddress()) >= 0) &&
-				(Util.compareInetAddrs(addr, subnet.getEndAddress()) <= 0)) {
-			return true;
-		}
-		return false;
+		return subnet.contains(addr);
+	}
+	
+	/**
+	 * Test if the given address is contained within this pool.
+	 * 
+	 * @param addr the address to test for containment in this pool
+	 * 
+	 * @return true, if successful
+	 */
+	public boolean contains(IpAddress addr)
+	{
+		return subnet.contains(addr);
 	}
 	
 	public InetAddress getStartAddress() {
@@ -315,9 +470,34 @@ public class V6PrefixBindingPool implements BindingPool, DhcpV6OptionConfigObjec
 		return null;
 	}
 	
+	/**
+	 * Gets the number of prefixes of the allocation prefix length in the pool.
+	 */
 	public BigInteger getSize() {
-		// TODO: account for delegated prefix size
-		return new BigInteger(subnet.getEndAddress().getAddress()).
-				subtract(new BigInteger(subnet.getSubnetAddress().getAddress()));
+		return BigInteger.ONE.shiftLeft(allocPrefixLen - subnet.getPrefixLength());
+	}
+	
+	public boolean carryOver(BindingPool oldPool) {
+		if (oldPool instanceof V6PrefixBindingPool) {
+			V6PrefixBindingPool that = (V6PrefixBindingPool) oldPool;
+			// the free list is of the prefixes of the allocation length and range
+			if (subnet.getSubnetAddress().equals(that.subnet.getSubnetAddress()) &&
+					(subnet.getPrefixLength() == that.subnet.getPrefixLength()) &&
+					(allocPrefixLen == that.allocPrefixLen) &&
+					(minPrefixLen == that.minPrefixLen) &&
+					(maxPrefixLen == that.maxPrefixLen)) {
+				freeList = that.freeList;
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	public void close() {
+		reaper.cancel();
+	}
+	
+	public long getUsedCount() {
+		return freeList.getUsedCount();
 	}
 }
@@ -73,6 +73,16 @@ public class V6StaticAddressBinding extends StaticBinding implements DhcpV6Optio
 		return rc;
 	}
 	
+	@Override
+	public StaticBindingIndex.Key getIndexKey() {
+		if ((addressBinding == null) || (addressBinding.getDuid() == null) ||
+				(addressBinding.getDuid().getHexValue() == null)) {
+			return null;
+		}
+		return new StaticBindingIndex.Key(iaType, addressBinding.getDuid().getHexValue(),
+				addressBinding.isSetIaid() ? addressBinding.getIaid() : StaticBindingIndex.ANY_IAID);
+	}
+	
 	@Override
 	public String getIpAddress() {
 		return addressBinding.getIpAddress();
@@ -72,6 +72,16 @@ public class V6StaticPrefixBinding extends StaticBinding implements DhcpV6Option
 		return rc;
 	}
 
+	@Override
+	public StaticBindingIndex.Key getIndexKey() {
+		if ((prefixBinding == null) || (prefixBinding.getDuid() == null) ||
+				(prefixBinding.getDuid().getHexValue() == null)) {
+			return null;
+		}
+		return new StaticBindingIndex.Key(IdentityAssoc.PD_TYPE, prefixBinding.getDuid().getHexValue(),
+				prefixBinding.isSetIaid() ? prefixBinding.getIaid() : StaticBindingIndex.ANY_IAID);
+	}
+
 	@Override
 	public String getIpAddress() {
 		return prefixBinding.getPrefix();
@@ -48,6 +48,13 @@ public interface V6TaAddrBindingManager extends StaticBindingManager
 	 */
 	public void init() throws DhcpServerConfigException;
 	
+	/**
+	 * Reload the manager, after the server's configuration has been reloaded.
+	 * 
+	 * @throws DhcpServerConfigException
+	 */
+	public void reload() throws DhcpServerConfigException;
+	
 	/**
 	 * Find current binding.
 	 * 
@@ -30,6 +30,8 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +40,7 @@ import org.xbill.DNS.Resolver;
 import org.xbill.DNS.SimpleResolver;
 import org.xbill.DNS.TSIG;
 import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Update;
 
 /**
  * The Class DdnsUpdate.  The abstract base class for handling DDNS updates
@@ -54,6 +57,10 @@ public abstract class DdnsUpdate
 	/** The sha256 msg digest. */
 	protected static MessageDigest sha256MsgDigest;
 	
+	/** The resolvers, with their TSIG key, by server and key. */
+	protected static ConcurrentMap<String, Resolver> resolvers = 
+		new ConcurrentHashMap<String, Resolver>();
+	
 	/** The fqdn. */
 	protected String fqdn;
 	
@@ -110,7 +117,9 @@ public abstract class DdnsUpdate
 	}
 	
 	/**
-	 * Creates the resolver.
+	 * Gets the resolver for the server and TSIG key of this update.  The
+	 * resolvers are shared by all updates to the same server with the same
+	 * key, instead of resolving the server and parsing the key every time.
 	 * 
 	 * @return the resolver
 	 * 
@@ -118,6 +127,38 @@ public abstract class DdnsUpdate
 	 * @throws TextParseException the text parse exception
 	 */
 	protected Resolver createResolver() throws UnknownHostException, TextParseException 
+	{
+		String key = getResolverKey();
+		Resolver res = resolvers.get(key);
+		if (res == null) {
+			res = newResolver();
+			Resolver existing = resolvers.putIfAbsent(key, res);
+			if (existing != null) {
+				res = existing;
+			}
+		}
+		return res;
+	}
+	
+	/**
+	 * Gets the key of the resolver for the server and TSIG key of this update.
+	 * 
+	 * @return the resolver key
+	 */
+	public String getResolverKey()
+	{
+		return server + "|" + tsigKeyName + "|" + tsigAlgorithm + "|" + tsigKeyData;
+	}
+	
+	/**
+	 * Creates a new resolver.
+	 * 
+	 * @return the resolver
+	 * 
+	 * @throws UnknownHostException the unknown host exception
+	 * @throws TextParseException the text parse exception
+	 */
+	protected Resolver newResolver() throws UnknownHostException, TextParseException 
 	{
 		Resolver res = new SimpleResolver(server);
 		if ((tsigKeyName != null) && (tsigKeyName.length() > 0)) {
@@ -133,6 +174,40 @@ public abstract class DdnsUpdate
 		return res;
 	}
 	
+	/**
+	 * Gets the name of the zone to update.
+	 * 
+	 * @return the zone name
+	 * 
+	 * @throws TextParseException the text parse exception
+	 */
+	public abstract Name getZoneName() throws TextParseException;
+	
+	/**
+	 * Adds the records of an add to an update message, which may hold other
+	 * adds to the same zone.
+	 * 
+	 * @param update the update message
+	 * 
+	 * @throws TextParseException the text parse exception
+	 */
+	public abstract void buildAdd(Update update) throws TextParseException;
+	
+	/**
+	 * Adds the records of a delete to an update message, if the delete can
+	 * be sent in one message with other updates to the same zone.
+	 * 
+	 * @param update the update message
+	 * 
+	 * @return true, if the delete was added, false if it must be sent alone
+	 * 
+	 * @throws TextParseException the text parse exception
+	 */
+	public boolean buildDelete(Update update) throws TextParseException
+	{
+		return false;
+	}
+	
 	/**
 	 * Send add.
 	 * 
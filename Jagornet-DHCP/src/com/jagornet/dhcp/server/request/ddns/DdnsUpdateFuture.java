@@ -0,0 +1,201 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file DdnsUpdateFuture.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.ddns;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The Class DdnsUpdateFuture.  The completion of the forward and reverse
+ * updates of a DdnsUpdater.  The result of each direction is passed on to
+ * the callback of the updates, before the future is completed, so any
+ * binding options saved by the callback are set when a waiter continues.
+ *
+ * The result of the future is true if all requested updates succeeded.
+ *
+ * @author A. Gregory Rabil
+ */
+public class DdnsUpdateFuture implements DdnsCallback, Future<Boolean>
+{
+	private DdnsCallback callback;
+
+	private CountDownLatch fwdLatch;
+	private CountDownLatch revLatch;
+
+	private volatile Boolean fwdResult;
+	private volatile Boolean revResult;
+
+	/**
+	 * Instantiates a new ddns update future.
+	 *
+	 * @param callback the callback of the updates, may be null
+	 * @param doForwardUpdate true, if a forward update is requested
+	 */
+	public DdnsUpdateFuture(DdnsCallback callback, boolean doForwardUpdate)
+	{
+		this.callback = callback;
+		fwdLatch = new CountDownLatch(doForwardUpdate ? 1 : 0);
+		revLatch = new CountDownLatch(1);
+	}
+
+	public void fwdAddComplete(boolean success) {
+		fwdResult = success;
+		try {
+			if (callback != null)
+				callback.fwdAddComplete(success);
+		}
+		finally {
+			fwdLatch.countDown();
+		}
+	}
+
+	public void fwdDeleteComplete(boolean success) {
+		fwdResult = success;
+		try {
+			if (callback != null)
+				callback.fwdDeleteComplete(success);
+		}
+		finally {
+			fwdLatch.countDown();
+		}
+	}
+
+	public void revAddComplete(boolean success) {
+		revResult = success;
+		try {
+			if (callback != null)
+				callback.revAddComplete(success);
+		}
+		finally {
+			revLatch.countDown();
+		}
+	}
+
+	public void revDeleteComplete(boolean success) {
+		revResult = success;
+		try {
+			if (callback != null)
+				callback.revDeleteComplete(success);
+		}
+		finally {
+			revLatch.countDown();
+		}
+	}
+
+	/**
+	 * Wait for the forward update to complete.
+	 *
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 *
+	 * @return true, if the forward update completed or was not requested
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean awaitForward(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		return fwdLatch.await(timeout, unit);
+	}
+
+	/**
+	 * Wait for the forward and reverse updates to complete.
+	 *
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 *
+	 * @return true, if the updates completed
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean await(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		if (!fwdLatch.await(timeout, unit)) {
+			return false;
+		}
+		return revLatch.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Gets the result of the forward update.
+	 *
+	 * @return the result, or null if not requested or not yet completed
+	 */
+	public Boolean getForwardResult() {
+		return fwdResult;
+	}
+
+	/**
+	 * Gets the result of the reverse update.
+	 *
+	 * @return the result, or null if not yet completed
+	 */
+	public Boolean getReverseResult() {
+		return revResult;
+	}
+
+	/**
+	 * The updates can not be cancelled.
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public boolean isDone() {
+		return (fwdLatch.getCount() == 0) && (revLatch.getCount() == 0);
+	}
+
+	@Override
+	public Boolean get() throws InterruptedException, ExecutionException {
+		fwdLatch.await();
+		revLatch.await();
+		return getResult();
+	}
+
+	@Override
+	public Boolean get(long timeout, TimeUnit unit) throws InterruptedException,
+			ExecutionException, TimeoutException {
+		if (!await(timeout, unit)) {
+			throw new TimeoutException("DDNS updates not completed");
+		}
+		return getResult();
+	}
+
+	private Boolean getResult() {
+		return ((fwdResult == null) || fwdResult.booleanValue()) &&
+				Boolean.TRUE.equals(revResult);
+	}
+}
@@ -0,0 +1,648 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file DdnsUpdateQueue.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.ddns;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Update;
+
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.server.metrics.DhcpMetrics;
+import com.jagornet.dhcp.server.metrics.Gauge;
+import com.jagornet.dhcp.server.metrics.MetricsRegistry;
+import com.jagornet.dhcp.server.metrics.MetricsWriter;
+
+/**
+ * The Class DdnsUpdateQueue.  Sends the asynchronous DDNS updates from a
+ * bounded queue for each zone, using a fixed number of threads.
+ *
+ * A zone queue holds at most one update for each name and address, so an
+ * update which has not been sent yet is replaced by a later update of the
+ * same name and address.  The updates of a zone are sent in order, one
+ * message at a time, and the updates which can be combined are sent in one
+ * update message.  Updates which fail with an I/O error, e.g. a timeout,
+ * are retried after a delay which doubles with each failure of the zone.
+ *
+ * @author A. Gregory Rabil
+ */
+public class DdnsUpdateQueue implements DdnsUpdateQueueMBean
+{
+	/** The log. */
+	private static Logger log = LoggerFactory.getLogger(DdnsUpdateQueue.class);
+
+	/** The JMX name of the metrics. */
+	public static final String OBJECT_NAME = "com.jagornet.dhcp:type=DdnsUpdateQueue";
+
+	/** The instance. */
+	private static DdnsUpdateQueue instance;
+
+	/** The executor. */
+	private ScheduledExecutorService executor;
+
+	/** The zone queues by resolver and zone. */
+	private ConcurrentMap<String, ZoneQueue> zoneQueues =
+		new ConcurrentHashMap<String, ZoneQueue>();
+
+	/** The maximum number of updates waiting for a zone. */
+	private int queueSize;
+
+	/** The maximum number of updates in an update message. */
+	private int batchSize;
+
+	/** The number of times an update is retried. */
+	private int retryCount;
+
+	/** The first retry delay in milliseconds. */
+	private long retryDelay;
+
+	/** The maximum retry delay in milliseconds. */
+	private long retryMaxDelay;
+
+	private AtomicLong submitted = new AtomicLong();
+	private AtomicLong coalesced = new AtomicLong();
+	private AtomicLong dropped = new AtomicLong();
+	private AtomicLong succeeded = new AtomicLong();
+	private AtomicLong failed = new AtomicLong();
+	private AtomicLong retried = new AtomicLong();
+	private AtomicLong batchesSent = new AtomicLong();
+
+	/**
+	 * Gets the single instance, configured by the ddns.queue and ddns.retry
+	 * policies, and registers its metrics in JMX.
+	 *
+	 * @return the instance
+	 */
+	public static synchronized DdnsUpdateQueue getInstance()
+	{
+		if (instance == null) {
+			instance = new DdnsUpdateQueue(
+					DhcpServerPolicies.globalPolicyAsInt(Property.DDNS_QUEUE_THREADS),
+					DhcpServerPolicies.globalPolicyAsInt(Property.DDNS_QUEUE_SIZE),
+					DhcpServerPolicies.globalPolicyAsInt(Property.DDNS_QUEUE_BATCH_SIZE),
+					DhcpServerPolicies.globalPolicyAsInt(Property.DDNS_RETRY_COUNT),
+					DhcpServerPolicies.globalPolicyAsLong(Property.DDNS_RETRY_DELAY),
+					DhcpServerPolicies.globalPolicyAsLong(Property.DDNS_RETRY_MAX_DELAY));
+			instance.registerMBean();
+			instance.registerMetrics();
+		}
+		return instance;
+	}
+
+	/**
+	 * Instantiates a new ddns update queue.
+	 *
+	 * @param threads the number of threads sending updates
+	 * @param queueSize the maximum number of updates waiting for a zone
+	 * @param batchSize the maximum number of updates in an update message
+	 * @param retryCount the number of times an update is retried
+	 * @param retryDelay the first retry delay in milliseconds
+	 * @param retryMaxDelay the maximum retry delay in milliseconds
+	 */
+	public DdnsUpdateQueue(int threads, int queueSize, int batchSize,
+			int retryCount, long retryDelay, long retryMaxDelay)
+	{
+		this.queueSize = queueSize;
+		this.batchSize = Math.max(1, batchSize);
+		this.retryCount = retryCount;
+		this.retryDelay = retryDelay;
+		this.retryMaxDelay = retryMaxDelay;
+		executor = Executors.newScheduledThreadPool(Math.max(1, threads), new ThreadFactory() {
+			private AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "DdnsUpdateQueue-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Register the metrics in JMX.
+	 */
+	protected void registerMBean()
+	{
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!mbs.isRegistered(name)) {
+				mbs.registerMBean(this, name);
+			}
+		}
+		catch (Exception ex) {
+			log.error("Failure registering DDNS update queue in JMX: " + ex);
+		}
+	}
+
+	/**
+	 * Register the metrics in the metrics registry.
+	 */
+	protected void registerMetrics()
+	{
+		MetricsRegistry registry = MetricsRegistry.getInstance();
+		registry.gauge("dhcp_ddns_queue_depth", "The DDNS updates waiting to be sent.", "",
+				new Gauge() {
+					public double getValue() {
+						return getQueueDepth();
+					}
+				});
+		registerCounter(registry, "submitted", submitted);
+		registerCounter(registry, "coalesced", coalesced);
+		registerCounter(registry, "dropped", dropped);
+		registerCounter(registry, "succeeded", succeeded);
+		registerCounter(registry, "failed", failed);
+		registerCounter(registry, "retried", retried);
+		registry.counter("dhcp_ddns_batches_sent_total", 
+				"The DDNS update messages holding more than one update.", "",
+				new Gauge() {
+					public double getValue() {
+						return batchesSent.get();
+					}
+				});
+	}
+	
+	private void registerCounter(MetricsRegistry registry, String result, final AtomicLong count)
+	{
+		registry.counter("dhcp_ddns_updates_total", "The DDNS updates, by result.",
+				MetricsWriter.labels("result", result),
+				new Gauge() {
+					public double getValue() {
+						return count.get();
+					}
+				});
+	}
+
+	/**
+	 * Shutdown the threads.  Updates which are waiting are not sent.
+	 */
+	public void shutdown()
+	{
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Queue an update.  The callback of the update is called with false if
+	 * the queue of the zone is full, or if the update is replaced by a later
+	 * update of the same name and address before it was sent.
+	 *
+	 * @param update the forward or reverse update
+	 * @param isDelete true for a delete, false for an add
+	 * @param callback the callback
+	 *
+	 * @return true, if the update was queued
+	 */
+	public boolean submit(DdnsUpdate update, boolean isDelete, DdnsCallback callback)
+	{
+		submitted.incrementAndGet();
+		PendingUpdate pending = new PendingUpdate(update, isDelete, callback);
+		ZoneQueue zoneQueue = null;
+		try {
+			zoneQueue = getZoneQueue(update);
+		}
+		catch (TextParseException ex) {
+			log.error("Invalid DDNS zone for update of " + update.fqdn + ": " + ex);
+			complete(pending, false);
+			return false;
+		}
+		return zoneQueue.offer(pending);
+	}
+
+	/**
+	 * Gets the queue of the zone and server of an update.
+	 *
+	 * @param update the update
+	 *
+	 * @return the zone queue
+	 *
+	 * @throws TextParseException the text parse exception
+	 */
+	protected ZoneQueue getZoneQueue(DdnsUpdate update) throws TextParseException
+	{
+		Name zone = update.getZoneName();
+		String key = update.getResolverKey() + "|" + zone;
+		ZoneQueue zoneQueue = zoneQueues.get(key);
+		if (zoneQueue == null) {
+			zoneQueue = new ZoneQueue(update.getServer(), zone);
+			ZoneQueue existing = zoneQueues.putIfAbsent(key, zoneQueue);
+			if (existing != null) {
+				zoneQueue = existing;
+			}
+		}
+		return zoneQueue;
+	}
+
+	/**
+	 * Complete an update, and call its callback.
+	 *
+	 * @param pending the update
+	 * @param success true, if the update succeeded
+	 */
+	protected void complete(PendingUpdate pending, boolean success)
+	{
+		if (success) {
+			succeeded.incrementAndGet();
+		}
+		else {
+			failed.incrementAndGet();
+		}
+		try {
+			if (pending.update instanceof ForwardDdnsUpdate) {
+				DhcpMetrics.DDNS_FORWARD.recordSince(pending.queued);
+				if (!pending.isDelete)
+					pending.callback.fwdAddComplete(success);
+				else
+					pending.callback.fwdDeleteComplete(success);
+			}
+			else {
+				DhcpMetrics.DDNS_REVERSE.recordSince(pending.queued);
+				if (!pending.isDelete)
+					pending.callback.revAddComplete(success);
+				else
+					pending.callback.revDeleteComplete(success);
+			}
+		}
+		catch (Exception ex) {
+			log.error("Failure completing DDNS update of " + pending.update.fqdn, ex);
+		}
+	}
+
+	/**
+	 * Retry an update, unless it was retried too many times.
+	 *
+	 * @param pending the update
+	 * @param retries the updates to retry
+	 */
+	protected void retry(PendingUpdate pending, List<PendingUpdate> retries)
+	{
+		if (++pending.attempts > retryCount) {
+			log.error("DDNS update of " + pending.update.fqdn + " failed after " +
+					pending.attempts + " attempts");
+			complete(pending, false);
+		}
+		else {
+			retried.incrementAndGet();
+			retries.add(pending);
+		}
+	}
+
+	@Override
+	public int getQueueDepth() {
+		int depth = 0;
+		for (ZoneQueue zoneQueue : zoneQueues.values()) {
+			depth += zoneQueue.size();
+		}
+		return depth;
+	}
+
+	@Override
+	public String[] getZoneQueueDepths() {
+		List<String> depths = new ArrayList<String>();
+		for (ZoneQueue zoneQueue : zoneQueues.values()) {
+			depths.add(zoneQueue.toString() + "=" + zoneQueue.size());
+		}
+		return depths.toArray(new String[depths.size()]);
+	}
+
+	@Override
+	public long getSubmitted() {
+		return submitted.get();
+	}
+
+	@Override
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	@Override
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	@Override
+	public long getSucceeded() {
+		return succeeded.get();
+	}
+
+	@Override
+	public long getFailed() {
+		return failed.get();
+	}
+
+	@Override
+	public long getRetried() {
+		return retried.get();
+	}
+
+	@Override
+	public long getBatchesSent() {
+		return batchesSent.get();
+	}
+
+	/**
+	 * An update waiting to be sent.
+	 */
+	protected static class PendingUpdate
+	{
+		final DdnsUpdate update;
+		final boolean isDelete;
+		final DdnsCallback callback;
+		final String key;
+		final long queued = System.nanoTime();
+		int attempts;
+
+		PendingUpdate(DdnsUpdate update, boolean isDelete, DdnsCallback callback)
+		{
+			this.update = update;
+			this.isDelete = isDelete;
+			this.callback = callback;
+			this.key = update.fqdn.toLowerCase() + " " + update.inetAddr.getHostAddress();
+		}
+	}
+
+	/**
+	 * The queue of the updates of a zone on a server.  It is scheduled on the
+	 * executor whenever it has updates, and sends one message at a time.
+	 */
+	protected class ZoneQueue implements Runnable
+	{
+		private final String server;
+		private final Name zone;
+		private LinkedHashMap<String, PendingUpdate> pending =
+			new LinkedHashMap<String, PendingUpdate>();
+		private boolean scheduled;
+		private int failures;
+
+		ZoneQueue(String server, Name zone)
+		{
+			this.server = server;
+			this.zone = zone;
+		}
+
+		/**
+		 * Add an update to the queue, replacing any update of the same name
+		 * and address which has not been sent yet.
+		 *
+		 * @param update the update
+		 *
+		 * @return true, if the update was queued
+		 */
+		boolean offer(PendingUpdate update)
+		{
+			PendingUpdate replaced = null;
+			boolean queued = true;
+			synchronized (this) {
+				replaced = pending.remove(update.key);
+				if ((replaced == null) && (pending.size() >= queueSize)) {
+					queued = false;
+				}
+				else {
+					pending.put(update.key, update);
+					schedule(0);
+				}
+			}
+			if (replaced != null) {
+				coalesced.incrementAndGet();
+				if (log.isDebugEnabled()) {
+					log.debug("Replaced queued DDNS update of " + replaced.key +
+							" in zone " + zone);
+				}
+				complete(replaced, false);
+			}
+			if (!queued) {
+				dropped.incrementAndGet();
+				log.warn("DDNS update queue of zone " + zone + " is full, dropping update of " +
+						update.key);
+				complete(update, false);
+			}
+			return queued;
+		}
+
+		/**
+		 * Schedule the queue, unless it is already scheduled.
+		 * Must be called while synchronized.
+		 *
+		 * @param delay the delay in milliseconds
+		 */
+		private void schedule(long delay)
+		{
+			if (!scheduled) {
+				try {
+					executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+					scheduled = true;
+				}
+				catch (RejectedExecutionException ex) {
+					log.warn("DDNS update queue is shutdown");
+				}
+			}
+		}
+
+		synchronized int size()
+		{
+			return pending.size();
+		}
+
+		@Override
+		public void run()
+		{
+			List<PendingUpdate> batch = new ArrayList<PendingUpdate>();
+			synchronized (this) {
+				Iterator<PendingUpdate> iter = pending.values().iterator();
+				while (iter.hasNext() && (batch.size() < batchSize)) {
+					batch.add(iter.next());
+					iter.remove();
+				}
+			}
+			List<PendingUpdate> retries = new ArrayList<PendingUpdate>();
+			try {
+				send(batch, retries);
+			}
+			catch (Exception ex) {
+				log.error("Failure performing DDNS updates", ex);
+				for (PendingUpdate update : batch) {
+					complete(update, false);
+				}
+				retries.clear();
+			}
+			List<PendingUpdate> replaced = new ArrayList<PendingUpdate>();
+			synchronized (this) {
+				scheduled = false;
+				long delay = 0;
+				if (!retries.isEmpty()) {
+					// put the retries back in front, unless replaced meanwhile
+					LinkedHashMap<String, PendingUpdate> requeued =
+						new LinkedHashMap<String, PendingUpdate>();
+					for (PendingUpdate update : retries) {
+						if (pending.containsKey(update.key)) {
+							replaced.add(update);
+						}
+						else {
+							requeued.put(update.key, update);
+						}
+					}
+					requeued.putAll(pending);
+					pending = requeued;
+					delay = Math.min(retryDelay << Math.min(failures, 30), retryMaxDelay);
+					failures++;
+					log.warn("Retrying " + retries.size() + " DDNS updates of zone " + zone +
+							" in " + delay + "ms");
+				}
+				else {
+					failures = 0;
+				}
+				if (!pending.isEmpty()) {
+					schedule(delay);
+				}
+			}
+			for (PendingUpdate update : replaced) {
+				coalesced.incrementAndGet();
+				complete(update, false);
+			}
+		}
+
+		/**
+		 * Send the updates, combining those which can be sent in one message.
+		 * If the combined message fails, the updates are sent one by one, to
+		 * handle any conflicts of the names as when sent alone.
+		 *
+		 * @param batch the updates to send
+		 * @param retries the updates to retry
+		 */
+		private void send(List<PendingUpdate> batch, List<PendingUpdate> retries)
+		{
+			List<PendingUpdate> singles = new ArrayList<PendingUpdate>();
+			if (batch.size() > 1) {
+				Update message = new Update(zone);
+				List<PendingUpdate> combined = new ArrayList<PendingUpdate>();
+				for (PendingUpdate update : batch) {
+					try {
+						if (!update.isDelete) {
+							update.update.buildAdd(message);
+							combined.add(update);
+						}
+						else if (update.update.buildDelete(message)) {
+							combined.add(update);
+						}
+						else {
+							singles.add(update);
+						}
+					}
+					catch (TextParseException ex) {
+						log.error("Invalid DDNS update of " + update.key + ": " + ex);
+						complete(update, false);
+					}
+				}
+				if (combined.size() > 1) {
+					sendCombined(message, combined, singles, retries);
+				}
+				else {
+					singles.addAll(combined);
+				}
+			}
+			else {
+				singles.addAll(batch);
+			}
+			for (PendingUpdate update : singles) {
+				try {
+					if (!update.isDelete)
+						complete(update, update.update.sendAdd());
+					else
+						complete(update, update.update.sendDelete());
+				}
+				catch (TextParseException ex) {
+					log.error("Invalid DDNS update of " + update.key + ": " + ex);
+					complete(update, false);
+				}
+				catch (IOException ex) {
+					log.warn("DDNS update of " + update.key + " failed: " + ex);
+					retry(update, retries);
+				}
+			}
+		}
+
+		private void sendCombined(Message message, List<PendingUpdate> combined,
+				List<PendingUpdate> singles, List<PendingUpdate> retries)
+		{
+			if (log.isDebugEnabled()) {
+				log.debug("Sending DDNS update of " + combined.size() + " names to server=" +
+						server + ":\n" + message.toString());
+			}
+			try {
+				Message response = combined.get(0).update.createResolver().send(message);
+				batchesSent.incrementAndGet();
+				if (response.getRcode() == Rcode.NOERROR) {
+					log.info("DDNS update of " + combined.size() + " names in zone " +
+							zone + " succeeded");
+					for (PendingUpdate update : combined) {
+						complete(update, true);
+					}
+				}
+				else {
+					log.info("DDNS update of " + combined.size() + " names in zone " +
+							zone + " failed (rcode=" + Rcode.string(response.getRcode()) +
+							"), sending updates one by one");
+					singles.addAll(combined);
+				}
+			}
+			catch (IOException ex) {
+				log.warn("DDNS update of " + combined.size() + " names in zone " +
+						zone + " failed: " + ex);
+				for (PendingUpdate update : combined) {
+					retry(update, retries);
+				}
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			return server + " " + zone;
+		}
+	}
+}
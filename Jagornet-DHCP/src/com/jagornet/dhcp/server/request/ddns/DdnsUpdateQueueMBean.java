@@ -0,0 +1,79 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file DdnsUpdateQueueMBean.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.ddns;
+
+/**
+ * The JMX interface of the DdnsUpdateQueue metrics.
+ *
+ * @author A. Gregory Rabil
+ */
+public interface DdnsUpdateQueueMBean
+{
+	/**
+	 * @return the number of updates waiting in all zone queues
+	 */
+	public int getQueueDepth();
+
+	/**
+	 * @return the number of updates waiting, as "server zone=depth", for each zone
+	 */
+	public String[] getZoneQueueDepths();
+
+	/**
+	 * @return the number of updates submitted
+	 */
+	public long getSubmitted();
+
+	/**
+	 * @return the number of updates replaced by a later update of the same name
+	 */
+	public long getCoalesced();
+
+	/**
+	 * @return the number of updates dropped because the zone queue was full
+	 */
+	public long getDropped();
+
+	/**
+	 * @return the number of updates completed successfully
+	 */
+	public long getSucceeded();
+
+	/**
+	 * @return the number of updates which failed
+	 */
+	public long getFailed();
+
+	/**
+	 * @return the number of updates retried after an I/O failure
+	 */
+	public long getRetried();
+
+	/**
+	 * @return the number of update messages holding more than one update
+	 */
+	public long getBatchesSent();
+}
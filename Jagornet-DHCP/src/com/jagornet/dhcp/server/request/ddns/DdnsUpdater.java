@@ -26,8 +26,7 @@
 package com.jagornet.dhcp.server.request.ddns;
 
 import java.net.InetAddress;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,17 +42,23 @@ import com.jagornet.dhcp.xml.Link;
  * 
  * @author A. Gregory Rabil
  */
-public class DdnsUpdater implements Runnable
+public class DdnsUpdater
 {
 	
 	/** The log. */
 	private static Logger log = LoggerFactory.getLogger(DdnsUpdater.class);
 
-	/** The executor. */
-	private static ExecutorService executor = Executors.newCachedThreadPool();
+	/** The ddns.synchronize policy value to wait for all updates. */
+	public static final String SYNCHRONIZE_ALL = "true";
 	
-	/** The sync. */
-	private boolean sync;
+	/** The ddns.synchronize policy value to wait for the forward update only. */
+	public static final String SYNCHRONIZE_FORWARD = "forward";
+	
+	/** The sync, one of false, SYNCHRONIZE_ALL or SYNCHRONIZE_FORWARD. */
+	private String sync;
+	
+	/** The sync timeout in milliseconds. */
+	private long syncTimeout;
 	
 	/** The fwd zone. */
 	private String fwdZone;
@@ -169,58 +174,84 @@ public class DdnsUpdater implements Runnable
 	}
 	
 	/**
-	 * Process updates.
+	 * Process updates.  The updates are queued for the DdnsUpdateQueue to
+	 * send.  If the ddns.synchronize policy is true, this waits for the
+	 * updates to complete, or if it is forward, for the forward update,
+	 * for at most the ddns.synchronize.timeout.  Otherwise, by default,
+	 * this does not wait.
+	 * 
+	 * @return the completion of the updates
 	 */
-	public void processUpdates()
+	public DdnsUpdateFuture processUpdates()
 	{
-		if (sync) {
-			run();
-		}
-		else {
-			executor.submit(this);
+		setupPolicies(configObj, lifetime);
+		DdnsUpdateFuture future = queueUpdates();
+		if (!sync.equalsIgnoreCase("false")) {
+			try {
+				boolean done = sync.equalsIgnoreCase(SYNCHRONIZE_FORWARD) ?
+						future.awaitForward(syncTimeout, TimeUnit.MILLISECONDS) :
+						future.await(syncTimeout, TimeUnit.MILLISECONDS);
+				if (!done) {
+					log.warn("DDNS updates for " + fqdn + " not completed within " + 
+							syncTimeout + "ms, continuing");
+				}
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
 		}
+		return future;
 	}
 	
-	/* (non-Javadoc)
-	 * @see java.lang.Runnable#run()
+	/**
+	 * Queue the updates.
+	 * 
+	 * @return the completion of the updates
 	 */
-	public void run()
+	protected DdnsUpdateFuture queueUpdates()
 	{
-		setupPolicies(configObj, lifetime);						
-		try {
-			if (doForwardUpdate) {
-				ForwardDdnsUpdate fwdUpdate = new ForwardDdnsUpdate(fqdn, addr, duid);
-				fwdUpdate.setServer(fwdServer);
-				fwdUpdate.setZone(fwdZone);
-				fwdUpdate.setTtl(fwdTtl);
-				fwdUpdate.setTsigKeyName(fwdTsigKeyName);
-				fwdUpdate.setTsigAlgorithm(fwdTsigAlgorithm);
-				fwdUpdate.setTsigKeyData(fwdTsigKeyData);
-				if (!isDelete)
-					callback.fwdAddComplete(fwdUpdate.sendAdd());
-				else
-					callback.fwdDeleteComplete(fwdUpdate.sendDelete());
-			}
-			ReverseDdnsUpdate revUpdate = new ReverseDdnsUpdate(fqdn, addr, duid);
-			revUpdate.setServer(revServer);
-			revUpdate.setZone(revZone);
-			revUpdate.setRevZoneBitLength(revZoneBitLength);
-			revUpdate.setTtl(revTtl);
-			revUpdate.setTsigKeyName(revTsigKeyName);
-			revUpdate.setTsigAlgorithm(revTsigAlgorithm);
-			revUpdate.setTsigKeyData(revTsigKeyData);
-			if (!isDelete)
-				callback.revAddComplete(revUpdate.sendAdd());
-			else
-				callback.revDeleteComplete(revUpdate.sendDelete());
+		DdnsUpdateFuture future = new DdnsUpdateFuture(callback, doForwardUpdate);
+		DdnsUpdateQueue queue = DdnsUpdateQueue.getInstance();
+		if (doForwardUpdate) {
+			queue.submit(buildForwardUpdate(), isDelete, future);
 		}
-		catch (Exception ex) {
-			log.error("Failure performing DDNS updates", ex);
-			callback.fwdAddComplete(false);
-			callback.fwdDeleteComplete(false);
-			callback.revAddComplete(false);
-			callback.revDeleteComplete(false);
-		}				
+		queue.submit(buildReverseUpdate(), isDelete, future);
+		return future;
+	}
+	
+	/**
+	 * Builds the forward update.
+	 * 
+	 * @return the forward ddns update
+	 */
+	protected ForwardDdnsUpdate buildForwardUpdate()
+	{
+		ForwardDdnsUpdate fwdUpdate = new ForwardDdnsUpdate(fqdn, addr, duid);
+		fwdUpdate.setServer(fwdServer);
+		fwdUpdate.setZone(fwdZone);
+		fwdUpdate.setTtl(fwdTtl);
+		fwdUpdate.setTsigKeyName(fwdTsigKeyName);
+		fwdUpdate.setTsigAlgorithm(fwdTsigAlgorithm);
+		fwdUpdate.setTsigKeyData(fwdTsigKeyData);
+		return fwdUpdate;
+	}
+	
+	/**
+	 * Builds the reverse update.
+	 * 
+	 * @return the reverse ddns update
+	 */
+	protected ReverseDdnsUpdate buildReverseUpdate()
+	{
+		ReverseDdnsUpdate revUpdate = new ReverseDdnsUpdate(fqdn, addr, duid);
+		revUpdate.setServer(revServer);
+		revUpdate.setZone(revZone);
+		revUpdate.setRevZoneBitLength(revZoneBitLength);
+		revUpdate.setTtl(revTtl);
+		revUpdate.setTsigKeyName(revTsigKeyName);
+		revUpdate.setTsigAlgorithm(revTsigAlgorithm);
+		revUpdate.setTsigKeyData(revTsigKeyData);
+		return revUpdate;
 	}
 	
 	/**
@@ -230,8 +261,14 @@ public class DdnsUpdater implements Runnable
 	 */
 	private void setupPolicies(DhcpConfigObject addrBindingPool, long lifetime)
 	{
-		sync = DhcpServerPolicies.effectivePolicyAsBoolean(requestMsg, 
-				addrBindingPool, clientLink, Property.DDNS_SYNCHRONIZE);
+		sync = DhcpServerPolicies.effectivePolicy(requestMsg, 
+				addrBindingPool, clientLink, Property.DDNS_SYNCHRONIZE).trim();
+		if (!sync.equalsIgnoreCase(SYNCHRONIZE_ALL) && 
+				!sync.equalsIgnoreCase(SYNCHRONIZE_FORWARD)) {
+			sync = "false";
+		}
+		syncTimeout = DhcpServerPolicies.effectivePolicyAsLong(requestMsg, 
+				addrBindingPool, clientLink, Property.DDNS_SYNCHRONIZE_TIMEOUT);
 		
 		String zone = DhcpServerPolicies.effectivePolicy(requestMsg, 
 				addrBindingPool, clientLink, Property.DDNS_FORWARD_ZONE_NAME);
@@ -67,6 +67,44 @@ public class ForwardDdnsUpdate extends DdnsUpdate
 		super(fqdn, inetAddr, duid);
 	}
 	
+	/* (non-Javadoc)
+	 * @see com.jagornet.dhcp.server.request.ddns.DdnsUpdate#getZoneName()
+	 */
+	public Name getZoneName() throws TextParseException
+	{
+		return buildZoneName(fqdn);
+	}
+	
+	/**
+	 * Adds the first, not-exist/add, step of the add.  If the name is in use,
+	 * the whole update message fails, and the add must be resent alone.
+	 * 
+	 * @see com.jagornet.dhcp.server.request.ddns.DdnsUpdate#buildAdd(org.xbill.DNS.Update)
+	 */
+	public void buildAdd(Update update) throws TextParseException
+	{
+		Name owner = new Name(fqdn);
+		update.absent(owner);
+		update.add(buildAddressRecord(owner, ttl));
+		update.add(new DHCIDRecord(owner, DClass.IN, ttl, data));
+	}
+	
+	/**
+	 * Builds the A or AAAA record of the address.
+	 * 
+	 * @param owner the owner name
+	 * @param ttl the ttl
+	 * 
+	 * @return the record
+	 */
+	private Record buildAddressRecord(Name owner, long ttl)
+	{
+		if (inetAddr instanceof Inet6Address) {
+			return new AAAARecord(owner, DClass.IN, ttl, inetAddr);
+		}
+		return new ARecord(owner, DClass.IN, ttl, inetAddr);
+	}
+	
 	/* (non-Javadoc)
 	 * @see com.jagornet.dhcpv6.server.request.ddns.DdnsUpdate#sendAdd()
 	 */
@@ -77,29 +115,17 @@ public class ForwardDdnsUpdate extends DdnsUpdate
 		Resolver res = createResolver();
 		
 		Name owner = new Name(fqdn);
-		Record a_aaaa = null;
-		if (inetAddr instanceof Inet6Address) {
-			a_aaaa = new AAAARecord(owner, DClass.IN, ttl, inetAddr);
-		}
-		else {
-			a_aaaa = new ARecord(owner, DClass.IN, ttl, inetAddr);
-		}
-		DHCIDRecord dhcid = new DHCIDRecord(owner, DClass.IN, ttl, data);
+		Record a_aaaa = buildAddressRecord(owner, ttl);
 
 		Name _zone = buildZoneName(fqdn);
 		
 		Update update = new Update(_zone);
-		update.absent(owner);
-		update.add(a_aaaa);
-		update.add(dhcid);
+		buildAdd(update);
 
 		if (log.isDebugEnabled()) {
 			log.debug("Sending forward DDNS update (not-exist/add) to server=" + server + ":\n" +  
 					update.toString());
 		}
-		else if (log.isInfoEnabled()) {
-			log.info("Sending forward DDNS update (not-exist/add): " + a_aaaa.toString());
-		}
 		Message response = res.send(update);
 
 		if (response.getRcode() == Rcode.NOERROR) {
@@ -110,16 +136,13 @@ public class ForwardDdnsUpdate extends DdnsUpdate
 			if (response.getRcode() == Rcode.YXDOMAIN) {
 				update = new Update(_zone);
 				update.present(owner);
-				dhcid = new DHCIDRecord(owner, DClass.IN, 0, data);
+				DHCIDRecord dhcid = new DHCIDRecord(owner, DClass.IN, 0, data);
 				update.present(dhcid);
 				update.add(a_aaaa);
 				if (log.isDebugEnabled()) {
 					log.debug("Sending forward DDNS update (exist/update) to server=" + server + ":\n" + 
 							update.toString());
 				}
-				else if (log.isInfoEnabled()) {
-					log.info("Sending forward DDNS update (exist/update): " + a_aaaa.toString());
-				}
 				response = res.send(update);
 				if (response.getRcode() == Rcode.NOERROR) {
 					log.info("Forward DDNS update (exist/update) succeeded: " + a_aaaa.toString());
@@ -148,13 +171,7 @@ public class ForwardDdnsUpdate extends DdnsUpdate
 		Resolver res = createResolver();
 		
 		Name owner = new Name(fqdn);		
-		Record a_aaaa = null;
-		if (inetAddr instanceof Inet6Address) {
-			a_aaaa = new AAAARecord(owner, DClass.IN, 0, inetAddr);
-		}
-		else {
-			a_aaaa = new ARecord(owner, DClass.IN, 0, inetAddr);
-		}
+		Record a_aaaa = buildAddressRecord(owner, 0);
 		DHCIDRecord dhcid = new DHCIDRecord(owner, DClass.IN, 0, data);
 
 		Name _zone = buildZoneName(fqdn);
@@ -167,9 +184,6 @@ public class ForwardDdnsUpdate extends DdnsUpdate
 			log.debug("Sending forward DDNS update (exist/delete) to server=" + server + ":\n" + 
 					update.toString());
 		}
-		else if (log.isInfoEnabled()) {
-			log.info("Sending forward DDNS update (exist/delete): " + a_aaaa.toString());
-		}
 		Message response = res.send(update);
 
 		if (response.getRcode() == Rcode.NOERROR) {
@@ -182,9 +196,6 @@ public class ForwardDdnsUpdate extends DdnsUpdate
 				log.debug("Sending forward DDNS update (not-exist/delete) to server=" + server + ":\n" + 
 						update.toString());
 			}
-			else if (log.isInfoEnabled()) {
-				log.info("Sending forward DDNS update (not-exist/delete): " + owner.toString());
-			}
 			response = res.send(update);
 			if (response.getRcode() == Rcode.NOERROR) {
 				log.info("Forward DDNS update (not-exist/delete) succeeded: " + owner.toString());
@@ -68,6 +68,37 @@ public class ReverseDdnsUpdate extends DdnsUpdate
 		super(fqdn, inetAddr, duid);
 	}
 	
+	/* (non-Javadoc)
+	 * @see com.jagornet.dhcp.server.request.ddns.DdnsUpdate#getZoneName()
+	 */
+	public Name getZoneName() throws TextParseException
+	{
+		return buildZoneName(buildReverseIpString());
+	}
+	
+	/**
+	 * Adds the replace of the PTR record, which has no prerequisites, so
+	 * it can be sent with any other updates to the zone.
+	 * 
+	 * @see com.jagornet.dhcp.server.request.ddns.DdnsUpdate#buildAdd(org.xbill.DNS.Update)
+	 */
+	public void buildAdd(Update update) throws TextParseException
+	{
+		Name owner = new Name(buildReverseIpString());
+		update.delete(owner);
+		update.add(new PTRRecord(owner, DClass.IN, ttl, new Name(fqdn)));
+	}
+	
+	/* (non-Javadoc)
+	 * @see com.jagornet.dhcp.server.request.ddns.DdnsUpdate#buildDelete(org.xbill.DNS.Update)
+	 */
+	public boolean buildDelete(Update update) throws TextParseException
+	{
+		Name owner = new Name(buildReverseIpString());
+		update.delete(new PTRRecord(owner, DClass.IN, 0, new Name(fqdn)));
+		return true;
+	}
+	
 	/* (non-Javadoc)
 	 * @see com.jagornet.dhcpv6.server.request.ddns.DdnsUpdate#sendAdd()
 	 */
@@ -85,16 +116,12 @@ public class ReverseDdnsUpdate extends DdnsUpdate
 		Name _zone = buildZoneName(revIp);
 		
 		Update update = new Update(_zone);
-		update.delete(owner);
-		update.add(ptr);
+		buildAdd(update);
 
 		if (log.isDebugEnabled()) {
 			log.debug("Sending reverse DDNS update (replace) to server=" + server + ":\n" + 
 					update.toString());
 		}
-		else if (log.isInfoEnabled()) {
-			log.info("Sending reverse DDNS update (replace): " + ptr.toString());
-		}
 		Message response = res.send(update);
 
 		if (response.getRcode() == Rcode.NOERROR) {
@@ -125,15 +152,12 @@ public class ReverseDdnsUpdate extends DdnsUpdate
 		Name _zone = buildZoneName(revIp);
 		
 		Update update = new Update(_zone);
-		update.delete(ptr);
+		buildDelete(update);
 
 		if (log.isDebugEnabled()) {
 			log.debug("Sending reverse DDNS update (delete) to server=" + server + ":\n" + 
 					update.toString());
 		}
-		else if (log.isInfoEnabled()) {
-			log.info("Sending reverse DDNS update (delete): " + ptr.toString());
-		}
 		Message response = res.send(update);
 
 		if (response.getRcode() == Rcode.NOERROR) {
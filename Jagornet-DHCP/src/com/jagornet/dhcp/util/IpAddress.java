@@ -0,0 +1,478 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file IpAddress.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.util;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Title: IpAddress
+ * Description: An immutable IPv4 or IPv6 address, kept as two longs of the
+ * high and low order bits of the address.  An IPv4 address is kept in the
+ * low order 32 bits.  The arithmetic, comparison and containment of the
+ * addresses only use the longs, so the binding pools do not convert to and
+ * from byte arrays and BigIntegers.  An InetAddress is only built for the
+ * messages and the lease database.
+ * 
+ * Addresses are compared as unsigned values, and all IPv4 addresses are
+ * ordered before all IPv6 addresses.
+ * 
+ * @author A. Gregory Rabil
+ */
+public final class IpAddress implements Comparable<IpAddress>
+{
+	/** The high order 64 bits, always zero for IPv4. */
+	private final long hi;
+	
+	/** The low order 64 bits. */
+	private final long lo;
+	
+	private final boolean v4;
+	
+	private IpAddress(long hi, long lo, boolean v4)
+	{
+		this.hi = hi;
+		this.lo = lo;
+		this.v4 = v4;
+	}
+	
+	/**
+	 * Get an IPv4 address.
+	 * 
+	 * @param addr the address, in network order
+	 * 
+	 * @return the address
+	 */
+	public static IpAddress v4(int addr)
+	{
+		return new IpAddress(0, addr & 0xffffffffL, true);
+	}
+	
+	/**
+	 * Get an IPv6 address.
+	 * 
+	 * @param hi the high order 64 bits of the address
+	 * @param lo the low order 64 bits of the address
+	 * 
+	 * @return the address
+	 */
+	public static IpAddress v6(long hi, long lo)
+	{
+		return new IpAddress(hi, lo, false);
+	}
+	
+	/**
+	 * Get the address of an InetAddress.
+	 * 
+	 * @param addr the InetAddress
+	 * 
+	 * @return the address
+	 */
+	public static IpAddress valueOf(InetAddress addr)
+	{
+		return valueOf(addr.getAddress());
+	}
+	
+	/**
+	 * Get the address of a 4 or 16 byte array.
+	 * 
+	 * @param b the address bytes, in network order
+	 * 
+	 * @return the address
+	 */
+	public static IpAddress valueOf(byte[] b)
+	{
+		if (b.length == 4) {
+			return v4((int)toLong(b, 0, 4));
+		}
+		if (b.length == 16) {
+			return v6(toLong(b, 0, 8), toLong(b, 8, 8));
+		}
+		throw new IllegalArgumentException("Invalid address length: " + b.length);
+	}
+	
+	/**
+	 * Get the address of a literal IPv4 or IPv6 address.
+	 * 
+	 * @param addr the address string
+	 * 
+	 * @return the address
+	 * 
+	 * @throws UnknownHostException if the address is invalid
+	 */
+	public static IpAddress valueOf(String addr) throws UnknownHostException
+	{
+		return valueOf(InetAddress.getByName(addr));
+	}
+	
+	public boolean isV4()
+	{
+		return v4;
+	}
+	
+	/**
+	 * Gets the length of the address in bits.
+	 * 
+	 * @return 32 for IPv4, or 128 for IPv6
+	 */
+	public int getBits()
+	{
+		return v4 ? 32 : 128;
+	}
+	
+	public long getHi()
+	{
+		return hi;
+	}
+	
+	public long getLo()
+	{
+		return lo;
+	}
+	
+	/**
+	 * Gets the IPv4 address as an int.
+	 * 
+	 * @return the address, in network order
+	 */
+	public int toInt()
+	{
+		return (int)lo;
+	}
+	
+	/**
+	 * Add an offset to the address.
+	 * 
+	 * @param n the offset
+	 * 
+	 * @return the address
+	 * 
+	 * @throws ArithmeticException if the address overflows
+	 */
+	public IpAddress add(long n)
+	{
+		return add(n, 0);
+	}
+	
+	/**
+	 * Add a number of blocks of 2^blockBits addresses to the address,
+	 * for example the prefixes of a prefix pool.
+	 * 
+	 * @param n the number of blocks
+	 * @param blockBits the size of a block in bits
+	 * 
+	 * @return the address
+	 * 
+	 * @throws ArithmeticException if the address overflows
+	 */
+	public IpAddress add(long n, int blockBits)
+	{
+		if ((n < 0) || (blockBits < 0) || (blockBits >= getBits())) {
+			throw new IllegalArgumentException("Invalid offset: " + n + "<<" + blockBits);
+		}
+		long addHi = 0;
+		long addLo = 0;
+		if (blockBits == 0) {
+			addLo = n;
+		}
+		else if (blockBits < 64) {
+			addHi = n >>> (64 - blockBits);
+			addLo = n << blockBits;
+		}
+		else {
+			if ((blockBits > 64) && ((n >>> (128 - blockBits)) != 0)) {
+				throw new ArithmeticException("Address overflow");
+			}
+			addHi = n << (blockBits - 64);
+		}
+		long sumLo = lo + addLo;
+		long sumHi = hi + addHi;
+		if (unsignedCompare(sumHi, hi) < 0) {
+			throw new ArithmeticException("Address overflow");
+		}
+		if (unsignedCompare(sumLo, lo) < 0) {
+			if (sumHi == -1) {
+				throw new ArithmeticException("Address overflow");
+			}
+			sumHi++;
+		}
+		if (v4 && ((sumHi != 0) || ((sumLo >>> 32) != 0))) {
+			throw new ArithmeticException("Address overflow");
+		}
+		return new IpAddress(sumHi, sumLo, v4);
+	}
+	
+	/**
+	 * Get the offset of the address from a base address.
+	 * 
+	 * @param base the base address
+	 * 
+	 * @return the offset, or -1 if the address is before the base,
+	 * or the offset is too large for a long
+	 */
+	public long offsetFrom(IpAddress base)
+	{
+		return offsetFrom(base, 0);
+	}
+	
+	/**
+	 * Get the number of blocks of 2^blockBits addresses from a base
+	 * address to the block of the address.
+	 * 
+	 * @param base the base address
+	 * @param blockBits the size of a block in bits
+	 * 
+	 * @return the number of blocks, or -1 if the address is before the base,
+	 * or the number is too large for a long
+	 */
+	public long offsetFrom(IpAddress base, int blockBits)
+	{
+		if ((v4 != base.v4) || (compareTo(base) < 0)) {
+			return -1;
+		}
+		long diffLo = lo - base.lo;
+		long diffHi = hi - base.hi;
+		if (unsignedCompare(lo, base.lo) < 0) {
+			diffHi--;
+		}
+		if (blockBits >= 64) {
+			diffLo = diffHi >>> (blockBits - 64);
+			diffHi = 0;
+		}
+		else if (blockBits > 0) {
+			diffLo = (diffLo >>> blockBits) | (diffHi << (64 - blockBits));
+			diffHi = diffHi >>> blockBits;
+		}
+		if ((diffHi != 0) || (diffLo < 0)) {
+			return -1;
+		}
+		return diffLo;
+	}
+	
+	/**
+	 * Get the first address of the prefix of the address.
+	 * 
+	 * @param prefixLength the prefix length
+	 * 
+	 * @return the address with the host bits cleared
+	 */
+	public IpAddress mask(int prefixLength)
+	{
+		int hostBits = hostBits(prefixLength);
+		return new IpAddress(hi & ~hostMaskHi(hostBits), lo & ~hostMaskLo(hostBits), v4);
+	}
+	
+	/**
+	 * Get the last address of the prefix of the address.
+	 * 
+	 * @param prefixLength the prefix length
+	 * 
+	 * @return the address with the host bits set
+	 */
+	public IpAddress lastInPrefix(int prefixLength)
+	{
+		int hostBits = hostBits(prefixLength);
+		return new IpAddress(hi | hostMaskHi(hostBits), lo | hostMaskLo(hostBits), v4);
+	}
+	
+	/**
+	 * Test if the address is in a prefix.
+	 * 
+	 * @param prefix the prefix address
+	 * @param prefixLength the prefix length
+	 * 
+	 * @return true, if the address is in the prefix
+	 */
+	public boolean inPrefix(IpAddress prefix, int prefixLength)
+	{
+		if (v4 != prefix.v4) {
+			return false;
+		}
+		int hostBits = hostBits(prefixLength);
+		return (((hi ^ prefix.hi) & ~hostMaskHi(hostBits)) == 0) &&
+				(((lo ^ prefix.lo) & ~hostMaskLo(hostBits)) == 0);
+	}
+	
+	/**
+	 * Test if the address is in a range.
+	 * 
+	 * @param start the first address of the range
+	 * @param end the last address of the range
+	 * 
+	 * @return true, if the address is in the range
+	 */
+	public boolean inRange(IpAddress start, IpAddress end)
+	{
+		return (compareTo(start) >= 0) && (compareTo(end) <= 0);
+	}
+	
+	/**
+	 * Gets the number of trailing zero bits of the address, which is the
+	 * largest number of host bits of a prefix which starts at the address.
+	 * 
+	 * @return the number of trailing zero bits, or the length of the address
+	 * in bits if the address is zero
+	 */
+	public int numberOfTrailingZeros()
+	{
+		if (lo != 0) {
+			return Math.min(getBits(), Long.numberOfTrailingZeros(lo));
+		}
+		if (hi != 0) {
+			return 64 + Long.numberOfTrailingZeros(hi);
+		}
+		return getBits();
+	}
+	
+	/**
+	 * Gets the address bytes.
+	 * 
+	 * @return the 4 or 16 address bytes, in network order
+	 */
+	public byte[] toBytes()
+	{
+		byte[] b = new byte[v4 ? 4 : 16];
+		if (v4) {
+			putLong(b, 0, 4, lo);
+		}
+		else {
+			putLong(b, 0, 8, hi);
+			putLong(b, 8, 8, lo);
+		}
+		return b;
+	}
+	
+	/**
+	 * Build the InetAddress of the address.
+	 * 
+	 * @return the InetAddress
+	 */
+	public InetAddress toInetAddress()
+	{
+		try {
+			return InetAddress.getByAddress(toBytes());
+		}
+		catch (UnknownHostException ex) {
+			// not thrown for 4 or 16 bytes
+			throw new IllegalStateException(ex);
+		}
+	}
+	
+	/**
+	 * Gets the address as an unsigned BigInteger.
+	 * 
+	 * @return the BigInteger
+	 */
+	public BigInteger toBigInteger()
+	{
+		return new BigInteger(1, toBytes());
+	}
+	
+	public int compareTo(IpAddress that)
+	{
+		if (v4 != that.v4) {
+			return v4 ? -1 : 1;
+		}
+		int c = unsignedCompare(hi, that.hi);
+		if (c != 0) {
+			return c;
+		}
+		return unsignedCompare(lo, that.lo);
+	}
+	
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof IpAddress)) {
+			return false;
+		}
+		IpAddress that = (IpAddress) obj;
+		return (hi == that.hi) && (lo == that.lo) && (v4 == that.v4);
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		int h = (int)(hi ^ (hi >>> 32));
+		h = 31 * h + (int)(lo ^ (lo >>> 32));
+		return v4 ? h : ~h;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return toInetAddress().getHostAddress();
+	}
+	
+	private int hostBits(int prefixLength)
+	{
+		if ((prefixLength < 0) || (prefixLength > getBits())) {
+			throw new IllegalArgumentException("Invalid prefix length: " + prefixLength);
+		}
+		return getBits() - prefixLength;
+	}
+	
+	private static long hostMaskHi(int hostBits)
+	{
+		return (hostBits > 64) ? (-1L >>> (128 - hostBits)) : 0;
+	}
+	
+	private static long hostMaskLo(int hostBits)
+	{
+		if (hostBits >= 64) {
+			return -1L;
+		}
+		return (hostBits == 0) ? 0 : (-1L >>> (64 - hostBits));
+	}
+	
+	private static int unsignedCompare(long x, long y)
+	{
+		x += Long.MIN_VALUE;
+		y += Long.MIN_VALUE;
+		return (x < y) ? -1 : ((x == y) ? 0 : 1);
+	}
+	
+	private static long toLong(byte[] b, int offset, int len)
+	{
+		long l = 0;
+		for (int i=offset; i<offset+len; i++) {
+			l = (l << 8) | (b[i] & 0xff);
+		}
+		return l;
+	}
+	
+	private static void putLong(byte[] b, int offset, int len, long l)
+	{
+		for (int i=offset+len-1; i>=offset; i--) {
+			b[i] = (byte)l;
+			l >>>= 8;
+		}
+	}
+}
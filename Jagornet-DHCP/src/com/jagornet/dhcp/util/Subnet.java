@@ -25,14 +25,9 @@
  */
 package com.jagornet.dhcp.util;
 
-import java.math.BigInteger;
-import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 /**
  * Title: Subnet
  * Description: A utility class for managing IPv6 subnets.
@@ -43,12 +38,12 @@ import org.slf4j.LoggerFactory;
  */
 public class Subnet implements Comparable<Subnet>
 {
-	/** The log. */
-	private static Logger log = LoggerFactory.getLogger(Subnet.class);
-
     /** The subnet address. */
     private InetAddress subnetAddress;
     
+    /** The subnet address, for comparison and containment. */
+    private IpAddress subnetIpAddress;
+    
     /** The prefix length. */
     private int prefixLength;
 
@@ -91,6 +86,7 @@ public class Subnet implements Comparable<Subnet>
     public Subnet(InetAddress subnetAddress, int prefixLength)
     {
 		this.subnetAddress = subnetAddress;
+		this.subnetIpAddress = IpAddress.valueOf(subnetAddress);
 		this.prefixLength = prefixLength;
     }
 
@@ -112,6 +108,17 @@ public class Subnet implements Comparable<Subnet>
     public void setSubnetAddress(InetAddress subnetAddress)
     {
         this.subnetAddress = subnetAddress;
+        this.subnetIpAddress = IpAddress.valueOf(subnetAddress);
+    }
+
+    /**
+     * Gets the subnet address.
+     * 
+     * @return the subnet address
+     */
+    public IpAddress getSubnetIpAddress()
+    {
+        return subnetIpAddress;
     }
 
     /**
@@ -141,28 +148,18 @@ public class Subnet implements Comparable<Subnet>
      */
     public InetAddress getEndAddress()
     {
-        InetAddress endAddr = null;
-        int maxPrefix = 0;
-        if (subnetAddress instanceof Inet4Address) {
-        	maxPrefix = 32;
-        }
-        else {
-        	maxPrefix = 128;
-        }
-        BigInteger start = new BigInteger(subnetAddress.getAddress());
+        return getEndIpAddress().toInetAddress();
+    }
+    
+    /**
+     * Gets the end address.
+     * 
+     * @return the end address
+     */
+    public IpAddress getEndIpAddress()
+    {
         // turn on each bit that isn't masked by the prefix
-        // note that bit zero(0) is the lowest order bit, so
-        // this loop logically moves from right to left
-        for (int i=0; i<(maxPrefix-prefixLength); i++) {
-            start = start.setBit(i);
-        }
-        try {
-            endAddr = InetAddress.getByAddress(start.toByteArray());
-        }
-        catch (UnknownHostException ex) {
-            log.error("Failed to calculate subnet end address: " + ex);
-        }
-        return endAddr;
+        return subnetIpAddress.lastInPrefix(prefixLength);
     }
     
     /**
@@ -174,20 +171,26 @@ public class Subnet implements Comparable<Subnet>
      */
     public boolean contains(InetAddress inetAddr)
     {
-        boolean rc = false;
-        BigInteger start = new BigInteger(getSubnetAddress().getAddress());
-        BigInteger end = new BigInteger(getEndAddress().getAddress());
-        BigInteger addr = new BigInteger(inetAddr.getAddress());
-        if ((addr.compareTo(start) >= 0) && (addr.compareTo(end) <= 0)) {
-            rc = true;
-        }
-        return rc;
+        return contains(IpAddress.valueOf(inetAddr));
+    }
+    
+    /**
+     * Contains.  Test if an IP address falls within a subnet.
+     * 
+     * @param ipAddr the IP address to check
+     * 
+     * @return true, if subnet contains the IP address
+     */
+    public boolean contains(IpAddress ipAddr)
+    {
+        // compare the bits of the prefix
+        return ipAddr.inPrefix(subnetIpAddress, prefixLength);
     }
 
 	public int compareTo(Subnet that)
 	{
-        BigInteger thisAddr = new BigInteger(this.getSubnetAddress().getAddress());
-        BigInteger thatAddr = new BigInteger(that.getSubnetAddress().getAddress());
+        IpAddress thisAddr = this.getSubnetIpAddress();
+        IpAddress thatAddr = that.getSubnetIpAddress();
         if (thisAddr.equals(thatAddr)) {
         	Integer thisPrefix = this.getPrefixLength();
         	Integer thatPrefix = that.getPrefixLength();
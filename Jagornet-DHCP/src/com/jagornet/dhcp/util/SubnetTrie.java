@@ -0,0 +1,364 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file SubnetTrie.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.util;
+
+import java.net.InetAddress;
+
+/**
+ * Title: SubnetTrie
+ * Description: A path-compressed binary trie of IPv4 and IPv6 prefixes,
+ * for the longest prefix match of an address.  The prefixes are kept as
+ * two longs of the high and low order bits, so the lookup only compares
+ * bits, without allocating.  The lookup of an InetAddress allocates only
+ * the copy of the address returned by InetAddress.getAddress().
+ * 
+ * The trie is built once, and is safe for concurrent lookups after it is
+ * published.  The first value put for a prefix is kept.
+ * 
+ * @author A. Gregory Rabil
+ */
+public class SubnetTrie<T>
+{
+	/** The root of the IPv4 prefixes. */
+	private Node<T> v4Root;
+	
+	/** The root of the IPv6 prefixes. */
+	private Node<T> v6Root;
+	
+	private int size;
+	
+	/**
+	 * Put a value for a subnet.
+	 * 
+	 * @param subnet the subnet
+	 * @param value the value
+	 * 
+	 * @return true, if put, or false if the subnet already has a value
+	 */
+	public boolean put(Subnet subnet, T value)
+	{
+		return put(subnet.getSubnetAddress(), subnet.getPrefixLength(), value);
+	}
+	
+	/**
+	 * Put a value for a prefix.
+	 * 
+	 * @param addr the prefix address
+	 * @param prefixLength the prefix length
+	 * @param value the value
+	 * 
+	 * @return true, if put, or false if the prefix already has a value
+	 */
+	public boolean put(InetAddress addr, int prefixLength, T value)
+	{
+		byte[] b = addr.getAddress();
+		if (b.length == 4) {
+			if ((prefixLength < 0) || (prefixLength > 32)) {
+				throw new IllegalArgumentException("Invalid IPv4 prefix length: " + prefixLength);
+			}
+			int before = size;
+			v4Root = insert(v4Root, maskHi(v4Hi(toInt(b)), prefixLength), 0,
+					prefixLength, value);
+			return (size > before);
+		}
+		else {
+			if ((prefixLength < 0) || (prefixLength > 128)) {
+				throw new IllegalArgumentException("Invalid IPv6 prefix length: " + prefixLength);
+			}
+			int before = size;
+			v6Root = insert(v6Root, maskHi(toLong(b, 0), prefixLength), 
+					maskLo(toLong(b, 8), prefixLength), prefixLength, value);
+			return (size > before);
+		}
+	}
+	
+	/**
+	 * Put a value for each address in a range, as the fewest prefixes
+	 * which cover the range.
+	 * 
+	 * @param startAddr the first address of the range
+	 * @param endAddr the last address of the range
+	 * @param value the value
+	 */
+	public void putRange(InetAddress startAddr, InetAddress endAddr, T value)
+	{
+		IpAddress start = IpAddress.valueOf(startAddr);
+		IpAddress end = IpAddress.valueOf(endAddr);
+		if (start.isV4() != end.isV4()) {
+			throw new IllegalArgumentException("Mismatched range: " + 
+					startAddr.getHostAddress() + "-" + endAddr.getHostAddress());
+		}
+		int bits = start.getBits();
+		while (start.compareTo(end) <= 0) {
+			// the largest block which is aligned at the start and ends in the range
+			int hostBits = start.numberOfTrailingZeros();
+			IpAddress last = start.lastInPrefix(bits - hostBits);
+			while (last.compareTo(end) > 0) {
+				hostBits--;
+				last = start.lastInPrefix(bits - hostBits);
+			}
+			if (start.isV4()) {
+				v4Root = insert(v4Root, v4Hi(start.toInt()), 0, bits - hostBits, value);
+			}
+			else {
+				v6Root = insert(v6Root, start.getHi(), start.getLo(), bits - hostBits, value);
+			}
+			if (last.compareTo(end) >= 0) {
+				break;
+			}
+			start = last.add(1);
+		}
+	}
+	
+	/**
+	 * Get the value of the longest prefix which contains the address.
+	 * 
+	 * @param addr the address
+	 * 
+	 * @return the value, or null if no prefix contains the address
+	 */
+	public T get(InetAddress addr)
+	{
+		byte[] b = addr.getAddress();
+		if (b.length == 4) {
+			return find(v4Root, v4Hi(toInt(b)), 0, 32, false);
+		}
+		return find(v6Root, toLong(b, 0), toLong(b, 8), 128, false);
+	}
+	
+	/**
+	 * Get the value of the longest prefix which contains the address.
+	 * 
+	 * @param addr the address
+	 * 
+	 * @return the value, or null if no prefix contains the address
+	 */
+	public T get(IpAddress addr)
+	{
+		if (addr.isV4()) {
+			return find(v4Root, v4Hi(addr.toInt()), 0, 32, false);
+		}
+		return find(v6Root, addr.getHi(), addr.getLo(), 128, false);
+	}
+	
+	/**
+	 * Get the value of a prefix, which must match exactly.
+	 * 
+	 * @param addr the prefix address
+	 * @param prefixLength the prefix length
+	 * 
+	 * @return the value, or null if the prefix has no value
+	 */
+	public T get(InetAddress addr, int prefixLength)
+	{
+		byte[] b = addr.getAddress();
+		if (b.length == 4) {
+			return find(v4Root, maskHi(v4Hi(toInt(b)), prefixLength), 0, prefixLength, true);
+		}
+		return find(v6Root, maskHi(toLong(b, 0), prefixLength), 
+				maskLo(toLong(b, 8), prefixLength), prefixLength, true);
+	}
+	
+	/**
+	 * Get the value of the longest prefix which contains the IPv4 address.
+	 * 
+	 * @param v4Addr the IPv4 address, in network order
+	 * 
+	 * @return the value, or null if no prefix contains the address
+	 */
+	public T get(int v4Addr)
+	{
+		return find(v4Root, v4Hi(v4Addr), 0, 32, false);
+	}
+	
+	/**
+	 * Get the value of the longest prefix which contains the IPv6 address.
+	 * 
+	 * @param hi the high order 64 bits of the IPv6 address
+	 * @param lo the low order 64 bits of the IPv6 address
+	 * 
+	 * @return the value, or null if no prefix contains the address
+	 */
+	public T get(long hi, long lo)
+	{
+		return find(v6Root, hi, lo, 128, false);
+	}
+	
+	/**
+	 * Gets the number of prefixes with a value.
+	 * 
+	 * @return the size
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	private Node<T> insert(Node<T> node, long hi, long lo, int len, T value)
+	{
+		if (node == null) {
+			size++;
+			return new Node<T>(hi, lo, len, value);
+		}
+		int common = Math.min(Math.min(len, node.len), 
+				commonLength(hi, lo, node.hi, node.lo));
+		if (common == node.len) {
+			if (len == node.len) {
+				if (node.value == null) {
+					node.value = value;
+					size++;
+				}
+			}
+			else if (bit(hi, lo, node.len)) {
+				node.one = insert(node.one, hi, lo, len, value);
+			}
+			else {
+				node.zero = insert(node.zero, hi, lo, len, value);
+			}
+			return node;
+		}
+		// the new prefix diverges from, or contains, the node's prefix
+		Node<T> parent = null;
+		if (common == len) {
+			parent = new Node<T>(hi, lo, len, value);
+		}
+		else {
+			parent = new Node<T>(maskHi(hi, common), maskLo(lo, common), common, null);
+			parent.setChild(bit(hi, lo, common), new Node<T>(hi, lo, len, value));
+		}
+		size++;
+		parent.setChild(bit(node.hi, node.lo, common), node);
+		return parent;
+	}
+	
+	private T find(Node<T> node, long hi, long lo, int len, boolean exact)
+	{
+		T value = null;
+		while ((node != null) && (node.len <= len)) {
+			if (commonLength(hi, lo, node.hi, node.lo) < node.len) {
+				break;
+			}
+			if (exact) {
+				if (node.len == len) {
+					return node.value;
+				}
+			}
+			else if (node.value != null) {
+				value = node.value;
+			}
+			if (node.len == len) {
+				break;
+			}
+			node = bit(hi, lo, node.len) ? node.one : node.zero;
+		}
+		return exact ? null : value;
+	}
+	
+	private static boolean bit(long hi, long lo, int i)
+	{
+		return (i < 64) ? ((hi << i) < 0) : ((lo << (i - 64)) < 0);
+	}
+	
+	private static int commonLength(long hi1, long lo1, long hi2, long lo2)
+	{
+		long x = hi1 ^ hi2;
+		if (x != 0) {
+			return Long.numberOfLeadingZeros(x);
+		}
+		x = lo1 ^ lo2;
+		if (x != 0) {
+			return 64 + Long.numberOfLeadingZeros(x);
+		}
+		return 128;
+	}
+	
+	private static long maskHi(long hi, int len)
+	{
+		if (len >= 64) {
+			return hi;
+		}
+		return (len == 0) ? 0 : (hi & (-1L << (64 - len)));
+	}
+	
+	private static long maskLo(long lo, int len)
+	{
+		if (len <= 64) {
+			return 0;
+		}
+		return (len >= 128) ? lo : (lo & (-1L << (128 - len)));
+	}
+	
+	private static long v4Hi(int v4Addr)
+	{
+		return (v4Addr & 0xffffffffL) << 32;
+	}
+	
+	private static int toInt(byte[] b)
+	{
+		return ((b[0] & 0xff) << 24) | ((b[1] & 0xff) << 16) | 
+				((b[2] & 0xff) << 8) | (b[3] & 0xff);
+	}
+	
+	private static long toLong(byte[] b, int offset)
+	{
+		long l = 0;
+		for (int i=offset; i<offset+8; i++) {
+			l = (l << 8) | (b[i] & 0xff);
+		}
+		return l;
+	}
+	
+	/**
+	 * A prefix of the trie, with or without a value.
+	 */
+	static class Node<T>
+	{
+		final long hi;
+		final long lo;
+		final int len;
+		T value;
+		Node<T> zero;
+		Node<T> one;
+		
+		Node(long hi, long lo, int len, T value)
+		{
+			this.hi = hi;
+			this.lo = lo;
+			this.len = len;
+			this.value = value;
+		}
+		
+		void setChild(boolean one, Node<T> child)
+		{
+			if (one) {
+				this.one = child;
+			}
+			else {
+				this.zero = child;
+			}
+		}
+	}
+}
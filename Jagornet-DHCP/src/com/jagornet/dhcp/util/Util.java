@@ -198,7 +198,7 @@ public class Util
     }
     
     /**
-     * Compare IP addresses to determine order
+     * Compare IP addresses to determine order, as unsigned values
      * 
      * @param ip1
      * @param ip2
@@ -206,9 +206,7 @@ public class Util
      */
     public static int compareInetAddrs(InetAddress ip1, InetAddress ip2)
     {
-    	BigInteger bi1 = new BigInteger(ip1.getAddress());
-    	BigInteger bi2 = new BigInteger(ip2.getAddress());
-    	return bi1.compareTo(bi2);
+    	return IpAddress.valueOf(ip1).compareTo(IpAddress.valueOf(ip2));
     }
 	
     /**
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC. 
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file TestEncodedDhcpOptions.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.db;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class TestEncodedDhcpOptions.
+ */
+public class TestEncodedDhcpOptions extends TestCase
+{
+	private List<DhcpOption> buildOptions()
+	{
+		List<DhcpOption> options = new ArrayList<DhcpOption>();
+		DhcpOption opt = new DhcpOption();
+		opt.setCode(81);
+		opt.setValue(new byte[] { 3, 1, 0, 0 });
+		options.add(opt);
+		opt = new DhcpOption();
+		opt.setCode(23);
+		opt.setValue(new byte[100]);
+		options.add(opt);
+		return options;
+	}
+	
+	private byte[] legacyEncode(Collection<DhcpOption> options)
+	{
+		ByteBuffer bb = ByteBuffer.allocate(1024);
+		for (DhcpOption option : options) {
+			bb.putShort((short)option.getCode());
+			bb.putShort((short)option.getValue().length);
+			bb.put(option.getValue());
+		}
+		bb.flip();
+		byte[] b = new byte[bb.limit()];
+		bb.get(b);
+		return b;
+	}
+	
+	public void testEncodeDecode() throws Exception
+	{
+		List<DhcpOption> options = buildOptions();
+		byte[] encoded = EncodedDhcpOptions.encode(options);
+		assertTrue(EncodedDhcpOptions.isCurrentEncoding(encoded));
+		// smaller than the original two byte code and length encoding
+		assertTrue(encoded.length < legacyEncode(options).length);
+		
+		List<DhcpOption> decoded = EncodedDhcpOptions.decode(encoded);
+		assertEquals(2, decoded.size());
+		assertEquals(81, decoded.get(0).getCode());
+		assertEquals(23, decoded.get(1).getCode());
+		assertEquals(100, decoded.get(1).getValue().length);
+	}
+	
+	public void testDecodeLegacy() throws Exception
+	{
+		List<DhcpOption> decoded = EncodedDhcpOptions.decode(legacyEncode(buildOptions()));
+		assertEquals(2, decoded.size());
+		assertEquals(81, decoded.get(0).getCode());
+		assertEquals(4, decoded.get(0).getValue().length);
+	}
+	
+	public void testLazyDecode() throws Exception
+	{
+		byte[] encoded = EncodedDhcpOptions.encode(buildOptions());
+		EncodedDhcpOptions options = new EncodedDhcpOptions(encoded);
+		assertFalse(options.isEmpty());
+		assertFalse(options.isDecoded());
+		// unmodified options are written back as is
+		assertSame(encoded, options.getEncoded());
+		
+		assertEquals(81, options.get(0).getCode());
+		assertTrue(options.isDecoded());
+		options.remove(0);
+		assertEquals(1, EncodedDhcpOptions.decode(options.getEncoded()).size());
+	}
+	
+	public void testListEquals() throws Exception
+	{
+		EncodedDhcpOptions options = 
+			new EncodedDhcpOptions(EncodedDhcpOptions.encode(buildOptions()));
+		List<DhcpOption> copy = new ArrayList<DhcpOption>(options);
+		// equal to any list of the same options, either way
+		assertTrue(options.equals(copy));
+		assertTrue(copy.equals(options));
+		assertEquals(copy.hashCode(), options.hashCode());
+		copy.remove(0);
+		assertFalse(options.equals(copy));
+		assertFalse(copy.equals(options));
+	}
+	
+	public void testEmpty() throws Exception
+	{
+		assertNull(EncodedDhcpOptions.encode(null));
+		byte[] encoded = EncodedDhcpOptions.encode(new ArrayList<DhcpOption>());
+		assertEquals(0, encoded.length);
+		assertTrue(new EncodedDhcpOptions(encoded).isEmpty());
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file TestJdbcLeaseManagerV3.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.db;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.jagornet.dhcp.server.config.DhcpServerConfiguration;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.server.request.binding.Range;
+
+/**
+ * The Class TestJdbcLeaseManagerV3.
+ */
+public class TestJdbcLeaseManagerV3 extends TestCase
+{
+	private static int dbCount = 0;
+
+	private DriverManagerDataSource dataSource;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		DhcpServerConfiguration.configFilename = BaseTestCase.configFilename;
+		DhcpServerConfiguration.getInstance();
+		DhcpServerPolicies.setProperty(Property.DATABASE_SCHEMA_TYTPE, DbSchemaManager.SCHEMATYPE_JDBC_H2);
+		dataSource = new DriverManagerDataSource("jdbc:h2:mem:testv3-" + (dbCount++) +
+				";DB_CLOSE_DELAY=-1", "sa", "");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		DhcpServerPolicies.setProperty(Property.DATABASE_TABLE_PER_IATYPE, "false");
+		super.tearDown();
+	}
+
+	public void testAddressKeys() throws Exception
+	{
+		String[] ips = { "0.0.0.0", "10.0.0.1", "10.0.0.2", "192.168.0.1", "255.255.255.255",
+						 "2001:db8::1", "2001:db8::ffff:1", "2001:db8:0:1::", "fe80::1", "ffff::1" };
+		long prevHi = Long.MIN_VALUE;
+		long prevLo = Long.MIN_VALUE;
+		for (int i=0; i<ips.length; i++) {
+			InetAddress inetAddr = InetAddress.getByName(ips[i]);
+			long hi = JdbcLeaseManagerV3.addressHi(inetAddr);
+			long lo = JdbcLeaseManagerV3.addressLo(inetAddr);
+			assertEquals(inetAddr, JdbcLeaseManagerV3.toInetAddress(hi, lo));
+			if (i > 0) {
+				// the keys sort in address order
+				assertTrue(ips[i], (hi > prevHi) || ((hi == prevHi) && (lo > prevLo)));
+			}
+			prevHi = hi;
+			prevLo = lo;
+		}
+	}
+
+	public void testMigrateV2() throws Exception
+	{
+		migrateV2(false);
+	}
+
+	public void testMigrateV2TablePerIaType() throws Exception
+	{
+		DhcpServerPolicies.setProperty(Property.DATABASE_TABLE_PER_IATYPE, "true");
+		migrateV2(true);
+	}
+
+	private void migrateV2(boolean tablePerIaType) throws Exception
+	{
+		DbSchemaManager.createSchema(dataSource, DbSchemaManager.SCHEMA_V2_FILENAME);
+		JdbcLeaseManager v2 = new JdbcLeaseManager();
+		v2.setDataSource(dataSource);
+		v2.createIA(buildIA(new byte[] { 1, 2, 3, 4, 5, 6 }, IdentityAssoc.V4_TYPE, 0,
+				"10.0.0.1", "10.0.0.2", "10.0.0.3"));
+		v2.createIA(buildIA(new byte[] { 0, 1, 0, 1 }, IdentityAssoc.NA_TYPE, 1,
+				"2001:db8::1", "2001:db8::2"));
+
+		JdbcLeaseManagerV3 v3 = new JdbcLeaseManagerV3();
+		v3.setDataSource(dataSource);
+		v3.init();
+		assertEquals(tablePerIaType, v3.isTablePerIaType());
+		List<String> tableNames = DbSchemaManager.getTableNames(dataSource);
+		assertFalse(tableNames.contains("DHCPLEASE"));
+		assertEquals(tablePerIaType ? 4 : 1, tableNames.size());
+
+		IdentityAssoc ia = v3.findIA(new byte[] { 1, 2, 3, 4, 5, 6 }, IdentityAssoc.V4_TYPE, 0);
+		assertNotNull(ia);
+		assertEquals(3, ia.getIaAddresses().size());
+		assertEquals(InetAddress.getByName("10.0.0.1"), ia.getIaAddresses().iterator().next().getIpAddress());
+		assertNotNull(v3.findIA(InetAddress.getByName("2001:db8::2")));
+
+		List<InetAddress> ips = v3.findExistingIPs(InetAddress.getByName("10.0.0.2"),
+				InetAddress.getByName("10.0.0.255"));
+		assertEquals(2, ips.size());
+		assertEquals(InetAddress.getByName("10.0.0.2"), ips.get(0));
+		ips = v3.findExistingIPs(InetAddress.getByName("2001:db8::"),
+				InetAddress.getByName("2001:db8:0:1::ffff"));
+		assertEquals(2, ips.size());
+
+		IaAddress iaAddr = new IaAddress();
+		iaAddr.setIpAddress(InetAddress.getByName("10.0.0.3"));
+		iaAddr.setState(IaAddress.RELEASED);
+		v3.updateIaAddr(iaAddr);
+		List<IaAddress> unused = v3.findUnusedIaAddresses(InetAddress.getByName("10.0.0.0"),
+				InetAddress.getByName("10.0.0.255"));
+		assertEquals(1, unused.size());
+		assertEquals(iaAddr.getIpAddress(), unused.get(0).getIpAddress());
+
+		// reconciling the IPv4 ranges must not touch the IPv6 leases
+		List<Range> ranges = new ArrayList<Range>();
+		ranges.add(new Range(InetAddress.getByName("10.0.0.2"), InetAddress.getByName("10.0.0.3")));
+		v3.reconcileIaAddresses(ranges);
+		assertNull(v3.findIA(InetAddress.getByName("10.0.0.1")));
+		assertNotNull(v3.findIA(InetAddress.getByName("10.0.0.2")));
+		assertNotNull(v3.findIA(InetAddress.getByName("2001:db8::1")));
+
+		v3.deleteIaAddr(iaAddr);
+		assertNull(v3.findIA(iaAddr.getIpAddress()));
+	}
+
+	public void testFindIaPrefixes() throws Exception
+	{
+		DhcpServerPolicies.setProperty(Property.DATABASE_TABLE_PER_IATYPE, "true");
+		JdbcLeaseManagerV3 v3 = new JdbcLeaseManagerV3();
+		v3.setDataSource(dataSource);
+		v3.init();
+		IdentityAssoc ia = buildIA(new byte[] { 0, 1, 0, 1 }, IdentityAssoc.PD_TYPE, 1);
+		List<IaPrefix> iaPrefixes = new ArrayList<IaPrefix>();
+		String[] prefixes = { "2001:db8:0:100::", "2001:db8:1::" };
+		for (int i=0; i<prefixes.length; i++) {
+			IaPrefix iaPrefix = new IaPrefix();
+			iaPrefix.setIpAddress(InetAddress.getByName(prefixes[i]));
+			iaPrefix.setPrefixLength((short)(56 - i*8));
+			iaPrefix.setState(IaAddress.COMMITTED);
+			Date now = new Date();
+			iaPrefix.setStartTime(now);
+			iaPrefix.setPreferredEndTime(new Date(now.getTime() + 3600000));
+			iaPrefix.setValidEndTime(new Date(now.getTime() + 3600000));
+			iaPrefixes.add(iaPrefix);
+		}
+		ia.setIaAddresses(iaPrefixes);
+		v3.createIA(ia);
+		v3.createIA(buildIA(new byte[] { 0, 1, 0, 2 }, IdentityAssoc.NA_TYPE, 1, "2001:db8::1"));
+
+		// the prefixes with their lengths, without the addresses
+		List<IaPrefix> found = v3.findIaPrefixes(InetAddress.getByName("2001:db8::"),
+				InetAddress.getByName("2001:db8:ffff:ffff:ffff:ffff:ffff:ffff"));
+		assertEquals(2, found.size());
+		assertEquals(InetAddress.getByName("2001:db8:0:100::"), found.get(0).getIpAddress());
+		assertEquals(56, found.get(0).getPrefixLength());
+		assertEquals(48, found.get(1).getPrefixLength());
+	}
+
+	private IdentityAssoc buildIA(byte[] duid, byte iatype, long iaid, String... ips) throws Exception
+	{
+		IdentityAssoc ia = new IdentityAssoc();
+		ia.setDuid(duid);
+		ia.setIatype(iatype);
+		ia.setIaid(iaid);
+		ia.setState(IaAddress.COMMITTED);
+		List<IaAddress> iaAddrs = new ArrayList<IaAddress>();
+		for (String ip : ips) {
+			IaAddress iaAddr = new IaAddress();
+			iaAddr.setIpAddress(InetAddress.getByName(ip));
+			iaAddr.setState(IaAddress.COMMITTED);
+			Date now = new Date();
+			iaAddr.setStartTime(now);
+			iaAddr.setPreferredEndTime(new Date(now.getTime() + 3600000));
+			iaAddr.setValidEndTime(new Date(now.getTime() + 3600000));
+			iaAddrs.add(iaAddr);
+		}
+		ia.setIaAddresses(iaAddrs);
+		return ia;
+	}
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file TestLeaseManagerOptions.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.db;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.jagornet.dhcp.option.v4.DhcpV4ClientFqdnOption;
+import com.jagornet.dhcp.server.config.DhcpServerConfiguration;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.util.DhcpConstants;
+
+/**
+ * The Class TestLeaseManagerOptions.
+ */
+public class TestLeaseManagerOptions extends TestCase
+{
+	private static int dbCount = 0;
+
+	private CountingLeaseManager leaseMgr;
+	private InetAddress inetAddr;
+
+	/**
+	 * Counts the reads, option writes and time writes of the leases.
+	 */
+	static class CountingLeaseManager extends JdbcLeaseManager
+	{
+		int reads;
+		int optionWrites;
+		int timeWrites;
+
+		@Override
+		protected DhcpLease findDhcpLeaseForInetAddr(InetAddress inetAddr) {
+			reads++;
+			return super.findDhcpLeaseForInetAddr(inetAddr);
+		}
+
+		@Override
+		protected void updateIpAddrOptions(InetAddress inetAddr,
+				Collection<DhcpOption> ipAddrOptions) {
+			optionWrites++;
+			super.updateIpAddrOptions(inetAddr, ipAddrOptions);
+		}
+
+		@Override
+		protected void updateIpAddrTimes(InetAddress inetAddr,
+				Date preferredEndTime, Date validEndTime) {
+			timeWrites++;
+			super.updateIpAddrTimes(inetAddr, preferredEndTime, validEndTime);
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		DhcpServerConfiguration.configFilename = BaseTestCase.configFilename;
+		DhcpServerConfiguration.getInstance();
+		DhcpServerPolicies.setProperty(Property.DATABASE_SCHEMA_TYTPE, DbSchemaManager.SCHEMATYPE_JDBC_H2);
+		// flushed by the tests
+		DhcpServerPolicies.setProperty(Property.DATABASE_OPTIONS_FLUSH_PERIOD, "3600000");
+		DhcpServerPolicies.setProperty(Property.DATABASE_LEASE_TIMES_FLUSH_PERIOD, "3600000");
+		DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:testoptions-" +
+				(dbCount++) + ";DB_CLOSE_DELAY=-1", "sa", "");
+		DbSchemaManager.createSchema(dataSource, DbSchemaManager.SCHEMA_V2_FILENAME);
+		leaseMgr = new CountingLeaseManager();
+		leaseMgr.setDataSource(dataSource);
+		inetAddr = InetAddress.getByName("10.0.0.1");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		DhcpServerPolicies.setProperty(Property.DATABASE_OPTIONS_FLUSH_PERIOD,
+				Property.DATABASE_OPTIONS_FLUSH_PERIOD.value());
+		DhcpServerPolicies.setProperty(Property.DATABASE_LEASE_TIMES_FLUSH_PERIOD,
+				Property.DATABASE_LEASE_TIMES_FLUSH_PERIOD.value());
+		super.tearDown();
+	}
+
+	private IdentityAssoc createIA() throws Exception
+	{
+		IdentityAssoc ia = new IdentityAssoc();
+		ia.setDuid(new byte[] { 1, 2, 3, 4, 5, 6 });
+		ia.setIatype(IdentityAssoc.V4_TYPE);
+		ia.setState(IaAddress.COMMITTED);
+		IaAddress iaAddr = new IaAddress();
+		iaAddr.setIpAddress(inetAddr);
+		iaAddr.setState(IaAddress.COMMITTED);
+		Date now = new Date();
+		iaAddr.setStartTime(now);
+		iaAddr.setPreferredEndTime(new Date(now.getTime() + 3600000));
+		iaAddr.setValidEndTime(new Date(now.getTime() + 3600000));
+		List<IaAddress> iaAddrs = new ArrayList<IaAddress>();
+		iaAddrs.add(iaAddr);
+		ia.setIaAddresses(iaAddrs);
+		leaseMgr.createIA(ia);
+		return ia;
+	}
+
+	private DhcpV4ClientFqdnOption buildFqdnOption(String fqdn)
+	{
+		DhcpV4ClientFqdnOption fqdnOption = new DhcpV4ClientFqdnOption();
+		fqdnOption.setDomainName(fqdn);
+		return fqdnOption;
+	}
+
+	private DhcpOption findFqdnOption() throws Exception
+	{
+		return leaseMgr.findIA(inetAddr).getIaAddresses().iterator().next()
+				.getDhcpOption(DhcpConstants.V4OPTION_CLIENT_FQDN);
+	}
+
+	public void testSaveOptionFlushedOnce() throws Exception
+	{
+		IdentityAssoc ia = createIA();
+		IaAddress iaAddr = ia.getIaAddresses().iterator().next();
+		DhcpV4ClientFqdnOption fqdnOption = buildFqdnOption("host.example.com.");
+		// the forward and reverse DDNS updates complete
+		leaseMgr.saveDhcpOption(iaAddr, fqdnOption);
+		leaseMgr.saveDhcpOption(iaAddr, fqdnOption);
+		assertEquals(0, leaseMgr.reads);
+		assertEquals(0, leaseMgr.optionWrites);
+		assertNull(findFqdnOption());
+
+		assertEquals(1, leaseMgr.flushDhcpOptions());
+		assertEquals(1, leaseMgr.optionWrites);
+		assertNotNull(findFqdnOption());
+		assertEquals(0, leaseMgr.flushDhcpOptions());
+
+		// unchanged, so not written again
+		leaseMgr.saveDhcpOption(iaAddr, fqdnOption);
+		assertEquals(0, leaseMgr.flushDhcpOptions());
+
+		leaseMgr.deleteDhcpOption(iaAddr, fqdnOption);
+		leaseMgr.deleteDhcpOption(iaAddr, fqdnOption);
+		assertEquals(1, leaseMgr.flushDhcpOptions());
+		assertNull(findFqdnOption());
+		assertEquals(2, leaseMgr.optionWrites);
+	}
+
+	public void testSaveOptionMergedIntoLease() throws Exception
+	{
+		IdentityAssoc ia = createIA();
+		IaAddress iaAddr = ia.getIaAddresses().iterator().next();
+		leaseMgr.saveDhcpOption(iaAddr, buildFqdnOption("host.example.com."));
+
+		// the lease is renewed with an address without the option
+		IaAddress renewAddr = new IaAddress();
+		renewAddr.setIpAddress(inetAddr);
+		renewAddr.setState(IaAddress.COMMITTED);
+		renewAddr.setStartTime(new Date());
+		renewAddr.setPreferredEndTime(new Date(System.currentTimeMillis() + 7200000));
+		renewAddr.setValidEndTime(renewAddr.getPreferredEndTime());
+		List<IaAddress> updateAddrs = new ArrayList<IaAddress>();
+		updateAddrs.add(renewAddr);
+		leaseMgr.updateIA(ia, null, updateAddrs, null);
+
+		assertNotNull(findFqdnOption());
+		assertEquals(0, leaseMgr.flushDhcpOptions());
+		assertEquals(0, leaseMgr.optionWrites);
+	}
+
+	private IaAddress findIaAddr() throws Exception
+	{
+		return leaseMgr.findIA(inetAddr).getIaAddresses().iterator().next();
+	}
+
+	private void extendTimes(IaAddress iaAddr, long validEnd)
+	{
+		iaAddr.setPreferredEndTime(new Date(validEnd));
+		iaAddr.setValidEndTime(new Date(validEnd));
+	}
+
+	public void testLeaseTimesFlushedOnce() throws Exception
+	{
+		IdentityAssoc ia = createIA();
+		IaAddress iaAddr = ia.getIaAddresses().iterator().next();
+		long stored = iaAddr.getValidEndTime().getTime();
+		long validEnd = System.currentTimeMillis() + 7200000;
+		// renewed twice before the flush
+		extendTimes(iaAddr, validEnd - 1000);
+		leaseMgr.updateIaAddrTimes(iaAddr, true);
+		extendTimes(iaAddr, validEnd);
+		leaseMgr.updateIaAddrTimes(iaAddr, true);
+		assertEquals(0, leaseMgr.timeWrites);
+		assertEquals(stored / 1000, findIaAddr().getValidEndTime().getTime() / 1000);
+
+		assertEquals(1, leaseMgr.flushLeaseTimes());
+		assertEquals(1, leaseMgr.timeWrites);
+		assertEquals(validEnd / 1000, findIaAddr().getValidEndTime().getTime() / 1000);
+		assertEquals(0, leaseMgr.flushLeaseTimes());
+
+		// not deferred, so written now
+		extendTimes(iaAddr, validEnd + 1000);
+		leaseMgr.updateIaAddrTimes(iaAddr, false);
+		assertEquals(2, leaseMgr.timeWrites);
+		assertEquals((validEnd + 1000) / 1000, findIaAddr().getValidEndTime().getTime() / 1000);
+	}
+
+	public void testLeaseTimesNotWrittenForReleasedLease() throws Exception
+	{
+		IdentityAssoc ia = createIA();
+		IaAddress iaAddr = ia.getIaAddresses().iterator().next();
+		extendTimes(iaAddr, System.currentTimeMillis() + 7200000);
+		leaseMgr.updateIaAddrTimes(iaAddr, true);
+
+		// released by another address object, as by the binding manager
+		IaAddress releaseAddr = new IaAddress();
+		releaseAddr.setIpAddress(inetAddr);
+		releaseAddr.setState(IaAddress.RELEASED);
+		leaseMgr.updateIaAddr(releaseAddr);
+		// written by the flush, but not to the released lease
+		extendTimes(iaAddr, System.currentTimeMillis() + 7200000);
+		leaseMgr.updateIaAddrTimes(iaAddr, true);
+		assertEquals(1, leaseMgr.flushLeaseTimes());
+		IaAddress found = findIaAddr();
+		assertEquals(IaAddress.RELEASED, found.getState());
+		assertNull(found.getValidEndTime());
+	}
+
+	public void testPendingTimesDroppedForUpdatedLease() throws Exception
+	{
+		IdentityAssoc ia = createIA();
+		IaAddress iaAddr = ia.getIaAddresses().iterator().next();
+		extendTimes(iaAddr, System.currentTimeMillis() + 7200000);
+		leaseMgr.updateIaAddrTimes(iaAddr, true);
+		List<IaAddress> updateAddrs = new ArrayList<IaAddress>();
+		updateAddrs.add(iaAddr);
+		leaseMgr.updateIA(ia, null, updateAddrs, null);
+		assertEquals(0, leaseMgr.flushLeaseTimes());
+
+		leaseMgr.updateIaAddrTimes(iaAddr, true);
+		leaseMgr.deleteIA(ia);
+		createIA();
+		assertEquals(0, leaseMgr.flushLeaseTimes());
+		assertEquals(0, leaseMgr.timeWrites);
+	}
+
+	public void testPendingOptionDroppedForNewLease() throws Exception
+	{
+		IdentityAssoc ia = createIA();
+		IaAddress iaAddr = ia.getIaAddresses().iterator().next();
+		leaseMgr.saveDhcpOption(iaAddr, buildFqdnOption("old.example.com."));
+		leaseMgr.deleteIA(ia);
+		createIA();
+		assertEquals(0, leaseMgr.flushDhcpOptions());
+		assertNull(findFqdnOption());
+	}
+}
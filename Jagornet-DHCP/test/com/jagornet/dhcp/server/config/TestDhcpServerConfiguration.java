@@ -25,6 +25,11 @@
  */
 package com.jagornet.dhcp.server.config;
 
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.util.SortedMap;
 
@@ -132,4 +137,120 @@ public class TestDhcpServerConfiguration extends TestCase
         assertEquals(InetAddress.getByName("2001:DB8:3::"), 
                      subMap.lastKey().getSubnetAddress());
     }
+    
+    /**
+     * Test the configuration digest.
+     * 
+     * @throws Exception the exception
+     */
+    public void testConfigDigest() throws Exception
+    {
+    	String configFilename = "test/com/jagornet/dhcp/server/config/dhcpServerConfigLinkTest1.xml";
+        File file = File.createTempFile("dhcpServerConfigDigest", ".xml");
+        File digestFile = new File(file.getPath() + ".digest");
+        try {
+        	DhcpServerConfig config = DhcpServerConfiguration.loadConfig(configFilename);
+        	DhcpServerConfiguration.saveConfig(config, file.getPath());
+        	DhcpServerConfigDigest validated = new DhcpServerConfigDigest(digestFile.getPath());
+        	
+        	config = DhcpServerConfiguration.parseConfig(file.getPath(), validated);
+        	assertEquals(5, config.getLinks().sizeOfLinkArray());
+        	assertTrue(digestFile.exists());
+        	byte[] digest = DhcpServerConfigDigest.digest(readFile(file));
+        	assertTrue(validated.isValidated(file.length(), digest));
+        	assertFalse(validated.isValidated(file.length() + 1, digest));
+        	
+        	config = DhcpServerConfiguration.parseConfig(file.getPath(), validated);
+        	assertEquals(5, config.getLinks().sizeOfLinkArray());
+        	
+        	// a changed file is validated again
+        	FileWriter writer = new FileWriter(file);
+        	writer.write("<dhc:dhcpServerConfig xmlns:dhc=\"http://jagornet.com/dhcp/xml\">" +
+        			"<unknownElement/></dhc:dhcpServerConfig>");
+        	writer.close();
+        	try {
+        		DhcpServerConfiguration.parseConfig(file.getPath(), validated);
+        		fail("Expected DhcpServerConfigException");
+        	}
+        	catch (DhcpServerConfigException ex) {
+        		// expected
+        	}
+        	assertFalse(validated.isValidated(file.length(), DhcpServerConfigDigest.digest(readFile(file))));
+        }
+        finally {
+        	file.delete();
+        	digestFile.delete();
+        }
+    }
+    
+    private static byte[] readFile(File file) throws Exception
+    {
+    	byte[] data = new byte[(int) file.length()];
+    	DataInputStream in = new DataInputStream(new FileInputStream(file));
+    	try {
+    		in.readFully(data);
+    	}
+    	finally {
+    		in.close();
+    	}
+    	return data;
+    }
+    
+    /**
+     * Test reload.
+     * 
+     * @throws Exception the exception
+     */
+    public void testReload() throws Exception
+    {
+    	String savedFilename = DhcpServerConfiguration.configFilename;
+    	String configFilename = "test/com/jagornet/dhcp/server/config/dhcpServerConfigLinkTest1.xml";
+    	DhcpServerConfiguration.configFilename = configFilename;
+        DhcpServerConfiguration serverConfig = DhcpServerConfiguration.getInstance();
+        
+        File file = File.createTempFile("dhcpServerConfigReload", ".xml");
+        try {
+        	// the instance may have been loaded from another file
+        	serverConfig.reload();
+        	assertEquals(5, serverConfig.getLinkCount());
+        	
+        	DhcpServerConfig config = DhcpServerConfiguration.loadConfig(configFilename);
+        	config.getLinks().removeLink(0);
+        	DhcpServerConfiguration.saveConfig(config, file.getPath());
+        	DhcpServerConfiguration.configFilename = file.getPath();
+        	
+        	Inet6Address local = (Inet6Address) InetAddress.getByName("2001:DB8:3::1");
+        	Inet6Address remote = (Inet6Address) InetAddress.getByName("fe80::1");
+        	DhcpLink oldLink = serverConfig.findDhcpLink(local, remote);
+        	assertNotNull(oldLink);
+        	int reloadCount = serverConfig.getReloadCount();
+        	serverConfig.reload();
+        	assertEquals(reloadCount + 1, serverConfig.getReloadCount());
+        	assertNull(serverConfig.getLastReloadError());
+        	assertEquals(4, serverConfig.getLinkCount());
+        	assertNull(serverConfig.findDhcpLink(
+        			(Inet6Address) InetAddress.getByName("2001:DB8:1::1"), remote));
+        	DhcpLink newLink = serverConfig.findDhcpLink(local, remote);
+        	assertNotNull(newLink);
+        	assertNotSame(oldLink, newLink);
+        	// the link of the old configuration is unchanged
+        	assertEquals(0, oldLink.getSubnet().compareTo(newLink.getSubnet()));
+        	assertEquals(oldLink.getLink().getName(), newLink.getLink().getName());
+        	
+        	// a file which fails to load keeps the current configuration
+        	FileWriter writer = new FileWriter(file);
+        	writer.write("<dhcpServerConfig>");
+        	writer.close();
+        	assertTrue(serverConfig.reloadConfig().startsWith("Reload failed"));
+        	assertNotNull(serverConfig.getLastReloadError());
+        	assertEquals(reloadCount + 1, serverConfig.getReloadCount());
+        	assertEquals(4, serverConfig.getLinkCount());
+        	assertSame(newLink, serverConfig.findDhcpLink(local, remote));
+        }
+        finally {
+        	DhcpServerConfiguration.configFilename = savedFilename;
+        	serverConfig.reload();
+        	file.delete();
+        }
+    }
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file TestTransactionLog.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.jagornet.dhcp.message.DhcpV4Message;
+import com.jagornet.dhcp.message.DhcpV6Message;
+import com.jagornet.dhcp.message.DhcpV6RelayMessage;
+import com.jagornet.dhcp.option.base.BaseOpaqueData;
+import com.jagornet.dhcp.option.v6.DhcpV6ClientIdOption;
+import com.jagornet.dhcp.option.v6.DhcpV6IaAddrOption;
+import com.jagornet.dhcp.option.v6.DhcpV6IaNaOption;
+import com.jagornet.dhcp.option.v6.DhcpV6RelayOption;
+import com.jagornet.dhcp.util.DhcpConstants;
+
+/**
+ * The Class TestTransactionLog.
+ */
+public class TestTransactionLog extends TestCase
+{
+	private File dir;
+	private File file;
+	private TransactionLog txLog;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		dir = File.createTempFile("txlog", "");
+		dir.delete();
+		dir.mkdirs();
+		file = new File(dir, "transactions.log");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (txLog != null) {
+			txLog.shutdown();
+		}
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		dir.delete();
+		super.tearDown();
+	}
+
+	private List<String> readLines(File f) throws Exception
+	{
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(f), "UTF-8"));
+		try {
+			String line = null;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		}
+		finally {
+			reader.close();
+		}
+		return lines;
+	}
+
+	private DhcpV4Message buildV4Request() throws Exception
+	{
+		DhcpV4Message request = new DhcpV4Message(
+				new InetSocketAddress("10.0.0.1", DhcpConstants.V4_SERVER_PORT),
+				new InetSocketAddress("10.0.0.5", DhcpConstants.V4_CLIENT_PORT));
+		request.setMessageType((short)DhcpConstants.V4MESSAGE_TYPE_DISCOVER);
+		request.setTransactionId(0xdeadbeefL);
+		request.setChAddr(new byte[] { 0, 0x11, 0x22, 0x33, 0x44, (byte)0xaa });
+		request.setGiAddr(DhcpConstants.ZEROADDR_V4);
+		return request;
+	}
+
+	public void testV4() throws Exception
+	{
+		txLog = new TransactionLog(file, 16, 0, 0);
+		txLog.start();
+		DhcpV4Message request = buildV4Request();
+		DhcpV4Message reply = new DhcpV4Message(request.getLocalAddress(),
+				request.getRemoteAddress());
+		reply.setMessageType((short)DhcpConstants.V4MESSAGE_TYPE_OFFER);
+		reply.setYiAddr(InetAddress.getByName("10.0.0.100"));
+		assertTrue(txLog.log(request, reply, System.nanoTime()));
+		assertTrue(txLog.log(request, null, System.nanoTime()));
+		txLog.shutdown();
+
+		List<String> lines = readLines(file);
+		assertEquals(2, lines.size());
+		String line = lines.get(0);
+		assertTrue(line, line.matches("\\{\"time\":\"\\d{4}-\\d\\d-\\d\\dT\\d\\d:\\d\\d:\\d\\d\\.\\d{3}Z\",.*\\}"));
+		assertTrue(line, line.contains(",\"v\":4,\"peer\":\"10.0.0.5\",\"link\":\"10.0.0.1\"," +
+				"\"xid\":\"deadbeef\",\"chaddr\":\"0011223344aa\",\"type\":\"Discover\"," +
+				"\"reply\":\"Offer\",\"yiaddr\":\"10.0.0.100\",\"usecs\":"));
+		assertTrue(lines.get(1), lines.get(1).contains("\"reply\":null,\"usecs\":"));
+		assertEquals(2, txLog.getWritten());
+	}
+
+	public void testV6Relay() throws Exception
+	{
+		txLog = new TransactionLog(file, 16, 0, 0);
+		txLog.start();
+		InetSocketAddress local = new InetSocketAddress("2001:db8:2::1", DhcpConstants.V6_SERVER_PORT);
+		InetSocketAddress relayAddr = new InetSocketAddress("2001:db8:1::1", DhcpConstants.V6_SERVER_PORT);
+		DhcpV6Message request = new DhcpV6Message(local, relayAddr);
+		request.setMessageType(DhcpConstants.V6MESSAGE_TYPE_SOLICIT);
+		request.setTransactionId(0x0a0b0c);
+		DhcpV6ClientIdOption clientId = new DhcpV6ClientIdOption();
+		clientId.setOpaqueData(new BaseOpaqueData(new byte[] { 0, 1, 0, 1, (byte)0xfe }));
+		request.putDhcpOption(clientId);
+		DhcpV6RelayMessage relay = new DhcpV6RelayMessage(local, relayAddr);
+		relay.setMessageType(DhcpConstants.V6MESSAGE_TYPE_RELAY_FORW);
+		relay.setLinkAddress(InetAddress.getByName("2001:db8::1"));
+		relay.setPeerAddress(InetAddress.getByName("fe80::1"));
+		DhcpV6RelayOption relayOption = new DhcpV6RelayOption();
+		relayOption.setDhcpMessage(request);
+		relay.setRelayOption(relayOption);
+
+		DhcpV6Message reply = new DhcpV6Message(local, relayAddr);
+		reply.setMessageType(DhcpConstants.V6MESSAGE_TYPE_ADVERTISE);
+		DhcpV6IaNaOption iaNa = new DhcpV6IaNaOption();
+		DhcpV6IaAddrOption iaAddr = new DhcpV6IaAddrOption();
+		iaAddr.setIpAddress("2001:db8::100");
+		List<DhcpV6IaAddrOption> iaAddrs = new ArrayList<DhcpV6IaAddrOption>();
+		iaAddrs.add(iaAddr);
+		iaNa.setIaAddrOptions(iaAddrs);
+		reply.addIaNaOption(iaNa);
+		assertTrue(txLog.log(relay, reply, System.nanoTime()));
+		txLog.shutdown();
+
+		List<String> lines = readLines(file);
+		assertEquals(1, lines.size());
+		String line = lines.get(0);
+		assertTrue(line, line.contains(",\"v\":6,\"peer\":\"" + relayAddr.getAddress().getHostAddress() +
+				"\",\"link\":\"" + InetAddress.getByName("2001:db8::1").getHostAddress() + 
+				"\",\"xid\":\"0a0b0c\",\"duid\":\"00010001fe\",\"type\":\"Solicit\"," +
+				"\"reply\":\"Advertise\",\"addrs\":[\"2001:db8::100\"],\"usecs\":"));
+	}
+
+	public void testBufferFull() throws Exception
+	{
+		txLog = new TransactionLog(file, 3, 0, 0);
+		// not started, so nothing is written until the buffer is full
+		DhcpV4Message request = buildV4Request();
+		for (int i=0; i<6; i++) {
+			assertEquals(i < 4, txLog.log(request, null, System.nanoTime()));
+		}
+		assertEquals(4, txLog.getBuffered());
+		assertEquals(2, txLog.getDropped());
+		txLog.start();
+		txLog.shutdown();
+		assertEquals(0, txLog.getBuffered());
+		assertEquals(4, readLines(file).size());
+	}
+
+	public void testRollOver() throws Exception
+	{
+		txLog = new TransactionLog(file, 16, 100, 2);
+		txLog.start();
+		DhcpV4Message request = buildV4Request();
+		for (int i=0; i<5; i++) {
+			assertTrue(txLog.log(request, null, System.nanoTime()));
+		}
+		txLog.shutdown();
+		// each record is larger than the maximum file size
+		assertTrue(new File(dir, "transactions.log.1").exists());
+		assertTrue(new File(dir, "transactions.log.2").exists());
+		assertFalse(new File(dir, "transactions.log.3").exists());
+		assertEquals(1, readLines(new File(dir, "transactions.log.1")).size());
+		assertEquals(0, readLines(file).size());
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file TestMetricsRegistry.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class TestMetricsRegistry.
+ */
+public class TestMetricsRegistry extends TestCase
+{
+	public void testStripedCounter() throws Exception
+	{
+		final StripedCounter counter = new StripedCounter();
+		final int threads = 4;
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t=0; t<threads; t++) {
+			new Thread() {
+				public void run() {
+					for (int i=0; i<100000; i++) {
+						counter.increment();
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+		done.await();
+		assertEquals(400000, counter.sum());
+		counter.decrement();
+		assertEquals(399999, counter.sum());
+	}
+	
+	public void testBucketIndex()
+	{
+		for (long v : new long[] { 0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456789L, 1L << 39 }) {
+			int index = LatencyHistogram.bucketIndex(v);
+			assertTrue(v <= LatencyHistogram.bucketMaxValue(index));
+			if (index > 0) {
+				assertTrue(v > LatencyHistogram.bucketMaxValue(index - 1));
+			}
+			// within 1/16th of the value
+			assertTrue(LatencyHistogram.bucketMaxValue(index) - v <= v / 16);
+		}
+		// the largest values share the last bucket
+		assertEquals(LatencyHistogram.bucketIndex(1L << 40), 
+				LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+	}
+	
+	public void testHistogram()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getValueAtQuantile(0.5));
+		for (int i=1; i<=1000; i++) {
+			histogram.record(i * 1000L);	// 1us to 1ms
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500500000L, histogram.getSum());
+		long[] values = histogram.getValuesAtQuantiles(new double[] { 0.5, 0.99, 1.0 });
+		assertEquals(500000, values[0], 500000 / 16);
+		assertEquals(990000, values[1], 990000 / 16);
+		assertEquals(1000000, values[2], 1000000 / 16);
+		assertTrue(values[2] >= 1000000);
+	}
+	
+	public void testScrape()
+	{
+		MetricsRegistry registry = new MetricsRegistry();
+		StripedCounter counter = registry.counter("test_total", "A test counter.", 
+				MetricsWriter.labels("type", "a\"b"));
+		counter.add(3);
+		assertSame(counter, registry.counter("test_total", "A test counter.", 
+				MetricsWriter.labels("type", "a\"b")));
+		registry.histogram("test_seconds", "A test histogram.", "").record(2000000);
+		registry.gauge("test_gauge", "A test gauge.", "", new Gauge() {
+			public double getValue() {
+				return 0.25;
+			}
+		});
+		registry.addCollector(new MetricsCollector() {
+			public void collect(MetricsWriter writer) {
+				writer.family("test_collected", MetricsWriter.GAUGE, "A collected gauge.");
+				writer.sample("test_collected", MetricsWriter.labels("pool", "p1"), 7);
+			}
+		});
+		try {
+			registry.gauge("test_total", "Not a counter.", "", null);
+			fail("registered a gauge with the name of a counter");
+		}
+		catch (IllegalArgumentException ex) {
+			// expected
+		}
+		
+		String text = registry.scrape();
+		assertTrue(text, text.contains("# TYPE test_total counter\n"));
+		assertTrue(text, text.contains("test_total{type=\"a\\\"b\"} 3\n"));
+		assertTrue(text, text.contains("# TYPE test_seconds summary\n"));
+		assertTrue(text, text.contains("test_seconds{quantile=\"0.5\"} 0.002"));
+		assertTrue(text, text.contains("test_seconds_count 1\n"));
+		assertTrue(text, text.contains("test_seconds_sum 0.002\n"));
+		assertTrue(text, text.contains("test_gauge 0.25\n"));
+		assertTrue(text, text.contains("test_collected{pool=\"p1\"} 7\n"));
+	}
+	
+	public void testHttpServer() throws Exception
+	{
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("test_total", "A test counter.", "").increment();
+		MetricsHttpServer server = new MetricsHttpServer(registry, 
+				new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+		server.start();
+		try {
+			URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + 
+					MetricsHttpServer.CONTEXT);
+			HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+			assertEquals(200, conn.getResponseCode());
+			assertTrue(conn.getContentType().startsWith("text/plain; version=0.0.4"));
+			InputStream in = conn.getInputStream();
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[1024];
+			int n;
+			while ((n = in.read(buf)) > 0) {
+				out.write(buf, 0, n);
+			}
+			in.close();
+			assertTrue(out.toString("UTF-8").contains("test_total 1\n"));
+		}
+		finally {
+			server.shutdown();
+		}
+	}
+}
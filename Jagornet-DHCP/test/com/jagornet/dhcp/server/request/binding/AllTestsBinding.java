@@ -34,8 +34,15 @@ public class AllTestsBinding {
 		TestSuite suite = new TestSuite(AllTestsBinding.class.getName());
 		//$JUnit-BEGIN$
 		suite.addTest(TestFreeList.suite());
+		suite.addTestSuite(TestBuddyFreeList.class);
 		suite.addTestSuite(TestV6PrefixBindingPool.class);
 		suite.addTestSuite(TestV6NaAddrBindingManager.class);
+		suite.addTestSuite(TestStaticBindingIndex.class);
+		suite.addTestSuite(TestLazyRenew.class);
+		suite.addTestSuite(TestRenewFastPath.class);
+		suite.addTestSuite(TestAddressAffinityIndex.class);
+		suite.addTestSuite(TestOfferReservation.class);
+		suite.addTestSuite(TestPoolLocks.class);
 		//$JUnit-END$
 		return suite;
 	}
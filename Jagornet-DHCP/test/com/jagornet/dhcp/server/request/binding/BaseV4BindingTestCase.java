@@ -0,0 +1,151 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file BaseV4BindingTestCase.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import junit.framework.TestCase;
+
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.jagornet.dhcp.db.BaseTestCase;
+import com.jagornet.dhcp.db.DbSchemaManager;
+import com.jagornet.dhcp.db.IaAddress;
+import com.jagornet.dhcp.db.IdentityAssoc;
+import com.jagornet.dhcp.db.JdbcLeaseManager;
+import com.jagornet.dhcp.message.DhcpV4Message;
+import com.jagornet.dhcp.server.config.DhcpLink;
+import com.jagornet.dhcp.server.config.DhcpServerConfiguration;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.util.DhcpConstants;
+
+/**
+ * The base class of the tests of the V4AddrBindingManagerImpl, with the
+ * links of the base test configuration, and a new in-memory H2 database
+ * for each test.  There is no reaper, the tests expire the leases.
+ */
+public abstract class BaseV4BindingTestCase extends TestCase
+{
+	private static int dbCount = 0;
+
+	protected JdbcLeaseManager leaseMgr;
+	protected V4AddrBindingManagerImpl manager;
+	protected DhcpLink clientLink;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		DhcpServerConfiguration.configFilename = BaseTestCase.configFilename;
+		DhcpServerConfiguration config = DhcpServerConfiguration.getInstance();
+		// the links of the base test configuration
+		config.reload();
+		DhcpServerPolicies.setProperty(Property.DATABASE_SCHEMA_TYTPE, DbSchemaManager.SCHEMATYPE_JDBC_H2);
+		DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:testv4binding-" +
+				(dbCount++) + ";DB_CLOSE_DELAY=-1", "sa", "");
+		DbSchemaManager.createSchema(dataSource, DbSchemaManager.SCHEMA_V2_FILENAME);
+		leaseMgr = new JdbcLeaseManager();
+		leaseMgr.setDataSource(dataSource);
+		manager = new V4AddrBindingManagerImpl();
+		manager.setIaMgr(leaseMgr);
+		manager.initPoolMap();
+		manager.initStaticBindings();
+		clientLink = config.findLinkForAddress(InetAddress.getByName("192.168.0.100"));
+	}
+
+	protected static byte[] mac(int n)
+	{
+		return new byte[] { (byte)0xde, (byte)0xbb, (byte)0x1e, 0, 0, (byte)n };
+	}
+
+	/**
+	 * Build a request of a client of the client link.
+	 */
+	protected DhcpV4Message buildRequestMessage(byte[] macAddr)
+	{
+		DhcpV4Message requestMsg = new DhcpV4Message(
+				new InetSocketAddress(DhcpConstants.LOCALHOST_V4, DhcpConstants.V4_SERVER_PORT),
+				new InetSocketAddress(clientLink.getSubnet().getSubnetAddress(), 
+						DhcpConstants.V4_CLIENT_PORT));
+		requestMsg.setHtype((short)1);
+		requestMsg.setHlen((short)macAddr.length);
+		requestMsg.setChAddr(macAddr);
+		return requestMsg;
+	}
+
+	/**
+	 * Discover as the DhcpV4DiscoverProcessor does.
+	 */
+	protected Binding discover(byte[] macAddr) throws Exception
+	{
+		return discover(macAddr, IaAddress.ADVERTISED);
+	}
+
+	protected Binding discover(byte[] macAddr, byte state) throws Exception
+	{
+		return discover(macAddr, buildRequestMessage(macAddr), state);
+	}
+
+	protected Binding discover(byte[] macAddr, DhcpV4Message requestMsg, byte state) 
+			throws Exception
+	{
+		Binding binding = manager.findCurrentBinding(clientLink, macAddr, requestMsg);
+		if (binding == null) {
+			binding = manager.createDiscoverBinding(clientLink, macAddr, requestMsg, state);
+		}
+		else {
+			binding = manager.updateBinding(binding, clientLink, macAddr, requestMsg, state);
+		}
+		assertNotNull(binding);
+		return binding;
+	}
+
+	/**
+	 * Request as the DhcpV4RequestProcessor does.
+	 * 
+	 * @return the committed binding, or null if the client has no binding
+	 */
+	protected Binding request(byte[] macAddr) throws Exception
+	{
+		return request(macAddr, buildRequestMessage(macAddr));
+	}
+
+	protected Binding request(byte[] macAddr, DhcpV4Message requestMsg) throws Exception
+	{
+		Binding binding = manager.findCurrentBinding(clientLink, macAddr, requestMsg);
+		if (binding == null) {
+			return null;
+		}
+		return manager.updateBinding(binding, clientLink, macAddr, requestMsg, 
+				IaAddress.COMMITTED);
+	}
+
+	protected InetAddress address(IdentityAssoc ia)
+	{
+		return ia.getIaAddresses().iterator().next().getIpAddress();
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file TestAddressAffinityIndex.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.io.File;
+import java.net.InetAddress;
+
+import com.jagornet.dhcp.db.IaAddress;
+import com.jagornet.dhcp.db.IdentityAssoc;
+import com.jagornet.dhcp.server.metrics.DhcpMetrics;
+
+/**
+ * The Class TestAddressAffinityIndex.
+ */
+public class TestAddressAffinityIndex extends BaseV4BindingTestCase
+{
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		manager.affinityIndex = new AddressAffinityIndex(100, null);
+	}
+
+	/**
+	 * Remove the lease, as the reaper does for an expired lease.
+	 */
+	private void delete(InetAddress inetAddr)
+	{
+		leaseMgr.deleteIA(leaseMgr.findIA(inetAddr));
+		manager.freeAddress(inetAddr);
+	}
+
+	public void testLru() throws Exception
+	{
+		AddressAffinityIndex index = new AddressAffinityIndex(2, null);
+		InetAddress addr1 = InetAddress.getByName("10.0.0.1");
+		InetAddress addr2 = InetAddress.getByName("10.0.0.2");
+		InetAddress addr3 = InetAddress.getByName("10.0.0.3");
+		index.put(mac(1), IdentityAssoc.V4_TYPE, 0, addr1);
+		index.put(mac(2), IdentityAssoc.V4_TYPE, 0, addr2);
+		assertEquals(addr1, index.get(mac(1), IdentityAssoc.V4_TYPE, 0));
+		// the second client is now the least recently used
+		index.put(mac(3), IdentityAssoc.V4_TYPE, 0, addr3);
+		assertEquals(2, index.size());
+		assertNull(index.get(mac(2), IdentityAssoc.V4_TYPE, 0));
+		assertEquals(addr1, index.get(mac(1), IdentityAssoc.V4_TYPE, 0));
+		assertNull(index.get(mac(1), IdentityAssoc.NA_TYPE, 0));
+		assertNull(index.get(mac(1), IdentityAssoc.V4_TYPE, 1));
+		index.remove(mac(1), IdentityAssoc.V4_TYPE, 0);
+		assertNull(index.get(mac(1), IdentityAssoc.V4_TYPE, 0));
+	}
+
+	public void testSaveLoad() throws Exception
+	{
+		File file = File.createTempFile("affinity", ".txt");
+		try {
+			AddressAffinityIndex index = new AddressAffinityIndex(10, file);
+			index.put(mac(1), IdentityAssoc.V4_TYPE, 0, InetAddress.getByName("10.0.0.1"));
+			index.put(mac(2), IdentityAssoc.NA_TYPE, 7, InetAddress.getByName("2001:db8::2"));
+			index.save();
+			index = new AddressAffinityIndex(10, file);
+			index.load();
+			assertEquals(2, index.size());
+			assertEquals(InetAddress.getByName("10.0.0.1"), 
+					index.get(mac(1), IdentityAssoc.V4_TYPE, 0));
+			assertEquals(InetAddress.getByName("2001:db8::2"), 
+					index.get(mac(2), IdentityAssoc.NA_TYPE, 7));
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	public void testFreeAddress() throws Exception
+	{
+		InetAddress addrA = address(discover(mac(1), IaAddress.COMMITTED));
+		InetAddress addrB = address(discover(mac(2), IaAddress.COMMITTED));
+		delete(addrA);
+		delete(addrB);
+		long hits = DhcpMetrics.ADDRESS_AFFINITY_HIT.sum();
+
+		// the lowest free address is the first client's
+		assertEquals(addrB, address(discover(mac(2), IaAddress.COMMITTED)));
+		assertEquals(addrA, address(discover(mac(1), IaAddress.COMMITTED)));
+		assertEquals(hits + 2, DhcpMetrics.ADDRESS_AFFINITY_HIT.sum());
+	}
+
+	public void testReleasedAddress() throws Exception
+	{
+		InetAddress addrA = address(discover(mac(1), IaAddress.COMMITTED));
+		delete(addrA);
+		// another client is given the address, and releases it
+		Binding other = discover(mac(2), IaAddress.COMMITTED);
+		assertEquals(addrA, address(other));
+		IaAddress iaAddr = leaseMgr.findIA(addrA).getIaAddresses().iterator().next();
+		iaAddr.setState(IaAddress.RELEASED);
+		leaseMgr.updateIaAddr(iaAddr);
+		long hits = DhcpMetrics.ADDRESS_AFFINITY_HIT.sum();
+
+		assertEquals(addrA, address(discover(mac(1), IaAddress.COMMITTED)));
+		assertEquals(hits + 1, DhcpMetrics.ADDRESS_AFFINITY_HIT.sum());
+		IdentityAssoc ia = leaseMgr.findIA(addrA);
+		assertTrue(ia.getDuid()[5] == 1);
+
+		// a committed lease of another client is not taken
+		manager.affinityIndex.put(mac(3), IdentityAssoc.V4_TYPE, 0, addrA);
+		assertFalse(addrA.equals(address(discover(mac(3), IaAddress.COMMITTED))));
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file TestBuddyFreeList.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import junit.framework.TestCase;
+
+public class TestBuddyFreeList extends TestCase
+{
+	public void testSplitAndCoalesce() throws Exception
+	{
+		BuddyFreeList list = new BuddyFreeList(8);
+		assertEquals(1, list.getFreeBlockCount());
+		// a unit splits the root into one free block of each smaller order
+		assertEquals(0, list.getNextFree(0));
+		assertEquals(8, list.getFreeBlockCount());
+		assertEquals(1, list.getNextFree(0));
+		// a block of order 2 is aligned after the used units
+		assertEquals(4, list.getNextFree(2));
+		assertEquals(2, list.getNextFree(1));
+		assertEquals(4, list.getUsedCount());
+		assertEquals(2, list.getOrder(4));
+		assertEquals(-1, list.getOrder(5));
+		
+		assertEquals(0, list.setFree(0));
+		assertEquals(-1, list.setFree(0));
+		assertEquals(0, list.setFree(1));
+		assertEquals(1, list.setFree(2));
+		assertEquals(2, list.setFree(4));
+		// all merged back into the root
+		assertEquals(0, list.getUsedCount());
+		assertEquals(1, list.getFreeBlockCount());
+		assertEquals(0, list.getNextFree(8));
+		assertEquals(-1, list.getNextFree(0));
+	}
+	
+	public void testSetUsed() throws Exception
+	{
+		BuddyFreeList list = new BuddyFreeList(8);
+		assertTrue(list.setUsed(100, 0));
+		assertTrue(list.setUsed(100, 0));
+		assertFalse(list.setUsed(100, 1));
+		// not aligned
+		assertFalse(list.setUsed(6, 2));
+		// overlaps the used unit
+		assertFalse(list.setUsed(96, 3));
+		assertTrue(list.setUsed(64, 5));
+		assertFalse(list.setUsed(256, 0));
+		// the smallest free block is used first, the buddy of the used unit
+		assertEquals(101, list.getNextFree(0));
+		assertEquals(0, list.getNextFree(6));
+		list.setFree(100);
+		list.setFree(64);
+		list.setFree(101);
+		list.setFree(0);
+		assertEquals(1, list.getFreeBlockCount());
+	}
+	
+	public void testExhausted() throws Exception
+	{
+		BuddyFreeList list = new BuddyFreeList(3);
+		for (int i=0; i<8; i++) {
+			assertEquals(i, list.getNextFree(0));
+		}
+		assertEquals(-1, list.getNextFree(0));
+		assertEquals(0, list.getFreeBlockCount());
+		list.setFree(5);
+		assertEquals(-1, list.getNextFree(1));
+		assertEquals(5, list.getNextFree(0));
+	}
+	
+	public void testLargeRange() throws Exception
+	{
+		BuddyFreeList list = new BuddyFreeList(BuddyFreeList.MAX_ORDER);
+		assertEquals(0, list.getNextFree(0));
+		assertEquals(1L << 61, list.getNextFree(61));
+		assertFalse(list.setUsed((1L << 62) - 1, 0));
+		assertTrue(list.setUsed((1L << 61) - 1, 0));
+		// the free blocks are only those around the used blocks
+		assertTrue(list.getFreeBlockCount() <= 2 * BuddyFreeList.MAX_ORDER);
+	}
+}
@@ -25,7 +25,6 @@
  */
 package com.jagornet.dhcp.server.request.binding;
 
-import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 
@@ -37,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jagornet.dhcp.server.request.binding.FreeList;
+import com.jagornet.dhcp.util.IpAddress;
 
 // TODO: Auto-generated Javadoc
 /**
@@ -48,7 +48,10 @@ public class TestFreeList extends TestCase
 	/** The log. */
 	private static Logger log = LoggerFactory.getLogger(TestFreeList.class);
 	
-	/** The prefix64 list. */
+	/** The start of the pools. */
+	private IpAddress base;
+	
+	/** The prefix64 list, of the first 2^63 addresses of the prefix. */
 	private FreeList prefix64List;
 	
 	/** The smallPool list. */
@@ -71,12 +74,9 @@ public class TestFreeList extends TestCase
 		super.setUp();
 		System.out.println("TestCase: " + this.getName());
 		memorySizeDump();
-		prefix64List = new FreeList(
-				new BigInteger(InetAddress.getByName("3ffe::0").getAddress()),
-				new BigInteger(InetAddress.getByName("3ffe::ffff:ffff:ffff:ffff").getAddress()));
-		smallPool = new FreeList(
-				new BigInteger(InetAddress.getByName("3ffe::0").getAddress()),
-				new BigInteger(InetAddress.getByName("3ffe::2").getAddress()));
+		base = IpAddress.valueOf("3ffe::0");
+		prefix64List = new FreeList(0, Long.MAX_VALUE);
+		smallPool = new FreeList(0, offset("3ffe::2"));
 		memorySizeDump();
 	}
 	
@@ -90,6 +90,20 @@ public class TestFreeList extends TestCase
 		System.gc();
 	}
 	
+	/**
+	 * Gets the offset of an address from the start of the pools.
+	 */
+	private long offset(String addr) throws UnknownHostException {
+		return IpAddress.valueOf(addr).offsetFrom(base);
+	}
+	
+	/**
+	 * Gets the address of an offset from the start of the pools.
+	 */
+	private InetAddress address(long offset) {
+		return base.add(offset).toInetAddress();
+	}
+	
 	/**
 	 * Memory size dump.
 	 */
@@ -106,9 +120,9 @@ public class TestFreeList extends TestCase
 	 */
 	public void testSetLowIp() throws Exception
 	{
-		InetAddress low = InetAddress.getByName("3ffe::1");
-		prefix64List.setUsed(new BigInteger(low.getAddress()));
-		assertTrue(prefix64List.isUsed(new BigInteger(low.getAddress())));
+		long low = offset("3ffe::1");
+		prefix64List.setUsed(low);
+		assertTrue(prefix64List.isUsed(low));
 		log.debug(prefix64List.toString());
 	}
 
@@ -119,9 +133,10 @@ public class TestFreeList extends TestCase
 	 */
 	public void testSetMidIp1() throws Exception
 	{
-		InetAddress mid = InetAddress.getByName("3ffe::7fff:fffe");
-		prefix64List.setUsed(new BigInteger(mid.getAddress()));
-		assertTrue(prefix64List.isUsed(new BigInteger(mid.getAddress())));
+		long mid = offset("3ffe::7fff:fffe");
+		prefix64List.setUsed(mid);
+		assertTrue(prefix64List.isUsed(mid));
+		assertFalse(prefix64List.isUsed(mid + 1));
 		log.debug(prefix64List.toString());
 	}
 
@@ -132,9 +147,10 @@ public class TestFreeList extends TestCase
 	 */
 	public void testSetMidIp2() throws Exception
 	{
-		InetAddress mid = InetAddress.getByName("3ffe::ffff:ffff");
-		prefix64List.setUsed(new BigInteger(mid.getAddress()));
-		assertTrue(prefix64List.isUsed(new BigInteger(mid.getAddress())));
+		long mid = offset("3ffe::ffff:ffff");
+		prefix64List.setUsed(mid);
+		assertTrue(prefix64List.isUsed(mid));
+		assertFalse(prefix64List.isUsed(mid - (1L << 30)));
 		log.debug(prefix64List.toString());
 	}
 	
@@ -145,9 +161,14 @@ public class TestFreeList extends TestCase
 	 */
 	public void testSetHighIp() throws Exception
 	{
-		InetAddress high = InetAddress.getByName("3ffe::ffff:ffff:ffff:ffff");
-		prefix64List.setUsed(new BigInteger(high.getAddress()));
-		assertTrue(prefix64List.isUsed(new BigInteger(high.getAddress())));
+		long high = offset("3ffe::7fff:ffff:ffff:ffff");
+		prefix64List.setUsed(high);
+		assertTrue(prefix64List.isUsed(high));
+		assertEquals(1, prefix64List.getUsedCount());
+		// beyond the offsets of a long
+		assertEquals(-1, offset("3ffe::ffff:ffff:ffff:ffff"));
+		prefix64List.setUsed(-1);
+		assertEquals(1, prefix64List.getUsedCount());
 		log.debug(prefix64List.toString());
 	}
 	
@@ -158,17 +179,36 @@ public class TestFreeList extends TestCase
 	 */
 	public void testGetNextFreeAddress() throws Exception
 	{
-		InetAddress ip = InetAddress.getByAddress(smallPool.getNextFree().toByteArray());
+		InetAddress ip = address(smallPool.getNextFree());
 		assertNotNull(ip);
 		assertEquals(InetAddress.getByName("3ffe::0"), ip);
-		ip = InetAddress.getByAddress(smallPool.getNextFree().toByteArray());
+		ip = address(smallPool.getNextFree());
 		assertNotNull(ip);
 		assertEquals(InetAddress.getByName("3ffe::1"), ip);
-		ip = InetAddress.getByAddress(smallPool.getNextFree().toByteArray());
+		ip = address(smallPool.getNextFree());
 		assertNotNull(ip);
 		assertEquals(InetAddress.getByName("3ffe::2"), ip);
-		BigInteger bi = smallPool.getNextFree();
-		assertNull(bi);
+		long next = smallPool.getNextFree();
+		assertEquals(-1, next);
+	}
+	
+	/**
+	 * Test the used count.
+	 * 
+	 * @throws Exception the exception
+	 */
+	public void testUsedCount() throws Exception
+	{
+		assertEquals(3, smallPool.getSize());
+		long next = smallPool.getNextFree();
+		assertEquals(1, smallPool.getUsedCount());
+		smallPool.setUsed(next);
+		assertEquals(1, smallPool.getUsedCount());
+		smallPool.setUsed(next + 1);
+		assertEquals(2, smallPool.getUsedCount());
+		smallPool.setFree(next);
+		smallPool.setFree(next);
+		assertEquals(1, smallPool.getUsedCount());
 	}
 	
 	/**
@@ -179,12 +219,12 @@ public class TestFreeList extends TestCase
 	public void testGetManyFreeAddresses() throws Exception
 	{
 		memorySizeDump();
-		BigInteger bi = new BigInteger(InetAddress.getByName("3ffe::0").getAddress());
+		IpAddress expected = base;
 		for (int i=0; i<1000000; i++) {	// 1M leases
-			InetAddress ip = InetAddress.getByAddress(prefix64List.getNextFree().toByteArray());
+			InetAddress ip = address(prefix64List.getNextFree());
 			assertNotNull(ip);
-			assertEquals(InetAddress.getByAddress(bi.toByteArray()), ip);
-			bi = bi.add(BigInteger.ONE);
+			assertEquals(expected.toInetAddress(), ip);
+			expected = expected.add(1);
 			if ((i > 0) && (i % 1000 == 0)) {
 				log.info(i + " addresses allocated");
 				memorySizeDump();
@@ -207,15 +247,9 @@ public class TestFreeList extends TestCase
 
 				public void run() {
 					for (int i=0; i<10000; i++) {	// 10K leases per thread
-						InetAddress ip = null;
-						try {
-							ip = InetAddress.getByAddress(prefix64List.getNextFree().toByteArray());
-							assertNotNull(ip);
-							log.info("IP=" + ip.getHostAddress());
-						}
-						catch (UnknownHostException ex) {
-							fail(ex.getMessage());
-						}
+						InetAddress ip = address(prefix64List.getNextFree());
+						assertNotNull(ip);
+						log.info("IP=" + ip.getHostAddress());
 					}
 				}
 				
@@ -241,6 +275,7 @@ public class TestFreeList extends TestCase
 		suite.addTest(new TestFreeList("testSetMidIp1"));
 		suite.addTest(new TestFreeList("testSetMidIp2"));
 		suite.addTest(new TestFreeList("testSetHighIp"));
+		suite.addTest(new TestFreeList("testUsedCount"));
 		return suite;
 	}
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file TestLazyRenew.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.net.InetAddress;
+import java.util.Date;
+
+import com.jagornet.dhcp.db.IaAddress;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.server.metrics.DhcpMetrics;
+
+/**
+ * The Class TestLazyRenew.
+ */
+public class TestLazyRenew extends BaseV4BindingTestCase
+{
+	private byte[] clientMacAddr = mac(1);
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		DhcpServerPolicies.setProperty(Property.BINDING_MANAGER_LAZY_RENEW_FRACTION, "0.5");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		DhcpServerPolicies.setProperty(Property.BINDING_MANAGER_LAZY_RENEW_FRACTION,
+				Property.BINDING_MANAGER_LAZY_RENEW_FRACTION.value());
+		super.tearDown();
+	}
+
+	private IaAddress findIaAddr(Binding binding)
+	{
+		InetAddress inetAddr = binding.getBindingObjects().iterator().next().getIpAddress();
+		return leaseMgr.findIA(inetAddr).getIaAddresses().iterator().next();
+	}
+
+	private long validEnd(Binding binding)
+	{
+		return binding.getBindingObjects().iterator().next().getValidEndTime().getTime();
+	}
+
+	public void testRenewalNotWritten() throws Exception
+	{
+		Binding binding = discover(clientMacAddr, IaAddress.COMMITTED);
+		long stored = findIaAddr(binding).getValidEndTime().getTime();
+		long skipped = DhcpMetrics.LEASE_UPDATE_SKIPPED.sum();
+		Thread.sleep(10);
+
+		// the stored lease covers the whole lease
+		binding = request(clientMacAddr);
+		assertNotNull(binding);
+		assertFalse(binding.isTimesStored());
+		assertTrue(validEnd(binding) > stored);
+		assertEquals(stored, findIaAddr(binding).getValidEndTime().getTime());
+		assertEquals(skipped + 1, DhcpMetrics.LEASE_UPDATE_SKIPPED.sum());
+
+		// the stored lease covers less than half the lease
+		long lease = validEnd(binding) - System.currentTimeMillis();
+		IaAddress iaAddr = findIaAddr(binding);
+		iaAddr.setValidEndTime(new Date(System.currentTimeMillis() + lease/3));
+		leaseMgr.updateIaAddr(iaAddr);
+		binding = request(clientMacAddr);
+		assertTrue(binding.isTimesStored());
+		assertEquals(validEnd(binding), findIaAddr(binding).getValidEndTime().getTime());
+
+		// all renewals are written
+		DhcpServerPolicies.setProperty(Property.BINDING_MANAGER_LAZY_RENEW_FRACTION, "0");
+		Thread.sleep(10);
+		binding = request(clientMacAddr);
+		assertTrue(binding.isTimesStored());
+		assertEquals(validEnd(binding), findIaAddr(binding).getValidEndTime().getTime());
+		assertEquals(skipped + 1, DhcpMetrics.LEASE_UPDATE_SKIPPED.sum());
+	}
+
+	public void testExpiredAfterGrace() throws Exception
+	{
+		BindingPool bp = manager.findBindingPool(InetAddress.getByName("192.168.0.100"));
+		assertNotNull(bp);
+		long lease = bp.getValidLifetimeMs();
+		long now = System.currentTimeMillis();
+		IaAddress iaAddr = new IaAddress();
+		iaAddr.setIpAddress(InetAddress.getByName("192.168.0.100"));
+		iaAddr.setValidEndTime(new Date(now - lease/4));
+		// a renewal may have extended the lease up to half the lease
+		assertFalse(manager.isLeaseExpired(iaAddr, now));
+		iaAddr.setValidEndTime(new Date(now - lease/2));
+		assertTrue(manager.isLeaseExpired(iaAddr, now));
+
+		DhcpServerPolicies.setProperty(Property.BINDING_MANAGER_LAZY_RENEW_FRACTION, "0");
+		iaAddr.setValidEndTime(new Date(now - 1));
+		assertTrue(manager.isLeaseExpired(iaAddr, now));
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file TestOfferReservation.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.net.InetAddress;
+
+import com.jagornet.dhcp.db.IaAddress;
+import com.jagornet.dhcp.db.IdentityAssoc;
+import com.jagornet.dhcp.message.DhcpV4Message;
+import com.jagornet.dhcp.option.v4.DhcpV4RequestedIpAddressOption;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.server.metrics.DhcpMetrics;
+
+/**
+ * The Class TestOfferReservation.
+ */
+public class TestOfferReservation extends BaseV4BindingTestCase
+{
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		manager.affinityIndex = null;
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		DhcpServerPolicies.setProperty(Property.BINDING_MANAGER_OFFER_EXPIRATION,
+				Property.BINDING_MANAGER_OFFER_EXPIRATION.value());
+		DhcpServerPolicies.setProperty(Property.V4_OFFER_IN_MEMORY,
+				Property.V4_OFFER_IN_MEMORY.value());
+		super.tearDown();
+	}
+
+	public void testOfferNotWritten() throws Exception
+	{
+		Binding offer = discover(mac(1));
+		InetAddress inetAddr = address(offer);
+		BindingPool bp = manager.findBindingPool(inetAddr);
+		long used = bp.getUsedCount();
+		assertNull(leaseMgr.findIA(inetAddr));
+
+		// the discover is sent again
+		assertSame(offer, discover(mac(1)));
+		assertEquals(used, bp.getUsedCount());
+		assertNull(leaseMgr.findIA(inetAddr));
+
+		// another client is given another address
+		assertFalse(inetAddr.equals(address(discover(mac(2)))));
+
+		Binding binding = request(mac(1));
+		assertNotNull(binding);
+		assertEquals(inetAddr, address(binding));
+		IdentityAssoc ia = leaseMgr.findIA(inetAddr);
+		assertNotNull(ia);
+		assertEquals(IaAddress.COMMITTED, ia.getState());
+		assertEquals(IaAddress.COMMITTED, ia.getIaAddresses().iterator().next().getState());
+
+		// the committed binding is found in the database
+		binding = manager.findCurrentBinding(clientLink, mac(1), buildRequestMessage(mac(1)));
+		assertNotNull(binding);
+		assertNotSame(offer, binding);
+	}
+
+	public void testOfferExpired() throws Exception
+	{
+		DhcpServerPolicies.setProperty(Property.BINDING_MANAGER_OFFER_EXPIRATION, "100");
+		long expired = DhcpMetrics.OFFER_EXPIRED.sum();
+		Binding offer = discover(mac(1));
+		InetAddress inetAddr = address(offer);
+		BindingPool bp = manager.findBindingPool(inetAddr);
+		long used = bp.getUsedCount();
+		Thread.sleep(500);
+
+		assertEquals(used - 1, bp.getUsedCount());
+		assertEquals(expired + 1, DhcpMetrics.OFFER_EXPIRED.sum());
+		assertNull(request(mac(1)));
+		assertNull(leaseMgr.findIA(inetAddr));
+
+		// offered again after expiring
+		offer = discover(mac(1));
+		assertEquals(inetAddr, address(offer));
+		assertEquals(used, bp.getUsedCount());
+	}
+
+	public void testOfferExpiredBeforeUpdate() throws Exception
+	{
+		DhcpServerPolicies.setProperty(Property.BINDING_MANAGER_OFFER_EXPIRATION, "100");
+		Binding offer = discover(mac(1));
+		InetAddress inetAddr = address(offer);
+		BindingPool bp = manager.findBindingPool(inetAddr);
+		long used = bp.getUsedCount();
+
+		// the offer expires between the find and the update of the request
+		DhcpV4Message requestMsg = buildRequestMessage(mac(1));
+		assertSame(offer, manager.findCurrentBinding(clientLink, mac(1), requestMsg));
+		Thread.sleep(500);
+		assertEquals(used - 1, bp.getUsedCount());
+
+		// the address is held again, and the binding is created
+		Binding binding = manager.updateBinding(offer, clientLink, mac(1), requestMsg,
+				IaAddress.COMMITTED);
+		assertNotNull(binding);
+		assertEquals(inetAddr, address(binding));
+		assertFalse(binding.isOffered());
+		assertEquals(used, bp.getUsedCount());
+		IdentityAssoc ia = leaseMgr.findIA(inetAddr);
+		assertNotNull(ia);
+		assertEquals(IaAddress.COMMITTED, ia.getState());
+
+		// another client is not given the address
+		assertFalse(inetAddr.equals(address(discover(mac(2)))));
+	}
+
+	public void testRequestedAddressOffered() throws Exception
+	{
+		InetAddress inetAddr = address(discover(mac(1)));
+		DhcpV4Message requestMsg = buildRequestMessage(mac(2));
+		DhcpV4RequestedIpAddressOption reqIpOption = new DhcpV4RequestedIpAddressOption();
+		reqIpOption.setIpAddress(inetAddr.getHostAddress());
+		requestMsg.putDhcpOption(reqIpOption);
+		assertFalse(inetAddr.equals(address(discover(mac(2), requestMsg, IaAddress.ADVERTISED))));
+	}
+
+	public void testOfferWritten() throws Exception
+	{
+		DhcpServerPolicies.setProperty(Property.V4_OFFER_IN_MEMORY, "false");
+		InetAddress inetAddr = address(discover(mac(1)));
+		IdentityAssoc ia = leaseMgr.findIA(inetAddr);
+		assertNotNull(ia);
+		assertEquals(IaAddress.ADVERTISED, ia.getState());
+		assertNotNull(request(mac(1)));
+		assertEquals(IaAddress.COMMITTED, leaseMgr.findIA(inetAddr).getState());
+	}
+}
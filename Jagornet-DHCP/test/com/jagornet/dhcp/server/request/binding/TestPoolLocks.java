@@ -0,0 +1,112 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file TestPoolLocks.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.net.InetAddress;
+import java.util.concurrent.locks.ReentrantLock;
+
+import junit.framework.TestCase;
+
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.jagornet.dhcp.db.BaseTestCase;
+import com.jagornet.dhcp.db.DbSchemaManager;
+import com.jagornet.dhcp.db.JdbcLeaseManager;
+import com.jagornet.dhcp.server.config.DhcpServerConfiguration;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+
+/**
+ * The Class TestPoolLocks.
+ */
+public class TestPoolLocks extends TestCase
+{
+	private static int dbCount = 0;
+
+	private V6NaAddrBindingManagerImpl manager;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		DhcpServerConfiguration.configFilename = BaseTestCase.configFilename;
+		DhcpServerConfiguration config = DhcpServerConfiguration.getInstance();
+		// the links of the base test configuration
+		config.reload();
+		DhcpServerPolicies.setProperty(Property.DATABASE_SCHEMA_TYTPE, DbSchemaManager.SCHEMATYPE_JDBC_H2);
+		DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:testpoollocks-" +
+				(dbCount++) + ";DB_CLOSE_DELAY=-1", "sa", "");
+		DbSchemaManager.createSchema(dataSource, DbSchemaManager.SCHEMA_V2_FILENAME);
+		JdbcLeaseManager leaseMgr = new JdbcLeaseManager();
+		leaseMgr.setDataSource(dataSource);
+		manager = new V6NaAddrBindingManagerImpl();
+		manager.setIaMgr(leaseMgr);
+		// no reaper
+		manager.initPoolMap();
+		manager.initStaticBindings();
+	}
+
+	private BindingPool findPool(String addr) throws Exception
+	{
+		BindingPool bp = manager.findBindingPool(InetAddress.getByName(addr));
+		assertNotNull(bp);
+		return bp;
+	}
+
+	public void testPoolsDoNotShareLock() throws Exception
+	{
+		// the pool of a link, the pool of its link filter, and the pool of another link
+		BindingPool bp1 = findPool("2001:DB8:1::a");
+		BindingPool bp2 = findPool("2001:DB8:1::10a");
+		BindingPool bp3 = findPool("2001:DB8:2::10a");
+		ReentrantLock lock1 = manager.getPoolLock(bp1);
+		assertSame(lock1, manager.getPoolLock(bp1));
+		assertNotSame(lock1, manager.getPoolLock(bp2));
+		assertNotSame(lock1, manager.getPoolLock(bp3));
+		assertNotSame(manager.getPoolLock(bp2), manager.getPoolLock(bp3));
+
+		// a pool holding its lock does not block the others
+		lock1.lock();
+		try {
+			ReentrantLock lock2 = manager.getPoolLock(bp2);
+			assertTrue(lock2.tryLock());
+			lock2.unlock();
+		}
+		finally {
+			lock1.unlock();
+		}
+	}
+
+	public void testReloadKeepsLock() throws Exception
+	{
+		BindingPool bp = findPool("2001:DB8:1::a");
+		ReentrantLock lock = manager.getPoolLock(bp);
+		manager.reload();
+		BindingPool reloaded = findPool("2001:DB8:1::a");
+		// a new pool of the same range
+		assertNotSame(bp, reloaded);
+		assertSame(lock, manager.getPoolLock(reloaded));
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file TestRenewFastPath.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import com.jagornet.dhcp.db.IaAddress;
+import com.jagornet.dhcp.db.IdentityAssoc;
+import com.jagornet.dhcp.message.DhcpV4Message;
+import com.jagornet.dhcp.option.v4.DhcpV4HostnameOption;
+import com.jagornet.dhcp.server.config.DhcpServerConfiguration;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.server.metrics.DhcpMetrics;
+import com.jagornet.dhcp.server.request.DhcpV4RequestProcessor;
+import com.jagornet.dhcp.util.DhcpConstants;
+
+/**
+ * The Class TestRenewFastPath.
+ */
+public class TestRenewFastPath extends BaseV4BindingTestCase
+{
+	private V4AddrBindingManager configManager;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		// the deferred lease times are written by the tests
+		DhcpServerPolicies.setProperty(Property.DATABASE_LEASE_TIMES_FLUSH_PERIOD, "3600000");
+		// the binding manager of the request processor
+		DhcpServerConfiguration config = DhcpServerConfiguration.getInstance();
+		configManager = config.getV4AddrBindingMgr();
+		config.setV4AddrBindingMgr(manager);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		DhcpServerConfiguration.getInstance().setV4AddrBindingMgr(configManager);
+		DhcpServerPolicies.setProperty(Property.DATABASE_LEASE_TIMES_FLUSH_PERIOD,
+				Property.DATABASE_LEASE_TIMES_FLUSH_PERIOD.value());
+		super.tearDown();
+	}
+
+	/**
+	 * Build a renewal of a client, decoded as it is received.
+	 */
+	private DhcpV4Message renewing(byte[] macAddr, InetAddress ciAddr, String hostname) 
+			throws Exception
+	{
+		DhcpV4Message msg = buildRequestMessage(macAddr);
+		msg.setOp((short)DhcpConstants.V4_OP_REQUEST);
+		msg.setMessageType((short)DhcpConstants.V4MESSAGE_TYPE_REQUEST);
+		msg.setCiAddr(ciAddr);
+		if (hostname != null) {
+			DhcpV4HostnameOption hostnameOption = new DhcpV4HostnameOption();
+			hostnameOption.setString(hostname);
+			msg.putDhcpOption(hostnameOption);
+		}
+		DhcpV4Message renewMsg = DhcpV4Message.decode(msg.encode(), 
+				msg.getLocalAddress(), msg.getRemoteAddress());
+		renewMsg.setUnicast(true);
+		return renewMsg;
+	}
+
+	/**
+	 * Commit the binding of a client, with the options of the renewal.
+	 */
+	private Binding commit(byte[] macAddr) throws Exception
+	{
+		InetAddress inetAddr = address(discover(macAddr));
+		Binding binding = request(macAddr, renewing(macAddr, inetAddr, null));
+		assertNotNull(binding);
+		return binding;
+	}
+
+	private DhcpV4Message process(DhcpV4Message requestMsg)
+	{
+		DhcpV4Message replyMsg = new DhcpV4RequestProcessor(requestMsg, 
+				requestMsg.getRemoteAddress().getAddress()).processMessage();
+		assertNotNull(replyMsg);
+		assertEquals(DhcpConstants.V4MESSAGE_TYPE_ACK, replyMsg.getMessageType());
+		return replyMsg;
+	}
+
+	private long validEnd(Binding binding)
+	{
+		return binding.getBindingObjects().iterator().next().getValidEndTime().getTime();
+	}
+
+	private long storedValidEnd(InetAddress inetAddr)
+	{
+		return leaseMgr.findIA(inetAddr).getIaAddresses().iterator().next()
+				.getValidEndTime().getTime();
+	}
+
+	public void testRenewFromIndex() throws Exception
+	{
+		Binding binding = commit(mac(1));
+		InetAddress inetAddr = address(binding);
+		long stored = storedValidEnd(inetAddr);
+		Thread.sleep(10);
+
+		// the same request is renewed from the index, and not written
+		assertSame(binding, manager.renewBinding(clientLink, mac(1), 
+				renewing(mac(1), inetAddr, null)));
+		assertTrue(validEnd(binding) > stored);
+		assertEquals(stored, storedValidEnd(inetAddr));
+
+		// the first reply is built and kept, the next is a copy
+		long built = DhcpMetrics.V4_RENEW_REPLY_BUILT.sum();
+		long cached = DhcpMetrics.V4_RENEW_REPLY_CACHED.sum();
+		DhcpV4Message reply = process(renewing(mac(1), inetAddr, null));
+		assertEquals(built + 1, DhcpMetrics.V4_RENEW_REPLY_BUILT.sum());
+		DhcpV4Message template = (DhcpV4Message) binding.getReplyTemplate();
+		assertSame(reply, template);
+		assertEquals(inetAddr, reply.getYiAddr());
+
+		DhcpV4Message copy = process(renewing(mac(1), inetAddr, null));
+		assertEquals(cached + 1, DhcpMetrics.V4_RENEW_REPLY_CACHED.sum());
+		assertEquals(built + 1, DhcpMetrics.V4_RENEW_REPLY_BUILT.sum());
+		assertNotSame(template, copy);
+		assertEquals(inetAddr, copy.getYiAddr());
+		assertTrue(Arrays.equals(template.getEncodedOptions(), copy.getEncodedOptions()));
+		assertEquals(template.getDhcpOptionMap(), copy.getDhcpOptionMap());
+	}
+
+	public void testChangedRequestNotRenewedFromIndex() throws Exception
+	{
+		Binding binding = commit(mac(1));
+		InetAddress inetAddr = address(binding);
+		InetAddress otherAddr = address(discover(mac(2)));
+
+		// other options, or another ciaddr
+		assertNull(manager.renewBinding(clientLink, mac(1), 
+				renewing(mac(1), inetAddr, "host1")));
+		assertNull(manager.renewBinding(clientLink, mac(1), 
+				renewing(mac(1), otherAddr, null)));
+
+		// the changed request is renewed from the database, and indexed
+		long built = DhcpMetrics.V4_RENEW_REPLY_BUILT.sum();
+		long cached = DhcpMetrics.V4_RENEW_REPLY_CACHED.sum();
+		DhcpV4Message reply = process(renewing(mac(1), inetAddr, "host1"));
+		assertEquals(inetAddr, reply.getYiAddr());
+		assertEquals(built, DhcpMetrics.V4_RENEW_REPLY_BUILT.sum());
+		assertEquals(cached, DhcpMetrics.V4_RENEW_REPLY_CACHED.sum());
+		assertNotNull(manager.renewBinding(clientLink, mac(1), 
+				renewing(mac(1), inetAddr, "host1")));
+		assertNull(manager.renewBinding(clientLink, mac(1), 
+				renewing(mac(1), inetAddr, null)));
+	}
+
+	public void testDeferredRenewalNotExpired() throws Exception
+	{
+		Binding binding = commit(mac(1));
+		InetAddress inetAddr = address(binding);
+		long stored = storedValidEnd(inetAddr);
+		Thread.sleep(10);
+		assertSame(binding, manager.renewBinding(clientLink, mac(1), 
+				renewing(mac(1), inetAddr, null)));
+		assertEquals(stored, storedValidEnd(inetAddr));
+
+		// the reaper finds the stored lease expired
+		IdentityAssoc ia = leaseMgr.findIA(inetAddr);
+		IaAddress iaAddr = ia.getIaAddresses().iterator().next();
+		manager.expireIaAddress(ia, iaAddr);
+		ia = leaseMgr.findIA(inetAddr);
+		assertNotNull(ia);
+		assertEquals(IaAddress.COMMITTED, ia.getState());
+		assertEquals(validEnd(binding), storedValidEnd(inetAddr));
+		assertSame(binding, manager.renewBinding(clientLink, mac(1), 
+				renewing(mac(1), inetAddr, null)));
+	}
+
+	public void testReloadClearsIndex() throws Exception
+	{
+		Binding binding = commit(mac(1));
+		InetAddress inetAddr = address(binding);
+		assertNotNull(manager.renewBinding(clientLink, mac(1), 
+				renewing(mac(1), inetAddr, null)));
+		manager.reload();
+		assertNull(manager.renewBinding(clientLink, mac(1), 
+				renewing(mac(1), inetAddr, null)));
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file TestStaticBindingIndex.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.jagornet.dhcp.db.IdentityAssoc;
+import com.jagornet.dhcp.message.DhcpMessage;
+import com.jagornet.dhcp.xml.PoliciesType;
+import com.jagornet.dhcp.xml.V4AddressBinding;
+import com.jagornet.dhcp.xml.V6AddressBinding;
+
+/**
+ * The Class TestStaticBindingIndex.
+ */
+public class TestStaticBindingIndex extends TestCase
+{
+	private static final byte[] DUID = new byte[] { 0, 1, 0, 1, 2, 3, 4, 5 };
+	
+	private V4StaticAddressBinding buildV4Binding(String ip, int mac)
+	{
+		V4AddressBinding binding = V4AddressBinding.Factory.newInstance();
+		binding.setIpAddress(ip);
+		binding.setChaddr(new byte[] { 0, 0x16, 0x3e, 0, (byte)(mac >> 8), (byte)mac });
+		return new V4StaticAddressBinding(binding);
+	}
+	
+	private V6StaticAddressBinding buildV6Binding(String ip, byte iatype, Long iaid)
+	{
+		V6AddressBinding binding = V6AddressBinding.Factory.newInstance();
+		binding.setIpAddress(ip);
+		binding.addNewDuid().setHexValue(DUID);
+		if (iaid != null) {
+			binding.setIaid(iaid);
+		}
+		return new V6StaticAddressBinding(binding, iatype);
+	}
+	
+	public void testV4() throws Exception
+	{
+		List<StaticBinding> bindings = new ArrayList<StaticBinding>();
+		for (int i=0; i<1000; i++) {
+			bindings.add(buildV4Binding("10.0." + (i / 256) + "." + (i % 256), i));
+		}
+		StaticBindingIndex index = new StaticBindingIndex(bindings);
+		assertEquals(1000, index.size());
+		assertEquals(0, index.getUnindexedSize());
+		for (int i=0; i<1000; i++) {
+			byte[] chaddr = new byte[] { 0, 0x16, 0x3e, 0, (byte)(i >> 8), (byte)i };
+			StaticBinding found = index.find(chaddr, IdentityAssoc.V4_TYPE, 0, null);
+			assertSame(bindings.get(i), found);
+			assertTrue(found.matches(chaddr, IdentityAssoc.V4_TYPE, 0, null));
+		}
+		assertNull(index.find(new byte[] { 1, 2, 3, 4, 5, 6 }, IdentityAssoc.V4_TYPE, 0, null));
+		assertNull(index.find(new byte[] { 0, 0x16, 0x3e, 0, 0, 0 }, IdentityAssoc.NA_TYPE, 0, null));
+		assertNull(index.find(null, IdentityAssoc.V4_TYPE, 0, null));
+	}
+	
+	public void testV6Iaid() throws Exception
+	{
+		List<StaticBinding> bindings = new ArrayList<StaticBinding>();
+		bindings.add(buildV6Binding("2001:db8::1", IdentityAssoc.NA_TYPE, 1L));
+		bindings.add(buildV6Binding("2001:db8::2", IdentityAssoc.NA_TYPE, null));
+		bindings.add(buildV6Binding("2001:db8::3", IdentityAssoc.NA_TYPE, 3L));
+		bindings.add(buildV6Binding("2001:db8::4", IdentityAssoc.TA_TYPE, 1L));
+		StaticBindingIndex index = new StaticBindingIndex(bindings);
+		assertSame(bindings.get(0), index.find(DUID, IdentityAssoc.NA_TYPE, 1, null));
+		assertSame(bindings.get(1), index.find(DUID, IdentityAssoc.NA_TYPE, 2, null));
+		// configured after the binding for any IAID
+		assertSame(bindings.get(1), index.find(DUID, IdentityAssoc.NA_TYPE, 3, null));
+		assertSame(bindings.get(3), index.find(DUID, IdentityAssoc.TA_TYPE, 1, null));
+		assertNull(index.find(DUID, IdentityAssoc.TA_TYPE, 2, null));
+		assertNull(index.find(DUID, IdentityAssoc.PD_TYPE, 1, null));
+	}
+	
+	public void testUnindexedOrder() throws Exception
+	{
+		final byte[] chaddr = new byte[] { 0, 0x16, 0x3e, 0, 0, 5 };
+		StaticBinding anyClient = new StaticBinding() {
+			@Override
+			public boolean matches(byte[] duid, byte iatype, long iaid, DhcpMessage requestMsg) {
+				return true;
+			}
+			@Override
+			public String getIpAddress() {
+				return "10.0.1.1";
+			}
+			@Override
+			public PoliciesType getPolicies() {
+				return null;
+			}
+		};
+		List<StaticBinding> bindings = new ArrayList<StaticBinding>();
+		bindings.add(buildV4Binding("10.0.0.5", 5));
+		bindings.add(anyClient);
+		bindings.add(buildV4Binding("10.0.0.6", 6));
+		StaticBindingIndex index = new StaticBindingIndex(bindings);
+		assertEquals(1, index.getUnindexedSize());
+		assertSame(bindings.get(0), index.find(chaddr, IdentityAssoc.V4_TYPE, 0, null));
+		chaddr[5] = 6;
+		assertSame(anyClient, index.find(chaddr, IdentityAssoc.V4_TYPE, 0, null));
+		chaddr[5] = 7;
+		assertSame(anyClient, index.find(chaddr, IdentityAssoc.V4_TYPE, 0, null));
+	}
+}
@@ -29,6 +29,7 @@ import java.net.InetAddress;
 
 import junit.framework.TestCase;
 
+import com.jagornet.dhcp.server.config.DhcpServerConfigException;
 import com.jagornet.dhcp.server.request.binding.V6PrefixBindingPool;
 import com.jagornet.dhcp.xml.V6PrefixPool;
 
@@ -47,4 +48,162 @@ public class TestV6PrefixBindingPool extends TestCase
 		next = pbp.getNextAvailableAddress();
 		assertEquals(InetAddress.getByName("2001:DB8:FFFF:2::"), next);
 	}
+	
+	public void testCarryOver() throws Exception
+	{
+		V6PrefixPool pool = V6PrefixPool.Factory.newInstance();
+		pool.setRange("2001:DB8:FFFF::/48");
+		pool.setPrefixLength(64);
+		V6PrefixBindingPool oldPool = new V6PrefixBindingPool(pool);
+		oldPool.getNextAvailableAddress();
+		oldPool.getNextAvailableAddress();
+		
+		V6PrefixBindingPool newPool = new V6PrefixBindingPool(pool);
+		assertTrue(newPool.carryOver(oldPool));
+		assertEquals(2, newPool.getUsedCount());
+		assertEquals(InetAddress.getByName("2001:DB8:FFFF:2::"), newPool.getNextAvailableAddress());
+		// the free list is shared with the old pool
+		assertEquals(3, oldPool.getUsedCount());
+		
+		pool.setPrefixLength(56);
+		assertFalse(new V6PrefixBindingPool(pool).carryOver(oldPool));
+		pool.setPrefixLength(64);
+		pool.setRange("2001:DB8:FFFE::/48");
+		assertFalse(new V6PrefixBindingPool(pool).carryOver(oldPool));
+		oldPool.close();
+	}
+	
+	public void testPrefixLengthHint() throws Exception
+	{
+		V6PrefixPool pool = V6PrefixPool.Factory.newInstance();
+		pool.setRange("2001:DB8::/32");
+		pool.setPrefixLength(56);
+		V6PrefixBindingPool pbp = new V6PrefixBindingPool(pool);
+		pbp.setPrefixLengthRange(48, 64);
+		assertEquals(InetAddress.getByName("2001:DB8::"), pbp.getNextAvailableAddress());
+		assertEquals(56, pbp.getPrefixLength(InetAddress.getByName("2001:DB8::")));
+		// a /64 is split from the /56 after the first one
+		InetAddress p64 = pbp.getNextAvailablePrefix(64);
+		assertEquals(InetAddress.getByName("2001:DB8:0:100::"), p64);
+		assertEquals(64, pbp.getPrefixLength(p64));
+		// a /48 is aligned to the next free /48
+		InetAddress p48 = pbp.getNextAvailablePrefix(48);
+		assertEquals(InetAddress.getByName("2001:DB8:1::"), p48);
+		assertEquals(48, pbp.getPrefixLength(p48));
+		// hints outside the range are limited to it
+		InetAddress p40 = pbp.getNextAvailablePrefix(40);
+		assertEquals(InetAddress.getByName("2001:DB8:2::"), p40);
+		assertEquals(48, pbp.getPrefixLength(p40));
+		InetAddress p80 = pbp.getNextAvailablePrefix(80);
+		assertEquals(64, pbp.getPrefixLength(p80));
+		assertEquals(5, pbp.getUsedCount());
+		
+		pbp.setFree(p64);
+		pbp.setFree(p80);
+		pbp.setFree(p48);
+		pbp.setFree(p40);
+		pbp.setFree(InetAddress.getByName("2001:DB8::"));
+		assertEquals(0, pbp.getUsedCount());
+		assertEquals(1, pbp.freeList.getFreeBlockCount());
+		pbp.close();
+	}
+	
+	public void testPrefixLengthFallback() throws Exception
+	{
+		V6PrefixPool pool = V6PrefixPool.Factory.newInstance();
+		pool.setRange("2001:DB8:FFFF::/48");
+		pool.setPrefixLength(56);
+		V6PrefixBindingPool pbp = new V6PrefixBindingPool(pool);
+		pbp.setPrefixLengthRange(48, 56);
+		assertNotNull(pbp.getNextAvailableAddress());
+		// no /48 is free, so a /56 is allocated
+		InetAddress next = pbp.getNextAvailablePrefix(48);
+		assertEquals(InetAddress.getByName("2001:DB8:FFFF:100::"), next);
+		assertEquals(56, pbp.getPrefixLength(next));
+		pbp.close();
+	}
+	
+	public void testSetUsedPrefixLength() throws Exception
+	{
+		V6PrefixPool pool = V6PrefixPool.Factory.newInstance();
+		pool.setRange("2001:DB8:FFFF::/48");
+		pool.setPrefixLength(64);
+		V6PrefixBindingPool pbp = new V6PrefixBindingPool(pool);
+		pbp.setPrefixLengthRange(56, 64);
+		// the prefixes of the leases, e.g. after a restart
+		pbp.setUsed(InetAddress.getByName("2001:DB8:FFFF::"), 56);
+		pbp.setUsed(InetAddress.getByName("2001:DB8:FFFF:100::"));
+		assertEquals(56, pbp.getPrefixLength(InetAddress.getByName("2001:DB8:FFFF::")));
+		assertEquals(InetAddress.getByName("2001:DB8:FFFF:101::"), pbp.getNextAvailableAddress());
+		assertEquals(InetAddress.getByName("2001:DB8:FFFF:200::"), pbp.getNextAvailablePrefix(56));
+		pbp.close();
+	}
+	
+	public void testInvalidPrefixLengthRange() throws Exception
+	{
+		V6PrefixPool pool = V6PrefixPool.Factory.newInstance();
+		pool.setRange("2001:DB8:FFFF::/48");
+		pool.setPrefixLength(56);
+		V6PrefixBindingPool pbp = new V6PrefixBindingPool(pool);
+		try {
+			pbp.setPrefixLengthRange(40, 64);
+			fail("range shorter than the pool");
+		}
+		catch (DhcpServerConfigException ex) {
+			// expected
+		}
+		try {
+			pbp.setPrefixLengthRange(60, 64);
+			fail("range without the allocation length");
+		}
+		catch (DhcpServerConfigException ex) {
+			// expected
+		}
+		pbp.setPrefixLengthRange(0, 0);
+		assertEquals(56, pbp.getMinPrefixLen());
+		assertEquals(56, pbp.getMaxPrefixLen());
+		pbp.close();
+	}
+	
+	public void testLargePools() throws Exception
+	{
+		V6PrefixPool pool = V6PrefixPool.Factory.newInstance();
+		pool.setRange("2001:DB8::/32");
+		pool.setPrefixLength(64);
+		V6PrefixBindingPool pbp = new V6PrefixBindingPool(pool);
+		assertEquals(InetAddress.getByName("2001:DB8::"), pbp.getNextAvailableAddress());
+		pbp.setUsed(InetAddress.getByName("2001:DB8:FFFF:FFFF::"));
+		assertEquals(2, pbp.getUsedCount());
+		// the free list holds blocks around the used prefixes, not the pool
+		assertTrue(pbp.freeList.getFreeBlockCount() <= 64);
+		pbp.close();
+		
+		pool.setRange("2400::/24");
+		pool.setPrefixLength(56);
+		pbp = new V6PrefixBindingPool(pool);
+		for (int i=0; i<1000; i++) {
+			assertNotNull(pbp.getNextAvailableAddress());
+		}
+		assertEquals(InetAddress.getByName("2400:0:3:e800::"), pbp.getNextAvailableAddress());
+		assertEquals(1001, pbp.getUsedCount());
+		assertTrue(pbp.freeList.getFreeBlockCount() <= 32);
+		pbp.close();
+	}
+	
+	public void testCarryOverPrefixLengthRange() throws Exception
+	{
+		V6PrefixPool pool = V6PrefixPool.Factory.newInstance();
+		pool.setRange("2001:DB8:FFFF::/48");
+		pool.setPrefixLength(64);
+		V6PrefixBindingPool oldPool = new V6PrefixBindingPool(pool);
+		oldPool.setPrefixLengthRange(56, 64);
+		oldPool.getNextAvailablePrefix(56);
+		
+		V6PrefixBindingPool newPool = new V6PrefixBindingPool(pool);
+		assertFalse(newPool.carryOver(oldPool));
+		newPool.setPrefixLengthRange(56, 64);
+		assertTrue(newPool.carryOver(oldPool));
+		assertEquals(1, newPool.getUsedCount());
+		oldPool.close();
+	}
 }
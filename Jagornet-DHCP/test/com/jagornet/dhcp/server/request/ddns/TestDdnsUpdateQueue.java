@@ -0,0 +1,256 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file TestDdnsUpdateQueue.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.ddns;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SimpleResolver;
+
+/**
+ * The Class TestDdnsUpdateQueue.
+ */
+public class TestDdnsUpdateQueue extends TestCase
+{
+	private static final String ZONE = "0.0.10.in-addr.arpa.";
+
+	private FakeDnsServer dnsServer;
+	private DdnsUpdateQueue queue;
+	private Results results;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		dnsServer = new FakeDnsServer();
+		dnsServer.start();
+		results = new Results();
+		SimpleResolver res = new SimpleResolver("127.0.0.1");
+		res.setPort(dnsServer.socket.getLocalPort());
+		res.setTimeout(0, 200);
+		DdnsUpdate.resolvers.put(buildUpdate(1).getResolverKey(), res);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		queue.shutdown();
+		dnsServer.socket.close();
+		DdnsUpdate.resolvers.clear();
+		super.tearDown();
+	}
+
+	private ReverseDdnsUpdate buildUpdate(int host) throws Exception
+	{
+		ReverseDdnsUpdate update = new ReverseDdnsUpdate("host" + host + ".example.com.",
+				InetAddress.getByName("10.0.0." + host), new byte[] { 0, 1, 2, 3, 4, 5 });
+		update.setServer("127.0.0.1");
+		update.setZone(ZONE);
+		update.setTtl(300);
+		return update;
+	}
+
+	public void testCoalesce() throws Exception
+	{
+		queue = new DdnsUpdateQueue(1, 100, 20, 0, 10, 10);
+		dnsServer.hold = new CountDownLatch(1);
+		assertTrue(queue.submit(buildUpdate(1), false, results));
+		dnsServer.received.await(5, TimeUnit.SECONDS);
+		// the first update is being sent, so these wait in the queue
+		assertTrue(queue.submit(buildUpdate(2), false, results));
+		assertTrue(queue.submit(buildUpdate(2), true, results));
+		assertEquals(1, queue.getQueueDepth());
+		assertEquals("revAdd false", results.take());
+		dnsServer.hold.countDown();
+		assertEquals("revAdd true", results.take());
+		assertEquals("revDelete true", results.take());
+		assertEquals(2, dnsServer.messages.get());
+		assertEquals(1, queue.getCoalesced());
+		assertEquals(0, queue.getBatchesSent());
+	}
+
+	public void testBatch() throws Exception
+	{
+		queue = new DdnsUpdateQueue(1, 100, 20, 0, 10, 10);
+		dnsServer.hold = new CountDownLatch(1);
+		assertTrue(queue.submit(buildUpdate(1), false, results));
+		dnsServer.received.await(5, TimeUnit.SECONDS);
+		for (int i=2; i<=6; i++) {
+			assertTrue(queue.submit(buildUpdate(i), false, results));
+		}
+		assertEquals(1, queue.getZoneQueueDepths().length);
+		assertEquals("127.0.0.1 " + ZONE + "=5", queue.getZoneQueueDepths()[0]);
+		dnsServer.hold.countDown();
+		for (int i=1; i<=6; i++) {
+			assertEquals("revAdd true", results.take());
+		}
+		assertEquals(2, dnsServer.messages.get());
+		assertEquals(1, queue.getBatchesSent());
+		// each reverse add is a delete of the name and an add of the PTR
+		assertEquals(10, dnsServer.updateCounts.get(1).intValue());
+	}
+
+	public void testQueueFull() throws Exception
+	{
+		queue = new DdnsUpdateQueue(1, 2, 20, 0, 10, 10);
+		dnsServer.hold = new CountDownLatch(1);
+		assertTrue(queue.submit(buildUpdate(1), false, results));
+		dnsServer.received.await(5, TimeUnit.SECONDS);
+		assertTrue(queue.submit(buildUpdate(2), false, results));
+		assertTrue(queue.submit(buildUpdate(3), false, results));
+		assertFalse(queue.submit(buildUpdate(4), false, results));
+		assertEquals("revAdd false", results.take());
+		assertEquals(1, queue.getDropped());
+		dnsServer.hold.countDown();
+		for (int i=1; i<=3; i++) {
+			assertEquals("revAdd true", results.take());
+		}
+	}
+
+	public void testRetry() throws Exception
+	{
+		queue = new DdnsUpdateQueue(1, 100, 20, 2, 10, 10);
+		dnsServer.drop.set(1);
+		assertTrue(queue.submit(buildUpdate(1), false, results));
+		assertEquals("revAdd true", results.take());
+		assertEquals(1, queue.getRetried());
+
+		dnsServer.drop.set(10);
+		assertTrue(queue.submit(buildUpdate(2), true, results));
+		assertEquals("revDelete false", results.take());
+		assertEquals(1, queue.getFailed());
+	}
+
+	public void testFuture() throws Exception
+	{
+		queue = new DdnsUpdateQueue(1, 100, 20, 0, 10, 10);
+		dnsServer.hold = new CountDownLatch(1);
+		DdnsUpdateFuture future = new DdnsUpdateFuture(results, false);
+		assertTrue(queue.submit(buildUpdate(1), false, future));
+		// no forward update, so nothing to wait for
+		assertTrue(future.awaitForward(0, TimeUnit.MILLISECONDS));
+		assertFalse(future.await(50, TimeUnit.MILLISECONDS));
+		assertFalse(future.isDone());
+		assertNull(future.getReverseResult());
+		dnsServer.hold.countDown();
+		assertTrue(future.get(5, TimeUnit.SECONDS));
+		assertTrue(future.isDone());
+		assertNull(future.getForwardResult());
+		assertEquals(Boolean.TRUE, future.getReverseResult());
+		// the callback is called before the future completes
+		assertEquals("revAdd true", results.results.poll());
+
+		future = new DdnsUpdateFuture(null, true);
+		future.revAddComplete(true);
+		assertFalse(future.awaitForward(10, TimeUnit.MILLISECONDS));
+		future.fwdAddComplete(false);
+		assertTrue(future.isDone());
+		assertFalse(future.get());
+	}
+
+	/**
+	 * Records the callbacks in the order they are called.
+	 */
+	static class Results implements DdnsCallback
+	{
+		BlockingQueue<String> results = new LinkedBlockingQueue<String>();
+
+		String take() throws InterruptedException {
+			return results.poll(10, TimeUnit.SECONDS);
+		}
+		public void fwdAddComplete(boolean success) {
+			results.add("fwdAdd " + success);
+		}
+		public void fwdDeleteComplete(boolean success) {
+			results.add("fwdDelete " + success);
+		}
+		public void revAddComplete(boolean success) {
+			results.add("revAdd " + success);
+		}
+		public void revDeleteComplete(boolean success) {
+			results.add("revDelete " + success);
+		}
+	}
+
+	/**
+	 * Answers all update messages with NOERROR.  The first message can be
+	 * held until released, and messages can be dropped to cause timeouts.
+	 */
+	static class FakeDnsServer extends Thread
+	{
+		DatagramSocket socket;
+		CountDownLatch hold = new CountDownLatch(0);
+		CountDownLatch received = new CountDownLatch(1);
+		AtomicInteger drop = new AtomicInteger();
+		AtomicInteger messages = new AtomicInteger();
+		List<Integer> updateCounts = new CopyOnWriteArrayList<Integer>();
+
+		FakeDnsServer() throws Exception {
+			socket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			byte[] buf = new byte[65535];
+			try {
+				while (true) {
+					DatagramPacket packet = new DatagramPacket(buf, buf.length);
+					socket.receive(packet);
+					received.countDown();
+					hold.await();
+					if (drop.getAndDecrement() > 0) {
+						continue;
+					}
+					byte[] data = new byte[packet.getLength()];
+					System.arraycopy(buf, 0, data, 0, data.length);
+					Message query = new Message(data);
+					messages.incrementAndGet();
+					updateCounts.add(query.getSectionArray(Section.UPDATE).length);
+					Message response = new Message(query.getHeader().getID());
+					response.getHeader().setOpcode(query.getHeader().getOpcode());
+					response.getHeader().setRcode(Rcode.NOERROR);
+					byte[] wire = response.toWire();
+					socket.send(new DatagramPacket(wire, wire.length, packet.getSocketAddress()));
+				}
+			}
+			catch (Exception ex) {
+				// closed
+			}
+		}
+	}
+}
@@ -35,6 +35,8 @@ public class AllTestsUtil {
 		//$JUnit-BEGIN$
 		suite.addTestSuite(TestSubnet.class);
 		suite.addTestSuite(TestLinkMap.class);
+		suite.addTestSuite(TestSubnetTrie.class);
+		suite.addTestSuite(TestIpAddress.class);
 		//$JUnit-END$
 		return suite;
 	}
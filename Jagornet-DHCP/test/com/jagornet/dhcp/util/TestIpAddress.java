@@ -0,0 +1,158 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file TestIpAddress.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.util;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class TestIpAddress.
+ */
+public class TestIpAddress extends TestCase
+{
+	/**
+	 * Test the conversion to and from InetAddress.
+	 * 
+	 * @throws Exception the exception
+	 */
+	public void testInetAddress() throws Exception
+	{
+		String[] addrs = { "0.0.0.0", "10.0.0.1", "192.168.255.255", "255.255.255.255",
+				"::", "2001:db8::1", "fe80::ffff:ffff:ffff:ffff", 
+				"ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff" };
+		for (String addr : addrs) {
+			InetAddress inetAddr = InetAddress.getByName(addr);
+			IpAddress ip = IpAddress.valueOf(inetAddr);
+			assertEquals(inetAddr, ip.toInetAddress());
+			assertEquals(new BigInteger(1, inetAddr.getAddress()), ip.toBigInteger());
+			assertEquals(ip, IpAddress.valueOf(ip.toBytes()));
+			assertEquals(ip.hashCode(), IpAddress.valueOf(addr).hashCode());
+		}
+		assertTrue(IpAddress.valueOf("10.0.0.1").isV4());
+		assertFalse(IpAddress.valueOf("::a00:1").isV4());
+		assertFalse(IpAddress.valueOf("10.0.0.1").equals(IpAddress.valueOf("::a00:1")));
+	}
+	
+	/**
+	 * Test the unsigned comparison.
+	 * 
+	 * @throws Exception the exception
+	 */
+	public void testCompare() throws Exception
+	{
+		assertTrue(IpAddress.valueOf("10.0.0.1").compareTo(IpAddress.valueOf("192.168.0.1")) < 0);
+		assertTrue(IpAddress.valueOf("255.0.0.0").compareTo(IpAddress.valueOf("127.0.0.1")) > 0);
+		assertTrue(IpAddress.valueOf("2001:db8::1").compareTo(IpAddress.valueOf("fe80::1")) < 0);
+		assertTrue(IpAddress.valueOf("fe80::1").compareTo(IpAddress.valueOf("fe80::2")) < 0);
+		assertTrue(IpAddress.valueOf("::8000:0:0:0").compareTo(IpAddress.valueOf("::1")) > 0);
+		assertEquals(0, IpAddress.valueOf("fe80::1").compareTo(IpAddress.valueOf("fe80::1")));
+		// IPv4 before IPv6
+		assertTrue(IpAddress.valueOf("255.255.255.255").compareTo(IpAddress.valueOf("::")) < 0);
+		assertTrue(Util.compareInetAddrs(InetAddress.getByName("10.0.0.1"), 
+				InetAddress.getByName("192.168.0.1")) < 0);
+		assertTrue(IpAddress.valueOf("10.0.0.5").inRange(IpAddress.valueOf("10.0.0.1"), 
+				IpAddress.valueOf("10.0.0.5")));
+		assertFalse(IpAddress.valueOf("10.0.0.6").inRange(IpAddress.valueOf("10.0.0.1"), 
+				IpAddress.valueOf("10.0.0.5")));
+	}
+	
+	/**
+	 * Test the arithmetic.
+	 * 
+	 * @throws Exception the exception
+	 */
+	public void testArithmetic() throws Exception
+	{
+		IpAddress v4 = IpAddress.valueOf("10.0.0.255");
+		assertEquals(IpAddress.valueOf("10.0.1.0"), v4.add(1));
+		assertEquals(IpAddress.valueOf("10.1.0.255"), v4.add(1, 16));
+		assertEquals(1, IpAddress.valueOf("10.0.1.0").offsetFrom(v4));
+		assertEquals(-1, v4.offsetFrom(IpAddress.valueOf("10.0.1.0")));
+		try {
+			IpAddress.valueOf("255.255.255.255").add(1);
+			fail("IPv4 overflow");
+		}
+		catch (ArithmeticException ex) {
+			// expected
+		}
+		
+		IpAddress v6 = IpAddress.valueOf("2001:db8::ffff:ffff:ffff:ffff");
+		assertEquals(IpAddress.valueOf("2001:db8:0:1::"), v6.add(1));
+		assertEquals(IpAddress.valueOf("2001:db8:0:1::"), 
+				IpAddress.valueOf("2001:db8::").add(1, 64));
+		assertEquals(IpAddress.valueOf("2001:db8:0:ff00::"), 
+				IpAddress.valueOf("2001:db8::").add(0xff, 72));
+		assertEquals(0xff, IpAddress.valueOf("2001:db8:0:ff00::1").offsetFrom(
+				IpAddress.valueOf("2001:db8::"), 72));
+		assertEquals(Long.MAX_VALUE, IpAddress.valueOf("::7fff:ffff:ffff:ffff").offsetFrom(
+				IpAddress.valueOf("::")));
+		// too large for a long
+		assertEquals(-1, IpAddress.valueOf("::1:0:0:0:0").offsetFrom(
+				IpAddress.valueOf("::")));
+		assertEquals(1L << 32, IpAddress.valueOf("::1:0:0:0:0").offsetFrom(
+				IpAddress.valueOf("::"), 32));
+		try {
+			IpAddress.valueOf("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff").add(1);
+			fail("IPv6 overflow");
+		}
+		catch (ArithmeticException ex) {
+			// expected
+		}
+	}
+	
+	/**
+	 * Test the prefixes.
+	 * 
+	 * @throws Exception the exception
+	 */
+	public void testPrefix() throws Exception
+	{
+		IpAddress v4 = IpAddress.valueOf("192.168.1.77");
+		assertEquals(IpAddress.valueOf("192.168.1.0"), v4.mask(24));
+		assertEquals(IpAddress.valueOf("192.168.1.255"), v4.lastInPrefix(24));
+		assertEquals(IpAddress.valueOf("0.0.0.0"), v4.mask(0));
+		assertEquals(v4, v4.mask(32));
+		assertTrue(v4.inPrefix(IpAddress.valueOf("192.168.0.0"), 16));
+		assertFalse(v4.inPrefix(IpAddress.valueOf("192.168.0.0"), 24));
+		assertEquals(32, IpAddress.valueOf("0.0.0.0").numberOfTrailingZeros());
+		assertEquals(8, IpAddress.valueOf("10.0.1.0").numberOfTrailingZeros());
+		
+		IpAddress v6 = IpAddress.valueOf("2001:db8:1:2:3:4:5:6");
+		assertEquals(IpAddress.valueOf("2001:db8::"), v6.mask(32));
+		assertEquals(IpAddress.valueOf("2001:db8:1:2:3::"), v6.mask(80));
+		assertEquals(IpAddress.valueOf("2001:db8:ffff:ffff:ffff:ffff:ffff:ffff"), 
+				v6.lastInPrefix(32));
+		assertEquals(IpAddress.valueOf("2001:db8:1:2:3:ffff:ffff:ffff"), v6.lastInPrefix(80));
+		assertTrue(v6.inPrefix(IpAddress.valueOf("2001:db8:1::"), 48));
+		assertFalse(v6.inPrefix(IpAddress.valueOf("2001:db8:2::"), 48));
+		assertFalse(v6.inPrefix(IpAddress.valueOf("192.168.0.0"), 16));
+		assertEquals(128, IpAddress.valueOf("::").numberOfTrailingZeros());
+		assertEquals(64, IpAddress.valueOf("::1:0:0:0:0").numberOfTrailingZeros());
+		assertEquals(99, IpAddress.valueOf("2001:db8::").numberOfTrailingZeros());
+	}
+}
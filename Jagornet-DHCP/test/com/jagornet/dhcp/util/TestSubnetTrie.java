@@ -0,0 +1,153 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file TestSubnetTrie.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.util;
+
+import java.net.InetAddress;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class TestSubnetTrie.
+ */
+public class TestSubnetTrie extends TestCase
+{
+	private SubnetTrie<String> trie;
+	
+	@Override
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		trie = new SubnetTrie<String>();
+		assertTrue(trie.put(new Subnet("10.0.0.0", 8), "10/8"));
+		assertTrue(trie.put(new Subnet("10.1.0.0", 16), "10.1/16"));
+		assertTrue(trie.put(new Subnet("10.1.2.0", 24), "10.1.2/24"));
+		assertTrue(trie.put(new Subnet("192.168.1.0", 24), "192.168.1/24"));
+		assertTrue(trie.put(new Subnet("2001:DB8::", 32), "db8/32"));
+		assertTrue(trie.put(new Subnet("2001:DB8:1::", 48), "db8:1/48"));
+		assertTrue(trie.put(new Subnet("FE80::1", 128), "fe80::1/128"));
+	}
+	
+	private String get(String addr) throws Exception
+	{
+		return trie.get(InetAddress.getByName(addr));
+	}
+	
+	public void testLongestPrefixMatch() throws Exception
+	{
+		assertEquals("10/8", get("10.0.0.1"));
+		assertEquals("10/8", get("10.2.0.1"));
+		assertEquals("10.1/16", get("10.1.0.1"));
+		assertEquals("10.1/16", get("10.1.3.1"));
+		assertEquals("10.1.2/24", get("10.1.2.0"));
+		assertEquals("10.1.2/24", get("10.1.2.255"));
+		assertEquals("192.168.1/24", get("192.168.1.1"));
+		assertNull(get("192.168.2.1"));
+		assertNull(get("11.0.0.1"));
+		assertEquals("db8/32", get("2001:DB8:2::1"));
+		assertEquals("db8:1/48", get("2001:DB8:1:FFFF::1"));
+		assertEquals("fe80::1/128", get("FE80::1"));
+		assertNull(get("FE80::2"));
+		assertNull(get("2001:DB9::1"));
+		// the families are separate
+		assertNull(get("::A01:201"));
+		assertEquals("10.1.2/24", trie.get(0x0a010203));
+		assertEquals("db8:1/48", trie.get(0x20010db800010000L, 1));
+	}
+	
+	public void testExactMatch() throws Exception
+	{
+		assertEquals("10.1/16", trie.get(InetAddress.getByName("10.1.0.0"), 16));
+		assertEquals("10.1/16", trie.get(InetAddress.getByName("10.1.9.9"), 16));
+		assertNull(trie.get(InetAddress.getByName("10.1.0.0"), 17));
+		assertNull(trie.get(InetAddress.getByName("10.1.0.0"), 12));
+		assertEquals("fe80::1/128", trie.get(InetAddress.getByName("FE80::1"), 128));
+		assertNull(trie.get(InetAddress.getByName("FE80::2"), 128));
+	}
+	
+	public void testFirstPutKept() throws Exception
+	{
+		assertFalse(trie.put(new Subnet("10.1.0.0", 16), "other"));
+		assertEquals("10.1/16", get("10.1.0.1"));
+		assertEquals(7, trie.size());
+		// an internal node of the trie gets the value
+		assertTrue(trie.put(new Subnet("10.0.0.0", 14), "10/14"));
+		assertEquals("10/14", get("10.2.0.1"));
+		assertEquals("10.1/16", get("10.1.0.1"));
+		assertEquals("10/8", get("10.4.0.1"));
+	}
+	
+	public void testRange() throws Exception
+	{
+		trie.putRange(InetAddress.getByName("172.16.0.5"), 
+				InetAddress.getByName("172.16.1.250"), "v4range");
+		assertNull(get("172.16.0.4"));
+		assertEquals("v4range", get("172.16.0.5"));
+		assertEquals("v4range", get("172.16.0.255"));
+		assertEquals("v4range", get("172.16.1.250"));
+		assertNull(get("172.16.1.251"));
+		
+		trie.putRange(InetAddress.getByName("0.0.0.0"), 
+				InetAddress.getByName("255.255.255.255"), "all");
+		assertEquals("all", get("11.0.0.1"));
+		assertEquals("10/8", get("10.0.0.1"));
+		
+		trie.putRange(InetAddress.getByName("2001:DB8:5::10"), 
+				InetAddress.getByName("2001:DB8:5::1:F"), "v6range");
+		assertEquals("db8/32", get("2001:DB8:5::F"));
+		assertEquals("v6range", get("2001:DB8:5::10"));
+		assertEquals("v6range", get("2001:DB8:5::FFFF"));
+		assertEquals("v6range", get("2001:DB8:5::1:F"));
+		assertEquals("db8/32", get("2001:DB8:5::1:10"));
+	}
+	
+	public void testCompareSubnet() throws Exception
+	{
+		Random random = new Random(1);
+		SubnetTrie<Subnet> subnets = new SubnetTrie<Subnet>();
+		Subnet[] all = new Subnet[2000];
+		for (int i=0; i<all.length; i++) {
+			byte[] b = new byte[4];
+			random.nextBytes(b);
+			int prefixLength = 8 + random.nextInt(25);
+			Subnet subnet = new Subnet(InetAddress.getByAddress(b), prefixLength);
+			all[i] = subnets.put(subnet, subnet) ? subnet : null;
+		}
+		for (int i=0; i<20000; i++) {
+			byte[] b = new byte[4];
+			random.nextBytes(b);
+			InetAddress addr = InetAddress.getByAddress(b);
+			Subnet expected = null;
+			for (Subnet subnet : all) {
+				if ((subnet != null) && subnet.contains(addr) && ((expected == null) || 
+						(subnet.getPrefixLength() > expected.getPrefixLength()))) {
+					expected = subnet;
+				}
+			}
+			assertSame(addr.getHostAddress(), expected, subnets.get(addr));
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.adviser.dhcponzoo;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.xtext.xbase.lib.Procedures.Procedure1;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the streaming and the parallel parser of lease-parser on
+ * generated files of 1M and 10M leases.  Each run parses the whole file
+ * into the last lease of each ip.  The parser and the LeaseFileGenerator
+ * of its tests are installed by 'mvn install' in the lease-parser project.
+ *
+ * @author markusw
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = "-Xmx8g")
+public class LeaseParserBenchmark
+{
+	@Param({ "1000000", "10000000" })
+	public int leases;
+
+	private File file;
+
+	@Setup
+	public void generate() throws Exception
+	{
+		file = File.createTempFile("dhcpd", ".leases");
+		// on average two records per ip
+		LeaseFileGenerator.generate(file, leases, leases / 2);
+	}
+
+	@TearDown
+	public void delete()
+	{
+		file.delete();
+	}
+
+	@Benchmark
+	public Map<String, Lease> streaming()
+	{
+		final Map<String, Lease> result = new HashMap<String, Lease>();
+		new LeaseParser().parse(file, new Procedure1<Lease>() {
+			public void apply(Lease lease) {
+				result.put(lease.getIp(), lease);
+			}
+		});
+		return result;
+	}
+
+	@Benchmark
+	public Map<String, Lease> parallel()
+	{
+		return new ParallelLeaseParser().parse(file);
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file LeaseConversionBenchmark.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.db;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jagornet.dhcp.option.base.BaseDhcpOption;
+import com.jagornet.dhcp.option.v4.DhcpV4ClientFqdnOption;
+import com.jagornet.dhcp.option.v4.DhcpV4HostnameOption;
+
+/**
+ * Converts the leases of the lease managers between the IdentityAssoc
+ * of the binding managers and the DhcpLease rows, and encodes and decodes
+ * the options of a lease, which the lease managers do for every lease
+ * read or written.  No database is used.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LeaseConversionBenchmark
+{
+	private LeaseManager leaseMgr;
+	private IdentityAssoc ia;
+	private List<DhcpLease> leases;
+	private Collection<DhcpOption> options;
+	private byte[] encodedOptions;
+	
+	@Setup
+	public void setup() throws Exception
+	{
+		// only the conversions of the base class are used
+		leaseMgr = new JdbcLeaseManager();
+		
+		ia = new IdentityAssoc();
+		ia.setDuid(new byte[] { 0, 3, 0, 1, 0x00, 0x16, 0x3e, 0x12, 0x34, 0x56 });
+		ia.setIatype(IdentityAssoc.V4_TYPE);
+		ia.setIaid(0);
+		ia.setState(IaAddress.COMMITTED);
+		IaAddress iaAddr = new IaAddress();
+		iaAddr.setIpAddress(InetAddress.getByName("10.0.0.100"));
+		iaAddr.setState(IaAddress.COMMITTED);
+		Date now = new Date();
+		iaAddr.setStartTime(now);
+		iaAddr.setPreferredEndTime(new Date(now.getTime() + 3600000));
+		iaAddr.setValidEndTime(new Date(now.getTime() + 3600000));
+		DhcpV4ClientFqdnOption fqdn = new DhcpV4ClientFqdnOption();
+		fqdn.setDomainName("client-host.example.com.");
+		iaAddr.setDhcpOption(toDbOption(fqdn));
+		DhcpV4HostnameOption hostname = new DhcpV4HostnameOption();
+		hostname.setString("client-host");
+		iaAddr.setDhcpOption(toDbOption(hostname));
+		List<IaAddress> iaAddrs = new ArrayList<IaAddress>();
+		iaAddrs.add(iaAddr);
+		ia.setIaAddresses(iaAddrs);
+		
+		leases = leaseMgr.toDhcpLeases(ia);
+		options = iaAddr.getDhcpOptions();
+		encodedOptions = leaseMgr.encodeOptions(options);
+	}
+	
+	/**
+	 * Convert an option as LeaseManager.saveDhcpOption does.
+	 */
+	private static DhcpOption toDbOption(BaseDhcpOption baseOption) throws Exception
+	{
+		ByteBuffer bb = baseOption.encode();
+		bb.position(1);
+		byte[] value = new byte[bb.remaining()];
+		bb.get(value);
+		DhcpOption dbOption = new DhcpOption();
+		dbOption.setCode(baseOption.getCode());
+		dbOption.setValue(value);
+		return dbOption;
+	}
+	
+	@Benchmark
+	public List<DhcpLease> toDhcpLeases()
+	{
+		return leaseMgr.toDhcpLeases(ia);
+	}
+	
+	@Benchmark
+	public IdentityAssoc toIdentityAssoc()
+	{
+		return leaseMgr.toIdentityAssoc(leases);
+	}
+	
+	@Benchmark
+	public byte[] encodeOptions()
+	{
+		return leaseMgr.encodeOptions(options);
+	}
+	
+	@Benchmark
+	public int decodeOptions()
+	{
+		// decoded when accessed
+		return leaseMgr.decodeOptions(encodedOptions).size();
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file LeaseSchemaBenchmark.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.db;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.jagornet.dhcp.server.config.DhcpServerConfiguration;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+
+/**
+ * Compares the lease queries of the v2 and v3 schemas on an in-memory
+ * database with the same leases.  Five percent of the leases are released,
+ * and one percent are expired, so the unused and expired queries return a
+ * realistic share of a pool.
+ * 
+ * The lease managers need the schema files of the db directory, so the
+ * benchmarks are run with <code>-Djagornet.dhcp.home=../Jagornet-DHCP</code>,
+ * as the benchmark profile does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LeaseSchemaBenchmark
+{
+	@Param({ "100000" })
+	public int leases;
+
+	@Param({ "h2", "derby" })
+	public String database;
+
+	@Param({ "v2", "v3" })
+	public String schema;
+
+	private LeaseManager leaseMgr;
+	private InetAddress start;
+	private InetAddress end;
+	private InetAddress addr;
+	private byte[] duid;
+
+	private static InetAddress ip(int n) throws Exception
+	{
+		return InetAddress.getByAddress(new byte[] { 10, (byte)(n >> 16), (byte)(n >> 8), (byte)n });
+	}
+
+	@Setup
+	public void setup() throws Exception
+	{
+		// the lease managers read the policies of a configuration, without links
+		File configFile = File.createTempFile("dhcpserver-bench", ".xml");
+		configFile.deleteOnExit();
+		Writer w = new FileWriter(configFile);
+		try {
+			w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+				"<dhc:dhcpServerConfig xmlns:dhc=\"http://jagornet.com/dhcp/xml\">\n" +
+				"<v6ServerIdOption><opaqueData><hexValue>abcdef0123456789</hexValue>" +
+				"</opaqueData></v6ServerIdOption>\n" +
+				"<v4ServerIdOption><ipAddress>10.0.0.10</ipAddress></v4ServerIdOption>\n" +
+				"</dhc:dhcpServerConfig>\n");
+		}
+		finally {
+			w.close();
+		}
+		DhcpServerConfiguration.configFilename = configFile.getPath();
+		DhcpServerConfiguration.getInstance();
+		boolean derby = database.equals("derby");
+		DhcpServerPolicies.setProperty(Property.DATABASE_SCHEMA_TYTPE, derby ?
+				DbSchemaManager.SCHEMATYPE_JDBC_DERBY : DbSchemaManager.SCHEMATYPE_JDBC_H2);
+
+		DataSource dataSource = derby ?
+			new DriverManagerDataSource("jdbc:derby:memory:bench" + schema + ";create=true", "", "") :
+			new DriverManagerDataSource("jdbc:h2:mem:bench" + schema + ";DB_CLOSE_DELAY=-1", "sa", "");
+		if (schema.equals("v2")) {
+			DbSchemaManager.createSchema(dataSource, derby ?
+					DbSchemaManager.SCHEMA_DERBY_V2_FILENAME : DbSchemaManager.SCHEMA_V2_FILENAME);
+			JdbcLeaseManager v2 = new JdbcLeaseManager();
+			v2.setDataSource(dataSource);
+			leaseMgr = v2;
+		}
+		else {
+			JdbcLeaseManagerV3 v3 = new JdbcLeaseManagerV3();
+			v3.setDataSource(dataSource);
+			v3.init();
+			leaseMgr = v3;
+		}
+		populate();
+
+		// a /25, because the v2 varbinary keys compare signed bytes with H2,
+		// so v2 finds nothing in a range spanning x.x.x.127 to x.x.x.128
+		start = ip(leases / 2 & ~0xff);
+		end = ip(leases / 2 & ~0xff | 0x7f);
+		addr = ip(leases / 3);
+		duid = new byte[] { 0, 0x16, 0x3e, 0, 0, 7 };
+	}
+
+	private void populate() throws Exception
+	{
+		long now = System.currentTimeMillis();
+		for (int i=0; i<leases; i++) {
+			IdentityAssoc ia = new IdentityAssoc();
+			ia.setDuid(new byte[] { 0, 0x16, 0x3e, (byte)(i >> 16), (byte)(i >> 8), (byte)i });
+			ia.setIatype(IdentityAssoc.V4_TYPE);
+			ia.setIaid(0);
+			IaAddress iaAddr = new IaAddress();
+			iaAddr.setIpAddress(ip(i));
+			byte state = (i % 20 == 0) ? IaAddress.RELEASED : IaAddress.COMMITTED;
+			ia.setState(state);
+			iaAddr.setState(state);
+			iaAddr.setStartTime(new Date(now - 3600000));
+			long end = (i % 100 == 1) ? now - 60000 : now + 3600000 + i;
+			iaAddr.setPreferredEndTime(new Date(end));
+			iaAddr.setValidEndTime(new Date(end));
+			List<IaAddress> iaAddrs = new ArrayList<IaAddress>();
+			iaAddrs.add(iaAddr);
+			ia.setIaAddresses(iaAddrs);
+			leaseMgr.createIA(ia);
+		}
+	}
+
+	@Benchmark
+	public IdentityAssoc findIaByDuid()
+	{
+		return leaseMgr.findIA(duid, IdentityAssoc.V4_TYPE, 0);
+	}
+
+	@Benchmark
+	public IdentityAssoc findIaByAddress()
+	{
+		return leaseMgr.findIA(addr);
+	}
+
+	@Benchmark
+	public List<InetAddress> findExistingIPs()
+	{
+		return leaseMgr.findExistingIPs(start, end);
+	}
+
+	@Benchmark
+	public List<IaAddress> findUnusedIaAddresses()
+	{
+		return leaseMgr.findUnusedIaAddresses(start, end);
+	}
+
+	@Benchmark
+	public List<IdentityAssoc> findExpiredIAs()
+	{
+		return leaseMgr.findExpiredIAs(IdentityAssoc.V4_TYPE);
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file MessageBenchmark.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.message;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jagornet.dhcp.option.v4.DhcpV4ClientIdOption;
+import com.jagornet.dhcp.option.v4.DhcpV4HostnameOption;
+import com.jagornet.dhcp.option.v4.DhcpV4ParamRequestOption;
+import com.jagornet.dhcp.option.v4.DhcpV4RequestedIpAddressOption;
+import com.jagornet.dhcp.option.v4.DhcpV4VendorClassOption;
+import com.jagornet.dhcp.option.v6.DhcpV6ClientIdOption;
+import com.jagornet.dhcp.option.v6.DhcpV6ElapsedTimeOption;
+import com.jagornet.dhcp.option.v6.DhcpV6IaNaOption;
+import com.jagornet.dhcp.option.v6.DhcpV6OptionRequestOption;
+import com.jagornet.dhcp.option.v6.DhcpV6RelayOption;
+import com.jagornet.dhcp.util.DhcpConstants;
+
+/**
+ * Encodes and decodes a relayed DHCPv4 DISCOVER and a relayed DHCPv6
+ * SOLICIT, with the options usually sent by clients.  The decoders are
+ * those of the channel decoders of the server.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBenchmark
+{
+	private InetSocketAddress v4Server;
+	private InetSocketAddress v4Relay;
+	private InetSocketAddress v6Server;
+	private InetSocketAddress v6Relay;
+	
+	private DhcpV4Message v4Discover;
+	private byte[] v4Encoded;
+	private DhcpV6Message v6Solicit;
+	private byte[] v6Encoded;
+	
+	@Setup
+	public void setup() throws Exception
+	{
+		v4Server = new InetSocketAddress(InetAddress.getByName("10.0.0.10"), 
+				DhcpConstants.V4_SERVER_PORT);
+		v4Relay = new InetSocketAddress(InetAddress.getByName("10.0.0.1"), 
+				DhcpConstants.V4_SERVER_PORT);
+		v6Server = new InetSocketAddress(InetAddress.getByName("2001:db8::10"), 
+				DhcpConstants.V6_SERVER_PORT);
+		v6Relay = new InetSocketAddress(InetAddress.getByName("2001:db8:1::1"), 
+				DhcpConstants.V6_SERVER_PORT);
+		
+		byte[] mac = new byte[] { 0x00, 0x16, 0x3e, 0x12, 0x34, 0x56 };
+		v4Discover = new DhcpV4Message(v4Server, v4Relay);
+		v4Discover.setOp((short)DhcpConstants.V4_OP_REQUEST);
+		v4Discover.setTransactionId(0x12345678L);
+		v4Discover.setHtype((short)1);
+		v4Discover.setHlen((short)6);
+		v4Discover.setChAddr(mac);
+		v4Discover.setGiAddr(v4Relay.getAddress());
+		v4Discover.setMessageType((short)DhcpConstants.V4MESSAGE_TYPE_DISCOVER);
+		DhcpV4ClientIdOption clientId = new DhcpV4ClientIdOption();
+		clientId.getOpaqueData().setHex(new byte[] { 1, 0x00, 0x16, 0x3e, 0x12, 0x34, 0x56 });
+		v4Discover.putDhcpOption(clientId);
+		DhcpV4RequestedIpAddressOption requestedIp = new DhcpV4RequestedIpAddressOption();
+		requestedIp.setIpAddress("10.0.0.100");
+		v4Discover.putDhcpOption(requestedIp);
+		DhcpV4HostnameOption hostname = new DhcpV4HostnameOption();
+		hostname.setString("client-host");
+		v4Discover.putDhcpOption(hostname);
+		DhcpV4VendorClassOption vendorClass = new DhcpV4VendorClassOption();
+		vendorClass.getOpaqueData().setAscii("MSFT 5.0");
+		v4Discover.putDhcpOption(vendorClass);
+		DhcpV4ParamRequestOption paramRequest = new DhcpV4ParamRequestOption();
+		for (short code : new short[] { 1, 3, 6, 15, 31, 33, 43, 44, 46, 47, 119, 121, 249, 252 }) {
+			paramRequest.addUnsignedByte(code);
+		}
+		v4Discover.putDhcpOption(paramRequest);
+		v4Encoded = toBytes(v4Discover.encode());
+		
+		DhcpV6Message solicit = new DhcpV6Message(null, null);
+		solicit.setMessageType(DhcpConstants.V6MESSAGE_TYPE_SOLICIT);
+		solicit.setTransactionId(0x123456);
+		DhcpV6ClientIdOption v6ClientId = new DhcpV6ClientIdOption();
+		v6ClientId.getOpaqueData().setHex(new byte[] { 0, 3, 0, 1, 0x00, 0x16, 0x3e, 0x12, 0x34, 0x56 });
+		solicit.putDhcpOption(v6ClientId);
+		DhcpV6ElapsedTimeOption elapsedTime = new DhcpV6ElapsedTimeOption();
+		elapsedTime.setUnsignedShort(0);
+		solicit.putDhcpOption(elapsedTime);
+		DhcpV6OptionRequestOption optionRequest = new DhcpV6OptionRequestOption();
+		for (int code : new int[] { DhcpConstants.V6OPTION_DNS_SERVERS, 
+				DhcpConstants.V6OPTION_DOMAIN_SEARCH_LIST }) {
+			optionRequest.addUnsignedShort(code);
+		}
+		solicit.putDhcpOption(optionRequest);
+		DhcpV6IaNaOption iaNa = new DhcpV6IaNaOption();
+		iaNa.setIaId(1);
+		solicit.addIaNaOption(iaNa);
+		
+		DhcpV6RelayMessage relayForward = new DhcpV6RelayMessage(v6Server, v6Relay);
+		relayForward.setMessageType(DhcpConstants.V6MESSAGE_TYPE_RELAY_FORW);
+		relayForward.setHopCount((short)0);
+		relayForward.setLinkAddress(v6Relay.getAddress());
+		relayForward.setPeerAddress(InetAddress.getByName("fe80::216:3eff:fe12:3456"));
+		DhcpV6RelayOption relayOption = new DhcpV6RelayOption();
+		relayOption.setRelayMessage(relayForward);
+		relayOption.setDhcpMessage(solicit);
+		relayForward.setRelayOption(relayOption);
+		relayForward.putDhcpOption(relayOption);
+		v6Solicit = relayForward;
+		v6Encoded = toBytes(v6Solicit.encode());
+	}
+	
+	private static byte[] toBytes(ByteBuffer buf)
+	{
+		byte[] bytes = new byte[buf.remaining()];
+		buf.get(bytes);
+		return bytes;
+	}
+	
+	@Benchmark
+	public ByteBuffer encodeV4() throws Exception
+	{
+		return v4Discover.encode();
+	}
+	
+	@Benchmark
+	public DhcpV4Message decodeV4() throws Exception
+	{
+		return DhcpV4Message.decode(ByteBuffer.wrap(v4Encoded), v4Server, v4Relay);
+	}
+	
+	@Benchmark
+	public ByteBuffer encodeV6() throws Exception
+	{
+		return v6Solicit.encode();
+	}
+	
+	@Benchmark
+	public DhcpV6Message decodeV6() throws Exception
+	{
+		return DhcpV6Message.decode(ByteBuffer.wrap(v6Encoded), v6Server, v6Relay);
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file OptionFactoryBenchmark.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.option;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.jagornet.dhcp.option.v4.DhcpV4OptionFactory;
+import com.jagornet.dhcp.option.v6.DhcpV6OptionFactory;
+import com.jagornet.dhcp.util.DhcpConstants;
+
+/**
+ * Constructs the options of a typical request with the option factories,
+ * as the message decoders do for each option received.  Each operation
+ * constructs all of the options of one request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptionFactoryBenchmark
+{
+	/** The options of a DHCPv4 DISCOVER or REQUEST, with relay agent info. */
+	private static final int[] V4_CODES = new int[] {
+		DhcpConstants.V4OPTION_MESSAGE_TYPE,
+		DhcpConstants.V4OPTION_CLIENT_ID,
+		DhcpConstants.V4OPTION_REQUESTED_IP,
+		DhcpConstants.V4OPTION_SERVERID,
+		DhcpConstants.V4OPTION_HOSTNAME,
+		DhcpConstants.V4OPTION_VENDOR_CLASS,
+		DhcpConstants.V4OPTION_PARAM_REQUEST_LIST,
+		DhcpConstants.V4OPTION_CLIENT_FQDN,
+		DhcpConstants.V4OPTION_RELAY_INFO
+	};
+	
+	/** The options of a DHCPv6 SOLICIT or REQUEST, and of its relay. */
+	private static final int[] V6_CODES = new int[] {
+		DhcpConstants.V6OPTION_CLIENTID,
+		DhcpConstants.V6OPTION_SERVERID,
+		DhcpConstants.V6OPTION_IA_NA,
+		DhcpConstants.V6OPTION_IAADDR,
+		DhcpConstants.V6OPTION_ORO,
+		DhcpConstants.V6OPTION_ELAPSED_TIME,
+		DhcpConstants.V6OPTION_RAPID_COMMIT,
+		DhcpConstants.V6OPTION_VENDOR_CLASS,
+		DhcpConstants.V6OPTION_CLIENT_FQDN,
+		DhcpConstants.V6OPTION_RELAY_MSG,
+		DhcpConstants.V6OPTION_INTERFACE_ID,
+		DhcpConstants.V6OPTION_REMOTE_ID
+	};
+	
+	@Benchmark
+	public void v4Options(Blackhole bh)
+	{
+		for (int code : V4_CODES) {
+			bh.consume(DhcpV4OptionFactory.getDhcpOption(code));
+		}
+	}
+	
+	@Benchmark
+	public void v6Options(Blackhole bh)
+	{
+		for (int code : V6_CODES) {
+			bh.consume(DhcpV6OptionFactory.getDhcpOption(code));
+		}
+	}
+}
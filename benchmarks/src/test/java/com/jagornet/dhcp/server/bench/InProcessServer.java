@@ -0,0 +1,283 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file InProcessServer.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+
+import com.jagornet.dhcp.db.DbSchemaManager;
+import com.jagornet.dhcp.db.IaManager;
+import com.jagornet.dhcp.message.DhcpV4Message;
+import com.jagornet.dhcp.message.DhcpV6Message;
+import com.jagornet.dhcp.server.JagornetDhcpServer;
+import com.jagornet.dhcp.server.config.DhcpServerConfiguration;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.server.request.DhcpV4MessageHandler;
+import com.jagornet.dhcp.server.request.DhcpV6MessageHandler;
+import com.jagornet.dhcp.server.request.binding.V4AddrBindingManager;
+import com.jagornet.dhcp.server.request.binding.V6NaAddrBindingManager;
+import com.jagornet.dhcp.server.request.binding.V6PrefixBindingManager;
+import com.jagornet.dhcp.server.request.binding.V6TaAddrBindingManager;
+import com.jagornet.dhcp.util.DhcpConstants;
+
+/**
+ * A DHCP server without sockets, for benchmarks.  The server has the
+ * configuration, binding managers and lease manager of a real server,
+ * with the leases in an in-memory H2 database, and handles the requests
+ * of many threads at once, like the executor threads of the server.
+ * 
+ * A request is encoded, and decoded as the channel decoder does, then
+ * handled by the message handler, and the reply is encoded and decoded
+ * again, so each exchange covers all of the work of the server except
+ * for the sockets and Netty.
+ * 
+ * The configuration is generated, with a link for each kind of benchmark,
+ * so the benchmarks do not share pools:
+ * 
+ * <pre>
+ * 10.1.0.0/16        DHCPv4 pool for new clients
+ * 10.2.0.0/16        DHCPv4 pool for renewing clients
+ * 10.3.0.0/24        DHCPv4 pool of EXHAUSTED_POOL_SIZE addresses
+ * 10.4.0.0/16        DHCPv4 static bindings, without a pool
+ * 2001:db8:1::/48    DHCPv6 IA_NA pool for new clients
+ * 2001:db8:2::/48    DHCPv6 IA_NA pool for renewing clients
+ * </pre>
+ */
+public class InProcessServer
+{
+	public static final int EXHAUSTED_POOL_SIZE = 32;
+	
+	/** The address of the server, as the local address of the requests. */
+	public static final InetSocketAddress V4_SERVER = 
+		new InetSocketAddress(DhcpConstants.LOCALHOST_V4, DhcpConstants.V4_SERVER_PORT);
+	public static final InetSocketAddress V6_SERVER = 
+		new InetSocketAddress(DhcpConstants.LOCALHOST_V6, DhcpConstants.V6_SERVER_PORT);
+	
+	protected DhcpServerConfiguration config;
+	protected ClassPathXmlApplicationContext context;
+	protected BasicDataSource dataSource;
+	protected int staticBindings;
+	
+	/**
+	 * Start the server.
+	 * 
+	 * @param staticBindings the number of static bindings of 10.4.0.0/16
+	 * @param threads the number of threads using the server
+	 * 
+	 * @throws Exception if the server could not start
+	 */
+	public InProcessServer(int staticBindings, int threads) throws Exception
+	{
+		this.staticBindings = staticBindings;
+		File configFile = File.createTempFile("dhcpserver-bench", ".xml");
+		configFile.deleteOnExit();
+		writeConfig(configFile);
+		
+		DhcpServerConfiguration.configFilename = configFile.getPath();
+		config = DhcpServerConfiguration.getInstance();
+		DhcpServerPolicies.setProperty(Property.DATABASE_SCHEMA_TYTPE, 
+				DbSchemaManager.SCHEMATYPE_JDBC_H2);
+		DhcpServerPolicies.setProperty(Property.DATABASE_SCHEMA_VERSION, "3");
+		
+		dataSource = new BasicDataSource();
+		dataSource.setDriverClassName("org.h2.Driver");
+		dataSource.setUrl("jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1");
+		dataSource.setUsername("sa");
+		dataSource.setPassword("");
+		dataSource.setMaxActive(threads + 10);
+		dataSource.setMaxIdle(threads + 10);
+		
+		// the data source of the server context, without the properties of a real one
+		GenericApplicationContext parent = new GenericApplicationContext();
+		parent.getBeanFactory().registerSingleton("dataSource", dataSource);
+		parent.refresh();
+		context = new ClassPathXmlApplicationContext(new String[] {
+				JagornetDhcpServer.APP_CONTEXT_JDBC_V3SCHEMA_FILENAME,
+				JagornetDhcpServer.APP_CONTEXT_FILENAME }, parent);
+		
+		config.setIaMgr((IaManager) context.getBean("iaManager"));
+		V6NaAddrBindingManager v6NaAddrBindingMgr = 
+			(V6NaAddrBindingManager) context.getBean("v6NaAddrBindingManager");
+		v6NaAddrBindingMgr.init();
+		config.setNaAddrBindingMgr(v6NaAddrBindingMgr);
+		V6TaAddrBindingManager v6TaAddrBindingMgr = 
+			(V6TaAddrBindingManager) context.getBean("v6TaAddrBindingManager");
+		v6TaAddrBindingMgr.init();
+		config.setTaAddrBindingMgr(v6TaAddrBindingMgr);
+		V6PrefixBindingManager v6PrefixBindingMgr = 
+			(V6PrefixBindingManager) context.getBean("v6PrefixBindingManager");
+		v6PrefixBindingMgr.init();
+		config.setPrefixBindingMgr(v6PrefixBindingMgr);
+		V4AddrBindingManager v4AddrBindingMgr = 
+			(V4AddrBindingManager) context.getBean("v4AddrBindingManager");
+		v4AddrBindingMgr.init();
+		config.setV4AddrBindingMgr(v4AddrBindingMgr);
+	}
+	
+	/**
+	 * Gets the address of a static binding of 10.4.0.0/16.
+	 * 
+	 * @param n the binding, from zero
+	 */
+	public static InetAddress staticAddress(int n) throws IOException
+	{
+		n += 10;
+		return InetAddress.getByAddress(new byte[] { 10, 4, (byte)(n >> 8), (byte)n });
+	}
+	
+	/**
+	 * Gets the chaddr of a static binding of 10.4.0.0/16.
+	 * 
+	 * @param n the binding, from zero
+	 */
+	public static byte[] staticChAddr(int n)
+	{
+		return new byte[] { 0x02, 0x04, 0, 0, (byte)(n >> 8), (byte)n };
+	}
+	
+	protected void writeConfig(File file) throws IOException
+	{
+		Writer w = new FileWriter(file);
+		try {
+			w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+				"<dhc:dhcpServerConfig xmlns:dhc=\"http://jagornet.com/dhcp/xml\">\n" +
+				"<v6ServerIdOption><opaqueData><hexValue>abcdef0123456789</hexValue>" +
+				"</opaqueData></v6ServerIdOption>\n" +
+				"<v4ServerIdOption><ipAddress>10.0.0.10</ipAddress></v4ServerIdOption>\n" +
+				"<links>\n");
+			writeV4Link(w, "New Clients", "10.1.0.0/16", "10.1.0.10-10.1.255.250", false);
+			writeV4Link(w, "Renewing Clients", "10.2.0.0/16", "10.2.0.10-10.2.255.250", false);
+			writeV4Link(w, "Exhausted Pool", "10.3.0.0/24", 
+					"10.3.0.10-10.3.0." + (10 + EXHAUSTED_POOL_SIZE - 1), false);
+			writeV4Link(w, "Static Bindings", "10.4.0.0/16", null, true);
+			writeV6Link(w, "V6 New Clients", "2001:db8:1::/48", 
+					"2001:db8:1::1:0-2001:db8:1::ffff:ffff");
+			writeV6Link(w, "V6 Renewing Clients", "2001:db8:2::/48", 
+					"2001:db8:2::1:0-2001:db8:2::ffff:ffff");
+			w.write("</links>\n</dhc:dhcpServerConfig>\n");
+		}
+		finally {
+			w.close();
+		}
+	}
+	
+	protected void writeV4Link(Writer w, String name, String address, String range, 
+			boolean bindings) throws IOException
+	{
+		w.write("<link><name>" + name + "</name><address>" + address + "</address>\n" +
+				"<v4ConfigOptions><v4SubnetMaskOption><ipAddress>255.255.0.0</ipAddress>" +
+				"</v4SubnetMaskOption></v4ConfigOptions>\n");
+		if (range != null) {
+			w.write("<v4AddrPools><pool><range>" + range + "</range></pool></v4AddrPools>\n");
+		}
+		if (bindings) {
+			w.write("<v4AddrBindings>\n");
+			for (int n=0; n<staticBindings; n++) {
+				StringBuilder chAddr = new StringBuilder();
+				for (byte b : staticChAddr(n)) {
+					chAddr.append(String.format("%02x", b));
+				}
+				w.write("<binding><ipAddress>" + staticAddress(n).getHostAddress() + 
+						"</ipAddress><chaddr>" + chAddr + "</chaddr></binding>\n");
+			}
+			w.write("</v4AddrBindings>\n");
+		}
+		w.write("</link>\n");
+	}
+	
+	protected void writeV6Link(Writer w, String name, String address, String range)
+			throws IOException
+	{
+		w.write("<link><name>" + name + "</name><address>" + address + "</address>\n" +
+				"<v6NaAddrPools><pool><range>" + range + "</range></pool></v6NaAddrPools>\n" +
+				"</link>\n");
+	}
+	
+	/**
+	 * Handle a DHCPv4 request from a relay.
+	 * 
+	 * @param request the request, with the giaddr of the relay
+	 * @param unicast true if received on a unicast socket, i.e. not broadcast
+	 * 
+	 * @return the reply, or null if none
+	 * 
+	 * @throws IOException if a message could not be encoded or decoded
+	 */
+	public DhcpV4Message exchange(DhcpV4Message request, boolean unicast) throws IOException
+	{
+		InetSocketAddress relay = 
+			new InetSocketAddress(request.getGiAddr(), DhcpConstants.V4_SERVER_PORT);
+		DhcpV4Message received = DhcpV4Message.decode(request.encode(), V4_SERVER, relay);
+		received.setUnicast(unicast);
+		DhcpV4Message reply = 
+			DhcpV4MessageHandler.handleMessage(V4_SERVER.getAddress(), received);
+		if (reply == null) {
+			return null;
+		}
+		return DhcpV4Message.decode(reply.encode(), relay, V4_SERVER);
+	}
+	
+	/**
+	 * Handle a DHCPv6 request, usually a Relay-Forward message.
+	 * 
+	 * @param request the request
+	 * 
+	 * @return the reply, or null if none
+	 * 
+	 * @throws IOException if a message could not be encoded or decoded
+	 */
+	public DhcpV6Message exchange(DhcpV6Message request) throws IOException
+	{
+		InetSocketAddress relay = 
+			new InetSocketAddress(DhcpConstants.LOCALHOST_V6, DhcpConstants.V6_SERVER_PORT);
+		DhcpV6Message received = DhcpV6Message.decode(request.encode(), V6_SERVER, relay);
+		DhcpV6Message reply = 
+			DhcpV6MessageHandler.handleMessage(V6_SERVER.getAddress(), received);
+		if (reply == null) {
+			return null;
+		}
+		return DhcpV6Message.decode(reply.encode(), relay, V6_SERVER);
+	}
+	
+	/**
+	 * Stop the server.  The binding reapers are not stopped, so the data
+	 * source is left open for them until the JVM exits.
+	 */
+	public void close() throws Exception
+	{
+		context.close();
+	}
+}
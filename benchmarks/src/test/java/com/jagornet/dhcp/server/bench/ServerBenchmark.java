@@ -0,0 +1,498 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file ServerBenchmark.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.bench;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import com.jagornet.dhcp.message.DhcpV4Message;
+import com.jagornet.dhcp.message.DhcpV6Message;
+import com.jagornet.dhcp.message.DhcpV6RelayMessage;
+import com.jagornet.dhcp.option.base.DhcpOption;
+import com.jagornet.dhcp.option.v4.DhcpV4RequestedIpAddressOption;
+import com.jagornet.dhcp.option.v6.DhcpV6ClientIdOption;
+import com.jagornet.dhcp.option.v6.DhcpV6ElapsedTimeOption;
+import com.jagornet.dhcp.option.v6.DhcpV6IaAddrOption;
+import com.jagornet.dhcp.option.v6.DhcpV6IaNaOption;
+import com.jagornet.dhcp.option.v6.DhcpV6RelayOption;
+import com.jagornet.dhcp.option.v6.DhcpV6ServerIdOption;
+import com.jagornet.dhcp.option.v6.DhcpV6StatusCodeOption;
+import com.jagornet.dhcp.util.DhcpConstants;
+
+/**
+ * Measures the server from end to end, without sockets, with an
+ * InProcessServer handling the requests of many threads.  Each operation
+ * is a complete exchange of a client, and each reply is checked, so a
+ * benchmark which is fast because the server fails throws an exception
+ * rather than reporting a result.  The benchmarks are:
+ *
+ * <pre>
+ * v4Discover    DISCOVER, REQUEST and RELEASE of a new client
+ * v4Renew       REQUEST of a bound client renewing its address
+ * v4Exhausted   DISCOVER of a new client, with no free address in the pool
+ * v4Static      DISCOVER and REQUEST of a client with a static binding
+ * v6Solicit     SOLICIT, REQUEST and RELEASE of a new client, relayed
+ * v6Renew       RENEW of a bound client, relayed
+ * </pre>
+ *
+ * The clients are the number of bound clients of the renew benchmarks,
+ * and the number of static bindings.  Each benchmark runs in a fork of
+ * its own, so each has a new server.  The latency percentiles are those
+ * of the sample mode, e.g. <code>-bm sample -tu us</code>.
+ * 
+ * The server needs the schema files of the db directory, so the benchmarks
+ * are run with <code>-Djagornet.dhcp.home=../Jagornet-DHCP</code>, as
+ * the benchmark profile does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 5, time = 5)
+// the reapers of the server are not daemon threads, and would keep the fork running
+@Fork(value = 1, jvmArgsAppend = "-Djmh.shutdownTimeout=0")
+public class ServerBenchmark
+{
+	private static final int V4_DISCOVER_LINK = 1;
+	private static final int V4_RENEW_LINK = 2;
+	private static final int V4_EXHAUSTED_LINK = 3;
+	private static final int V4_STATIC_LINK = 4;
+	private static final int V6_SOLICIT_LINK = 1;
+	private static final int V6_RENEW_LINK = 2;
+
+	@Param({ "1000" })
+	public int clients;
+
+	private int threads;
+
+	private InProcessServer server;
+
+	@Setup
+	public void setup(BenchmarkParams params) throws Exception
+	{
+		threads = params.getThreads();
+		server = new InProcessServer(clients, threads);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception
+	{
+		server.close();
+	}
+
+	private int clientsPerThread()
+	{
+		return Math.max(1, clients / threads);
+	}
+
+	/**
+	 * A thread of the benchmark, and its next operation.
+	 */
+	@State(Scope.Thread)
+	public static class Client
+	{
+		int thread;
+		long n;
+
+		@Setup
+		public void setup(ThreadParams params)
+		{
+			thread = params.getThreadIndex();
+		}
+	}
+
+	/**
+	 * A thread of the benchmark, with the addresses of its bound DHCPv4 clients.
+	 */
+	@State(Scope.Thread)
+	public static class V4Bound extends Client
+	{
+		InetAddress[] addrs;
+
+		@Setup
+		public void bind(ServerBenchmark bench) throws Exception
+		{
+			addrs = new InetAddress[bench.clientsPerThread()];
+			for (int i=0; i<addrs.length; i++) {
+				addrs[i] = bench.v4Dora(V4_RENEW_LINK,
+						chAddr(V4_RENEW_LINK, thread, i), i, null).getYiAddr();
+			}
+		}
+	}
+
+	/**
+	 * The pool of the exhausted benchmark, with all of its addresses bound.
+	 */
+	@State(Scope.Benchmark)
+	public static class V4Exhausted
+	{
+		@Setup
+		public void setup(ServerBenchmark bench) throws Exception
+		{
+			// the clients of an extra thread, so not those of the benchmark
+			for (int i=0; i<InProcessServer.EXHAUSTED_POOL_SIZE; i++) {
+				bench.v4Dora(V4_EXHAUSTED_LINK,
+						chAddr(V4_EXHAUSTED_LINK, bench.threads, i), i, null);
+			}
+		}
+	}
+
+	/**
+	 * A thread of the benchmark, with the addresses of its bound DHCPv6 clients.
+	 */
+	@State(Scope.Thread)
+	public static class V6Bound extends Client
+	{
+		InetAddress[] addrs;
+		DhcpV6ServerIdOption serverId;
+
+		@Setup
+		public void bind(ServerBenchmark bench) throws Exception
+		{
+			addrs = new InetAddress[bench.clientsPerThread()];
+			for (int i=0; i<addrs.length; i++) {
+				DhcpV6Message reply = bench.v6Bind(V6_RENEW_LINK, thread, i);
+				serverId = reply.getDhcpServerIdOption();
+				addrs[i] = reply.getIaNaOptions().get(0).getIaAddrOptions().get(0)
+						.getInetAddress();
+			}
+		}
+	}
+
+	private static InetAddress address(String addr)
+	{
+		try {
+			return InetAddress.getByName(addr);
+		}
+		catch (Exception ex) {
+			throw new IllegalArgumentException(addr, ex);
+		}
+	}
+
+	private static void check(String step, String failure)
+	{
+		if (failure != null) {
+			throw new IllegalStateException(step + ": " + failure);
+		}
+	}
+
+	/*
+	 * DHCPv4
+	 */
+
+	private static byte[] chAddr(int link, int thread, long n)
+	{
+		return new byte[] { 0x02, (byte)link, (byte)thread,
+				(byte)(n >> 16), (byte)(n >> 8), (byte)n };
+	}
+
+	private static DhcpV4Message v4Message(int link, byte[] chAddr, int msgType,
+			long xid)
+	{
+		DhcpV4Message msg = new DhcpV4Message(null, null);
+		msg.setOp((short)DhcpConstants.V4_OP_REQUEST);
+		msg.setTransactionId(xid & 0xffffffffL);
+		msg.setHtype((short)1);
+		msg.setHlen((short)6);
+		msg.setChAddr(chAddr);
+		msg.setGiAddr(address("10." + link + ".0.1"));
+		msg.setMessageType((short)msgType);
+		return msg;
+	}
+
+	private static String v4Check(DhcpV4Message reply, int msgType, InetAddress yiAddr)
+	{
+		if (reply == null) {
+			return "no reply, expected type " + msgType;
+		}
+		if (reply.getMessageType() != msgType) {
+			return "reply type " + reply.getMessageType() + ", expected " + msgType;
+		}
+		if ((yiAddr != null) && !yiAddr.equals(reply.getYiAddr())) {
+			return "yiaddr " + reply.getYiAddr() + ", expected " + yiAddr;
+		}
+		return null;
+	}
+
+	private static String v4CheckLink(DhcpV4Message reply, int link)
+	{
+		byte[] yiAddr = reply.getYiAddr().getAddress();
+		if ((yiAddr[0] != 10) || (yiAddr[1] != link)) {
+			return "yiaddr " + reply.getYiAddr() + " not on link 10." + link + ".0.0";
+		}
+		return null;
+	}
+
+	/**
+	 * Discover and request an address.
+	 *
+	 * @return the ACK
+	 */
+	private DhcpV4Message v4Dora(int link, byte[] chAddr, long xid, InetAddress expected)
+		throws Exception
+	{
+		DhcpV4Message offer = server.exchange(
+				v4Message(link, chAddr, DhcpConstants.V4MESSAGE_TYPE_DISCOVER, xid), false);
+		check("DISCOVER", v4Check(offer, DhcpConstants.V4MESSAGE_TYPE_OFFER, expected));
+		check("DISCOVER", v4CheckLink(offer, link));
+		DhcpV4Message request =
+			v4Message(link, chAddr, DhcpConstants.V4MESSAGE_TYPE_REQUEST, xid);
+		DhcpV4RequestedIpAddressOption requestedIp = new DhcpV4RequestedIpAddressOption();
+		requestedIp.setIpAddress(offer.getYiAddr().getHostAddress());
+		request.putDhcpOption(requestedIp);
+		request.putDhcpOption(offer.getDhcpV4ServerIdOption());
+		DhcpV4Message ack = server.exchange(request, false);
+		check("REQUEST", v4Check(ack, DhcpConstants.V4MESSAGE_TYPE_ACK, offer.getYiAddr()));
+		return ack;
+	}
+
+	@Benchmark
+	public DhcpV4Message v4Discover(Client client) throws Exception
+	{
+		long n = client.n++;
+		byte[] chAddr = chAddr(V4_DISCOVER_LINK, client.thread, n);
+		DhcpV4Message ack = v4Dora(V4_DISCOVER_LINK, chAddr, n, null);
+		// released, so the pool is not exhausted
+		DhcpV4Message release =
+			v4Message(V4_DISCOVER_LINK, chAddr, DhcpConstants.V4MESSAGE_TYPE_RELEASE, n);
+		release.setCiAddr(ack.getYiAddr());
+		release.putDhcpOption(ack.getDhcpV4ServerIdOption());
+		DhcpV4Message reply = server.exchange(release, false);
+		if (reply != null) {
+			check("RELEASE", "reply type " + reply.getMessageType());
+		}
+		return ack;
+	}
+
+	@Benchmark
+	public DhcpV4Message v4Renew(V4Bound bound) throws Exception
+	{
+		long n = bound.n++;
+		int i = (int)(n % bound.addrs.length);
+		DhcpV4Message request = v4Message(V4_RENEW_LINK, chAddr(V4_RENEW_LINK, bound.thread, i),
+				DhcpConstants.V4MESSAGE_TYPE_REQUEST, n);
+		request.setCiAddr(bound.addrs[i]);
+		DhcpV4Message ack = server.exchange(request, true);
+		check("REQUEST", v4Check(ack, DhcpConstants.V4MESSAGE_TYPE_ACK, bound.addrs[i]));
+		return ack;
+	}
+
+	@Benchmark
+	public DhcpV4Message v4Exhausted(Client client, V4Exhausted exhausted) throws Exception
+	{
+		long n = client.n++;
+		DhcpV4Message reply = server.exchange(v4Message(V4_EXHAUSTED_LINK,
+				chAddr(V4_EXHAUSTED_LINK, client.thread, n),
+				DhcpConstants.V4MESSAGE_TYPE_DISCOVER, n), false);
+		if (reply != null) {
+			check("DISCOVER", "reply type " + reply.getMessageType() +
+					" with yiaddr " + reply.getYiAddr() + ", expected none");
+		}
+		return reply;
+	}
+
+	@Benchmark
+	public DhcpV4Message v4Static(Client client) throws Exception
+	{
+		long n = client.n++;
+		int i = (int)((client.thread + n * threads) % clients);
+		return v4Dora(V4_STATIC_LINK, InProcessServer.staticChAddr(i), n,
+				InProcessServer.staticAddress(i));
+	}
+
+	/*
+	 * DHCPv6
+	 */
+
+	private static DhcpV6Message v6Message(int link, int thread, long n, short msgType)
+	{
+		DhcpV6Message msg = new DhcpV6Message(null, null);
+		msg.setMessageType(msgType);
+		msg.setTransactionId((int)n & 0xffffff);
+		DhcpV6ClientIdOption clientId = new DhcpV6ClientIdOption();
+		clientId.getOpaqueData().setHex(new byte[] { 0, 3, 0, 1, 0x02, (byte)link,
+				(byte)thread, (byte)(n >> 16), (byte)(n >> 8), (byte)n });
+		msg.putDhcpOption(clientId);
+		DhcpV6ElapsedTimeOption elapsedTime = new DhcpV6ElapsedTimeOption();
+		elapsedTime.setUnsignedShort(0);
+		msg.putDhcpOption(elapsedTime);
+		return msg;
+	}
+
+	private static void putIaNa(DhcpV6Message msg, InetAddress addr)
+	{
+		DhcpV6IaNaOption iaNa = new DhcpV6IaNaOption();
+		iaNa.setIaId(1);
+		if (addr != null) {
+			DhcpV6IaAddrOption iaAddr = new DhcpV6IaAddrOption();
+			iaAddr.setIpAddress(addr.getHostAddress());
+			List<DhcpV6IaAddrOption> iaAddrs = new ArrayList<DhcpV6IaAddrOption>();
+			iaAddrs.add(iaAddr);
+			iaNa.setIaAddrOptions(iaAddrs);
+		}
+		msg.addIaNaOption(iaNa);
+	}
+
+	/**
+	 * Relay a request from the link, and get the reply to the client.
+	 */
+	private DhcpV6Message v6Exchange(int link, DhcpV6Message msg) throws Exception
+	{
+		DhcpV6RelayMessage relayMsg = new DhcpV6RelayMessage(null, null);
+		relayMsg.setMessageType(DhcpConstants.V6MESSAGE_TYPE_RELAY_FORW);
+		relayMsg.setHopCount((short)0);
+		relayMsg.setLinkAddress(address("2001:db8:" + link + "::1"));
+		relayMsg.setPeerAddress(address("fe80::1"));
+		DhcpV6RelayOption relayOption = new DhcpV6RelayOption();
+		relayOption.setRelayMessage(relayMsg);
+		relayOption.setDhcpMessage(msg);
+		relayMsg.setRelayOption(relayOption);
+		relayMsg.putDhcpOption(relayOption);
+		DhcpV6Message reply = server.exchange(relayMsg);
+		while (reply instanceof DhcpV6RelayMessage) {
+			reply = ((DhcpV6RelayMessage)reply).getRelayOption().getDhcpMessage();
+		}
+		return reply;
+	}
+
+	/**
+	 * Check a reply, and get its address.
+	 *
+	 * @return the address
+	 */
+	private static InetAddress v6Check(String step, DhcpV6Message reply, short msgType,
+			InetAddress expected)
+	{
+		if (reply == null) {
+			check(step, "no reply, expected type " + msgType);
+		}
+		if (reply.getMessageType() != msgType) {
+			check(step, "reply type " + reply.getMessageType() + ", expected " + msgType);
+		}
+		check(step, v6Status(reply.getDhcpOption(DhcpConstants.V6OPTION_STATUS_CODE)));
+		if (reply.getIaNaOptions().isEmpty()) {
+			check(step, "no IA_NA");
+		}
+		DhcpV6IaNaOption iaNa = reply.getIaNaOptions().get(0);
+		String status = v6Status(iaNa.getDhcpOptionMap().get(DhcpConstants.V6OPTION_STATUS_CODE));
+		if (status != null) {
+			check(step, "IA_NA " + status);
+		}
+		if ((iaNa.getIaAddrOptions() == null) || iaNa.getIaAddrOptions().isEmpty()) {
+			check(step, "no IA address");
+		}
+		InetAddress addr = iaNa.getIaAddrOptions().get(0).getInetAddress();
+		if ((expected != null) && !expected.equals(addr)) {
+			check(step, "address " + addr.getHostAddress() +
+					", expected " + expected.getHostAddress());
+		}
+		return addr;
+	}
+
+	private static String v6Status(DhcpOption option)
+	{
+		if ((option instanceof DhcpV6StatusCodeOption) &&
+				(((DhcpV6StatusCodeOption)option).getStatusCode() !=
+					DhcpConstants.V6STATUS_CODE_SUCCESS)) {
+			return "status " + ((DhcpV6StatusCodeOption)option).getStatusCode();
+		}
+		return null;
+	}
+
+	/**
+	 * Solicit and request an address.
+	 *
+	 * @return the reply
+	 */
+	private DhcpV6Message v6Bind(int link, int thread, long n) throws Exception
+	{
+		DhcpV6Message solicit =
+			v6Message(link, thread, n, DhcpConstants.V6MESSAGE_TYPE_SOLICIT);
+		putIaNa(solicit, null);
+		DhcpV6Message advertise = v6Exchange(link, solicit);
+		InetAddress addr = v6Check("SOLICIT", advertise,
+				DhcpConstants.V6MESSAGE_TYPE_ADVERTISE, null);
+		DhcpV6Message request =
+			v6Message(link, thread, n, DhcpConstants.V6MESSAGE_TYPE_REQUEST);
+		request.putDhcpOption(advertise.getDhcpServerIdOption());
+		putIaNa(request, addr);
+		DhcpV6Message reply = v6Exchange(link, request);
+		v6Check("REQUEST", reply, DhcpConstants.V6MESSAGE_TYPE_REPLY, addr);
+		return reply;
+	}
+
+	@Benchmark
+	public DhcpV6Message v6Solicit(Client client) throws Exception
+	{
+		long n = client.n++;
+		DhcpV6Message reply = v6Bind(V6_SOLICIT_LINK, client.thread, n);
+		DhcpV6Message release =
+			v6Message(V6_SOLICIT_LINK, client.thread, n, DhcpConstants.V6MESSAGE_TYPE_RELEASE);
+		release.putDhcpOption(reply.getDhcpServerIdOption());
+		putIaNa(release, reply.getIaNaOptions().get(0).getIaAddrOptions().get(0)
+				.getInetAddress());
+		DhcpV6Message released = v6Exchange(V6_SOLICIT_LINK, release);
+		if (released == null) {
+			check("RELEASE", "no reply");
+		}
+		check("RELEASE", v6Status(released.getDhcpOption(DhcpConstants.V6OPTION_STATUS_CODE)));
+		return reply;
+	}
+
+	@Benchmark
+	public DhcpV6Message v6Renew(V6Bound bound) throws Exception
+	{
+		long n = bound.n++;
+		int i = (int)(n % bound.addrs.length);
+		DhcpV6Message renew =
+			v6Message(V6_RENEW_LINK, bound.thread, i, DhcpConstants.V6MESSAGE_TYPE_RENEW);
+		renew.setTransactionId((int)n & 0xffffff);
+		renew.putDhcpOption(bound.serverId);
+		putIaNa(renew, bound.addrs[i]);
+		DhcpV6Message reply = v6Exchange(V6_RENEW_LINK, renew);
+		v6Check("RENEW", reply, DhcpConstants.V6MESSAGE_TYPE_REPLY, bound.addrs[i]);
+		return reply;
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file ConfigBenchmark.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.config;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jagornet.dhcp.message.DhcpV4Message;
+import com.jagornet.dhcp.option.v4.DhcpV4VendorClassOption;
+import com.jagornet.dhcp.server.config.DhcpServerPolicies.Property;
+import com.jagornet.dhcp.util.DhcpConstants;
+import com.jagornet.dhcp.xml.Filter;
+import com.jagornet.dhcp.xml.Link;
+
+/**
+ * Looks up the links, filters and policies of requests in a generated
+ * configuration, with a DHCPv4 and a DHCPv6 link for each of the links.
+ * Each DHCPv4 link has a policy, and a link filter matching the vendor
+ * class of the request with a policy of its own, and there is one global
+ * filter, like the filters of the sample configuration.
+ * 
+ * The configuration is a singleton, so each number of links is run in
+ * its own fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigBenchmark
+{
+	@Param({ "16", "1024" })
+	public int links;
+	
+	private DhcpServerConfiguration config;
+	
+	/** The addresses of the relays of the links, in a shuffled order. */
+	private Inet4Address[] v4Relays;
+	private Inet6Address[] v6Relays;
+	private Inet6Address v6Peer;
+	private Inet4Address v4Server;
+	
+	private DhcpV4Message request;
+	private Filter filter;
+	private Link link;
+	
+	private int next;
+	
+	@Setup
+	public void setup() throws Exception
+	{
+		File file = File.createTempFile("dhcpserver-bench", ".xml");
+		file.deleteOnExit();
+		writeConfig(file);
+		DhcpServerConfiguration.configFilename = file.getPath();
+		config = DhcpServerConfiguration.getInstance();
+		
+		v4Relays = new Inet4Address[links];
+		v6Relays = new Inet6Address[links];
+		for (int i=0; i<links; i++) {
+			// a stride coprime with the number of links, so every link is used
+			int n = (int)((i * 7919L) % links);
+			v4Relays[i] = (Inet4Address) InetAddress.getByAddress(new byte[] { 
+					10, (byte)(n >> 8), (byte)n, 1 });
+			v6Relays[i] = (Inet6Address) InetAddress.getByName(
+					"2001:db8:" + Integer.toHexString(n) + "::1");
+		}
+		v6Peer = (Inet6Address) InetAddress.getByName("fe80::1");
+		v4Server = (Inet4Address) InetAddress.getByName("10.255.255.10");
+		for (int i=0; i<links; i++) {
+			if ((config.findDhcpLink(v4Server, v4Relays[i]) == null) ||
+					(config.findDhcpLink(v6Relays[i], v6Peer) == null)) {
+				throw new IllegalStateException("No link found for relay " + i);
+			}
+		}
+		
+		request = new DhcpV4Message(null, null);
+		request.setMessageType((short)DhcpConstants.V4MESSAGE_TYPE_DISCOVER);
+		DhcpV4VendorClassOption vendorClass = new DhcpV4VendorClassOption();
+		vendorClass.getOpaqueData().setAscii("MyVendorPrefix-1.0");
+		request.putDhcpOption(vendorClass);
+		filter = config.getDhcpServerConfig().getFilters().getFilterList().get(0);
+		link = config.findDhcpLink(v4Server, v4Relays[links / 2]).getLink();
+	}
+	
+	private void writeConfig(File file) throws Exception
+	{
+		Writer w = new FileWriter(file);
+		try {
+			w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+				"<dhc:dhcpServerConfig xmlns:dhc=\"http://jagornet.com/dhcp/xml\">\n" +
+				"<v6ServerIdOption><opaqueData><hexValue>abcdef0123456789</hexValue>" +
+				"</opaqueData></v6ServerIdOption>\n" +
+				"<v4ServerIdOption><ipAddress>10.255.255.10</ipAddress></v4ServerIdOption>\n" +
+				"<filters><filter><name>Vendor Filter</name>" + vendorFilter() + 
+				"</filter></filters>\n<links>\n");
+			for (int i=0; i<links; i++) {
+				w.write("<link><name>v4 " + i + "</name>" +
+						"<address>10." + (i >> 8) + "." + (i & 0xff) + ".0/24</address>" +
+						"<policies><policy><name>v4.defaultLeasetime</name>" +
+						"<value>600</value></policy></policies>" +
+						"<v4AddrPools><pool><range>10." + (i >> 8) + "." + (i & 0xff) + 
+						".10-10." + (i >> 8) + "." + (i & 0xff) + ".250</range></pool>" +
+						"</v4AddrPools>" +
+						"<linkFilters><linkFilter><name>Vendor Link Filter</name>" + 
+						vendorFilter() + "<policies><policy><name>v4.header.sname</name>" +
+						"<value>filtered</value></policy></policies>" +
+						"</linkFilter></linkFilters></link>\n");
+				w.write("<link><name>v6 " + i + "</name>" +
+						"<address>2001:db8:" + Integer.toHexString(i) + "::/48</address>" +
+						"<v6NaAddrPools><pool><range>2001:db8:" + Integer.toHexString(i) +
+						"::100-2001:db8:" + Integer.toHexString(i) + "::ffff</range></pool>" +
+						"</v6NaAddrPools></link>\n");
+			}
+			w.write("</links>\n</dhc:dhcpServerConfig>\n");
+		}
+		finally {
+			w.close();
+		}
+	}
+	
+	private static String vendorFilter()
+	{
+		return "<filterExpressions><filterExpression>" +
+				"<clientClassExpression operator=\"startsWith\"><v4VendorClassOption>" +
+				"<opaqueData><asciiValue>MyVendorPrefix</asciiValue></opaqueData>" +
+				"</v4VendorClassOption></clientClassExpression>" +
+				"</filterExpression></filterExpressions>";
+	}
+	
+	@Benchmark
+	public DhcpLink findDhcpLinkV4()
+	{
+		next = (next + 1) % links;
+		return config.findDhcpLink(v4Server, v4Relays[next]);
+	}
+	
+	@Benchmark
+	public DhcpLink findDhcpLinkV6()
+	{
+		next = (next + 1) % links;
+		// relayed, so found by the link address of the relay
+		return config.findDhcpLink(v6Relays[next], v6Peer);
+	}
+	
+	@Benchmark
+	public boolean msgMatchesFilter()
+	{
+		return DhcpServerConfiguration.msgMatchesFilter(request, filter);
+	}
+	
+	@Benchmark
+	public String effectivePolicyGlobal()
+	{
+		// not configured on the link, so the global policy
+		return DhcpServerPolicies.effectivePolicy(link, Property.V4_PINGCHECK_TIMEOUT);
+	}
+	
+	@Benchmark
+	public String effectivePolicyLink()
+	{
+		return DhcpServerPolicies.effectivePolicy(link, Property.V4_DEFAULT_LEASETIME);
+	}
+	
+	@Benchmark
+	public String effectivePolicyLinkFilter()
+	{
+		// the policy of the link filter matching the request
+		return DhcpServerPolicies.effectivePolicy(request, link, Property.V4_HEADER_SNAME);
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file FreeListBenchmark.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Allocates and checks the addresses of a pool's free list, with the
+ * given percentage of the pool in use.  The used addresses are the first
+ * of the pool, as they are when a pool fills up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FreeListBenchmark
+{
+	@Param({ "256", "65536" })
+	public int size;
+	
+	@Param({ "50", "99" })
+	public int percentUsed;
+	
+	private static final long START = 0x0a000000L;
+	
+	private FreeList freeList;
+	private long[] values;
+	private int next;
+	
+	@Setup
+	public void setup() throws Exception
+	{
+		freeList = new FreeList(START, START + size - 1);
+		int used = (int)((long)size * percentUsed / 100);
+		for (int i=0; i<used; i++) {
+			freeList.setUsed(START + i);
+		}
+		values = new long[1024];
+		for (int i=0; i<values.length; i++) {
+			values[i] = START + (i * 7919L) % size;
+		}
+	}
+	
+	@Benchmark
+	public long getNextFreeAndSetFree()
+	{
+		long free = freeList.getNextFree();
+		freeList.setFree(free);
+		return free;
+	}
+	
+	@Benchmark
+	public boolean isUsed()
+	{
+		next = (next + 1) & (values.length - 1);
+		return freeList.isUsed(values[next]);
+	}
+	
+	@Benchmark
+	public long setUsedAndSetFree()
+	{
+		next = (next + 1) & (values.length - 1);
+		long value = values[next];
+		if (freeList.isFree(value)) {
+			freeList.setUsed(value);
+			freeList.setFree(value);
+		}
+		return value;
+	}
+}
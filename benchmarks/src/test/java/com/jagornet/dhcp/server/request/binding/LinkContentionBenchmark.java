@@ -0,0 +1,182 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file LinkContentionBenchmark.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import com.jagornet.dhcp.db.IaAddress;
+import com.jagornet.dhcp.db.IaManager;
+import com.jagornet.dhcp.server.config.DhcpServerConfiguration;
+import com.jagornet.dhcp.xml.V4AddressPool;
+
+/**
+ * Measures the contention of the threads reusing the available addresses
+ * of exhausted pools on many links, with the lock of each pool, and with
+ * one lock for all pools as the binding manager had before.  The database
+ * is simulated by a query which takes the given time.  Each thread reuses
+ * an address of the pool of a random link per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(16)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkContentionBenchmark
+{
+	@Param({ "1000" })
+	public int links;
+
+	@Param({ "500" })
+	public long queryMicros;
+
+	@Param({ "per-pool", "global" })
+	public String lock;
+
+	private V4AddrBindingManagerImpl manager;
+	private V4AddressBindingPool[] pools;
+	private ReentrantLock globalLock;
+
+	/**
+	 * The random links of a thread.
+	 */
+	@State(Scope.Thread)
+	public static class Link
+	{
+		Random random;
+
+		@Setup
+		public void setup(ThreadParams params)
+		{
+			random = new Random(params.getThreadIndex());
+		}
+	}
+
+	/**
+	 * A lease manager whose query for the unused addresses of a pool takes
+	 * the query time, and finds the first address of the pool.
+	 */
+	private IaManager buildIaManager()
+	{
+		return (IaManager) Proxy.newProxyInstance(IaManager.class.getClassLoader(),
+				new Class<?>[] { IaManager.class }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("findUnusedIaAddresses")) {
+					long end = System.nanoTime() + queryMicros * 1000;
+					while (System.nanoTime() < end) {
+						Thread.sleep(0, 100000);
+					}
+					IaAddress iaAddr = new IaAddress();
+					iaAddr.setIpAddress((InetAddress)args[0]);
+					return Collections.singletonList(iaAddr);
+				}
+				return null;
+			}
+		});
+	}
+
+	@Setup
+	public void setup() throws Exception
+	{
+		// the binding manager reads the policies of a configuration, without links
+		File configFile = File.createTempFile("dhcpserver-bench", ".xml");
+		configFile.deleteOnExit();
+		Writer w = new FileWriter(configFile);
+		try {
+			w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+				"<dhc:dhcpServerConfig xmlns:dhc=\"http://jagornet.com/dhcp/xml\">\n" +
+				"<v6ServerIdOption><opaqueData><hexValue>abcdef0123456789</hexValue>" +
+				"</opaqueData></v6ServerIdOption>\n" +
+				"<v4ServerIdOption><ipAddress>10.0.0.10</ipAddress></v4ServerIdOption>\n" +
+				"</dhc:dhcpServerConfig>\n");
+		}
+		finally {
+			w.close();
+		}
+		DhcpServerConfiguration.configFilename = configFile.getPath();
+		manager = new V4AddrBindingManagerImpl();
+		manager.setIaMgr(buildIaManager());
+		pools = new V4AddressBindingPool[links];
+		for (int i=0; i<links; i++) {
+			V4AddressPool pool = V4AddressPool.Factory.newInstance();
+			String subnet = "10." + (i / 256) + "." + (i % 256) + ".";
+			pool.setRange(subnet + "1-" + subnet + "254");
+			pools[i] = new V4AddressBindingPool(pool);
+		}
+		globalLock = lock.equals("global") ? new ReentrantLock() : null;
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		for (V4AddressBindingPool bp : pools) {
+			bp.close();
+		}
+	}
+
+	@Benchmark
+	public void reuseAvailableAddress(Link link)
+	{
+		V4AddressBindingPool bp = pools[link.random.nextInt(links)];
+		if (globalLock != null) {
+			globalLock.lock();
+		}
+		try {
+			manager.reuseAvailableAddress(bp);
+		}
+		finally {
+			if (globalLock != null) {
+				globalLock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2009-2014 Jagornet Technologies, LLC.  All Rights Reserved.
+ *
+ * This software is the proprietary information of Jagornet Technologies, LLC.
+ * Use is subject to license terms.
+ *
+ */
+
+/*
+ *   This file PrefixPoolBenchmark.java is part of Jagornet DHCP.
+ *
+ *   Jagornet DHCP is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Jagornet DHCP is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Jagornet DHCP.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.jagornet.dhcp.server.request.binding;
+
+import java.net.InetAddress;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jagornet.dhcp.xml.V6PrefixPool;
+
+/**
+ * Compares the FreeList and the BuddyFreeList of the prefixes of the large
+ * prefix pools of a provider, a /24 of /56s and a /32 of /64s, and the
+ * prefix pool allocating the lengths hinted by clients.  The allocate
+ * benchmark fills an empty pool.  The churn benchmark frees a random
+ * prefix of a pool filled with the given number of prefixes, and
+ * allocates another.  The memory of the lists is that of <code>-prof gc</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrefixPoolBenchmark
+{
+	/** The prefix length of the pool, of a /24 of /56s or a /32 of /64s. */
+	@Param({ "56", "64" })
+	public int prefixLength;
+
+	@Param({ "FreeList", "BuddyFreeList", "hinted" })
+	public String allocator;
+
+	@Param({ "1000000" })
+	public int prefixes;
+
+	private interface Allocator
+	{
+		/**
+		 * @return the allocated prefix, as an offset or an address
+		 */
+		Object allocate();
+
+		void free(Object prefix);
+
+		void close();
+	}
+
+	private final Random random = new Random(1);
+
+	private Allocator fill;
+	private Allocator churn;
+	private Object[] used;
+
+	private Allocator newAllocator() throws Exception
+	{
+		// both pools have 32 bits of prefixes
+		if (allocator.equals("FreeList")) {
+			final FreeList freeList = new FreeList(0, (1L << 32) - 1);
+			return new Allocator() {
+				public Object allocate() { return Long.valueOf(freeList.getNextFree()); }
+				public void free(Object prefix) { freeList.setFree(((Long)prefix).longValue()); }
+				public void close() { }
+			};
+		}
+		if (allocator.equals("BuddyFreeList")) {
+			final BuddyFreeList freeList = new BuddyFreeList(32);
+			return new Allocator() {
+				public Object allocate() { return Long.valueOf(freeList.getNextFree(0)); }
+				public void free(Object prefix) { freeList.setFree(((Long)prefix).longValue()); }
+				public void close() { }
+			};
+		}
+		V6PrefixPool pool = V6PrefixPool.Factory.newInstance();
+		pool.setRange((prefixLength == 56) ? "2400::/24" : "2001:db8::/32");
+		pool.setPrefixLength(prefixLength);
+		final V6PrefixBindingPool bp = new V6PrefixBindingPool(pool);
+		bp.setPrefixLengthRange(prefixLength - 8, prefixLength);
+		final int[] hints = new int[] { prefixLength, prefixLength,
+				prefixLength - 4, prefixLength - 8 };
+		return new Allocator() {
+			int i = 0;
+			public Object allocate() { return bp.getNextAvailablePrefix(hints[i++ & 3]); }
+			public void free(Object prefix) { bp.setFree((InetAddress)prefix); }
+			public void close() { bp.close(); }
+		};
+	}
+
+	@Setup
+	public void setupChurn() throws Exception
+	{
+		churn = newAllocator();
+		used = new Object[prefixes];
+		for (int i=0; i<prefixes; i++) {
+			used[i] = churn.allocate();
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void setupFill() throws Exception
+	{
+		fill = newAllocator();
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDownFill()
+	{
+		fill.close();
+	}
+
+	@TearDown
+	public void tearDownChurn()
+	{
+		churn.close();
+	}
+
+	@Benchmark
+	public Object allocate()
+	{
+		return fill.allocate();
+	}
+
+	@Benchmark
+	public Object churn()
+	{
+		int j = random.nextInt(used.length);
+		churn.free(used[j]);
+		used[j] = churn.allocate();
+		return used[j];
+	}
+}
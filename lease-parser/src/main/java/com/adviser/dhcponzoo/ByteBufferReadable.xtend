@@ -0,0 +1,31 @@
+package com.adviser.dhcponzoo
+
+import java.nio.ByteBuffer
+import java.nio.CharBuffer
+
+/**
+ * Reads the ASCII content of a (mapped) ByteBuffer as chars.
+ *
+ * @author markusw
+ */
+class ByteBufferReadable implements Readable {
+
+  val ByteBuffer buffer
+
+  new(ByteBuffer buffer) {
+    this.buffer = buffer
+  }
+
+  override read(CharBuffer cb) {
+    if (!buffer.hasRemaining) {
+      return -1
+    }
+    var n = 0
+    while (cb.hasRemaining && buffer.hasRemaining) {
+      cb.put(buffer.get.bitwiseAnd(0xff) as char)
+      n = n + 1
+    }
+    n
+  }
+
+}
@@ -0,0 +1,121 @@
+package com.adviser.dhcponzoo
+
+import com.jagornet.dhcp.db.IaAddress
+import com.jagornet.dhcp.db.IaManager
+import com.jagornet.dhcp.db.IdentityAssoc
+import java.io.File
+import java.net.InetAddress
+import java.util.Date
+import java.util.Map
+import org.eclipse.xtext.xbase.lib.Procedures.Procedure1
+
+/**
+ * Imports the leases of an ISC dhcpd.leases file into a Jagornet IaManager,
+ * e.g. to migrate a running ISC server.
+ *
+ * Leases are imported while the file is parsed. As the file holds a new
+ * record for an ip every time its lease changed, a later record of an ip
+ * replaces the one imported before, unless it is unchanged. Only the
+ * last imported lease of each ip is kept in memory, to compare with.
+ *
+ * @author markusw
+ */
+class IaManagerImporter implements Procedure1<Lease> {
+
+  val IaManager iaManager
+
+  val Map<String, Lease> imported = newHashMap
+
+  var int skipped = 0
+
+  new(IaManager iaManager) {
+    this.iaManager = iaManager
+  }
+
+  def IaManagerImporter importLeases(File file) {
+    new LeaseParser().parse(file, this)
+    this
+  }
+
+  def IaManagerImporter importLeases(Readable reader) {
+    new LeaseParser().parse(reader, this)
+    this
+  }
+
+  /**
+   * Follows the file as dhcpd appends to it. Each poll of the returned
+   * follower imports the leases appended since the previous one.
+   */
+  def LeaseFollower follow(File file) {
+    new LeaseFollower(file, this)
+  }
+
+  /**
+   * The number of leases in the IaManager.
+   */
+  def int getImported() {
+    imported.size
+  }
+
+  /**
+   * The number of lease records which were not imported, e.g. free leases.
+   */
+  def int getSkipped() {
+    skipped
+  }
+
+  override apply(Lease lease) {
+    val previous = imported.get(lease.ip)
+    if (previous == lease) {
+      // e.g. read again from a file rewritten by dhcpd
+      return
+    }
+    val inetAddr = InetAddress.getByName(lease.ip)
+    if (imported.remove(lease.ip) != null) {
+      val iaAddr = new IaAddress
+      iaAddr.ipAddress = inetAddr
+      iaManager.deleteIaAddr(iaAddr)
+    }
+    val state = lease.bindingState.toState()
+    if (state == 0 || lease.hardwareAddress == null) {
+      skipped = skipped + 1
+    } else {
+      iaManager.createIA(toIdentityAssoc(lease, inetAddr, state))
+      imported.put(lease.ip, lease)
+    }
+  }
+
+  protected def IdentityAssoc toIdentityAssoc(Lease lease, InetAddress inetAddr, byte state) {
+    // the DHCPv4 binding of a client is keyed by its chaddr
+    val iaAddr = new IaAddress
+    iaAddr.ipAddress = inetAddr
+    iaAddr.state = state
+    iaAddr.startTime = lease.starts
+    val ends = if(lease.ends != null) lease.ends else new Date(-1)
+    iaAddr.preferredEndTime = ends
+    iaAddr.validEndTime = ends
+
+    val ia = new IdentityAssoc
+    ia.duid = lease.hardwareAddress
+    ia.iatype = IdentityAssoc.V4_TYPE
+    ia.iaid = 0
+    ia.state = state
+    ia.iaAddresses = newArrayList(iaAddr)
+    ia
+  }
+
+  /**
+   * Maps the ISC binding state to the IaAddress state, or 0 if a lease
+   * in that state is not kept in the IaManager.
+   */
+  protected def byte toState(String bindingState) {
+    switch bindingState {
+      case 'active': IaAddress.COMMITTED
+      case 'expired': IaAddress.EXPIRED
+      case 'released': IaAddress.RELEASED
+      case 'abandoned': IaAddress.DECLINED
+      default: 0 as byte
+    }
+  }
+
+}
@@ -0,0 +1,43 @@
+package com.adviser.dhcponzoo
+
+import java.util.Date
+import java.util.Map
+import org.eclipse.xtend.lib.annotations.Data
+
+/**
+ * A single lease record of an ISC dhcpd.leases file.
+ *
+ * @author markusw
+ */
+@Data
+class Lease {
+
+  String ip
+
+  Date starts
+
+  /**
+   * The end of the lease, or <code>null</code> if the lease never ends.
+   */
+  Date ends
+
+  Date cltt
+
+  String bindingState
+
+  String nextBindingState
+
+  String hardwareType
+
+  byte[] hardwareAddress
+
+  String uid
+
+  String clientHostname
+
+  /**
+   * The <code>set name = value;</code> statements of the lease, e.g. ddns-fwd-name.
+   */
+  Map<String, String> variables
+
+}
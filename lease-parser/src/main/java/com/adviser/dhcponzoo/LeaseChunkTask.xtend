@@ -0,0 +1,64 @@
+package com.adviser.dhcponzoo
+
+import java.nio.channels.FileChannel
+import java.util.Map
+import java.util.concurrent.RecursiveTask
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY
+
+/**
+ * Parses the chunks <code>lo</code> to <code>hi</code> of a leases file,
+ * splitting the work in halves until a single chunk is left. The results
+ * are merged in file order, so the last record of an ip wins.
+ *
+ * @author markusw
+ */
+class LeaseChunkTask extends RecursiveTask<Map<String, Lease>> {
+
+  val LeaseParser parser
+  val FileChannel channel
+  val long[] offsets
+  val int lo
+  val int hi
+
+  /**
+   * @param offsets the start offsets of the chunks, followed by the file size
+   */
+  new(LeaseParser parser, FileChannel channel, long[] offsets, int lo, int hi) {
+    this.parser = parser
+    this.channel = channel
+    this.offsets = offsets
+    this.lo = lo
+    this.hi = hi
+  }
+
+  override protected compute() {
+    if (hi - lo <= 1) {
+      parseChunk()
+    } else {
+      val mid = (lo + hi) / 2
+      val right = new LeaseChunkTask(parser, channel, offsets, mid, hi)
+      right.fork()
+      val result = new LeaseChunkTask(parser, channel, offsets, lo, mid).compute()
+      result.putAll(right.join())
+      result
+    }
+  }
+
+  private def Map<String, Lease> parseChunk() {
+    val result = <String, Lease>newHashMap
+    if (lo < hi) {
+      val start = offsets.get(lo)
+      val length = offsets.get(lo + 1) - start
+      if (length > Integer.MAX_VALUE) {
+        throw new IllegalStateException('Chunk at ' + start + ' too large to map: ' + length)
+      }
+      val buffer = channel.map(READ_ONLY, start, length)
+      parser.parse(new ByteBufferReadable(buffer)) [
+        result.put(ip, it)
+      ]
+    }
+    result
+  }
+
+}
@@ -0,0 +1,117 @@
+package com.adviser.dhcponzoo
+
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.file.Files
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.logging.Level
+import java.util.logging.Logger
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY
+
+/**
+ * Follows an ISC dhcpd.leases file while dhcpd appends to it, e.g. to
+ * keep another lease store in sync during a migration.
+ *
+ * Every poll reads only the lease blocks appended since the last poll,
+ * starting at the byte offset consumed so far. A block still being
+ * written is left for the next poll. When dhcpd rewrites the file, which
+ * it does periodically by writing a new file and renaming it, or when
+ * the file is truncated, the new file is read from the start.
+ *
+ * @author markusw
+ */
+class LeaseFollower {
+
+  static val log = Logger.getLogger(LeaseFollower.name)
+
+  static val MAX_MAP_SIZE = 256 * 1024 * 1024
+
+  val LeaseParser parser = new LeaseParser
+
+  val File file
+
+  val (Lease)=>void handler
+
+  var Object fileKey
+
+  var long offset = 0
+
+  new(File file, (Lease)=>void handler) {
+    this.file = file
+    this.handler = handler
+  }
+
+  /**
+   * The byte offset of the file up to which the leases have been read.
+   */
+  def long getOffset() {
+    offset
+  }
+
+  /**
+   * Passes the leases appended since the last poll to the handler.
+   *
+   * @return the number of leases read
+   */
+  def synchronized int poll() {
+    if (!file.exists) {
+      return 0
+    }
+    var count = 0
+    val key = file.fileKey()
+    val raf = new RandomAccessFile(file, 'r')
+    try {
+      val channel = raf.channel
+      if (key != file.fileKey()) {
+        // replaced while opening, try again on the next poll
+        return 0
+      }
+      val size = channel.size
+      if (key != fileKey || size < offset) {
+        // a new or rewritten file
+        fileKey = key
+        offset = 0
+      }
+      var done = false
+      while (!done && offset < size) {
+        val length = Math.min(size - offset, MAX_MAP_SIZE)
+        val counter = newIntArrayOfSize(1)
+        val consumed = parser.parseComplete(new ByteBufferReadable(channel.map(READ_ONLY, offset, length))) [
+          counter.set(0, counter.get(0) + 1)
+          handler.apply(it)
+        ]
+        count = count + counter.get(0)
+        offset = offset + consumed
+        // nothing complete beyond the offset yet
+        done = consumed == 0
+      }
+    } finally {
+      raf.close()
+    }
+    count
+  }
+
+  private def Object fileKey(File file) {
+    val attributes = Files.readAttributes(file.toPath, BasicFileAttributes)
+    if(attributes.fileKey != null) attributes.fileKey else attributes.creationTime
+  }
+
+  /**
+   * Polls the file with a fixed delay until the returned future is cancelled.
+   * A failed poll is logged, and the file is polled again after the delay.
+   */
+  def ScheduledFuture<?> schedule(ScheduledExecutorService executor, long period, TimeUnit unit) {
+    executor.scheduleWithFixedDelay([|
+      try {
+        poll()
+      } catch (Exception ex) {
+        log.log(Level.SEVERE, 'Failed to poll ' + file, ex)
+      }
+    ], 0, period, unit)
+  }
+
+}
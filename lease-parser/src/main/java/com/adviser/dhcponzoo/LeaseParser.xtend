@@ -3,23 +3,25 @@ package com.adviser.dhcponzoo
 import java.io.Closeable
 import java.io.File
 import java.net.URL
+import java.util.Date
+import java.util.List
 import java.util.Map
 
 import static com.google.common.base.Charsets.UTF_8
 
-import static extension com.google.common.io.CharStreams.readLines
 import static extension com.google.common.io.Files.newReader
 import static extension com.google.common.io.Resources.newReaderSupplier
-import static extension java.util.regex.Pattern.compile
 
 /**
+ * Parser for ISC dhcpd.leases files.
+ *
+ * The file is read as a stream of tokens, one lease block at a time,
+ * so the memory used does not depend on the size of the file.
+ *
  * @author markusw
  */
 class LeaseParser {
 
-  private final val LEASE_PATTERN = 'lease\\s+(?<ip>\\d{0,3}.\\d{0,3}.\\d{0,3}.\\d{0,3})\\s+\\{(?<body>.*?)\\}'.
-    compile()
-
   private static def <C extends Closeable, T> =>(C closebale, (C)=>T fn) {
     try {
       fn.apply(closebale)
@@ -36,20 +38,245 @@ class LeaseParser {
     file.newReader(UTF_8) => [parse()]
   }
 
+  /**
+   * Parses the leases into a map of the lease body statements by ip.
+   * The last lease of an ip wins, as in dhcpd.
+   */
   def Map<String, Map<String, String>> parse(Readable reader) {
-    val result = newHashMap
+    val result = <String, Map<String, String>>newHashMap
+    reader.parseBlocks [ ip, statements |
+      result.put(ip, statements.toBody())
+    ]
+    return result
+  }
+
+  /**
+   * Streams the leases of the file to the handler in file order.
+   */
+  def void parse(File file, (Lease)=>void handler) {
+    file.newReader(UTF_8) => [parse(handler); null]
+  }
+
+  /**
+   * Streams the leases to the handler in file order. A file contains
+   * a new record for an ip every time the lease changes, so the last
+   * record of an ip is the current one.
+   */
+  def void parse(Readable reader, (Lease)=>void handler) {
+    reader.parseBlocks [ ip, statements |
+      handler.apply(toLease(ip, statements))
+    ]
+  }
+
+  /**
+   * Streams the complete leases of the input to the handler in file order,
+   * e.g. those appended to a file that is still being written.
+   *
+   * @return the number of chars up to the end of the last complete
+   *         statement or block, where the next read should continue
+   */
+  def long parseComplete(Readable reader, (Lease)=>void handler) {
+    reader.parseBlocks [ ip, statements |
+      handler.apply(toLease(ip, statements))
+    ]
+  }
 
-    val input = reader.readLines().map[trim].filter[!startsWith('#')].join
-    val matcher = LEASE_PATTERN.matcher(input)
-    while (matcher.find) {
-      result.put(matcher.group('ip'), matcher.group('body').parseBody())
+  /**
+   * Reads the <code>lease ip { ... }</code> blocks, passing the statements
+   * of each block as lists of words. Quoted strings keep their quotes.
+   * All other top level statements and blocks are skipped, as is a lease
+   * block cut off by the end of the input.
+   *
+   * @return the number of chars up to the end of the last complete
+   *         statement or block
+   */
+  protected def long parseBlocks(Readable reader, (String, List<List<String>>)=>void handler) {
+    val tokenizer = new LeaseTokenizer(reader)
+    var consumed = 0L
+    var type = tokenizer.next()
+    while (type != LeaseTokenizer.EOF) {
+      if (type == LeaseTokenizer.WORD && tokenizer.textEquals('lease')) {
+        tokenizer.next()
+        val ip = tokenizer.text
+        type = tokenizer.next()
+        if (type == LeaseTokenizer.LBRACE) {
+          val statements = tokenizer.readStatements()
+          if (tokenizer.type == LeaseTokenizer.RBRACE) {
+            handler.apply(ip, statements)
+          }
+        } else {
+          tokenizer.skipStatement()
+        }
+      } else {
+        tokenizer.skipStatement()
+      }
+      if (tokenizer.type != LeaseTokenizer.EOF) {
+        consumed = tokenizer.position
+      }
+      type = tokenizer.next()
     }
+    consumed
+  }
 
-    return result
+  private def List<List<String>> readStatements(LeaseTokenizer tokenizer) {
+    val statements = <List<String>>newArrayList
+    var statement = <String>newArrayList
+    var depth = 0
+    var type = tokenizer.next()
+    while (type != LeaseTokenizer.EOF && !(type == LeaseTokenizer.RBRACE && depth == 0)) {
+      switch type {
+        case LeaseTokenizer.SEMICOLON:
+          if (depth == 0) {
+            if (!statement.empty) {
+              statements.add(statement)
+            }
+            statement = newArrayList
+          }
+        case LeaseTokenizer.LBRACE:
+          depth = depth + 1
+        case LeaseTokenizer.RBRACE: {
+          // end of a nested block, e.g. on commit { ... }, which is ignored
+          depth = depth - 1
+          if (depth == 0) {
+            statement = newArrayList
+          }
+        }
+        case LeaseTokenizer.STRING:
+          if (depth == 0) {
+            statement.add('"' + tokenizer.text + '"')
+          }
+        default:
+          if (depth == 0) {
+            statement.add(tokenizer.text)
+          }
+      }
+      type = tokenizer.next()
+    }
+    statements
+  }
+
+  private def void skipStatement(LeaseTokenizer tokenizer) {
+    var depth = 0
+    var type = tokenizer.type
+    var done = false
+    while (!done) {
+      switch type {
+        case LeaseTokenizer.EOF:
+          done = true
+        case LeaseTokenizer.LBRACE:
+          depth = depth + 1
+        case LeaseTokenizer.RBRACE: {
+          depth = depth - 1
+          done = depth <= 0
+        }
+        case LeaseTokenizer.SEMICOLON:
+          done = depth == 0
+      }
+      if (!done) {
+        type = tokenizer.next()
+      }
+    }
+  }
+
+  private def Map<String, String> toBody(List<List<String>> statements) {
+    val body = <String, String>newLinkedHashMap
+    for (statement : statements) {
+      body.put(statement.head, statement.tail.join(' '))
+    }
+    body
+  }
+
+  protected def Lease toLease(String ip, List<List<String>> statements) {
+    var Date starts = null
+    var Date ends = null
+    var Date cltt = null
+    var String bindingState = null
+    var String nextBindingState = null
+    var String hardwareType = null
+    var byte[] hardwareAddress = null
+    var String uid = null
+    var String clientHostname = null
+    val variables = <String, String>newLinkedHashMap
+    for (statement : statements) {
+      switch statement.head {
+        case 'starts':
+          starts = statement.toDate()
+        case 'ends':
+          ends = statement.toDate()
+        case 'cltt':
+          cltt = statement.toDate()
+        case 'binding':
+          bindingState = statement.last
+        case 'next':
+          nextBindingState = statement.last
+        case 'hardware':
+          if (statement.size >= 3) {
+            hardwareType = statement.get(1)
+            hardwareAddress = statement.get(2).toHardwareAddress()
+          }
+        case 'uid':
+          uid = statement.last.unquote()
+        case 'client-hostname':
+          clientHostname = statement.last.unquote()
+        case 'set':
+          if (statement.size >= 4) {
+            variables.put(statement.get(1), statement.get(3).unquote())
+          }
+      }
+    }
+    new Lease(ip, starts, ends, cltt, bindingState, nextBindingState, hardwareType, hardwareAddress, uid,
+      clientHostname, variables)
+  }
+
+  /**
+   * Converts <code>starts 3 2015/01/21 07:34:38</code>, in UTC, or
+   * <code>starts epoch 1421825678</code>. Returns null for <code>never</code>.
+   */
+  private def Date toDate(List<String> statement) {
+    if (statement.size >= 4) {
+      val date = statement.get(2)
+      val time = statement.get(3)
+      val days = daysFromCivil(date.digits(0, 4), date.digits(5, 7), date.digits(8, 10))
+      val seconds = days * 86400L + time.digits(0, 2) * 3600 + time.digits(3, 5) * 60 + time.digits(6, 8)
+      new Date(seconds * 1000)
+    } else if (statement.size == 3 && statement.get(1) == 'epoch') {
+      new Date(Long.parseLong(statement.get(2)) * 1000)
+    } else {
+      null
+    }
+  }
+
+  private static def int digits(String s, int start, int end) {
+    var value = 0
+    for (i : start ..< end) {
+      value = value * 10 + Character.digit(s.charAt(i), 10)
+    }
+    value
+  }
+
+  /**
+   * The number of days since 1970-01-01 of the given date.
+   */
+  private static def long daysFromCivil(int year, int month, int day) {
+    val y = if(month <= 2) year - 1 else year
+    val era = (if(y >= 0) y else y - 399) / 400
+    val yoe = y - era * 400
+    val doy = (153 * (if(month > 2) month - 3 else month + 9) + 2) / 5 + day - 1
+    val doe = yoe * 365 + yoe / 4 - yoe / 100 + doy
+    era * 146097L + doe - 719468
+  }
+
+  private static def byte[] toHardwareAddress(String s) {
+    val parts = s.split(':')
+    val bytes = newByteArrayOfSize(parts.length)
+    for (i : 0 ..< parts.length) {
+      bytes.set(i, Integer.parseInt(parts.get(i), 16) as byte)
+    }
+    bytes
   }
 
-  private def Map<String, String> parseBody(String body) {
-    body.split(';').toMap[split(' ', 2).get(0)].mapValues[split(' ', 2).get(1)]
+  private static def String unquote(String s) {
+    if (s.length >= 2 && s.startsWith('"') && s.endsWith('"')) s.substring(1, s.length - 1) else s
   }
 
 }
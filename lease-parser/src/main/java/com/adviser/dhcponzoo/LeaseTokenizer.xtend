@@ -0,0 +1,178 @@
+package com.adviser.dhcponzoo
+
+import java.nio.CharBuffer
+
+/**
+ * A streaming tokenizer for the ISC dhcpd.leases format.
+ *
+ * Reads the input through a fixed size buffer, so memory use does not
+ * depend on the size of the file. Comments are skipped, quoted strings
+ * are returned without the quotes.
+ *
+ * @author markusw
+ */
+class LeaseTokenizer {
+
+  public static val EOF = -1
+  public static val WORD = 0
+  public static val STRING = 1
+  public static val LBRACE = 2
+  public static val RBRACE = 3
+  public static val SEMICOLON = 4
+
+  static val BUFFER_SIZE = 8192
+
+  static val int HASH = '#'.charAt(0)
+  static val int NEWLINE = '\n'.charAt(0)
+  static val int QUOTE = '"'.charAt(0)
+  static val int BACKSLASH = '\\'.charAt(0)
+  static val int OPEN = '{'.charAt(0)
+  static val int CLOSE = '}'.charAt(0)
+  static val int SEMI = ';'.charAt(0)
+
+  val Readable input
+  val CharBuffer buffer
+  val StringBuilder text = new StringBuilder
+
+  var int type = EOF
+  var long position = 0
+
+  new(Readable input) {
+    this.input = input
+    this.buffer = CharBuffer.allocate(BUFFER_SIZE)
+    this.buffer.limit(0)
+  }
+
+  /**
+   * Advances to the next token.
+   *
+   * @return the type of the token, or EOF at the end of the input
+   */
+  def int next() {
+    text.setLength(0)
+    val c = skipWhitespaceAndComments()
+    if (c == EOF) {
+      type = EOF
+    } else if (c == OPEN) {
+      text.append(c as char)
+      type = LBRACE
+    } else if (c == CLOSE) {
+      text.append(c as char)
+      type = RBRACE
+    } else if (c == SEMI) {
+      text.append(c as char)
+      type = SEMICOLON
+    } else if (c == QUOTE) {
+      readString()
+      type = STRING
+    } else {
+      readWord(c)
+      type = WORD
+    }
+    type
+  }
+
+  /**
+   * The type of the current token.
+   */
+  def int getType() {
+    type
+  }
+
+  /**
+   * The text of the current token.
+   */
+  def String getText() {
+    text.toString
+  }
+
+  /**
+   * Checks the text of the current token without creating a String.
+   */
+  def boolean textEquals(String s) {
+    if (text.length != s.length) {
+      return false
+    }
+    var i = 0
+    while (i < s.length && text.charAt(i) == s.charAt(i)) {
+      i = i + 1
+    }
+    i == s.length
+  }
+
+  /**
+   * The number of chars consumed from the input.
+   */
+  def long getPosition() {
+    position
+  }
+
+  private def int skipWhitespaceAndComments() {
+    var c = read()
+    var done = false
+    while (!done) {
+      if (c == HASH) {
+        while (c != EOF && c != NEWLINE) {
+          c = read()
+        }
+      } else if (c != EOF && Character.isWhitespace(c)) {
+        c = read()
+      } else {
+        done = true
+      }
+    }
+    c
+  }
+
+  private def void readString() {
+    var c = read()
+    while (c != EOF && c != QUOTE) {
+      if (c == BACKSLASH) {
+        // keep escapes as they are, but never end the string on \"
+        text.append(c as char)
+        c = read()
+      }
+      if (c != EOF) {
+        text.append(c as char)
+        c = read()
+      }
+    }
+  }
+
+  private def void readWord(int first) {
+    var c = first
+    while (c != EOF && !isDelimiter(c)) {
+      text.append(c as char)
+      c = read()
+    }
+    if (c != EOF) {
+      unread()
+    }
+  }
+
+  private def boolean isDelimiter(int c) {
+    Character.isWhitespace(c) || c == SEMI || c == OPEN || c == CLOSE || c == QUOTE || c == HASH
+  }
+
+  private def int read() {
+    if (!buffer.hasRemaining) {
+      buffer.clear
+      var n = input.read(buffer)
+      while (n == 0) {
+        n = input.read(buffer)
+      }
+      buffer.flip
+      if (n < 0) {
+        return EOF
+      }
+    }
+    position = position + 1
+    buffer.get
+  }
+
+  private def void unread() {
+    buffer.position(buffer.position - 1)
+    position = position - 1
+  }
+
+}
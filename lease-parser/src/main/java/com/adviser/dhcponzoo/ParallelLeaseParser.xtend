@@ -0,0 +1,125 @@
+package com.adviser.dhcponzoo
+
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.Map
+import java.util.concurrent.ForkJoinPool
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY
+
+/**
+ * Parses large ISC dhcpd.leases files in parallel.
+ *
+ * The file is memory mapped and split into chunks, each starting at a
+ * line beginning with <code>lease </code>, as written by dhcpd. The chunks
+ * are parsed on a fork-join pool and merged in file order, so the last
+ * record of an ip wins, as in dhcpd.
+ *
+ * @author markusw
+ */
+class ParallelLeaseParser {
+
+  public static val DEFAULT_CHUNK_SIZE = 32 * 1024 * 1024
+
+  static val WINDOW_SIZE = 64 * 1024
+
+  static val byte[] LEASE_LINE = '\nlease '.getBytes('US-ASCII')
+
+  val LeaseParser parser = new LeaseParser
+
+  val int chunkSize
+
+  new() {
+    this(DEFAULT_CHUNK_SIZE)
+  }
+
+  new(int chunkSize) {
+    this.chunkSize = chunkSize
+  }
+
+  /**
+   * Parses the file on a new fork-join pool with one thread per processor.
+   *
+   * @return the last lease of each ip
+   */
+  def Map<String, Lease> parse(File file) {
+    val pool = new ForkJoinPool
+    try {
+      parse(file, pool)
+    } finally {
+      pool.shutdown()
+    }
+  }
+
+  /**
+   * @return the last lease of each ip
+   */
+  def Map<String, Lease> parse(File file, ForkJoinPool pool) {
+    val raf = new RandomAccessFile(file, 'r')
+    try {
+      val channel = raf.channel
+      val offsets = channel.split()
+      pool.invoke(new LeaseChunkTask(parser, channel, offsets, 0, offsets.length - 1))
+    } finally {
+      raf.close()
+    }
+  }
+
+  /**
+   * Splits the file into chunks of about the chunk size.
+   *
+   * @return the start offsets of the chunks, followed by the file size
+   */
+  protected def long[] split(FileChannel channel) {
+    val size = channel.size
+    val offsets = <Long>newArrayList(0L)
+    var next = chunkSize as long
+    while (next < size) {
+      val start = channel.findLeaseLine(next)
+      if (start < size) {
+        offsets.add(start)
+      }
+      next = start + chunkSize
+    }
+    offsets.add(size)
+    offsets
+  }
+
+  /**
+   * Finds the first line beginning with <code>lease </code> at or after
+   * the offset.
+   *
+   * @return the offset of the line, or the file size if there is none
+   */
+  protected def long findLeaseLine(FileChannel channel, long offset) {
+    val size = channel.size
+    // start at the newline in front of the offset
+    var pos = offset - 1
+    var found = -1L
+    while (found < 0 && pos + LEASE_LINE.length <= size) {
+      val length = Math.min(WINDOW_SIZE, size - pos) as int
+      val window = channel.map(READ_ONLY, pos, length)
+      var i = 0
+      while (found < 0 && i + LEASE_LINE.length <= length) {
+        if (window.matches(i)) {
+          found = pos + i + 1
+        }
+        i = i + 1
+      }
+      // windows overlap, so a line across two windows is not missed
+      pos = pos + length - LEASE_LINE.length + 1
+    }
+    if (found < 0) size else found
+  }
+
+  private def boolean matches(ByteBuffer window, int index) {
+    var i = 0
+    while (i < LEASE_LINE.length && window.get(index + i) == LEASE_LINE.get(i)) {
+      i = i + 1
+    }
+    i == LEASE_LINE.length
+  }
+
+}
@@ -0,0 +1,80 @@
+package com.adviser.dhcponzoo
+
+import com.jagornet.dhcp.db.IaAddress
+import com.jagornet.dhcp.db.IaManager
+import com.jagornet.dhcp.db.IdentityAssoc
+import java.io.FileReader
+import java.io.StringReader
+import java.net.InetAddress
+import org.junit.Test
+import org.mockito.ArgumentCaptor
+
+import static org.junit.Assert.*
+import static org.hamcrest.Matchers.*
+import static org.mockito.Mockito.*
+
+/**
+ * @author markusw
+ */
+class IaManagerImporterTest {
+
+  @Test
+  def testImportLeases() {
+    val iaManager = mock(IaManager)
+    val reader = new FileReader('src/test/resources/test.lease');
+    val importer = try {
+      new IaManagerImporter(iaManager).importLeases(reader)
+    } finally {
+      reader.close()
+    }
+
+    assertThat(importer.imported, is(2))
+    assertThat(importer.skipped, is(1))
+
+    val ias = ArgumentCaptor.forClass(IdentityAssoc)
+    verify(iaManager, times(3)).createIA(ias.capture)
+    val ia = ias.allValues.head
+    assertThat(ia.iatype, is(IdentityAssoc.V4_TYPE))
+    assertThat(ia.duid.length, is(6))
+    val iaAddr = ia.iaAddresses.head
+    assertThat(iaAddr.ipAddress, is(InetAddress.getByName('10.1.222.51')))
+    assertThat(iaAddr.state, is(IaAddress.COMMITTED))
+    assertThat(iaAddr.validEndTime.time, is(1421912078000L))
+
+    // the later record of 10.1.222.52 replaces the first one
+    val deleted = ArgumentCaptor.forClass(IaAddress)
+    verify(iaManager).deleteIaAddr(deleted.capture)
+    assertThat(deleted.value.ipAddress, is(InetAddress.getByName('10.1.222.52')))
+    assertThat(ias.allValues.last.iaAddresses.head.state, is(IaAddress.RELEASED))
+  }
+
+  @Test
+  def testImportUnchangedLeases() {
+    val leases = 'lease 10.1.222.51 {\n  binding state active;\n  hardware ethernet 00:16:3e:43:42:bf;\n}\n'
+      + 'lease 10.1.222.52 {\n  binding state active;\n  hardware ethernet 00:16:3e:43:42:c0;\n}\n'
+    val iaManager = mock(IaManager)
+    val importer = new IaManagerImporter(iaManager).importLeases(new StringReader(leases))
+    // the same leases again, as after dhcpd rewrote the file
+    importer.importLeases(new StringReader(leases))
+
+    assertThat(importer.imported, is(2))
+    verify(iaManager, times(2)).createIA(org.mockito.Matchers.any(IdentityAssoc))
+    verify(iaManager, never).deleteIaAddr(org.mockito.Matchers.any(IaAddress))
+  }
+
+  @Test
+  def testImportChangedLease() {
+    val lease = 'lease 10.1.222.51 {\n  ends 4 2015/01/22 07:34:38;\n  binding state active;\n  hardware ethernet 00:16:3e:43:42:bf;\n}\n'
+    val iaManager = mock(IaManager)
+    val importer = new IaManagerImporter(iaManager).importLeases(new StringReader(lease))
+    // renewed, only the end of the lease changed
+    importer.importLeases(new StringReader(lease.replace('07:34:38', '08:34:38')))
+
+    assertThat(importer.imported, is(1))
+    val ias = ArgumentCaptor.forClass(IdentityAssoc)
+    verify(iaManager, times(2)).createIA(ias.capture)
+    verify(iaManager).deleteIaAddr(org.mockito.Matchers.any(IaAddress))
+    assertThat(ias.allValues.last.iaAddresses.head.validEndTime.time, is(1421915678000L))
+  }
+
+}
@@ -0,0 +1,50 @@
+package com.adviser.dhcponzoo
+
+import java.io.BufferedWriter
+import java.io.File
+import java.io.FileWriter
+
+/**
+ * Writes dhcpd.leases files of a given number of lease records for tests
+ * and benchmarks. The records cycle over <code>distinct</code> ips, so
+ * every ip after the first round gets a newer record, as in a real file.
+ *
+ * @author markusw
+ */
+class LeaseFileGenerator {
+
+  def static File generate(File file, int leases, int distinct) {
+    val writer = new BufferedWriter(new FileWriter(file), 1024 * 1024)
+    try {
+      writer.write('# The format of this file is documented in the dhcpd.leases(5) manual page.\n')
+      writer.write('server-duid "\\000\\001\\000\\001\\034\\375\\251X\\000\\026>CB\\277";\n\n')
+      for (i : 0 ..< leases) {
+        writer.writeLease(i % distinct, i / distinct)
+      }
+    } finally {
+      writer.close()
+    }
+    file
+  }
+
+  def static String ip(int n) {
+    '10.' + (n >> 16).bitwiseAnd(0xff) + '.' + (n >> 8).bitwiseAnd(0xff) + '.' + n.bitwiseAnd(0xff)
+  }
+
+  private def static void writeLease(BufferedWriter writer, int n, int round) {
+    val mac = String.format('00:16:3e:%02x:%02x:%02x', (n >> 16).bitwiseAnd(0xff), (n >> 8).bitwiseAnd(0xff),
+      n.bitwiseAnd(0xff))
+    val day = 10 + round % 18
+    writer.write('lease ' + ip(n) + ' {\n')
+    writer.write('  starts 3 2015/01/' + day + ' 07:34:38;\n')
+    writer.write('  ends 4 2015/01/' + (day + 1) + ' 07:34:38;\n')
+    writer.write('  cltt 3 2015/01/' + day + ' 07:34:38;\n')
+    writer.write('  binding state ' + (if(round % 2 == 0) 'active' else 'released') + ';\n')
+    writer.write('  next binding state free;\n')
+    writer.write('  hardware ethernet ' + mac + ';\n')
+    writer.write('  client-hostname "host-' + n + '";\n')
+    writer.write('  set ddns-fwd-name = "host-' + n + '.example.com";\n')
+    writer.write('}\n')
+  }
+
+}
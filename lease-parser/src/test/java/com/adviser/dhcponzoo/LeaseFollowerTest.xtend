@@ -0,0 +1,99 @@
+package com.adviser.dhcponzoo
+
+import com.google.common.io.Files
+import java.io.File
+import java.util.List
+import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import org.junit.Test
+
+import static com.google.common.base.Charsets.US_ASCII
+import static org.junit.Assert.*
+import static org.hamcrest.Matchers.*
+
+/**
+ * @author markusw
+ */
+class LeaseFollowerTest {
+
+  static val LEASE_51 = 'lease 10.1.222.51 {\n  binding state active;\n}\n'
+  static val LEASE_52 = 'lease 10.1.222.52 {\n  binding state active;\n}\n'
+  static val LEASE_52_RELEASED = 'lease 10.1.222.52 {\n  binding state released;\n}\n'
+
+  @Test
+  def testFollow() {
+    val file = File.createTempFile('dhcpd', '.leases')
+    try {
+      val List<Lease> leases = newArrayList
+      val follower = new LeaseFollower(file) [leases.add(it)]
+
+      Files.write('# header\n' + LEASE_51 + 'lease 10.1.222.52 {\n  binding', file, US_ASCII)
+      assertThat(follower.poll(), is(1))
+      assertThat(leases.map[ip], contains('10.1.222.51'))
+      assertThat(follower.offset, is(('# header\n' + LEASE_51).length as long - 1))
+
+      // the rest of the block being written
+      Files.append(' state active;\n}\n', file, US_ASCII)
+      assertThat(follower.poll(), is(1))
+      assertThat(follower.poll(), is(0))
+      Files.append(LEASE_52_RELEASED, file, US_ASCII)
+      assertThat(follower.poll(), is(1))
+      assertThat(leases.map[ip], contains('10.1.222.51', '10.1.222.52', '10.1.222.52'))
+      assertThat(leases.last.bindingState, is('released'))
+      assertThat(follower.offset, is(file.length - 1))
+
+      // dhcpd writes a new file and renames it
+      leases.clear
+      val rewritten = File.createTempFile('dhcpd', '.leases~')
+      Files.write(LEASE_51 + LEASE_52, rewritten, US_ASCII)
+      Files.move(rewritten, file)
+      assertThat(follower.poll(), is(2))
+      assertThat(leases.map[ip], contains('10.1.222.51', '10.1.222.52'))
+    } finally {
+      file.delete()
+    }
+  }
+
+  @Test
+  def testFollowTruncated() {
+    val file = File.createTempFile('dhcpd', '.leases')
+    try {
+      val List<Lease> leases = newArrayList
+      val follower = new LeaseFollower(file) [leases.add(it)]
+      Files.write(LEASE_51 + LEASE_52, file, US_ASCII)
+      assertThat(follower.poll(), is(2))
+
+      Files.write(LEASE_52_RELEASED, file, US_ASCII)
+      assertThat(follower.poll(), is(1))
+      assertThat(leases.last.bindingState, is('released'))
+    } finally {
+      file.delete()
+    }
+  }
+
+  @Test
+  def testScheduleAfterFailure() {
+    val file = File.createTempFile('dhcpd', '.leases')
+    val executor = Executors.newSingleThreadScheduledExecutor
+    try {
+      val failures = new AtomicInteger(1)
+      val leases = new LinkedBlockingQueue<Lease>
+      val follower = new LeaseFollower(file) [
+        if (failures.getAndDecrement > 0) {
+          throw new IllegalStateException('failed')
+        }
+        leases.add(it)
+      ]
+      Files.write(LEASE_51, file, US_ASCII)
+      follower.schedule(executor, 10, TimeUnit.MILLISECONDS)
+      // the lease is read again by the poll after the failed one
+      assertThat(leases.poll(10, TimeUnit.SECONDS).ip, is('10.1.222.51'))
+    } finally {
+      executor.shutdownNow
+      file.delete()
+    }
+  }
+
+}
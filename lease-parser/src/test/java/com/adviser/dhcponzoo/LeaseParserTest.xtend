@@ -1,6 +1,7 @@
 package com.adviser.dhcponzoo
 
 import java.io.FileReader
+import java.util.List
 import org.junit.Test
 
 import static org.junit.Assert.*
@@ -21,9 +22,42 @@ class LeaseParserTest {
       assertThat(map, hasKey('10.1.222.52'))
       assertThat(map.get('10.1.222.51'), hasKey('starts'))
       assertThat(map.get('10.1.222.51').get('starts'), is('3 2015/01/21 07:34:38'))
+      assertThat(map.get('10.1.222.52').get('starts'), is('4 2015/01/22 08:00:00'))
     } finally {
       reader.close()
     }
   }
 
+  @Test
+  def testParseLeases() {
+    val List<Lease> leases = newArrayList
+    val reader = new FileReader('src/test/resources/test.lease');
+    try {
+      new LeaseParser().parse(reader) [leases.add(it)]
+    } finally {
+      reader.close()
+    }
+
+    assertThat(leases.map[ip], contains('10.1.222.51', '10.1.222.52', '10.1.222.53', '10.1.222.52'))
+
+    val lease = leases.head
+    assertThat(lease.starts.time, is(1421825678000L))
+    assertThat(lease.ends.time, is(1421912078000L))
+    assertThat(lease.bindingState, is('active'))
+    assertThat(lease.nextBindingState, is('free'))
+    assertThat(lease.hardwareType, is('ethernet'))
+    assertArrayEquals(#[0x00 as byte, 0x16 as byte, 0x3e as byte, 0x43 as byte, 0x42 as byte, 0xbf as byte],
+      lease.hardwareAddress)
+    assertThat(lease.clientHostname, is('web-0d-prod'))
+    assertThat(lease.variables.get('ddns-fwd-name'), is('web-0d-prod.v110'))
+
+    assertThat(leases.get(2).ends, is(nullValue))
+    assertThat(leases.get(2).hardwareAddress, is(nullValue))
+
+    val last = leases.last
+    assertThat(last.ends.time, is(1422000000000L))
+    assertThat(last.bindingState, is('released'))
+    assertThat(last.variables.size, is(0))
+  }
+
 }
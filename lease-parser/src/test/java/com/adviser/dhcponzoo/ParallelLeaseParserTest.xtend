@@ -0,0 +1,51 @@
+package com.adviser.dhcponzoo
+
+import java.io.File
+import java.util.Map
+import java.util.concurrent.ForkJoinPool
+import org.junit.Test
+
+import static org.junit.Assert.*
+import static org.hamcrest.Matchers.*
+
+/**
+ * @author markusw
+ */
+class ParallelLeaseParserTest {
+
+  @Test
+  def testParseFile() {
+    // small chunks, so the file is split between lease blocks
+    val leases = new ParallelLeaseParser(64).parse(new File('src/test/resources/test.lease'))
+
+    assertThat(leases.keySet, containsInAnyOrder('10.1.222.51', '10.1.222.52', '10.1.222.53'))
+    assertThat(leases.get('10.1.222.52').bindingState, is('released'))
+    assertThat(leases.get('10.1.222.53').ends, is(nullValue))
+  }
+
+  @Test
+  def testLastLeaseWins() {
+    val file = File.createTempFile('dhcpd', '.leases')
+    try {
+      LeaseFileGenerator.generate(file, 5000, 2000)
+      val expected = <String, Lease>newHashMap
+      new LeaseParser().parse(file) [expected.put(ip, it)]
+
+      val pool = new ForkJoinPool(4)
+      try {
+        for (chunkSize : #[100, 4096, 65536, Integer.MAX_VALUE]) {
+          val Map<String, Lease> leases = new ParallelLeaseParser(chunkSize).parse(file, pool)
+          assertThat(leases.size, is(2000))
+          assertThat(leases, is(expected))
+        }
+      } finally {
+        pool.shutdown()
+      }
+      assertThat(expected.get(LeaseFileGenerator.ip(1999)).bindingState, is('released'))
+      assertThat(expected.get(LeaseFileGenerator.ip(0)).bindingState, is('active'))
+    } finally {
+      file.delete()
+    }
+  }
+
+}